@@ -0,0 +1,135 @@
+package pt.um.ucl.positioning.C03a.uwb.benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementPool;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Reading;
+
+/**
+ * Allocation and GC benchmark of the measurement layout.
+ * <p>
+ * Every round opens one measurement for a tag, adds one reading per anchor
+ * and reads every reading back once, as the filter, solver and sinks do.
+ * Three layouts are run on the same rounds:
+ * <ul>
+ * <li>{@code legacy}: a {@code CopyOnWriteArrayList} of {@link Reading}
+ * objects, as measurements were stored before the reading arrays,</li>
+ * <li>{@code arrays}: a new {@link Measurement} per round, and</li>
+ * <li>{@code pooled}: measurements recycled through a {@link MeasurementPool}.</li>
+ * </ul>
+ * For each it reports the measurement rate, the bytes allocated per
+ * measurement by the benchmark thread and the collections it caused. The
+ * read pass allocates nothing, so the bytes are those of the layout alone.
+ * Run with a fixed heap (e.g. {@code -Xms512m -Xmx512m}) for comparable GC
+ * counts.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class MeasurementAllocationBenchmark {
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Main entry point for the benchmark.
+	 *
+	 * @param args Command-line arguments.
+	 * <ul>
+	 * <li>{@code args[0]} (Optional): Number of rounds. Defaults to 200000.</li>
+	 * <li>{@code args[1]} (Optional): Number of tags. Defaults to 100.</li>
+	 * <li>{@code args[2]} (Optional): Number of anchors. Defaults to 20.</li>
+	 * </ul>
+	 */
+	public static void main(String[] args) {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+		int tagCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int anchorCount = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+		Tag[] tags = new Tag[tagCount];
+		for (int i = 0; i < tagCount; i++) {
+			tags[i] = new Tag("bench-tag-" + i, 0, 0);
+			tags[i].setDeviceID(i + 1);
+		}
+		Anchor[] anchors = new Anchor[anchorCount];
+		for (int i = 0; i < anchorCount; i++) {
+			anchors[i] = new Anchor("bench-anchor-" + i, 0, 0);
+			anchors[i].setDeviceID(i + 1);
+		}
+
+		// Warm up all three layouts before measuring any of them.
+		int warmup = Math.max(1, rounds / 10);
+		run("legacy", warmup, tags, anchors, false);
+		run("arrays", warmup, tags, anchors, false);
+		run("pooled", warmup, tags, anchors, false);
+
+		System.out.printf("%d rounds x %d tags x %d anchors%n", rounds, tagCount, anchorCount);
+		run("legacy", rounds, tags, anchors, true);
+		run("arrays", rounds, tags, anchors, true);
+		run("pooled", rounds, tags, anchors, true);
+	}
+
+	private static void run(String layout, int rounds, Tag[] tags, Anchor[] anchors, boolean report) {
+		MeasurementPool pool = new MeasurementPool(tags.length * 4);
+		Random random = new Random(42);
+		double checksum = 0;
+
+		System.gc();
+		long gcCount = gcCount();
+		long gcTime = gcTime();
+		long allocated = THREADS.getCurrentThreadAllocatedBytes();
+		long t0 = System.nanoTime();
+
+		for (int round = 0; round < rounds; round++) {
+			long time = 1_700_000_000_000L + round * 100L;
+			Tag tag = tags[round % tags.length];
+			if (layout.equals("legacy")) {
+				List<Reading> readings = new CopyOnWriteArrayList<>();
+				for (int a = 0; a < anchors.length; a++) {
+					readings.add(new Reading(anchors[a], 1 + 30 * random.nextDouble(), time + a, 5));
+				}
+				for (int i = 0; i < readings.size(); i++) {
+					Reading reading = readings.get(i);
+					checksum += reading.getDistance() + reading.getAnchor().getDeviceID() + (reading.getTimestamp() - time);
+				}
+			} else {
+				Measurement measurement = layout.equals("pooled")
+						? pool.acquire(tag, time - 5000, time + 5000, round)
+						: new Measurement(tag, time - 5000, time + 5000, round);
+				for (int a = 0; a < anchors.length; a++) {
+					measurement.addReading(anchors[a], 1 + 30 * random.nextDouble(), time + a, 5);
+				}
+				int readingCount = measurement.getReadingCount();
+				for (int i = 0; i < readingCount; i++) {
+					checksum += measurement.getDistance(i) + measurement.getAnchor(i).getDeviceID() + (measurement.getTimestamp(i) - time);
+				}
+				measurement.release();
+			}
+		}
+
+		long nanos = System.nanoTime() - t0;
+		allocated = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+		if (report) {
+			System.out.printf("%-7s | %,12.0f measurements/s | %,8.1f B/measurement | GCs: %d (%d ms) | checksum %.0f%n",
+					layout, rounds / (nanos / 1e9), (double) allocated / rounds, gcCount() - gcCount, gcTime() - gcTime, checksum);
+		}
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0, gc.getCollectionCount());
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) time += Math.max(0, gc.getCollectionTime());
+		return time;
+	}
+}
@@ -0,0 +1,118 @@
+package pt.um.ucl.positioning.C03a.uwb.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import pt.um.ucl.positioning.C03a.uwb.storage.ReadingsSegmentStore;
+
+/**
+ * Write and scan throughput benchmark for {@link ReadingsSegmentStore}.
+ * <p>
+ * Appends synthetic readings (one reading per anchor per round, rounds
+ * spread over the tags and 100 ms apart) and then measures:
+ * <ul>
+ * <li>a full scan of all tags over the whole time range,</li>
+ * <li>single-tag scans over short windows, which exercise the sparse time
+ * index, and</li>
+ * <li>compaction of the small segments left by a forced roll-over.</li>
+ * </ul>
+ * The store is created in a temporary directory that is deleted afterwards.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class ReadingsSegmentStoreBenchmark {
+
+	/**
+	 * Main entry point for the benchmark.
+	 *
+	 * @param args Command-line arguments.
+	 * <ul>
+	 * <li>{@code args[0]} (Optional): Number of readings to write. Defaults to 10000000.</li>
+	 * <li>{@code args[1]} (Optional): Number of tags. Defaults to 50.</li>
+	 * <li>{@code args[2]} (Optional): Number of anchors. Defaults to 8.</li>
+	 * <li>{@code args[3]} (Optional): Directory for the store. Defaults to a temporary directory.</li>
+	 * </ul>
+	 */
+	public static void main(String[] args) throws Exception {
+		int readings = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+		int tags = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		int anchors = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		Path directory = args.length > 3 ? Paths.get(args[3]) : Files.createTempDirectory("segment-store-bench");
+
+		long start = 1_700_000_000_000L;
+		Random random = new Random(42);
+		try {
+			ReadingsSegmentStore store = new ReadingsSegmentStore(directory, 1 << 20, Long.MAX_VALUE, Long.MAX_VALUE, 256, true);
+
+			long t0 = System.nanoTime();
+			long round = 0;
+			long timestamp = start;
+			for (int i = 0; i < readings; i++) {
+				int anchor = i % anchors;
+				if (anchor == 0) {
+					round++;
+					timestamp = start + round * 100 / tags;
+				}
+				store.append(timestamp + anchor, round, 1 + random.nextDouble() * 30, (int) (round % tags), anchor);
+			}
+			long writeNanos = System.nanoTime() - t0;
+			report("append", readings, writeNanos);
+			long end = timestamp + anchors;
+
+			long[] sum = new long[1];
+			ReadingsSegmentStore.ReadingVisitor visitor = (ts, tag, anchor, distance, roundId) -> sum[0] += anchor;
+			for (int warmup = 0; warmup < 3; warmup++) store.scan(-1, start, end + 1, visitor);
+			t0 = System.nanoTime();
+			long visited = store.scan(-1, start, end + 1, visitor);
+			report("full scan", visited, System.nanoTime() - t0);
+
+			int queries = 1000;
+			long window = 10_000;
+			visited = 0;
+			t0 = System.nanoTime();
+			for (int q = 0; q < queries; q++) {
+				long from = start + (long) (random.nextDouble() * (end - start - window));
+				visited += store.scan(q % tags, from, from + window, visitor);
+			}
+			long queryNanos = System.nanoTime() - t0;
+			System.out.printf("%-24s %,d queries of %d ms, %,d readings, %.1f us/query%n",
+					"tag window scan", queries, window, visited, queryNanos / 1e3 / queries);
+
+			// Leave a run of small segments behind, as restarts would, and compact it.
+			store.close();
+			for (int s = 0; s < 8; s++) {
+				store = new ReadingsSegmentStore(directory, 1 << 20, Long.MAX_VALUE, Long.MAX_VALUE, 256, false);
+				for (int i = 0; i < 10_000; i++) {
+					store.append(end + s * 10_000 + i, ++round, random.nextDouble() * 30, i % tags, i % anchors);
+				}
+				store.close();
+			}
+			store = new ReadingsSegmentStore(directory, 1 << 20, Long.MAX_VALUE, Long.MAX_VALUE, 256, false);
+			int before = store.getSegmentCount();
+			t0 = System.nanoTime();
+			store.compact();
+			System.out.printf("%-24s %d -> %d segments in %.1f ms (%,d readings stored)%n", "compaction",
+					before, store.getSegmentCount(), (System.nanoTime() - t0) / 1e6, store.getRecordCount());
+			store.close();
+		} finally {
+			if (args.length <= 3) {
+				try (Stream<Path> files = Files.walk(directory)) {
+					files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+				} catch (IOException e) {
+					System.err.println("Could not delete " + directory + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private static void report(String operation, long rows, long nanos) {
+		double seconds = nanos / 1e9;
+		System.out.printf("%-24s %,d readings in %.2f s -> %,.0f readings/s%n", operation, rows, seconds, rows / seconds);
+	}
+}
@@ -0,0 +1,148 @@
+package pt.um.ucl.positioning.C03a.uwb.benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.Random;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+import pt.um.ucl.positioning.C03a.uwb.database.MeasurementsDatabaseLogger;
+import pt.um.ucl.positioning.C03a.uwb.database.ToAReadingsBulkLoader;
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+
+/**
+ * Throughput benchmark for the two {@code ToAreadings} write paths.
+ * <p>
+ * Writes the same synthetic readings, one measurement round at a time, through
+ * {@link MeasurementsDatabaseLogger#saveToAreadings} (batched inserts) and
+ * through {@link ToAReadingsBulkLoader} ({@code LOAD DATA LOCAL INFILE}),
+ * and prints the rows per second of each. The rows are deleted afterwards.
+ * <p>
+ * Runs against a local MariaDB with the {@code measurements} schema and
+ * {@code local_infile=ON}. An H2 stand-in URL ({@code jdbc:h2:...;MODE=MariaDB})
+ * only runs the batched path, since H2 has no {@code LOAD DATA}.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class ToAReadingsLoadBenchmark {
+
+	/**
+	 * Main entry point for the benchmark.
+	 *
+	 * @param args Command-line arguments.
+	 * <ul>
+	 * <li>{@code args[0]} (Optional): JDBC URL including the database. Defaults to "jdbc:mariadb://localhost:3306/measurements".</li>
+	 * <li>{@code args[1]} (Optional): Database username. Defaults to "root".</li>
+	 * <li>{@code args[2]} (Optional): Database password. Defaults to "root".</li>
+	 * <li>{@code args[3]} (Optional): Number of measurement rounds to write. Defaults to 20000.</li>
+	 * <li>{@code args[4]} (Optional): Readings (anchors) per round. Defaults to 20.</li>
+	 * </ul>
+	 */
+	public static void main(String[] args) throws Exception {
+		String url = args.length > 0 ? args[0] : "jdbc:mariadb://localhost:3306/measurements";
+		String user = args.length > 1 ? args[1] : "root";
+		String password = args.length > 2 ? args[2] : "root";
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+		int anchorsPerRound = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+		boolean bulkSupported = url.startsWith("jdbc:mariadb:");
+
+		HikariConfig hikariConfig = new HikariConfig();
+		hikariConfig.setJdbcUrl(url);
+		hikariConfig.setUsername(user);
+		hikariConfig.setPassword(password);
+		hikariConfig.setMaximumPoolSize(4);
+		if (bulkSupported) {
+			hikariConfig.addDataSourceProperty("useBulkStmts", "true");
+			hikariConfig.addDataSourceProperty("allowLocalInfile", "true");
+		}
+
+		try (HikariDataSource dataSource = new HikariDataSource(hikariConfig)) {
+			Properties props = new Properties();
+			props.setProperty("am.slowScanPeriod", "60000");
+			props.setProperty("am.fastScanPeriod", "30000");
+			props.setProperty("am.scanInterval", "2000");
+			props.setProperty("am.scanTime", "10");
+			props.setProperty("am.minRoundTime", "2000");
+			props.setProperty("enableOutputLogs", "true");
+			MeasurementsDatabaseLogger dbLogger = new MeasurementsDatabaseLogger(dataSource, new Config(props));
+
+			Tag tag = new Tag("bench-tag", System.currentTimeMillis(), System.currentTimeMillis());
+			tag.setDeviceID(dbLogger.saveTarget(tag));
+			int measurementId = dbLogger.saveMeasurements(tag.getDeviceID(), "ToA", System.currentTimeMillis());
+
+			long now = System.currentTimeMillis();
+			Measurement readings = new Measurement(tag, now, now + 60_000, 1);
+			Random random = new Random(42);
+			for (int i = 0; i < anchorsPerRound; i++) {
+				Anchor anchor = new Anchor("bench-anchor-" + i, now, now);
+				anchor.setDeviceID(dbLogger.saveAnchor(anchor));
+				readings.addReading(anchor, random.nextDouble() * 40, now + i, 5);
+			}
+
+			try {
+				// Warm up both paths (driver, pool, server caches) before measuring.
+				runBatched(dbLogger, measurementId, readings, Math.min(rounds, 500));
+				if (bulkSupported) runBulk(dataSource, measurementId, readings, Math.min(rounds, 500));
+				deleteReadings(dataSource, measurementId);
+
+				long rows = (long) rounds * anchorsPerRound;
+				long batchedNanos = runBatched(dbLogger, measurementId, readings, rounds);
+				report("batched inserts", rows, batchedNanos);
+				deleteReadings(dataSource, measurementId);
+
+				if (bulkSupported) {
+					long bulkNanos = runBulk(dataSource, measurementId, readings, rounds);
+					report("LOAD DATA LOCAL INFILE", rows, bulkNanos);
+					System.out.printf("Speed-up: %.1fx%n", (double) batchedNanos / bulkNanos);
+				} else {
+					System.out.println("Bulk load skipped: LOAD DATA LOCAL INFILE needs a MariaDB URL.");
+				}
+			} finally {
+				deleteReadings(dataSource, measurementId);
+				try (Connection conn = dataSource.getConnection();
+					 PreparedStatement stmt = conn.prepareStatement("DELETE FROM Measurements WHERE measurementID = ?")) {
+					stmt.setInt(1, measurementId);
+					stmt.executeUpdate();
+				}
+			}
+		}
+	}
+
+	private static long runBatched(MeasurementsDatabaseLogger dbLogger, int measurementId, Measurement readings, int rounds) {
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			dbLogger.saveToAreadings(measurementId, readings);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long runBulk(HikariDataSource dataSource, int measurementId, Measurement readings, int rounds) {
+		ToAReadingsBulkLoader loader = new ToAReadingsBulkLoader(dataSource, 5000, 1000, true);
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			loader.add(measurementId, readings);
+		}
+		loader.close();
+		return System.nanoTime() - start;
+	}
+
+	private static void deleteReadings(HikariDataSource dataSource, int measurementId) throws SQLException {
+		try (Connection conn = dataSource.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement("DELETE FROM ToAreadings WHERE measurementID = ?")) {
+			stmt.setInt(1, measurementId);
+			stmt.executeUpdate();
+		}
+	}
+
+	private static void report(String path, long rows, long nanos) {
+		double seconds = nanos / 1e9;
+		System.out.printf("%-24s %,d rows in %.2f s -> %,.0f rows/s%n", path, rows, seconds, rows / seconds);
+	}
+}
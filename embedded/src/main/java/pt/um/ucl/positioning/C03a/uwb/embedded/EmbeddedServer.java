@@ -0,0 +1,249 @@
+package pt.um.ucl.positioning.C03a.uwb.embedded;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.json.JSONObject;
+
+import pt.um.ucl.positioning.C03a.uwb.communications.C03a;
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+
+/**
+ * Boots the {@link C03a} servlet in an embedded Tomcat, with a
+ * {@link LocalDatabase} in place of MariaDB and a {@link LocalEstimator} in
+ * place of the Position Estimator, so load tests and benchmarks can run
+ * headless without Eclipse, a Tomcat installation or a database server.
+ * Start-up takes a few seconds.
+ * <p>
+ * The servlet is mapped on {@code /C03a/*}, as in {@code web.xml}, and gets
+ * its {@link Config} through {@link C03a#CONFIG_ATTRIBUTE} instead of
+ * {@code /WEB-INF/config.properties}. The configuration is built from
+ * {@link #defaults()}, then the given settings, and always points the
+ * database and estimator settings at the stand-ins. Bulk loading and
+ * partitioning are turned off, since H2 supports neither.
+ * <p>
+ * {@code whitelist.json} and {@code anchors.json} are read from the
+ * {@code WEB-INF} of the optional web application folder.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class EmbeddedServer implements AutoCloseable {
+
+	private static final String CONTEXT_PATH = "/C03a";
+	private static final String SERVLET_NAME = "C03a";
+
+	private final Path baseDir;
+	private final LocalDatabase database;
+	private final LocalEstimator estimator;
+	private final Tomcat tomcat;
+	private final C03a servlet = new C03a();
+	private final Config config;
+	private final long startupMillis;
+
+	/**
+	 * Starts the stand-ins and the servlet.
+	 *
+	 * @param port The HTTP port, or 0 for any free port.
+	 * @param settings Settings over {@link #defaults()}, as in {@code config.properties}.
+	 * @param estimatorDelay Milliseconds the estimator takes to answer.
+	 * @param webapp The web application folder with {@code WEB-INF/whitelist.json}
+	 *        and {@code WEB-INF/anchors.json}, or {@code null} for none.
+	 * @throws IOException if a stand-in cannot be started.
+	 * @throws SQLException if the database cannot be created.
+	 * @throws LifecycleException if the container or the servlet does not start.
+	 */
+	public EmbeddedServer(int port, Properties settings, long estimatorDelay, Path webapp)
+			throws IOException, SQLException, LifecycleException {
+		long start = System.nanoTime();
+		this.baseDir = Files.createTempDirectory("c03a-embedded");
+		this.database = new LocalDatabase("measurements-" + this.baseDir.getFileName());
+		this.estimator = new LocalEstimator(0, estimatorDelay);
+		this.config = new Config(buildProperties(settings));
+
+		this.tomcat = new Tomcat();
+		this.tomcat.setBaseDir(this.baseDir.toString());
+		this.tomcat.setPort(port);
+		this.tomcat.getConnector();
+		Path docBase = webapp != null ? webapp.toAbsolutePath() : Files.createDirectories(this.baseDir.resolve("webapp"));
+		Context context = this.tomcat.addContext(CONTEXT_PATH, docBase.toString());
+		context.addServletContainerInitializer((classes, servletContext) ->
+			servletContext.setAttribute(C03a.CONFIG_ATTRIBUTE, this.config), null);
+		Wrapper wrapper = Tomcat.addServlet(context, SERVLET_NAME, this.servlet);
+		wrapper.setLoadOnStartup(1);
+		context.addServletMappingDecoded("/*", SERVLET_NAME);
+		try {
+			this.tomcat.start();
+			// A servlet that fails to initialise leaves the context unavailable instead of failing start().
+			if (context.getState() != LifecycleState.STARTED || this.servlet.getServletConfig() == null) {
+				throw new LifecycleException("C03a did not start, see the container log");
+			}
+		} catch (LifecycleException e) {
+			close();
+			throw e;
+		}
+		this.startupMillis = (System.nanoTime() - start) / 1_000_000;
+	}
+
+	/**
+	 * Gets the settings the embedded servlet starts from: the scheduler
+	 * settings of the shipped {@code config.properties}, every export on, the
+	 * logs off and the local files in the server's temporary folder.
+	 *
+	 * @return The default settings.
+	 */
+	public static Properties defaults() {
+		Properties props = new Properties();
+		props.setProperty("am.slowScanPeriod", "60000");
+		props.setProperty("am.fastScanPeriod", "30000");
+		props.setProperty("am.scanInterval", "2000");
+		props.setProperty("am.scanTime", "10");
+		props.setProperty("am.minRoundTime", "2000");
+		props.setProperty("am.safetyBuffer", "10");
+		props.setProperty("exportToDbQ", "true");
+		props.setProperty("exportToPeQ", "true");
+		props.setProperty("exportToStoreQ", "false");
+		props.setProperty("enableInputLogs", "false");
+		props.setProperty("enableOutputLogs", "false");
+		props.setProperty("enableGeneralLogs", "false");
+		props.setProperty("log.executionComparison", "false");
+		return props;
+	}
+
+	private Properties buildProperties(Properties settings) {
+		Properties props = defaults();
+		props.setProperty("log.directory", this.baseDir.resolve("logs").toString());
+		props.setProperty("store.directory", this.baseDir.resolve("store").toString());
+		props.setProperty("archive.directory", this.baseDir.resolve("archive").toString());
+		props.setProperty("capture.file", this.baseDir.resolve("anchors.uwbt").toString());
+		if (settings != null) props.putAll(settings);
+		props.setProperty("db.url", this.database.getUrl());
+		props.setProperty("db.name", this.database.getName());
+		props.setProperty("db.driver", this.database.getDriver());
+		props.setProperty("db.username", this.database.getUsername());
+		props.setProperty("db.password", this.database.getPassword());
+		props.setProperty("db.bulkLoad", "false");
+		props.setProperty("db.partitioning", "none");
+		props.setProperty("pe.url", this.estimator.getUrl());
+		props.setProperty("pe.batchUrl", this.estimator.getUrl());
+		return props;
+	}
+
+	/**
+	 * Gets the state of the server: its address, start-up time, the rows in
+	 * the database, the requests the estimator received and the servlet's
+	 * handling times.
+	 *
+	 * @return The report.
+	 * @throws SQLException if the rows cannot be counted.
+	 */
+	public JSONObject report() throws SQLException {
+		return new JSONObject()
+			.put("url", getUrl())
+			.put("startupMs", this.startupMillis)
+			.put("database", this.database.countRows())
+			.put("estimator", new JSONObject()
+				.put("requests", this.estimator.getRequestCount())
+				.put("bytes", this.estimator.getByteCount()))
+			.put("requests", this.servlet.getMetrics().getJSONObject("requests"));
+	}
+
+	/**
+	 * Stops the servlet, the container and the stand-ins, and deletes the
+	 * temporary folder.
+	 */
+	@Override
+	public void close() {
+		try {
+			this.tomcat.stop();
+			this.tomcat.destroy();
+		} catch (LifecycleException e) {
+			System.err.println("Error stopping the container: " + e.getMessage());
+		}
+		this.estimator.close();
+		try {
+			this.database.close();
+		} catch (SQLException e) {
+			System.err.println("Error closing the database: " + e.getMessage());
+		}
+		try (Stream<Path> files = Files.walk(this.baseDir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> {
+				try {
+					Files.delete(file);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (IOException | UncheckedIOException e) {
+			System.err.println("Could not delete " + this.baseDir + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Builds the base URL of the servlet, as {@code LoadBenchmark} and the
+	 * fleet simulator expect it.
+	 *
+	 * @return The URL, ending in {@code /}.
+	 */
+	public String getUrl() {
+		return "http://localhost:" + getPort() + CONTEXT_PATH + "/";
+	}
+
+	public int getPort() { return tomcat.getConnector().getLocalPort(); }
+	public C03a getServlet() { return servlet; }
+	public Config getConfig() { return config; }
+	public LocalDatabase getDatabase() { return database; }
+	public LocalEstimator getEstimator() { return estimator; }
+	public long getStartupMillis() { return startupMillis; }
+
+	/**
+	 * Main entry point for the embedded server. Runs until the process is
+	 * stopped, then prints the report as one line of JSON.
+	 *
+	 * @param args Command-line arguments.
+	 * <ul>
+	 * <li>{@code args[0]} (Optional): The HTTP port. Defaults to 8080.</li>
+	 * <li>{@code args[1]} (Optional): A {@code config.properties} file, or empty for the defaults.</li>
+	 * <li>{@code args[2]} (Optional): The estimator's response delay in milliseconds. Defaults to 0.</li>
+	 * <li>{@code args[3]} (Optional): The web application folder. Defaults to none.</li>
+	 * </ul>
+	 * @throws Exception if the server cannot be started.
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		String file = args.length > 1 && !args[1].isEmpty() ? args[1] : null;
+		long delay = args.length > 2 ? Long.parseLong(args[2]) : 0;
+		Path webapp = args.length > 3 ? Paths.get(args[3]) : null;
+
+		Properties settings = new Properties();
+		if (file != null) {
+			try (InputStream in = Files.newInputStream(Paths.get(file))) {
+				settings.load(in);
+			}
+		}
+		EmbeddedServer server = new EmbeddedServer(port, settings, delay, webapp);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				System.out.println(server.report());
+			} catch (SQLException e) {
+				System.err.println("Could not report: " + e.getMessage());
+			}
+			server.close();
+		}, "embedded-shutdown"));
+		System.out.println("C03a listening on " + server.getUrl() + " (started in " + server.getStartupMillis() + " ms)");
+		Thread.currentThread().join();
+	}
+}
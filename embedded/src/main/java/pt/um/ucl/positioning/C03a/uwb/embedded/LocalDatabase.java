@@ -0,0 +1,112 @@
+package pt.um.ucl.positioning.C03a.uwb.embedded;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.json.JSONObject;
+
+/**
+ * In-process stand-in for the MariaDB measurements database: an in-memory H2
+ * database in MariaDB mode, created with {@code sql/h2_schema.sql}, so the
+ * synchronizer's SQL ({@code ON DUPLICATE KEY UPDATE}, backquoted
+ * identifiers, generated keys) runs unchanged.
+ * <p>
+ * The synchronizer opens its pools on {@code db.url + "/" + db.name}, so the
+ * database is addressed as {@link #getUrl()} and {@link #getName()}, whose
+ * name carries the H2 settings. A connection is held open for the life of
+ * the database, which is dropped on {@link #close()}.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class LocalDatabase implements AutoCloseable {
+
+	private static final String DRIVER = "org.h2.Driver";
+	private static final String URL = "jdbc:h2:mem:c03a";
+	private static final String SETTINGS = ";MODE=MariaDB;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+	private static final String USERNAME = "sa";
+	private static final String PASSWORD = "";
+	private static final String SCHEMA = "/sql/h2_schema.sql";
+	private static final String[] TABLES = { "Targets", "Anchors", "Measurements", "ToAreadings" };
+
+	private final String name;
+	private final Connection connection;
+
+	/**
+	 * Creates the database and its tables.
+	 *
+	 * @param name The database name, distinct for databases open at the same time.
+	 * @throws SQLException if the database or its tables cannot be created.
+	 * @throws IOException if the schema cannot be read.
+	 */
+	public LocalDatabase(String name) throws SQLException, IOException {
+		this.name = name + SETTINGS;
+		this.connection = DriverManager.getConnection(getUrl() + "/" + this.name, USERNAME, PASSWORD);
+		try (Statement stmt = this.connection.createStatement()) {
+			for (String sql : readSchema().split(";")) {
+				if (!sql.isBlank()) stmt.execute(sql);
+			}
+		} catch (SQLException e) {
+			this.connection.close();
+			throw e;
+		}
+	}
+
+	/** Reads the schema without its comment lines. */
+	private static String readSchema() throws IOException {
+		try (InputStream in = LocalDatabase.class.getResourceAsStream(SCHEMA)) {
+			if (in == null) throw new IOException(SCHEMA + " not found on the classpath");
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceAll("(?m)^--.*$", "");
+		}
+	}
+
+	/**
+	 * Counts the rows of the measurement tables.
+	 *
+	 * @return The row count of each table, by table name.
+	 * @throws SQLException if a count fails.
+	 */
+	public JSONObject countRows() throws SQLException {
+		JSONObject counts = new JSONObject();
+		try (Statement stmt = this.connection.createStatement()) {
+			for (String table : TABLES) {
+				try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+					rs.next();
+					counts.put(table, rs.getLong(1));
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Drops the database.
+	 *
+	 * @throws SQLException if it cannot be shut down.
+	 */
+	@Override
+	public void close() throws SQLException {
+		try (Statement stmt = this.connection.createStatement()) {
+			stmt.execute("SHUTDOWN");
+		} finally {
+			this.connection.close();
+		}
+	}
+
+	/** @return The value of {@code db.url}. */
+	public String getUrl() { return URL; }
+	/** @return The value of {@code db.name}, with the H2 settings. */
+	public String getName() { return name; }
+	/** @return The value of {@code db.driver}. */
+	public String getDriver() { return DRIVER; }
+	/** @return The value of {@code db.username}. */
+	public String getUsername() { return USERNAME; }
+	/** @return The value of {@code db.password}. */
+	public String getPassword() { return PASSWORD; }
+}
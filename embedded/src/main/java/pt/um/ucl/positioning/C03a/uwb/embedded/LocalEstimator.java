@@ -0,0 +1,99 @@
+package pt.um.ucl.positioning.C03a.uwb.embedded;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the Position Estimator service, on the loopback
+ * interface. It accepts a POST on any path, single or batched, discards the
+ * body and answers {@code 200 {"status":"ok"}} after {@code delay}
+ * milliseconds, on a virtual thread per request.
+ * <p>
+ * It answers like the simulator's {@code MockEstimator}, which cannot share
+ * a classpath with the synchronizer.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class LocalEstimator implements AutoCloseable {
+
+	private static final byte[] RESPONSE = "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final long delay;
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+
+	/**
+	 * Starts a local estimator.
+	 *
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @param delay Milliseconds to wait before answering.
+	 * @throws IOException if the port cannot be bound.
+	 */
+	public LocalEstimator(int port, long delay) throws IOException {
+		this.delay = delay;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		this.server.createContext("/", this::handle);
+		this.server.setExecutor(this.executor);
+		this.server.start();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			long size = 0;
+			try (InputStream body = exchange.getRequestBody()) {
+				byte[] buffer = new byte[8192];
+				for (int n; (n = body.read(buffer)) > 0;) size += n;
+			}
+			this.requests.increment();
+			this.bytes.add(size);
+			if (this.delay > 0) {
+				try {
+					Thread.sleep(this.delay);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, RESPONSE.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(RESPONSE);
+			}
+		}
+	}
+
+	/**
+	 * Stops answering requests.
+	 */
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * Builds the URL the synchronizer's {@code pe.url} should point to.
+	 *
+	 * @return The URL of the estimator.
+	 */
+	public String getUrl() {
+		return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + getPort() + "/E04/estimatePosition";
+	}
+
+	public int getPort() { return server.getAddress().getPort(); }
+	public long getRequestCount() { return requests.sum(); }
+	public long getByteCount() { return bytes.sum(); }
+}
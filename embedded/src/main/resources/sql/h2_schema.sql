@@ -0,0 +1,69 @@
+-- Schema of the in-process H2 stand-in for the measurements database,
+-- opened in MariaDB mode by LocalDatabase.
+--
+-- Same tables, columns and keys as sql/partitioned_schema.sql in the
+-- synchronizer, without the partitioning, which H2 does not support. Keep the
+-- two in step.
+
+CREATE TABLE IF NOT EXISTS Targets (
+    targetID INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    targetCode VARCHAR(64) NOT NULL UNIQUE,
+    targetName VARCHAR(128)
+);
+
+CREATE TABLE IF NOT EXISTS Anchors (
+    anchorID INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    anchorCode VARCHAR(64) NOT NULL UNIQUE,
+    anchorName VARCHAR(128),
+    anchorX DOUBLE,
+    anchorY DOUBLE,
+    anchorZ DOUBLE,
+    anchorAlpha DOUBLE,
+    anchorBeta DOUBLE,
+    anchorGamma DOUBLE
+);
+
+CREATE TABLE IF NOT EXISTS Measurements (
+    measurementID INT NOT NULL AUTO_INCREMENT,
+    targetID INT NOT NULL,
+    timestamp BIGINT NOT NULL,
+    dataType VARCHAR(16) NOT NULL,
+    PRIMARY KEY (measurementID, timestamp),
+    KEY idx_measurements_target_time (targetID, timestamp)
+);
+
+CREATE TABLE IF NOT EXISTS ToAreadings (
+    readingID BIGINT NOT NULL AUTO_INCREMENT,
+    measurementID INT NOT NULL,
+    timestamp BIGINT NOT NULL,
+    anchorID INT NOT NULL,
+    `Range` DOUBLE NOT NULL,
+    PRIMARY KEY (readingID, timestamp),
+    KEY idx_toareadings_measurement (measurementID),
+    KEY idx_toareadings_anchor_time (anchorID, timestamp)
+);
+
+CREATE TABLE IF NOT EXISTS TagRollups (
+    targetID INT NOT NULL,
+    bucketStart BIGINT NOT NULL,
+    bucketSize BIGINT NOT NULL,
+    readingCount BIGINT NOT NULL,
+    rangeMean DOUBLE,
+    rangeVariance DOUBLE,
+    PRIMARY KEY (targetID, bucketStart)
+);
+
+CREATE TABLE IF NOT EXISTS AnchorRollups (
+    anchorID INT NOT NULL,
+    bucketStart BIGINT NOT NULL,
+    bucketSize BIGINT NOT NULL,
+    readingCount BIGINT NOT NULL,
+    rangeMean DOUBLE,
+    rangeVariance DOUBLE,
+    PRIMARY KEY (anchorID, bucketStart)
+);
+
+CREATE TABLE IF NOT EXISTS RollupProgress (
+    rollup VARCHAR(32) NOT NULL PRIMARY KEY,
+    lastBucket BIGINT NOT NULL
+);
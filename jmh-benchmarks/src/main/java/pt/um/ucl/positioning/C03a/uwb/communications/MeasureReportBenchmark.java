@@ -0,0 +1,102 @@
+package pt.um.ucl.positioning.C03a.uwb.communications;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+import pt.um.ucl.positioning.C03a.uwb.jmh.BenchmarkFixtures;
+import pt.um.ucl.positioning.C03a.uwb.managers.RegistrySnapshot;
+import pt.um.ucl.positioning.C03a.uwb.managers.Synchronizer;
+import pt.um.ucl.positioning.C03a.uwb.managers.Synchronizer.RoundPlan;
+
+/**
+ * The reading matching loop of {@code C03a.handleMeasureRequest}
+ * ({@link C03a#matchReadings}): look up each reported tag, find its open
+ * measurement of the round and add the reading.
+ * <p>
+ * One operation matches the reports of every anchor for one round, with a
+ * reading of every tag each, and then clears the readings so the next
+ * operation matches the same round again. The reports are parsed once, in
+ * the setup, as the servlet parses them before matching.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MeasureReportBenchmark {
+
+	@Param({ "4", "16", "64" })
+	public int anchors;
+
+	@Param({ "10", "50", "200" })
+	public int tags;
+
+	private C03a servlet;
+	private RegistrySnapshot registry;
+	private List<Anchor> anchorList;
+	private List<Tag> tagList;
+	private long roundId;
+	private JSONArray[] reports;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		long now = System.currentTimeMillis();
+		this.servlet = new C03a(BenchmarkFixtures.config());
+		Synchronizer synchronizer = this.servlet.getSynchronizer();
+		this.anchorList = BenchmarkFixtures.anchors(this.anchors, now);
+		this.tagList = BenchmarkFixtures.tags(this.tags, now);
+		BenchmarkFixtures.register(synchronizer, this.anchorList, this.tagList);
+		this.registry = synchronizer.getRegistry();
+
+		RoundPlan plan = new RoundPlan(now, now + 60_000, this.registry.anchors(), this.registry.tags());
+		synchronizer.addMeasurementRound(plan, 30, -1);
+		this.roundId = plan.roundId;
+
+		this.reports = new JSONArray[this.anchors];
+		for (int a = 0; a < this.anchors; a++) {
+			JSONArray report = new JSONArray();
+			for (int t = 0; t < this.tags; t++) {
+				report.put(new JSONObject().put("tagID", "tag" + t).put("executedAt", now + (t * this.anchors + a) * 30L)
+						.put("distance", 1 + (a * 31 + t * 17) % 200 / 10.0));
+			}
+			this.reports[a] = report;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.servlet.destroy();
+	}
+
+	@Benchmark
+	public void matchRound() {
+		for (int a = 0; a < this.anchorList.size(); a++) {
+			this.servlet.matchReadings(this.registry, this.anchorList.get(a), this.roundId, this.reports[a]);
+		}
+		for (int t = 0; t < this.tagList.size(); t++) {
+			this.tagList.get(t).getMeasurements().get(this.roundId).setReadings(List.of());
+		}
+	}
+}
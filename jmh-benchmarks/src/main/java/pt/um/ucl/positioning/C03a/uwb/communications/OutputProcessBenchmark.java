@@ -0,0 +1,103 @@
+package pt.um.ucl.positioning.C03a.uwb.communications;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+import pt.um.ucl.positioning.C03a.uwb.jmh.BenchmarkFixtures;
+import pt.um.ucl.positioning.C03a.uwb.managers.Synchronizer;
+import pt.um.ucl.positioning.C03a.uwb.managers.Synchronizer.RoundPlan;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+
+/**
+ * The {@code C03a.startOutputProcess} sweep over the open measurements of
+ * every tag, which runs after every measurement report and every
+ * {@code output.sweepInterval} milliseconds:
+ * <ul>
+ * <li>{@code sweepIdle}: every ring holds {@value #IDLE_ROUNDS} rounds that
+ * are still being measured, so nothing is emitted, which is what most
+ * sweeps find;</li>
+ * <li>{@code emitRound}: a round is opened, every anchor's reading of every
+ * tag is added and the sweep emits and retires the whole round. The output
+ * tasks it submits run on the output pool, with no sinks.</li>
+ * </ul>
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputProcessBenchmark {
+
+	private static final int IDLE_ROUNDS = 4;
+
+	@State(Scope.Thread)
+	public static class Round {
+
+		@Param({ "4", "16" })
+		public int anchors;
+
+		@Param({ "10", "50", "200" })
+		public int tags;
+
+		C03a servlet;
+		Synchronizer synchronizer;
+		List<Anchor> anchorList;
+		List<Tag> tagList;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			long now = System.currentTimeMillis();
+			this.servlet = new C03a(BenchmarkFixtures.config("output.deadlineDelay", "-1"));
+			this.synchronizer = this.servlet.getSynchronizer();
+			BenchmarkFixtures.register(this.synchronizer, BenchmarkFixtures.anchors(this.anchors, now), BenchmarkFixtures.tags(this.tags, now));
+			this.anchorList = this.synchronizer.getAnchorList();
+			this.tagList = this.synchronizer.getTagList();
+			for (int i = 0; i < IDLE_ROUNDS; i++) {
+				long start = now + 3_600_000L * (i + 1);
+				this.synchronizer.addMeasurementRound(new RoundPlan(start, start + 60_000, this.anchorList, this.tagList), 30, -1);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			this.servlet.destroy();
+		}
+	}
+
+	@Benchmark
+	public void sweepIdle(Round round) {
+		round.servlet.startOutputProcess(round.tagList);
+	}
+
+	@Benchmark
+	public void emitRound(Round round) {
+		long now = System.currentTimeMillis();
+		RoundPlan plan = new RoundPlan(now - 1000, now, round.anchorList, round.tagList);
+		round.synchronizer.addMeasurementRound(plan, 30, -1);
+		for (int t = 0; t < round.tagList.size(); t++) {
+			Measurement measurement = round.tagList.get(t).getMeasurements().get(plan.roundId);
+			for (int a = 0; a < round.anchorList.size(); a++) {
+				measurement.addReading(round.anchorList.get(a), 1 + a + t / 100.0, now - 1000 + a, 5);
+			}
+		}
+		round.servlet.startOutputProcess(round.tagList);
+	}
+}
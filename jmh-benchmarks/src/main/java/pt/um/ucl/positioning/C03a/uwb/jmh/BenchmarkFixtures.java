@@ -0,0 +1,94 @@
+package pt.um.ucl.positioning.C03a.uwb.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+import pt.um.ucl.positioning.C03a.uwb.managers.Synchronizer;
+
+/**
+ * Configuration and devices shared by the JMH benchmarks.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public final class BenchmarkFixtures {
+
+	private BenchmarkFixtures() {}
+
+	/**
+	 * Builds the configuration of {@code /WEB-INF/config.properties} with
+	 * every output, log and file turned off, so a benchmark measures the code
+	 * under test and nothing else.
+	 *
+	 * @param overrides Properties replacing the defaults, as {@code key, value} pairs.
+	 * @return The configuration.
+	 */
+	public static Config config(String... overrides) {
+		Properties props = new Properties();
+		props.setProperty("am.slowScanPeriod", "60000");
+		props.setProperty("am.fastScanPeriod", "30000");
+		props.setProperty("am.scanInterval", "2000");
+		props.setProperty("am.scanTime", "10");
+		props.setProperty("am.minRoundTime", "2000");
+		props.setProperty("am.safetyBuffer", "10");
+		props.setProperty("exportToDbQ", "false");
+		props.setProperty("exportToPeQ", "false");
+		props.setProperty("exportToStoreQ", "false");
+		props.setProperty("enableInputLogs", "false");
+		props.setProperty("enableOutputLogs", "false");
+		props.setProperty("enableGeneralLogs", "false");
+		props.setProperty("log.executionComparison", "false");
+		for (int i = 0; i + 1 < overrides.length; i += 2) props.setProperty(overrides[i], overrides[i + 1]);
+		return new Config(props);
+	}
+
+	/**
+	 * Creates anchors named {@code Anchor 1} to {@code Anchor <n>}.
+	 *
+	 * @param count The number of anchors.
+	 * @param now The time they were last seen.
+	 * @return The anchors.
+	 */
+	public static List<Anchor> anchors(int count, long now) {
+		List<Anchor> anchors = new ArrayList<>(count);
+		for (int i = 1; i <= count; i++) {
+			Anchor anchor = new Anchor("Anchor " + i, now, now);
+			anchor.setDeviceID(i);
+			anchors.add(anchor);
+		}
+		return anchors;
+	}
+
+	/**
+	 * Creates tags named {@code tag0} to {@code tag<n - 1>}.
+	 *
+	 * @param count The number of tags.
+	 * @param now The time they were last seen.
+	 * @return The tags.
+	 */
+	public static List<Tag> tags(int count, long now) {
+		List<Tag> tags = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Tag tag = new Tag("tag" + i, now, now);
+			tag.setDeviceID(i + 1);
+			tags.add(tag);
+		}
+		return tags;
+	}
+
+	/**
+	 * Registers devices with a synchronizer.
+	 *
+	 * @param synchronizer The synchronizer.
+	 * @param anchors The anchors.
+	 * @param tags The tags.
+	 */
+	public static void register(Synchronizer synchronizer, List<Anchor> anchors, List<Tag> tags) {
+		for (Anchor anchor : anchors) synchronizer.addNewAnchor(anchor);
+		for (Tag tag : tags) synchronizer.addNewTag(tag);
+	}
+}
@@ -0,0 +1,56 @@
+package pt.um.ucl.positioning.C03a.uwb.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the synchronizer hot paths:
+ * <ul>
+ * <li>{@code SynchronizerBenchmark}: round planning in
+ * {@code Synchronizer.getMeasurmentResponse}, over anchor and tag counts;</li>
+ * <li>{@code MeasureReportBenchmark}: the reading matching loop of
+ * {@code C03a.handleMeasureRequest};</li>
+ * <li>{@code OutputProcessBenchmark}: the {@code C03a.startOutputProcess}
+ * sweep, with nothing to emit and with a full round to emit;</li>
+ * <li>{@code MeasurementJsonBenchmark}: {@code Measurement.toJson},
+ * {@code Reading.toJson} and the streaming {@code MeasurementJsonWriter};</li>
+ * <li>{@code ActionManagerBenchmark}: {@code ActionManager.nextAction}
+ * alone and under contention.</li>
+ * </ul>
+ * Accepts the usual JMH command line (e.g. {@code SynchronizerBenchmark -p tags=10,500
+ * -f 1 -wi 3 -i 5}). Unless told otherwise it adds the GC profiler
+ * ({@code -prof gc}), whose {@code gc.alloc.rate.norm} is the allocation per
+ * operation, and writes the results to {@code jmh-result.json}, so runs can
+ * be compared. The benchmark list is generated by the JMH annotation
+ * processor ({@code jmh-generator-annprocess}, on the factory path), into
+ * the output folder with the classes.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public final class JmhRunner {
+
+	private JmhRunner() {}
+
+	/**
+	 * Main entry point for the benchmarks.
+	 *
+	 * @param args JMH command-line options.
+	 * @throws RunnerException if a benchmark fails.
+	 * @throws CommandLineOptionException if the options cannot be parsed.
+	 */
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions options = new CommandLineOptions(args);
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+		if (options.getProfilers().isEmpty()) builder.addProfiler(GCProfiler.class);
+		if (!options.getResult().hasValue()) builder.result("jmh-result.json");
+		if (!options.getResultFormat().hasValue()) builder.resultFormat(ResultFormatType.JSON);
+		new Runner(builder.build()).run();
+	}
+}
@@ -0,0 +1,57 @@
+package pt.um.ucl.positioning.C03a.uwb.managers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+import pt.um.ucl.positioning.C03a.uwb.jmh.BenchmarkFixtures;
+
+/**
+ * {@link ActionManager#nextAction()}, called on every anchor request, from
+ * one thread and from many threads sharing the manager as the servlet's
+ * request threads do. {@code contended} runs with 8 threads; other counts can
+ * be swept with JMH's {@code -t} option.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActionManagerBenchmark {
+
+	private ActionManager actionManager;
+
+	@Setup
+	public void setUp() {
+		Config config = BenchmarkFixtures.config();
+		this.actionManager = new ActionManager(config.getAmSlowScanPeriod(), config.getAmFastScanPeriod(),
+				config.getAmScanInterval(), config.getAmScanTime(), config.getAmMinRoundTime(), config.getAmSafetyBuffer());
+	}
+
+	@Benchmark
+	@Threads(1)
+	public ActionManager.Action uncontended() {
+		return this.actionManager.nextAction();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public ActionManager.Action contended() {
+		return this.actionManager.nextAction();
+	}
+}
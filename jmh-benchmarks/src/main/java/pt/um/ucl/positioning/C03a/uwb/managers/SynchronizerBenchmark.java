@@ -0,0 +1,82 @@
+package pt.um.ucl.positioning.C03a.uwb.managers;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+import pt.um.ucl.positioning.C03a.uwb.jmh.BenchmarkFixtures;
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementPool;
+
+/**
+ * Round planning in {@link Synchronizer#getMeasurmentResponse}.
+ * <p>
+ * One operation is a whole round: the first anchor's request plans it and
+ * opens a measurement per tag, and every other anchor's request finds it and
+ * builds its slot list. The planned rounds are forgotten before each
+ * operation, so every operation plans a new round instead of queueing it
+ * behind the previous ones.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SynchronizerBenchmark {
+
+	@Param({ "4", "16", "64" })
+	public int anchors;
+
+	@Param({ "10", "50", "200" })
+	public int tags;
+
+	private Synchronizer synchronizer;
+	private Config config;
+	private List<Anchor> anchorList;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		long now = System.currentTimeMillis();
+		this.config = BenchmarkFixtures.config();
+		this.synchronizer = new Synchronizer();
+		this.synchronizer.setMeasurementPool(new MeasurementPool(4096));
+		this.anchorList = BenchmarkFixtures.anchors(this.anchors, now);
+		List<Tag> tagList = BenchmarkFixtures.tags(this.tags, now);
+		BenchmarkFixtures.register(this.synchronizer, this.anchorList, tagList);
+	}
+
+	/** Keeps the anchors active, which they stop being 30 s after they were last seen. */
+	@Setup(Level.Iteration)
+	public void touchAnchors() {
+		long now = System.currentTimeMillis();
+		for (Anchor anchor : this.anchorList) anchor.setLastSeen(now);
+	}
+
+	@Benchmark
+	public void planRound(Blackhole blackhole) {
+		this.synchronizer.clearRounds();
+		for (int i = 0; i < this.anchorList.size(); i++) {
+			blackhole.consume(this.synchronizer.getMeasurmentResponse(this.anchorList.get(i),
+					this.config.getAmScanTime(), this.config.getAmSafetyBuffer(), this.config));
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package pt.um.ucl.positioning.C03a.uwb.measurements;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+import pt.um.ucl.positioning.C03a.uwb.jmh.BenchmarkFixtures;
+
+/**
+ * JSON encoding of measurements: the {@link Measurement#toJson()} and
+ * {@link Reading#toJson()} trees, with and without turning them into text,
+ * against the streaming {@link MeasurementJsonWriter} the estimator client
+ * uses, which produces the same text. The setup fails if it does not, so
+ * the comparison is between encoders of identical payloads.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MeasurementJsonBenchmark {
+
+	@Param({ "4", "16", "64" })
+	public int readings;
+
+	private Measurement measurement;
+	private Reading reading;
+	private final MeasurementJsonWriter writer = new MeasurementJsonWriter();
+
+	@Setup
+	public void setUp() {
+		long now = System.currentTimeMillis();
+		Tag tag = BenchmarkFixtures.tags(1, now).get(0);
+		this.measurement = new Measurement(tag, now - 5000, now + 5000, 1);
+		int i = 0;
+		for (Anchor anchor : BenchmarkFixtures.anchors(this.readings, now)) {
+			this.measurement.addReading(anchor, 1.234 + i * 0.517, now + i * 30L, 5);
+			i++;
+		}
+		this.reading = this.measurement.getReading(0);
+		if (!MeasurementJsonWriter.matchesToJson(this.measurement, null)
+				|| !MeasurementJsonWriter.matchesToJson(this.measurement, "token")) {
+			throw new IllegalStateException("MeasurementJsonWriter output differs from Measurement.toJson()");
+		}
+	}
+
+	@Benchmark
+	public JSONObject measurementToJson() {
+		return this.measurement.toJson();
+	}
+
+	@Benchmark
+	public String measurementToJsonString() {
+		return this.measurement.toJson().toString();
+	}
+
+	@Benchmark
+	public JSONObject readingToJson() {
+		return this.reading.toJson();
+	}
+
+	@Benchmark
+	public String readingToJsonString() {
+		return this.reading.toJson().toString();
+	}
+
+	@Benchmark
+	public int measurementJsonWriter() {
+		this.writer.reset();
+		return this.writer.writeMeasurement(this.measurement).size();
+	}
+}
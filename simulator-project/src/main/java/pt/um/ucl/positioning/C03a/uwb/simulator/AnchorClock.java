@@ -0,0 +1,94 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.time.Clock;
+
+/**
+ * The local clock of a simulated anchor, which is off from the host clock
+ * by a constant offset and runs fast or slow by a drift in parts per million.
+ * <p>
+ * The firmware does not use its clock directly: it converts local times to
+ * server times as {@code serverBaseline + (millis() - localBaseline)}, so a
+ * constant offset cancels out and what shifts its slots is the drift since
+ * the last command and the delay of the response that set the baseline.
+ * The simulated anchors do the same.
+ * <p>
+ * The host clock is the system clock unless another is given, so the
+ * anchors can be driven by a clock that is not wall time.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class AnchorClock {
+
+    /** The host clock itself. */
+    public static final AnchorClock HOST = new AnchorClock(0, 0);
+
+    private final double offset;
+    private final double rate;
+    /** The true time the anchor is off from. */
+    private final Clock host;
+    /** Host time at which the offset is exact. */
+    private final long epoch;
+
+    /**
+     * Constructs a new clock.
+     *
+     * @param offsetMs The offset from the host clock, in milliseconds.
+     * @param driftPpm How much faster than the host clock it runs, in parts per million.
+     */
+    public AnchorClock(double offsetMs, double driftPpm) {
+        this(offsetMs, driftPpm, Clock.systemUTC());
+    }
+
+    /**
+     * Constructs a new clock off from the given host clock.
+     *
+     * @param offsetMs The offset from the host clock, in milliseconds.
+     * @param driftPpm How much faster than the host clock it runs, in parts per million.
+     * @param host The host clock.
+     */
+    public AnchorClock(double offsetMs, double driftPpm, Clock host) {
+        this.offset = offsetMs;
+        this.rate = 1 + driftPpm / 1e6;
+        this.host = host;
+        this.epoch = host.millis();
+    }
+
+    /**
+     * Reads the local clock.
+     *
+     * @return The local time (epoch ms).
+     */
+    public long millis() {
+        return localTimeAt(this.host.millis());
+    }
+
+    /**
+     * Reads the host clock, the true time slots are measured against.
+     *
+     * @return The host time (epoch ms).
+     */
+    public long hostMillis() {
+        return this.host.millis();
+    }
+
+    /**
+     * Converts a host time to local time.
+     *
+     * @param hostTime The host time (epoch ms).
+     * @return The local time (epoch ms).
+     */
+    public long localTimeAt(long hostTime) {
+        return this.epoch + Math.round(this.offset + (hostTime - this.epoch) * this.rate);
+    }
+
+    /**
+     * Converts a local time to host time, to sleep until it.
+     *
+     * @param localTime The local time (epoch ms).
+     * @return The host time (epoch ms).
+     */
+    public long hostTimeAt(long localTime) {
+        return this.epoch + Math.round((localTime - this.epoch - this.offset) / this.rate);
+    }
+}
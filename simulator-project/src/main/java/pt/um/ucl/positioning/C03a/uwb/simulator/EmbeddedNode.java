@@ -0,0 +1,143 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Runs a C03a node, the {@code EmbeddedServer} of the {@code embedded}
+ * project with its in-memory H2 database and local Position Estimator, in a
+ * child JVM, so the {@link LoadBenchmark} can start the server it measures.
+ * <p>
+ * A child process is used rather than a class loader because the
+ * simulator's {@code devices} and {@code measurements} classes have the same
+ * names as the synchronizer's, and it keeps the server's heap, threads and
+ * GC apart from the load generator's, as on a real deployment.
+ * <p>
+ * The node listens on a free port. {@link #close()} stops the child, which
+ * prints its report (rows written to the database, requests received by the
+ * estimator) as its last line; the report is then available from
+ * {@link #getReport()}.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class EmbeddedNode implements AutoCloseable {
+
+    private static final String MAIN_CLASS = "pt.um.ucl.positioning.C03a.uwb.embedded.EmbeddedServer";
+    private static final String READY_PREFIX = "C03a listening on ";
+    private static final long STARTUP_TIMEOUT = 60_000;
+    private static final long SHUTDOWN_TIMEOUT = 30_000;
+
+    private final Process process;
+    private final Thread reader;
+    private final CompletableFuture<String> ready = new CompletableFuture<>();
+    private final String url;
+    private volatile JSONObject report;
+
+    /**
+     * Starts a node and waits until it accepts requests.
+     *
+     * @param classpath      The class path of the {@code embedded} project: its classes
+     *                       and resources, the synchronizer's classes and their libraries.
+     * @param settings       A {@code config.properties} file for the node, or {@code null} for its defaults.
+     * @param estimatorDelay Milliseconds the node's estimator takes to answer.
+     * @throws IOException if the child cannot be started or does not start the server in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public EmbeddedNode(String classpath, Path settings, long estimatorDelay) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(classpath);
+        command.add(MAIN_CLASS);
+        command.add("0");
+        command.add(settings != null ? settings.toAbsolutePath().toString() : "");
+        command.add(Long.toString(estimatorDelay));
+        this.process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        this.reader = new Thread(this::readOutput, "embedded-node-output");
+        this.reader.setDaemon(true);
+        this.reader.start();
+        try {
+            this.url = this.ready.get(STARTUP_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            this.process.destroyForcibly();
+            throw new IOException("The embedded node did not start: " + (e.getCause() != null ? e.getCause().getMessage() : "timed out"), e);
+        }
+    }
+
+    /**
+     * Reads the child's output: the line announcing its URL, its report, and
+     * anything else, which is passed through.
+     */
+    private void readOutput() {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(this.process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line; (line = in.readLine()) != null;) {
+                if (!this.ready.isDone() && line.startsWith(READY_PREFIX)) {
+                    int end = line.indexOf(' ', READY_PREFIX.length());
+                    this.ready.complete(line.substring(READY_PREFIX.length(), end < 0 ? line.length() : end));
+                } else if (line.startsWith("{")) {
+                    try {
+                        this.report = new JSONObject(line);
+                    } catch (JSONException e) {
+                        System.out.println("[node] " + line);
+                    }
+                } else {
+                    System.out.println("[node] " + line);
+                }
+            }
+        } catch (IOException e) {
+            this.ready.completeExceptionally(e);
+        }
+        this.ready.completeExceptionally(new IOException("the node stopped before it was listening"));
+    }
+
+    /**
+     * Stops the node and waits for its report. On platforms where a process
+     * cannot be asked to stop, it is killed and reports nothing.
+     */
+    @Override
+    public void close() {
+        // Process.destroy() would also close the child's output, losing the report.
+        this.process.toHandle().destroy();
+        try {
+            if (!this.process.waitFor(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                this.process.destroyForcibly().waitFor();
+            }
+            this.reader.join(SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException e) {
+            this.process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the base URL of the node's servlet.
+     *
+     * @return The URL, ending in {@code /}.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Gets the report the node printed when it stopped.
+     *
+     * @return The report, or {@code null} before {@link #close()} or if the node printed none.
+     */
+    public JSONObject getReport() {
+        return report;
+    }
+}
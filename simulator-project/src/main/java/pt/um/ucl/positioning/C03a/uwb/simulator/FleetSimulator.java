@@ -0,0 +1,224 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+
+/**
+ * Runs many virtual anchors against one server from a single JVM.
+ * <p>
+ * Every anchor loop runs on its own virtual thread, so sleeping until a
+ * scheduled slot or waiting for the server costs no platform thread, and
+ * all anchors share one keep-alive {@link HttpClient} and one
+ * {@link SimulatorStats}, printed periodically. All anchors see the same
+ * tag population. With a {@link Scenario}, the anchors and tags are those
+ * of the scenario and ranges follow its geometry and ranging model;
+ * otherwise they are random. {@link Impairments} give every anchor its own
+ * clock and a lossy, delayed link. Per-anchor logging and the expected-slot log
+ * files are turned off, so the simulator itself does not become the
+ * bottleneck.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class FleetSimulator {
+
+    /** Logger of the simulator package, kept referenced so its level is not lost. */
+    private static final Logger PACKAGE_LOGGER = Logger.getLogger(FleetSimulator.class.getPackageName());
+
+    private final String baseUrl;
+    private final List<String> anchorNames;
+    private final List<Tag> tags;
+    /** The simulated world, or {@code null} for random ranges. */
+    private final Scenario scenario;
+    /** Receives the true range of every reading, or {@code null}. */
+    private final GroundTruthWriter groundTruth;
+    private volatile Impairments impairments;
+    private final SimulatorStats stats = new SimulatorStats();
+    private final List<SimulatorClient> clients = new CopyOnWriteArrayList<>();
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private volatile boolean stopped;
+
+    /**
+     * Constructs a new fleet.
+     *
+     * @param baseUrl     The base URL of the server.
+     * @param anchorCount The number of anchors.
+     * @param tagCount    The number of tags every anchor sees.
+     */
+    public FleetSimulator(String baseUrl, int anchorCount, int tagCount) {
+        this.baseUrl = baseUrl;
+        this.anchorNames = new ArrayList<>(anchorCount);
+        for (int i = 1; i <= anchorCount; i++) this.anchorNames.add("Anchor " + i);
+        this.tags = Collections.unmodifiableList(VirtualAnchor.createTags(tagCount));
+        this.scenario = null;
+        this.groundTruth = null;
+        this.impairments = Impairments.NONE;
+    }
+
+    /**
+     * Constructs a fleet of the anchors and tags of a scenario.
+     *
+     * @param baseUrl     The base URL of the server.
+     * @param scenario    The scenario.
+     * @param groundTruth Receives the true range of every reading, or {@code null}.
+     */
+    public FleetSimulator(String baseUrl, Scenario scenario, GroundTruthWriter groundTruth) {
+        this.baseUrl = baseUrl;
+        this.anchorNames = scenario.getAnchorNames();
+        this.tags = Collections.unmodifiableList(scenario.createTags());
+        this.scenario = scenario;
+        this.groundTruth = groundTruth;
+        this.impairments = scenario.getImpairments();
+    }
+
+    /**
+     * Sets the impairments of the anchors started from now on.
+     *
+     * @param impairments The impairments.
+     */
+    public void setImpairments(Impairments impairments) {
+        this.impairments = impairments;
+    }
+
+    /**
+     * Starts every anchor on a virtual thread.
+     *
+     * @param rampUp Milliseconds between the start of two anchors, so they do not all register at once.
+     * @throws InterruptedException if interrupted while ramping up.
+     */
+    public void start(long rampUp) throws InterruptedException {
+        HttpClient http = SimulatorClient.newHttpClient();
+        Impairments impairments = this.impairments;
+        this.stats.setSlotTolerance(impairments.slotTolerance());
+        for (int i = 0; i < this.anchorNames.size() && !this.stopped; i++) {
+            long now = System.currentTimeMillis();
+            VirtualAnchor anchor = new VirtualAnchor(this.anchorNames.get(i), now, now, this.scenario, this.tags, this.stats, this.groundTruth, false);
+            anchor.setClock(impairments.clockFor(anchor.getDeviceName(), anchor.getRandom()));
+            SimulatorClient client = new SimulatorClient(anchor, this.baseUrl, http, this.stats, true);
+            client.setNetwork(impairments.network());
+            this.clients.add(client);
+            this.threads.add(Thread.ofVirtual().name("anchor-" + (i + 1)).start(client::startClient));
+            if (rampUp > 0) Thread.sleep(rampUp);
+        }
+    }
+
+    /**
+     * Stops every anchor and waits up to {@code timeout} milliseconds for
+     * them to finish.
+     *
+     * @param timeout Maximum time to wait, in milliseconds.
+     */
+    public void stop(long timeout) {
+        this.stopped = true;
+        for (SimulatorClient client : this.clients) client.stop();
+        for (Thread thread : this.threads) thread.interrupt();
+        long deadline = System.currentTimeMillis() + timeout;
+        for (Thread thread : this.threads) {
+            try {
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (this.groundTruth != null) {
+            try {
+                this.groundTruth.close();
+            } catch (IOException e) {
+                System.err.println("Could not close the ground truth file: " + e.getMessage());
+            }
+        }
+    }
+
+    public SimulatorStats getStats() { return stats; }
+
+    /**
+     * Main entry point for the fleet simulator.
+     *
+     * @param args Command-line arguments.
+     * <ul>
+     * <li>{@code args[0]} (Optional): Base URL. Defaults to "http://localhost:8080/C03a/".</li>
+     * <li>{@code args[1]} (Optional): Number of anchors. Defaults to 100.</li>
+     * <li>{@code args[2]} (Optional): Number of tags. Defaults to 10.</li>
+     * <li>{@code args[3]} (Optional): Duration in seconds, or 0 to run until stopped. Defaults to 0.</li>
+     * <li>{@code args[4]} (Optional): Seconds between stats lines. Defaults to 5.</li>
+     * <li>{@code args[5]} (Optional): Milliseconds between anchor starts. Defaults to 5.</li>
+     * <li>{@code args[6]} (Optional): Scenario: the path of a scenario file (which then
+     * sets the anchors and tags), "grid" to place the anchors 10 units apart on a grid
+     * with randomly walking tags, or "random" for random ranges. Defaults to "random".
+     * The anchor coordinates of a grid are written to {@code scenario_anchors.json},
+     * for the server's {@code /WEB-INF/anchors.json}.</li>
+     * <li>{@code args[7]} (Optional): Ground truth CSV file of a scenario. Defaults to none.</li>
+     * <li>{@code args[8]} (Optional): Impairments file (see {@link Impairments}), replacing those
+     * of the scenario. Defaults to those of the scenario, or none.</li>
+     * </ul>
+     * @throws InterruptedException if interrupted while running.
+     * @throws IOException if the scenario or ground truth file cannot be used.
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        String url        = args.length > 0 ? args[0] : "http://localhost:8080/C03a/";
+        int anchors       = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int tags          = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        long duration     = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        long statsEvery   = args.length > 4 ? Long.parseLong(args[4]) : 5;
+        long rampUp       = args.length > 5 ? Long.parseLong(args[5]) : 5;
+        String world      = args.length > 6 ? args[6] : "random";
+        String truthFile  = args.length > 7 && !args[7].isEmpty() ? args[7] : null;
+
+        // Thousands of anchors would otherwise log every request.
+        PACKAGE_LOGGER.setLevel(Level.SEVERE);
+
+        FleetSimulator fleet;
+        if ("random".equals(world)) {
+            fleet = new FleetSimulator(url, anchors, tags);
+        } else {
+            Scenario scenario;
+            if ("grid".equals(world)) {
+                scenario = Scenario.grid(anchors, tags, 10, new RangingModel(0.1, 0.05, 0.5, 0.02, 30), 42);
+                scenario.writeAnchors(Path.of("scenario_anchors.json"));
+            } else {
+                scenario = Scenario.load(Path.of(world));
+            }
+            anchors = scenario.getAnchorNames().size();
+            tags = scenario.getTagCount();
+            fleet = new FleetSimulator(url, scenario, truthFile != null ? new GroundTruthWriter(Path.of(truthFile)) : null);
+        }
+        if (args.length > 8) fleet.setImpairments(Impairments.load(Path.of(args[8])));
+        System.out.println("Starting " + anchors + " virtual anchor(s) with " + tags + " tag(s) against " + url);
+
+        ScheduledExecutorService printer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fleet-stats");
+            t.setDaemon(true);
+            return t;
+        });
+        printer.scheduleAtFixedRate(() -> fleet.getStats().print(System.out), statsEvery, statsEvery, TimeUnit.SECONDS);
+
+        Thread shutdownHook = new Thread(() -> {
+            fleet.stop(5000);
+            fleet.getStats().print(System.out);
+        }, "fleet-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        fleet.start(rampUp);
+        if (duration > 0) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            shutdownHook.run();
+            printer.shutdownNow();
+        } else {
+            Thread.currentThread().join();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the ground truth of every simulated reading to a CSV file, so the
+ * positions and ranges the server produces can be scored against it.
+ * <p>
+ * Each line is
+ * {@code roundId,anchorID,tagID,executedAt,trueTime,x,y,z,trueRange,reportedRange,nlosBias},
+ * where {@code executedAt} is the timestamp reported to the server,
+ * {@code trueTime} the instant the range was taken, {@code x,y,z} the true
+ * tag position then, and {@code reportedRange} is empty for lost readings.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class GroundTruthWriter implements Closeable {
+
+    public static final String HEADER = "roundId,anchorID,tagID,executedAt,trueTime,x,y,z,trueRange,reportedRange,nlosBias";
+
+    private final BufferedWriter writer;
+    private final StringBuilder line = new StringBuilder(128);
+
+    /**
+     * Creates the file, replacing any previous one, and writes the header.
+     *
+     * @param path The CSV file.
+     * @throws IOException if the file cannot be created.
+     */
+    public GroundTruthWriter(Path path) throws IOException {
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        this.writer.write(HEADER);
+        this.writer.newLine();
+    }
+
+    /**
+     * Writes one reading.
+     *
+     * @param roundId The round ID.
+     * @param anchor The anchor name.
+     * @param tag The tag name.
+     * @param executedAt The timestamp reported to the server (epoch ms).
+     * @param trueTime When the range was taken (epoch ms).
+     * @param position The true tag position.
+     * @param trueRange The true range.
+     * @param reportedRange The reported range, or {@code NaN} if the reading was lost.
+     * @param nlosBias The NLOS bias of the reading.
+     */
+    public synchronized void write(long roundId, String anchor, String tag, long executedAt, long trueTime,
+            double[] position, double trueRange, double reportedRange, double nlosBias) {
+        StringBuilder sb = this.line;
+        sb.setLength(0);
+        sb.append(roundId).append(',').append(anchor).append(',').append(tag).append(',')
+                .append(executedAt).append(',').append(trueTime).append(',')
+                .append(position[0]).append(',').append(position[1]).append(',').append(position[2]).append(',')
+                .append(trueRange).append(',');
+        if (!Double.isNaN(reportedRange)) sb.append(reportedRange);
+        sb.append(',').append(nlosBias);
+        try {
+            this.writer.append(sb).append('\n');
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the ground truth: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.writer.close();
+    }
+}
@@ -0,0 +1,81 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.json.JSONObject;
+
+/**
+ * Network and clock impairments of the simulated anchors, and the slot
+ * tolerance they are scored against.
+ * <p>
+ * Read from the {@code "impairments"} object of a scenario, or from a file
+ * of its own:
+ * <pre>
+ * {"network": {"baseLatency": 5, "jitter": 10, "spikeProbability": 0.01, "spikeLatency": 800, "loss": 0.005, "timeout": 5000},
+ *  "clocks": {"offsetSigmaMs": 500, "driftPpm": 0, "driftPpmSigma": 20,
+ *             "anchors": {"Anchor 3": {"offsetMs": 1200, "driftPpm": 40}}},
+ *  "slotTolerance": 10}
+ * </pre>
+ * Every anchor gets its own clock: its offset and drift are drawn from
+ * normal distributions around {@code offsetMs} and {@code driftPpm}, or
+ * taken from its entry in {@code clocks.anchors}. A slot is hit when the
+ * anchor measured within {@code slotTolerance} milliseconds of the time the
+ * server scheduled.
+ *
+ * @param network The link model of every anchor.
+ * @param clocks The clock settings, or {@code null} for host clocks.
+ * @param slotTolerance Largest slot error that still counts as a hit, in milliseconds.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public record Impairments(NetworkModel network, JSONObject clocks, long slotTolerance) {
+
+    /** Ideal links and host clocks. */
+    public static final Impairments NONE = new Impairments(NetworkModel.IDEAL, null, 10);
+
+    /**
+     * Reads impairments from a JSON object.
+     *
+     * @param json The JSON object, or {@code null}.
+     * @return The impairments.
+     */
+    public static Impairments fromJson(JSONObject json) {
+        if (json == null) return NONE;
+        return new Impairments(NetworkModel.fromJson(json.optJSONObject("network")), json.optJSONObject("clocks"),
+                json.optLong("slotTolerance", NONE.slotTolerance()));
+    }
+
+    /**
+     * Reads impairments from a file.
+     *
+     * @param path The JSON file.
+     * @return The impairments.
+     * @throws IOException if the file cannot be read.
+     */
+    public static Impairments load(Path path) throws IOException {
+        return fromJson(new JSONObject(Files.readString(path, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Creates the clock of an anchor.
+     *
+     * @param anchor The anchor name.
+     * @param random The generator of the anchor.
+     * @return Its clock.
+     */
+    public AnchorClock clockFor(String anchor, Random random) {
+        if (this.clocks == null) return AnchorClock.HOST;
+        JSONObject anchors = this.clocks.optJSONObject("anchors");
+        JSONObject own = anchors != null ? anchors.optJSONObject(anchor) : null;
+        double offset = own != null && own.has("offsetMs") ? own.getDouble("offsetMs")
+                : this.clocks.optDouble("offsetMs", 0) + random.nextGaussian() * this.clocks.optDouble("offsetSigmaMs", 0);
+        double drift = own != null && own.has("driftPpm") ? own.getDouble("driftPpm")
+                : this.clocks.optDouble("driftPpm", 0) + random.nextGaussian() * this.clocks.optDouble("driftPpmSigma", 0);
+        return offset == 0 && drift == 0 ? AnchorClock.HOST : new AnchorClock(offset, drift);
+    }
+}
@@ -0,0 +1,255 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * End-to-end load benchmark of one C03a node.
+ * <p>
+ * Drives the server with a {@link FleetSimulator} of the given size, lets
+ * it warm up, clears the server's latency histograms and then measures for
+ * a fixed time:
+ * <ul>
+ * <li>on the client: requests/s, readings/s, failures, lost messages and
+ * the slot-miss rate (slots the anchors could not make, over all slots they
+ * were given);</li>
+ * <li>on the server, from {@code GET /metrics}: rounds opened and emitted
+ * per second, p50/p99/p999 handling time of measurement reports and
+ * registrations, p50/p99/p999 latency from {@code executedAt} to every sink,
+ * heap and GC counts and time.</li>
+ * </ul>
+ * A {@link MockEstimator} can be started alongside, for a server whose
+ * {@code pe.url} points to it. Given {@code embedded} instead of a URL, the
+ * benchmark starts the node itself, in a child JVM with an in-memory H2
+ * database and a local estimator ({@link EmbeddedNode}), so a run needs
+ * nothing but the built projects and gives the same setup every time. The
+ * node's report is then added to the result. The result is printed and
+ * appended as one JSON line to the results file, so runs can be compared
+ * over time.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class LoadBenchmark {
+
+    private static final Logger PACKAGE_LOGGER = Logger.getLogger(LoadBenchmark.class.getPackageName());
+
+    private final String baseUrl;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    /**
+     * Constructs a new benchmark.
+     *
+     * @param baseUrl The base URL of the server.
+     */
+    public LoadBenchmark(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param fleet     The anchors, not started yet.
+     * @param estimator The mock estimator the server sends to, or {@code null}.
+     * @param warmup    Seconds to run before measuring.
+     * @param duration  Seconds to measure.
+     * @return The result.
+     * @throws IOException if the server's metrics cannot be read.
+     * @throws InterruptedException if interrupted while running.
+     */
+    public JSONObject run(FleetSimulator fleet, MockEstimator estimator, long warmup, long duration) throws IOException, InterruptedException {
+        SimulatorStats stats = fleet.getStats();
+        try {
+            fleet.start(5);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(warmup));
+
+            JSONObject before = metrics(true);
+            long requests = stats.getRequests();
+            long readings = stats.getMeasurements();
+            long failures = stats.getFailures();
+            long lostMessages = stats.getLostMessages();
+            long slots = stats.getSlots();
+            long slotHits = stats.getSlotHits();
+            long missedSlots = stats.getMissedSlots();
+            long latencyNanos = stats.getLatencyNanos();
+            long estimated = estimator != null ? estimator.getRequestCount() : 0;
+            long start = System.nanoTime();
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+
+            JSONObject after = metrics(false);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            requests = stats.getRequests() - requests;
+            slots = stats.getSlots() - slots;
+            missedSlots = stats.getMissedSlots() - missedSlots;
+            JSONObject client = new JSONObject()
+                    .put("requests", requests)
+                    .put("requestsPerSecond", requests / seconds)
+                    .put("readingsPerSecond", (stats.getMeasurements() - readings) / seconds)
+                    .put("failures", stats.getFailures() - failures)
+                    .put("lostMessages", stats.getLostMessages() - lostMessages)
+                    .put("slotMissRate", slots + missedSlots == 0 ? 0.0 : (double) missedSlots / (slots + missedSlots))
+                    .put("slotHitRate", slots + missedSlots == 0 ? 0.0 : (double) (stats.getSlotHits() - slotHits) / (slots + missedSlots))
+                    .put("latencyAvgMs", requests == 0 ? 0.0 : (stats.getLatencyNanos() - latencyNanos) / 1e6 / requests);
+
+            JSONObject roundsBefore = before.getJSONObject("rounds");
+            JSONObject roundsAfter = after.getJSONObject("rounds");
+            long emitted = 0;
+            for (String reason : new String[] { "complete", "quorum", "deadline", "stale" }) {
+                emitted += roundsAfter.optLong(reason) - roundsBefore.optLong(reason);
+            }
+            JSONObject sinkLatency = new JSONObject();
+            JSONArray sinks = after.getJSONArray("sinks");
+            for (int i = 0; i < sinks.length(); i++) {
+                JSONObject sink = sinks.getJSONObject(i);
+                sinkLatency.put(sink.getString("name"), sink.getJSONObject("latency").put("dropped", sink.getLong("dropped")));
+            }
+            JSONObject jvmBefore = before.getJSONObject("jvm");
+            JSONObject jvmAfter = after.getJSONObject("jvm");
+            long gcTime = jvmAfter.getLong("gcTimeMs") - jvmBefore.getLong("gcTimeMs");
+            JSONObject server = new JSONObject()
+                    .put("anchors", after.getInt("anchors"))
+                    .put("tags", after.getInt("tags"))
+                    .put("roundsPerSecond", (roundsAfter.getLong("opened") - roundsBefore.getLong("opened")) / seconds)
+                    .put("emittedPerSecond", emitted / seconds)
+                    .put("evictedRounds", roundsAfter.getLong("evicted") - roundsBefore.getLong("evicted"))
+                    .put("measurementReport", after.getJSONObject("requests").getJSONObject("measurementReport"))
+                    .put("anchorRegistration", after.getJSONObject("requests").getJSONObject("anchorRegistration"))
+                    .put("sinkLatency", sinkLatency)
+                    .put("heapUsed", jvmAfter.getLong("heapUsed"))
+                    .put("heapCommitted", jvmAfter.getLong("heapCommitted"))
+                    .put("heapMax", jvmAfter.getLong("heapMax"))
+                    .put("threads", jvmAfter.getInt("threads"))
+                    .put("gcCount", jvmAfter.getLong("gcCount") - jvmBefore.getLong("gcCount"))
+                    .put("gcTimeMs", gcTime)
+                    .put("gcTimeShare", gcTime / 1000.0 / seconds);
+
+            JSONObject result = new JSONObject()
+                    .put("timestamp", Instant.now().toString())
+                    .put("url", this.baseUrl)
+                    .put("serverVersion", after.optString("version"))
+                    .put("warmupSeconds", warmup)
+                    .put("durationSeconds", seconds)
+                    .put("client", client)
+                    .put("server", server);
+            if (estimator != null) {
+                result.put("estimator", new JSONObject().put("requestsPerSecond", (estimator.getRequestCount() - estimated) / seconds));
+            }
+            return result;
+        } finally {
+            fleet.stop(5000);
+        }
+    }
+
+    /**
+     * Reads the server's {@code /metrics}.
+     *
+     * @param reset {@code true} to clear the server's latency histograms.
+     * @return The metrics.
+     * @throws IOException if the server cannot be reached or answers with an error.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private JSONObject metrics(boolean reset) throws IOException, InterruptedException {
+        URI uri = URI.create(this.baseUrl + "metrics" + (reset ? "?reset=true" : ""));
+        HttpResponse<String> response = this.http.send(HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(10)).GET().build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        if (response.statusCode() != 200) throw new IOException("GET " + uri + " answered HTTP " + response.statusCode());
+        return new JSONObject(response.body());
+    }
+
+    /**
+     * Main entry point for the load benchmark.
+     *
+     * @param args Command-line arguments.
+     * <ul>
+     * <li>{@code args[0]} (Optional): Base URL, or "embedded" to start an {@link EmbeddedNode}.
+     * Defaults to "http://localhost:8080/C03a/".</li>
+     * <li>{@code args[1]} (Optional): Number of anchors. Defaults to 100.</li>
+     * <li>{@code args[2]} (Optional): Number of tags. Defaults to 10.</li>
+     * <li>{@code args[3]} (Optional): Warm-up in seconds. Defaults to 30.</li>
+     * <li>{@code args[4]} (Optional): Measured duration in seconds. Defaults to 60.</li>
+     * <li>{@code args[5]} (Optional): Results file, one JSON line appended per run.
+     * Defaults to "load_benchmark.jsonl".</li>
+     * <li>{@code args[6]} (Optional): Scenario, as for {@link FleetSimulator}. Defaults to "random".</li>
+     * <li>{@code args[7]} (Optional): Port of a {@link MockEstimator} to start, or 0 for none. Defaults to 0.</li>
+     * <li>{@code args[8]} (Optional): Impairments file (see {@link Impairments}), or empty for none. Defaults to none.</li>
+     * <li>{@code args[9]} (Required with "embedded"): Class path of the {@code embedded} project,
+     * with the synchronizer's classes and their libraries.</li>
+     * <li>{@code args[10]} (Optional): A {@code config.properties} file for the embedded node. Defaults to its defaults.</li>
+     * <li>{@code args[11]} (Optional): The embedded estimator's response delay in milliseconds. Defaults to 0.</li>
+     * </ul>
+     * @throws IOException if the server, scenario or results file cannot be used.
+     * @throws InterruptedException if interrupted while running.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String url        = args.length > 0 ? args[0] : "http://localhost:8080/C03a/";
+        int anchors       = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int tags          = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        long warmup       = args.length > 3 ? Long.parseLong(args[3]) : 30;
+        long duration     = args.length > 4 ? Long.parseLong(args[4]) : 60;
+        Path results      = Path.of(args.length > 5 ? args[5] : "load_benchmark.jsonl");
+        String world      = args.length > 6 ? args[6] : "random";
+        int estimatorPort = args.length > 7 ? Integer.parseInt(args[7]) : 0;
+
+        PACKAGE_LOGGER.setLevel(Level.SEVERE);
+
+        Scenario scenario = null;
+        if (!"random".equals(world)) {
+            scenario = "grid".equals(world)
+                    ? Scenario.grid(anchors, tags, 10, new RangingModel(0.1, 0.05, 0.5, 0.02, 30), 42)
+                    : Scenario.load(Path.of(world));
+            anchors = scenario.getAnchorNames().size();
+            tags = scenario.getTagCount();
+        }
+        Impairments impairments = args.length > 8 && !args[8].isEmpty() ? Impairments.load(Path.of(args[8])) : null;
+
+        EmbeddedNode node = null;
+        if ("embedded".equals(url)) {
+            if (args.length < 10) throw new IllegalArgumentException("An embedded node needs its class path as args[9].");
+            Path settings = args.length > 10 && !args[10].isEmpty() ? Path.of(args[10]) : null;
+            long estimatorDelay = args.length > 11 ? Long.parseLong(args[11]) : 0;
+            node = new EmbeddedNode(args[9], settings, estimatorDelay);
+            url = node.getUrl();
+        }
+
+        MockEstimator estimator = null;
+        JSONObject result;
+        try {
+            FleetSimulator fleet = scenario == null ? new FleetSimulator(url, anchors, tags) : new FleetSimulator(url, scenario, null);
+            if (impairments != null) fleet.setImpairments(impairments);
+            if (estimatorPort > 0) {
+                estimator = new MockEstimator(estimatorPort, 0);
+                estimator.start();
+            }
+            System.out.println("Benchmarking " + url + " with " + anchors + " anchor(s) and " + tags + " tag(s): "
+                    + warmup + " s warm-up, " + duration + " s measured");
+            result = new LoadBenchmark(url).run(fleet, estimator, warmup, duration);
+        } finally {
+            if (estimator != null) estimator.stop();
+            if (node != null) node.close();
+        }
+        result.put("anchors", anchors).put("tags", tags).put("scenario", world);
+        if (node != null) result.put("embedded", node.getReport() != null ? node.getReport() : new JSONObject());
+
+        System.out.println(result.toString(2));
+        Files.writeString(results, result.toString() + System.lineSeparator(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        System.out.println("Appended to " + results.toAbsolutePath());
+    }
+}
@@ -0,0 +1,124 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for the Position Estimator service, so the server's estimator
+ * output can be exercised without the real service.
+ * <p>
+ * It accepts a POST on any path (single or batched payloads), reads and
+ * discards the body, waits {@code delay} milliseconds to mimic the
+ * estimator's processing time and answers {@code 200 {"status":"ok"}}.
+ * Every request is handled on its own virtual thread, so a delay does not
+ * limit throughput.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class MockEstimator {
+
+    private static final byte[] RESPONSE = "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long delay;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    /**
+     * Constructs a new mock estimator.
+     *
+     * @param port  The port to listen on, or 0 for any free port.
+     * @param delay Milliseconds to wait before answering.
+     * @throws IOException if the port cannot be bound.
+     */
+    public MockEstimator(int port, long delay) throws IOException {
+        this.delay = delay;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(this.executor);
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * Stops answering requests.
+     */
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            long size = 0;
+            try (InputStream body = exchange.getRequestBody()) {
+                byte[] buffer = new byte[8192];
+                for (int n; (n = body.read(buffer)) > 0;) size += n;
+            }
+            this.requests.increment();
+            this.bytes.add(size);
+            if (this.delay > 0) {
+                try {
+                    Thread.sleep(this.delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(RESPONSE);
+            }
+        }
+    }
+
+    /**
+     * Builds the URL the server's {@code pe.url} should point to.
+     *
+     * @return The URL of the mock on this host.
+     */
+    public String getUrl() {
+        return "http://localhost:" + getPort() + "/E04/estimatePosition";
+    }
+
+    public int getPort() { return server.getAddress().getPort(); }
+    public long getRequestCount() { return requests.sum(); }
+    public long getByteCount() { return bytes.sum(); }
+
+    /**
+     * Runs a mock estimator until the process is stopped.
+     *
+     * @param args Command-line arguments.
+     * <ul>
+     * <li>{@code args[0]} (Optional): Port. Defaults to 8090.</li>
+     * <li>{@code args[1]} (Optional): Response delay in milliseconds. Defaults to 0.</li>
+     * </ul>
+     * @throws IOException if the port cannot be bound.
+     * @throws InterruptedException if interrupted while running.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port   = args.length > 0 ? Integer.parseInt(args[0]) : 8090;
+        long delay = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        MockEstimator estimator = new MockEstimator(port, delay);
+        estimator.start();
+        System.out.println("Mock estimator listening on " + estimator.getUrl());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,77 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.util.Random;
+
+import org.json.JSONObject;
+
+/**
+ * One-way delays and losses of the link between an anchor and the server.
+ * <p>
+ * Every request and every response is delayed by {@code baseLatency} plus
+ * an exponentially distributed jitter with mean {@code jitter} and, with
+ * probability {@code spikeProbability}, a Wi-Fi latency spike uniformly
+ * distributed up to {@code spikeLatency}. Each direction is lost with
+ * probability {@code loss}: the anchor then gives up after {@code timeout}
+ * and sends the request again, so a lost response means the server sees
+ * the same report twice. All times are in milliseconds.
+ *
+ * @param baseLatency Minimum one-way delay.
+ * @param jitter Mean of the exponential jitter added to every delay.
+ * @param spikeProbability Probability of a latency spike.
+ * @param spikeLatency Largest latency spike.
+ * @param loss Probability that a request or response is lost.
+ * @param timeout How long an anchor waits for a lost response.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public record NetworkModel(double baseLatency, double jitter, double spikeProbability, double spikeLatency, double loss, long timeout) {
+
+    /** A link without delays or losses. */
+    public static final NetworkModel IDEAL = new NetworkModel(0, 0, 0, 0, 0, 0);
+
+    /**
+     * Reads a model from a {@code "network"} object. Missing keys default
+     * to the ideal link, with a 5 second timeout.
+     *
+     * @param json The JSON object, or {@code null}.
+     * @return The model.
+     */
+    public static NetworkModel fromJson(JSONObject json) {
+        if (json == null) return IDEAL;
+        return new NetworkModel(json.optDouble("baseLatency", 0), json.optDouble("jitter", 0), json.optDouble("spikeProbability", 0),
+                json.optDouble("spikeLatency", 0), json.optDouble("loss", 0), json.optLong("timeout", 5000));
+    }
+
+    /**
+     * Checks whether the link delays or loses anything.
+     *
+     * @return {@code true} for the ideal link.
+     */
+    public boolean isIdeal() {
+        return this.baseLatency <= 0 && this.jitter <= 0 && this.spikeProbability <= 0 && this.loss <= 0;
+    }
+
+    /**
+     * Draws a one-way delay.
+     *
+     * @param random The generator of the anchor.
+     * @return The delay, in milliseconds.
+     */
+    public long delay(Random random) {
+        double delay = this.baseLatency;
+        if (this.jitter > 0) delay -= this.jitter * Math.log(1 - random.nextDouble());
+        if (this.spikeProbability > 0 && random.nextDouble() < this.spikeProbability) delay += random.nextDouble() * this.spikeLatency;
+        return Math.round(delay);
+    }
+
+    /**
+     * Draws whether a request or response is lost.
+     *
+     * @param random The generator of the anchor.
+     * @return {@code true} if it is lost.
+     */
+    public boolean isLost(Random random) {
+        return this.loss > 0 && random.nextDouble() < this.loss;
+    }
+}
@@ -0,0 +1,90 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Moves a tag at a fixed height between random points of a rectangular
+ * area, each leg at a random speed up to a limit (the random waypoint
+ * model).
+ * <p>
+ * Legs are drawn from a seeded generator as time advances and kept, so
+ * the trajectory is reproducible and can be queried at any time, in any
+ * order, from any thread.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class RandomWalkTrajectory implements Trajectory {
+
+	/** Legs are never slower than this fraction of the maximum speed. */
+	private static final double MIN_SPEED_FRACTION = 0.2;
+
+	private final double minX, minY, maxX, maxY, z;
+	private final double maxSpeed;
+	private final Random random;
+	/** Legs as {@code {startTime, endTime, fromX, fromY, toX, toY}}, in time order. */
+	private final List<double[]> legs = new ArrayList<>();
+
+	/**
+	 * Constructs a new random walk.
+	 *
+	 * @param minX Lower X bound of the area.
+	 * @param minY Lower Y bound of the area.
+	 * @param maxX Upper X bound of the area.
+	 * @param maxY Upper Y bound of the area.
+	 * @param z The fixed height of the tag.
+	 * @param maxSpeed The speed limit, in distance units per second.
+	 * @param seed The seed of the walk.
+	 */
+	public RandomWalkTrajectory(double minX, double minY, double maxX, double maxY, double z, double maxSpeed, long seed) {
+		if (maxX < minX || maxY < minY) throw new IllegalArgumentException("The area of a random walk is empty.");
+		if (maxSpeed <= 0) throw new IllegalArgumentException("The speed limit of a random walk must be positive.");
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.z = z;
+		this.maxSpeed = maxSpeed;
+		this.random = new Random(seed);
+		double x = randomX(), y = randomY();
+		addLeg(0, x, y);
+	}
+
+	private double randomX() {
+		return this.minX + this.random.nextDouble() * (this.maxX - this.minX);
+	}
+
+	private double randomY() {
+		return this.minY + this.random.nextDouble() * (this.maxY - this.minY);
+	}
+
+	private void addLeg(double start, double fromX, double fromY) {
+		double toX = randomX(), toY = randomY();
+		double speed = this.maxSpeed * (MIN_SPEED_FRACTION + (1 - MIN_SPEED_FRACTION) * this.random.nextDouble());
+		double duration = Math.max(1e-3, Math.hypot(toX - fromX, toY - fromY) / speed);
+		this.legs.add(new double[] { start, start + duration, fromX, fromY, toX, toY });
+	}
+
+	@Override
+	public synchronized void positionAt(double time, double[] out) {
+		time = Math.max(0, time);
+		double[] last = this.legs.get(this.legs.size() - 1);
+		while (last[1] <= time) {
+			addLeg(last[1], last[4], last[5]);
+			last = this.legs.get(this.legs.size() - 1);
+		}
+		int lo = 0, hi = this.legs.size() - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.legs.get(mid)[1] <= time) lo = mid + 1;
+			else hi = mid;
+		}
+		double[] leg = this.legs.get(lo);
+		double f = (time - leg[0]) / (leg[1] - leg[0]);
+		out[0] = leg[2] + f * (leg[4] - leg[2]);
+		out[1] = leg[3] + f * (leg[5] - leg[3]);
+		out[2] = this.z;
+	}
+}
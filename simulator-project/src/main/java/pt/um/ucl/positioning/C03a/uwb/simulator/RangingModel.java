@@ -0,0 +1,74 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.util.Random;
+
+import org.json.JSONObject;
+
+/**
+ * Turns true anchor-tag ranges into reported ones.
+ * <p>
+ * A reading is lost if the tag is out of range or, otherwise, with the
+ * dropout probability. A reading that is not lost gets zero-mean Gaussian
+ * noise and, with the NLOS probability, a positive non-line-of-sight bias
+ * drawn from an exponential distribution with the given mean, since
+ * blocked paths are always longer than the direct one.
+ *
+ * @param noiseSigma Standard deviation of the ranging noise.
+ * @param nlosProbability Probability that a reading has an NLOS bias.
+ * @param nlosBias Mean NLOS bias.
+ * @param dropout Probability that an in-range reading is lost.
+ * @param maxRange Longest range that can be measured, or 0 for no limit.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public record RangingModel(double noiseSigma, double nlosProbability, double nlosBias, double dropout, double maxRange) {
+
+    /** A model without noise, bias or losses. */
+    public static final RangingModel IDEAL = new RangingModel(0, 0, 0, 0, 0);
+
+    /**
+     * Reads a model from the {@code "ranging"} object of a scenario.
+     * Missing keys default to the ideal model.
+     *
+     * @param json The JSON object, or {@code null}.
+     * @return The model.
+     */
+    public static RangingModel fromJson(JSONObject json) {
+        if (json == null) return IDEAL;
+        return new RangingModel(json.optDouble("noiseSigma", 0), json.optDouble("nlosProbability", 0),
+                json.optDouble("nlosBias", 0), json.optDouble("dropout", 0), json.optDouble("maxRange", 0));
+    }
+
+    /**
+     * Decides whether a reading is lost.
+     *
+     * @param trueRange The true range.
+     * @param random The generator of the anchor.
+     * @return {@code true} if the anchor reports nothing for the tag.
+     */
+    public boolean isLost(double trueRange, Random random) {
+        return (this.maxRange > 0 && trueRange > this.maxRange) || (this.dropout > 0 && random.nextDouble() < this.dropout);
+    }
+
+    /**
+     * Draws the NLOS bias of a reading.
+     *
+     * @param random The generator of the anchor.
+     * @return The bias, 0 for line of sight.
+     */
+    public double nlosBias(Random random) {
+        if (this.nlosProbability <= 0 || random.nextDouble() >= this.nlosProbability) return 0;
+        return -this.nlosBias * Math.log(1 - random.nextDouble());
+    }
+
+    /**
+     * Draws the noise of a reading.
+     *
+     * @param random The generator of the anchor.
+     * @return The noise.
+     */
+    public double noise(Random random) {
+        return this.noiseSigma > 0 ? random.nextGaussian() * this.noiseSigma : 0;
+    }
+}
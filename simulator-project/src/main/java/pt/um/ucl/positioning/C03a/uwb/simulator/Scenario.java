@@ -0,0 +1,200 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+
+/**
+ * The physical world of a simulation: where the anchors are, how the tags
+ * move and how ranges are measured.
+ * <p>
+ * A scenario is read from a JSON file:
+ * <pre>
+ * {"seed": 42,
+ *  "ranging": {"noiseSigma": 0.1, "nlosProbability": 0.05, "nlosBias": 0.5, "dropout": 0.02, "maxRange": 40},
+ *  "Anchors": [{"deviceId": "Anchor 1", "x": 0, "y": 0, "z": 2.5}, ...],
+ *  "Tags": [{"deviceId": "tag0", "waypoints": [[0, 0, 1], [10, 0, 1]], "speed": 1.2, "loop": true},
+ *           {"deviceId": "tag1", "randomWalk": {"minX": 0, "minY": 0, "maxX": 20, "maxY": 20, "z": 1, "maxSpeed": 1.5}}],
+ *  "impairments": {...}}
+ * </pre>
+ * where the optional {@code impairments} are described in {@link Impairments}.
+ * The {@code Anchors} array has the format of the server's
+ * {@code /WEB-INF/anchors.json}, so the same file gives the server the
+ * anchor coordinates; {@link #writeAnchors(Path)} writes one for generated
+ * scenarios. Scenario time starts at {@code "startTime"} (epoch ms) if given,
+ * which processes sharing a scenario must agree on, or when the scenario is
+ * created.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class Scenario {
+
+    private final long seed;
+    private final RangingModel ranging;
+    private final Map<String, double[]> anchors;
+    private final Map<String, Trajectory> tags;
+    /** Epoch milliseconds at scenario time 0. */
+    private final long startTime;
+    private final Impairments impairments;
+
+    /**
+     * Constructs a new scenario.
+     *
+     * @param seed The seed of the random generators of the anchors.
+     * @param ranging The ranging model.
+     * @param anchors Anchor positions {@code {x, y, z}}, by anchor name.
+     * @param tags Tag trajectories, by tag name.
+     * @param startTime Epoch milliseconds at scenario time 0.
+     * @param impairments The network and clock impairments of the anchors.
+     */
+    public Scenario(long seed, RangingModel ranging, Map<String, double[]> anchors, Map<String, Trajectory> tags, long startTime,
+            Impairments impairments) {
+        this.seed = seed;
+        this.ranging = ranging;
+        this.anchors = Collections.unmodifiableMap(new LinkedHashMap<>(anchors));
+        this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+        this.startTime = startTime;
+        this.impairments = impairments;
+    }
+
+    /**
+     * Reads a scenario file.
+     *
+     * @param path The JSON file.
+     * @return The scenario.
+     * @throws IOException if the file cannot be read.
+     */
+    public static Scenario load(Path path) throws IOException {
+        JSONObject root = new JSONObject(Files.readString(path, StandardCharsets.UTF_8));
+        long seed = root.optLong("seed", 42);
+
+        Map<String, double[]> anchors = new LinkedHashMap<>();
+        JSONArray anchorsNode = root.getJSONArray("Anchors");
+        for (int i = 0; i < anchorsNode.length(); i++) {
+            JSONObject anchor = anchorsNode.getJSONObject(i);
+            anchors.put(anchor.getString("deviceId"), new double[] { anchor.getDouble("x"), anchor.getDouble("y"), anchor.optDouble("z", 0) });
+        }
+
+        Map<String, Trajectory> tags = new LinkedHashMap<>();
+        JSONArray tagsNode = root.getJSONArray("Tags");
+        for (int i = 0; i < tagsNode.length(); i++) {
+            JSONObject tag = tagsNode.getJSONObject(i);
+            String name = tag.getString("deviceId");
+            if (tag.has("randomWalk")) {
+                JSONObject walk = tag.getJSONObject("randomWalk");
+                tags.put(name, new RandomWalkTrajectory(walk.getDouble("minX"), walk.getDouble("minY"), walk.getDouble("maxX"),
+                        walk.getDouble("maxY"), walk.optDouble("z", 0), walk.getDouble("maxSpeed"), seed + 31L * (i + 1)));
+            } else {
+                JSONArray points = tag.getJSONArray("waypoints");
+                double[][] waypoints = new double[points.length()][];
+                for (int p = 0; p < points.length(); p++) {
+                    JSONArray point = points.getJSONArray(p);
+                    waypoints[p] = new double[] { point.getDouble(0), point.getDouble(1), point.optDouble(2, 0) };
+                }
+                tags.put(name, new WaypointTrajectory(waypoints, tag.optDouble("speed", 0), tag.optBoolean("loop", true)));
+            }
+        }
+        return new Scenario(seed, RangingModel.fromJson(root.optJSONObject("ranging")), anchors, tags,
+                root.optLong("startTime", System.currentTimeMillis()), Impairments.fromJson(root.optJSONObject("impairments")));
+    }
+
+    /**
+     * Generates a scenario with the anchors on a square grid and the tags on
+     * random walks over the area the grid covers.
+     *
+     * @param anchorCount The number of anchors, named {@code Anchor 1} to {@code Anchor <n>}.
+     * @param tagCount The number of tags, named {@code tag0} to {@code tag<n - 1>}.
+     * @param spacing The distance between neighbouring anchors.
+     * @param ranging The ranging model.
+     * @param seed The seed of the walks and of the anchors.
+     * @return The scenario.
+     */
+    public static Scenario grid(int anchorCount, int tagCount, double spacing, RangingModel ranging, long seed) {
+        int columns = (int) Math.ceil(Math.sqrt(anchorCount));
+        int rows = (int) Math.ceil((double) anchorCount / columns);
+        Map<String, double[]> anchors = new LinkedHashMap<>();
+        for (int i = 0; i < anchorCount; i++) {
+            anchors.put("Anchor " + (i + 1), new double[] { (i % columns) * spacing, (i / columns) * spacing, 2.5 });
+        }
+        double width = Math.max(0, columns - 1) * spacing;
+        double height = Math.max(0, rows - 1) * spacing;
+        Map<String, Trajectory> tags = new LinkedHashMap<>();
+        for (int i = 0; i < tagCount; i++) {
+            tags.put("tag" + i, new RandomWalkTrajectory(0, 0, width, height, 1, 1.5, seed + 31L * (i + 1)));
+        }
+        return new Scenario(seed, ranging, anchors, tags, System.currentTimeMillis(), Impairments.NONE);
+    }
+
+    /**
+     * Writes the anchor coordinates in the format of the server's
+     * {@code /WEB-INF/anchors.json}.
+     *
+     * @param path The file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeAnchors(Path path) throws IOException {
+        JSONArray anchorsNode = new JSONArray();
+        this.anchors.forEach((name, position) -> anchorsNode.put(new JSONObject()
+                .put("deviceId", name).put("x", position[0]).put("y", position[1]).put("z", position[2])));
+        Files.writeString(path, new JSONObject().put("Anchors", anchorsNode).toString(2), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates the tags of the scenario, for the anchors to report.
+     *
+     * @return The tags, in scenario order.
+     */
+    public List<Tag> createTags() {
+        List<Tag> list = new ArrayList<>(this.tags.size());
+        long now = System.currentTimeMillis();
+        for (String name : this.tags.keySet()) list.add(new Tag(name, now, now));
+        return list;
+    }
+
+    /**
+     * Computes the true position of a tag.
+     *
+     * @param tag The tag name.
+     * @param time The time (epoch ms).
+     * @param out Receives {@code x}, {@code y} and {@code z}.
+     * @return {@code false} if the tag is not part of the scenario.
+     */
+    public boolean tagPositionAt(String tag, long time, double[] out) {
+        Trajectory trajectory = this.tags.get(tag);
+        if (trajectory == null) return false;
+        trajectory.positionAt((time - this.startTime) / 1000.0, out);
+        return true;
+    }
+
+    /**
+     * Creates the random generator of an anchor, derived from the scenario
+     * seed so runs are reproducible.
+     *
+     * @param anchor The anchor name.
+     * @return The generator.
+     */
+    public Random newRandom(String anchor) {
+        return new Random(this.seed * 1_000_003L + anchor.hashCode());
+    }
+
+    public double[] getAnchorPosition(String anchor) { return anchors.get(anchor); }
+    public List<String> getAnchorNames() { return new ArrayList<>(anchors.keySet()); }
+    public int getTagCount() { return tags.size(); }
+    public RangingModel getRanging() { return ranging; }
+    public long getSeed() { return seed; }
+    public long getStartTime() { return startTime; }
+    public Impairments getImpairments() { return impairments; }
+}
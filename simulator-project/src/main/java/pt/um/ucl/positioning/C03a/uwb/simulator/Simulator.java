@@ -1,5 +1,8 @@
 package pt.um.ucl.positioning.C03a.uwb.simulator;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 /**
  * Manages the single UWB simulation environment.
  */
@@ -25,6 +28,25 @@ public class Simulator {
         client.startClient();
     }
 
+    /**
+     * Simulates one anchor of a scenario, which sees all of its tags.
+     *
+     * @param anchorName  The anchor, which must be placed in the scenario.
+     * @param scenario    The scenario.
+     * @param groundTruth Receives the true range of every reading, or {@code null}.
+     */
+    public void startSimulation(String anchorName, Scenario scenario, GroundTruthWriter groundTruth) {
+        System.out.println("Starting simulation for virtual anchor: " + anchorName
+            + " with " + scenario.getTagCount() + " scenario tag(s).");
+
+        long now = System.currentTimeMillis();
+        VirtualAnchor anchor = new VirtualAnchor(anchorName, now, now, scenario, scenario.createTags(), null, groundTruth, true);
+        anchor.setClock(scenario.getImpairments().clockFor(anchorName, anchor.getRandom()));
+        SimulatorClient client = new SimulatorClient(anchor, this.baseUrl);
+        client.setNetwork(scenario.getImpairments().network());
+        client.startClient();
+    }
+
     /**
      * Main entry point for the simulator.
      *
@@ -32,15 +54,25 @@ public class Simulator {
      * <ul>
      * <li>{@code args[0]} (Optional): Anchor name. Defaults to "Anchor 1".</li>
      * <li>{@code args[1]} (Optional): Base URL. Defaults to "http://localhost:8080/C03a/".</li>
-     * <li>{@code args[2]} (Optional): Number of initial tags. Defaults to 1.</li>
+     * <li>{@code args[2]} (Optional): Number of initial tags. Defaults to 1. Ignored with a scenario.</li>
+     * <li>{@code args[3]} (Optional): Scenario file (see {@link Scenario}). Defaults to random ranges.</li>
+     * <li>{@code args[4]} (Optional): Ground truth CSV file of the scenario. Defaults to none.</li>
      * </ul>
+     * @throws IOException if the scenario or ground truth file cannot be used.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         String anchorName  = args.length > 0 ? args[0] : "Anchor 1";
         String url         = args.length > 1 ? args[1] : "http://localhost:8080/C03a/";
         int    initialTags = args.length > 2 ? Integer.parseInt(args[2]) : 1;
 
         Simulator simulator = new Simulator(url);
-        simulator.startSimulation(anchorName, initialTags);
+        if (args.length > 3) {
+            Scenario scenario = Scenario.load(Path.of(args[3]));
+            try (GroundTruthWriter groundTruth = args.length > 4 ? new GroundTruthWriter(Path.of(args[4])) : null) {
+                simulator.startSimulation(anchorName, scenario, groundTruth);
+            }
+        } else {
+            simulator.startSimulation(anchorName, initialTags);
+        }
     }
 }
\ No newline at end of file
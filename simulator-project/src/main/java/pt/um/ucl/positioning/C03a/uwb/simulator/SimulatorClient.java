@@ -1,14 +1,13 @@
 package pt.um.ucl.positioning.C03a.uwb.simulator;
  
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
+import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
 import java.util.logging.Logger;
  
 import org.json.JSONObject;
@@ -20,6 +19,11 @@ import org.json.JSONObject;
  * execute the simulated behaviour (including waiting for scheduled slots), and
  * send the report back. Timing is driven entirely by the server's {@code whenToExecute}
  * fields — there is no arbitrary fixed sleep here.
+ * <p>
+ * Requests go through an {@link HttpClient}, which keeps its connections
+ * alive. A {@link FleetSimulator} shares one client and one
+ * {@link SimulatorStats} between all of its anchors. A {@link NetworkModel}
+ * delays and loses requests and responses as a Wi-Fi link would.
  *
  * @author Gustavo Oliveira
  * @version 0.7
@@ -27,17 +31,56 @@ import org.json.JSONObject;
 public class SimulatorClient {
  
     private static final Logger logger = Logger.getLogger(SimulatorClient.class.getName());
+    /** How long to wait before registering again after the loop failed. */
+    private static final long RESTART_DELAY = 1000;
+    /** How many times a lost request is sent before giving up. */
+    private static final int MAX_ATTEMPTS = 3;
  
     private final VirtualAnchor anchor;
     private final String baseUrl;
+    private final HttpClient http;
+    private final SimulatorStats stats;
+    /** {@code true} to register again when the loop fails, instead of stopping. */
+    private final boolean restartOnFailure;
+    private volatile boolean running = true;
+    private volatile NetworkModel network = NetworkModel.IDEAL;
  
     private static final String PATH_BOOT    = "anchorRegistration";
     private static final String PATH_MEASURE = "measurementReport";
     private static final String PATH_SCAN    = "scanReport";
  
     public SimulatorClient(VirtualAnchor anchor, String baseUrl) {
+        this(anchor, baseUrl, newHttpClient(), new SimulatorStats(), false);
+    }
+ 
+    /**
+     * Constructs a client sharing its HTTP client and counters with others.
+     *
+     * @param anchor           The simulated anchor.
+     * @param baseUrl          The base URL of the server.
+     * @param http             The shared HTTP client.
+     * @param stats            The shared counters.
+     * @param restartOnFailure {@code true} to register again after a failed request.
+     */
+    public SimulatorClient(VirtualAnchor anchor, String baseUrl, HttpClient http, SimulatorStats stats, boolean restartOnFailure) {
         this.anchor = anchor;
         this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.http = http;
+        this.stats = stats;
+        this.restartOnFailure = restartOnFailure;
+    }
+ 
+    /**
+     * Creates an HTTP/1.1 client with persistent connections, suitable for
+     * sharing between many anchors.
+     *
+     * @return The client.
+     */
+    public static HttpClient newHttpClient() {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
     }
  
     /**
@@ -50,95 +93,159 @@ public class SimulatorClient {
      *       timing internally (sleeping until each tag's scheduled slot).</li>
      *   <li>Sends the completed report back and waits for the next command.</li>
      * </ol>
+     * The loop ends on the first failure, or when {@link #stop()} is called.
+     * With {@code restartOnFailure}, failures only restart it.
      */
     public void startClient() {
+        this.stats.anchorStarted();
+        try {
+            while (this.running) {
+                runLoop();
+                if (!this.restartOnFailure || !this.running) break;
+                try {
+                    Thread.sleep(RESTART_DELAY);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            this.stats.anchorStopped();
+        }
+        logger.info(anchor.getDeviceName() + " simulation finished.");
+    }
+ 
+    /**
+     * Sets the link between the anchor and the server.
+     *
+     * @param network The link model.
+     */
+    public void setNetwork(NetworkModel network) {
+        this.network = network;
+    }
+
+    /**
+     * Stops the loop after the current command.
+     */
+    public void stop() {
+        this.running = false;
+    }
+ 
+    private void runLoop() {
         JSONObject action = sendRegistrationRequest();
  
         if (action == null) {
             logger.severe("Initial registration failed for " + anchor.getDeviceName() + ". Stopping.");
             return;
         }
+        this.stats.registered();
  
         logger.info(anchor.getDeviceName() + " registered. Entering action loop.");
  
-        while (action != null) {
+        while (action != null && this.running) {
             try {
                 String actionToExecute = action.getString("actionToExecute");
-                String endpointPath = "measure".equalsIgnoreCase(actionToExecute) ? PATH_MEASURE : PATH_SCAN;
-                URL requestUrl = new URI(this.baseUrl + endpointPath).toURL();
+                boolean measure = "measure".equalsIgnoreCase(actionToExecute);
+                URI requestUri = URI.create(this.baseUrl + (measure ? PATH_MEASURE : PATH_SCAN));
  
                 // VirtualBehaviour handles all timing internally (sleeps until scheduled slots).
                 // No fixed sleep here — the server's schedule drives the pace.
                 JSONObject report = this.anchor.VirtualBehaviour(action);
-                action = sendActionRequest(report, requestUrl);
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                if (measure) this.stats.measureReport(report.has("tags") ? report.getJSONArray("tags").length() : 0);
+                action = post(requestUri, report);
  
-            } catch (MalformedURLException | URISyntaxException e) {
+            } catch (IllegalArgumentException e) {
                 logger.severe("URL error for " + anchor.getDeviceName() + ": " + e.getMessage());
                 action = null;
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 logger.warning(anchor.getDeviceName() + " interrupted. Stopping.");
+                this.running = false;
                 action = null;
             } catch (Exception e) {
+                this.stats.failed();
                 logger.severe("Error during communication for " + anchor.getDeviceName() + ": " + e.getMessage());
-                e.printStackTrace();
                 action = null;
             }
         }
- 
-        logger.info(anchor.getDeviceName() + " simulation finished.");
     }
  
     // --- Private HTTP helpers ---
  
     private JSONObject sendRegistrationRequest() {
         try {
-            URL url = new URI(this.baseUrl + PATH_BOOT).toURL();
             JSONObject payload = new JSONObject();
             payload.put("anchorID", anchor.getDeviceName());
-            return post(url, payload);
+            return post(URI.create(this.baseUrl + PATH_BOOT), payload);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.running = false;
+            return null;
         } catch (Exception e) {
+            this.stats.failed();
             logger.severe("Registration failed for " + anchor.getDeviceName() + ": " + e.getMessage());
             return null;
         }
     }
  
-    private JSONObject sendActionRequest(JSONObject report, URL url) throws Exception {
-        return post(url, report);
-    }
- 
     /**
      * Sends a JSON POST request and returns the parsed response.
+     * <p>
+     * The request and the response are delayed by the network model. If
+     * either is lost, the anchor waits for the timeout and sends the
+     * request again, up to {@link #MAX_ATTEMPTS} times. The recorded
+     * latency is that of the server alone.
      *
-     * @param url     The target URL.
+     * @param uri     The target URI.
      * @param payload The JSON body to send.
      * @return The parsed JSON response, or {@code null} if the server returned a non-200 status.
      * @throws Exception on network or parsing errors.
      */
-    private JSONObject post(URL url, JSONObject payload) throws Exception {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setDoOutput(true);
- 
-        byte[] postData = payload.toString().getBytes(StandardCharsets.UTF_8);
-        try (OutputStream os = connection.getOutputStream()) {
-            os.write(postData);
+    private JSONObject post(URI uri, JSONObject payload) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(payload.toString(), StandardCharsets.UTF_8))
+                .build();
+        NetworkModel network = this.network;
+        Random random = this.anchor.getRandom();
+ 
+        HttpResponse<String> response = null;
+        for (int attempt = 1; response == null; attempt++) {
+            if (!network.isIdeal()) {
+                Thread.sleep(network.delay(random));
+                if (network.isLost(random)) {
+                    lost(network, attempt, uri);
+                    continue;
+                }
+            }
+            long start = System.nanoTime();
+            response = this.http.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            this.stats.request(System.nanoTime() - start);
+            if (!network.isIdeal()) {
+                if (network.isLost(random)) {
+                    // The server handled it, but the anchor never hears back.
+                    response = null;
+                    lost(network, attempt, uri);
+                    continue;
+                }
+                Thread.sleep(network.delay(random));
+            }
         }
  
-        int responseCode = connection.getResponseCode();
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            try (BufferedReader br = new BufferedReader(
-                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = br.readLine()) != null) sb.append(line.trim());
-                return new JSONObject(sb.toString());
-            }
+        if (response.statusCode() == 200) {
+            return new JSONObject(response.body());
         } else {
-            logger.warning(anchor.getDeviceName() + " — server returned HTTP " + responseCode + " from " + url);
+            this.stats.failed();
+            logger.warning(anchor.getDeviceName() + " — server returned HTTP " + response.statusCode() + " from " + uri);
             return null;
         }
     }
-}
\ No newline at end of file
+
+    private void lost(NetworkModel network, int attempt, URI uri) throws IOException, InterruptedException {
+        this.stats.lostMessage();
+        Thread.sleep(network.timeout());
+        if (attempt >= MAX_ATTEMPTS) throw new IOException("No response from " + uri + " after " + attempt + " attempts");
+    }
+}
@@ -0,0 +1,156 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side counters shared by all the {@link SimulatorClient}s of one
+ * simulator process.
+ * <p>
+ * Every counter is a {@link LongAdder}, so thousands of anchor loops can
+ * update them without contending. {@link #print(PrintStream)} writes one
+ * line with the totals and the rates since the previous line.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class SimulatorStats {
+
+	private final AtomicInteger activeAnchors = new AtomicInteger();
+	private final LongAdder registrations = new LongAdder();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder measureReports = new LongAdder();
+	private final LongAdder measurements = new LongAdder();
+	private final LongAdder missedSlots = new LongAdder();
+	private final LongAdder lostReadings = new LongAdder();
+	private final LongAdder lostMessages = new LongAdder();
+	private final LongAdder slots = new LongAdder();
+	private final LongAdder slotHits = new LongAdder();
+	private final LongAdder slotErrorMillis = new LongAdder();
+	/** Largest slot error, in milliseconds, since the last {@link #print(PrintStream)}. */
+	private final AtomicLong maxSlotError = new AtomicLong();
+	/** Largest slot error that still counts as a hit, in milliseconds. */
+	private volatile long slotTolerance = 10;
+	private final LongAdder latencyNanos = new LongAdder();
+	/** Highest request latency since the last {@link #print(PrintStream)}. */
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	private final long startNanos = System.nanoTime();
+	private long lastNanos = startNanos;
+	private long lastRequests;
+	private long lastMeasurements;
+	private long lastLatencyNanos;
+	private long lastSlots;
+	private long lastSlotHits;
+	private long lastMissedSlots;
+
+	void anchorStarted() { this.activeAnchors.incrementAndGet(); }
+	void anchorStopped() { this.activeAnchors.decrementAndGet(); }
+	void registered() { this.registrations.increment(); }
+	void failed() { this.failures.increment(); }
+	void missedSlot() { this.missedSlots.increment(); }
+	void lostReading() { this.lostReadings.increment(); }
+	void lostMessage() { this.lostMessages.increment(); }
+
+	/**
+	 * Records a measurement taken in its slot, or near it.
+	 *
+	 * @param errorMillis When it was taken minus when the server scheduled it.
+	 */
+	void slot(long errorMillis) {
+		long error = Math.abs(errorMillis);
+		this.slots.increment();
+		this.slotErrorMillis.add(error);
+		if (error <= this.slotTolerance) this.slotHits.increment();
+		long max;
+		while (error > (max = this.maxSlotError.get()) && !this.maxSlotError.compareAndSet(max, error)) {
+			// Retry until the maximum is at least this error.
+		}
+	}
+
+	/**
+	 * Sets how far from its scheduled time a measurement may be taken and
+	 * still count as a slot hit.
+	 *
+	 * @param slotTolerance The tolerance, in milliseconds.
+	 */
+	public void setSlotTolerance(long slotTolerance) {
+		this.slotTolerance = slotTolerance;
+	}
+
+	/**
+	 * Records a completed request.
+	 *
+	 * @param nanos Its round-trip time.
+	 */
+	void request(long nanos) {
+		this.requests.increment();
+		this.latencyNanos.add(nanos);
+		long max;
+		while (nanos > (max = this.maxLatencyNanos.get()) && !this.maxLatencyNanos.compareAndSet(max, nanos)) {
+			// Retry until the maximum is at least this latency.
+		}
+	}
+
+	/**
+	 * Records a measurement report sent to the server.
+	 *
+	 * @param readings The number of readings in it.
+	 */
+	void measureReport(int readings) {
+		this.measureReports.increment();
+		this.measurements.add(readings);
+	}
+
+	/**
+	 * Prints the totals and the rates since the previous call.
+	 *
+	 * @param out The stream to print to.
+	 */
+	public synchronized void print(PrintStream out) {
+		long now = System.nanoTime();
+		long requestCount = this.requests.sum();
+		long measurementCount = this.measurements.sum();
+		long latency = this.latencyNanos.sum();
+		double seconds = Math.max(1e-9, (now - this.lastNanos) / 1e9);
+		long intervalRequests = requestCount - this.lastRequests;
+		long slotCount = this.slots.sum();
+		long hitCount = this.slotHits.sum();
+		long missedCount = this.missedSlots.sum();
+		long intervalSlots = slotCount - this.lastSlots + missedCount - this.lastMissedSlots;
+
+		out.printf("[%6ds] anchors %d | requests %d (%.0f/s) | readings %d (%.0f/s) | latency avg %.1f ms, max %.1f ms | failures %d | lost messages %d | missed slots %d | lost readings %d | slot hits %.1f%%, max error %d ms%n",
+				TimeUnit.NANOSECONDS.toSeconds(now - this.startNanos), this.activeAnchors.get(),
+				requestCount, intervalRequests / seconds, measurementCount, (measurementCount - this.lastMeasurements) / seconds,
+				intervalRequests == 0 ? 0.0 : (latency - this.lastLatencyNanos) / 1e6 / intervalRequests,
+				this.maxLatencyNanos.getAndSet(0) / 1e6, this.failures.sum(), this.lostMessages.sum(), missedCount, this.lostReadings.sum(),
+				intervalSlots == 0 ? 0.0 : 100.0 * (hitCount - this.lastSlotHits) / intervalSlots, this.maxSlotError.getAndSet(0));
+
+		this.lastNanos = now;
+		this.lastRequests = requestCount;
+		this.lastMeasurements = measurementCount;
+		this.lastLatencyNanos = latency;
+		this.lastSlots = slotCount;
+		this.lastSlotHits = hitCount;
+		this.lastMissedSlots = missedCount;
+	}
+
+	public int getActiveAnchors() { return activeAnchors.get(); }
+	public long getRegistrations() { return registrations.sum(); }
+	public long getRequests() { return requests.sum(); }
+	public long getFailures() { return failures.sum(); }
+	public long getMeasureReports() { return measureReports.sum(); }
+	public long getMeasurements() { return measurements.sum(); }
+	public long getMissedSlots() { return missedSlots.sum(); }
+	public long getLostReadings() { return lostReadings.sum(); }
+	public long getLostMessages() { return lostMessages.sum(); }
+	public long getSlots() { return slots.sum(); }
+	public long getSlotHits() { return slotHits.sum(); }
+	public long getSlotErrorMillis() { return slotErrorMillis.sum(); }
+	public long getSlotTolerance() { return slotTolerance; }
+	public long getLatencyNanos() { return latencyNanos.sum(); }
+}
@@ -0,0 +1,18 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+/**
+ * The true motion of a simulated tag over time.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public interface Trajectory {
+
+	/**
+	 * Computes where the tag is at a given time.
+	 *
+	 * @param time Seconds since the start of the scenario.
+	 * @param out Receives {@code x}, {@code y} and {@code z}.
+	 */
+	void positionAt(double time, double[] out);
+}
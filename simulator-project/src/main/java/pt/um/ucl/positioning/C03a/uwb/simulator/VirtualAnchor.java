@@ -4,8 +4,10 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.json.JSONArray;
@@ -14,31 +16,123 @@ import org.json.JSONObject;
 import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
 import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
 
+/**
+ * A simulated anchor, which answers the server's commands with made-up scan
+ * and measurement reports for the tags it sees.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
 public class VirtualAnchor extends Anchor {
 
     private static final Logger logger = Logger.getLogger(VirtualAnchor.class.getName());
-    private static final int MAX_TAGS = 4;
 
     private List<Tag> listOfTags;
+    /** Names of {@link #listOfTags}, to check scheduled tags without scanning the list. */
+    private final Set<String> tagNames;
     private int nextTagID;
     private final String logFileName;
-    private final Random random = new Random();
+    private final Random random;
+    /** Counters of missed slots, or {@code null}. */
+    private final SimulatorStats stats;
+    /** {@code true} to append the expected slot of every measurement to {@link #logFileName}. */
+    private final boolean logExpectations;
+    /** The world the ranges are measured in, or {@code null} for random ranges. */
+    private final Scenario scenario;
+    /** Receives the true range of every reading, or {@code null}. */
+    private final GroundTruthWriter groundTruth;
+    /** Position of this anchor in the scenario. */
+    private final double[] position;
+    /** Reused true tag position; the anchor loop is single-threaded. */
+    private final double[] tagPosition = new double[3];
+    /** The local clock of the anchor. */
+    private volatile AnchorClock clock = AnchorClock.HOST;
 
     public VirtualAnchor(String deviceId, long initializedAt, long lastSeen, int initialTags) {
+        this(deviceId, initializedAt, lastSeen, createTags(initialTags), null, true);
+    }
+
+    /**
+     * Constructs an anchor that sees the given tags.
+     *
+     * @param deviceId        The name of the anchor.
+     * @param initializedAt   The timestamp when the anchor was initialized.
+     * @param lastSeen        The timestamp when the anchor was last seen.
+     * @param tags            The tags this anchor sees. The list may be shared with other anchors.
+     * @param stats           Counters of missed slots, or {@code null}.
+     * @param logExpectations {@code true} to write the expected slots to {@code <anchor>_logs.txt}.
+     */
+    public VirtualAnchor(String deviceId, long initializedAt, long lastSeen, List<Tag> tags, SimulatorStats stats, boolean logExpectations) {
+        this(deviceId, initializedAt, lastSeen, null, tags, stats, null, logExpectations);
+    }
+
+    /**
+     * Constructs an anchor that measures true ranges in a scenario.
+     *
+     * @param deviceId        The name of the anchor, which must be placed in the scenario.
+     * @param initializedAt   The timestamp when the anchor was initialized.
+     * @param lastSeen        The timestamp when the anchor was last seen.
+     * @param scenario        The scenario, or {@code null} for random ranges.
+     * @param tags            The tags this anchor sees. The list may be shared with other anchors.
+     * @param stats           Counters of missed slots and lost readings, or {@code null}.
+     * @param groundTruth     Receives the true range of every reading, or {@code null}.
+     * @param logExpectations {@code true} to write the expected slots to {@code <anchor>_logs.txt}.
+     */
+    public VirtualAnchor(String deviceId, long initializedAt, long lastSeen, Scenario scenario, List<Tag> tags,
+            SimulatorStats stats, GroundTruthWriter groundTruth, boolean logExpectations) {
         super(deviceId, initializedAt, lastSeen);
-        this.nextTagID = 0;
-        this.listOfTags = new ArrayList<>();
-        int count = Math.min(initialTags, MAX_TAGS);
-        for (int i = 0; i < count; i++) {
-            long now = System.currentTimeMillis(); 
-            this.listOfTags.add(new Tag("tag" + nextTagID, now, now));
-            this.nextTagID++;
+        this.scenario = scenario;
+        this.groundTruth = groundTruth;
+        this.position = scenario != null ? scenario.getAnchorPosition(deviceId) : null;
+        if (scenario != null && this.position == null) {
+            throw new IllegalArgumentException(deviceId + " is not placed in the scenario.");
         }
-        logger.info(deviceId + " initialized with " + this.listOfTags.size() + " tag(s).");
+        this.random = scenario != null ? scenario.newRandom(deviceId) : new Random();
+        this.listOfTags = tags;
+        this.nextTagID = tags.size();
+        this.tagNames = new HashSet<>(tags.size() * 2);
+        for (Tag tag : tags) this.tagNames.add(tag.getDeviceName());
+        this.stats = stats;
+        this.logExpectations = logExpectations;
+        logger.info(() -> deviceId + " initialized with " + this.listOfTags.size() + " tag(s).");
         this.logFileName = deviceId.replace(" ", "_") + "_logs.txt";
     }
 
+    /**
+     * Creates a tag population named {@code tag0} to {@code tag<count - 1>}.
+     *
+     * @param count The number of tags.
+     * @return The tags.
+     */
+    public static List<Tag> createTags(int count) {
+        List<Tag> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long now = System.currentTimeMillis();
+            tags.add(new Tag("tag" + i, now, now));
+        }
+        return tags;
+    }
+
+    /**
+     * Sets the local clock the anchor keeps time with.
+     *
+     * @param clock The clock.
+     */
+    public void setClock(AnchorClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the generator of this anchor, seeded from the scenario if there is one.
+     *
+     * @return The generator. Only the anchor loop may use it.
+     */
+    Random getRandom() {
+        return this.random;
+    }
+
     private void logMeasurementExpectation(long roundId, String tagId, long timeToWaitMs, long localTargetMillis) {
+        if (!this.logExpectations) return;
         String cleanTag = tagId.replace("tag", "");
         String line = "EXPECTED," + roundId + "," + getDeviceName() + "," + cleanTag + ",Wait:" + timeToWaitMs + "ms,Target:" + localTargetMillis;
         try (PrintWriter pw = new PrintWriter(new FileWriter(logFileName, true))) {
@@ -48,7 +142,7 @@ public class VirtualAnchor extends Anchor {
 
     public JSONObject VirtualBehaviour(JSONObject response) {
         String actionToExecute = response.getString("actionToExecute");
-        long localBaselineMillis = System.currentTimeMillis(); 
+        long localBaselineMillis = this.clock.millis();
         long serverBaselineMs = response.has("serverTimeNow") ? response.getLong("serverTimeNow") : localBaselineMillis;
         long currentRoundId = response.optLong("roundId", -1); // Extract long ID
 
@@ -61,7 +155,7 @@ public class VirtualAnchor extends Anchor {
             handleMeasure(replyPayload, response, localBaselineMillis, serverBaselineMs, currentRoundId);
         }
 
-        logger.info(getDeviceName() + " replying: " + replyPayload);
+        logger.info(() -> getDeviceName() + " replying: " + replyPayload);
         return replyPayload;
     }
 
@@ -77,7 +171,7 @@ public class VirtualAnchor extends Anchor {
 
     private void handleMeasure(JSONObject replyPayload, JSONObject response, long localBaselineMillis, long serverBaselineMs, long currentRoundId) {
         JSONArray responseTags = response.getJSONArray("tags");
-        long roundStartTime = System.currentTimeMillis();
+        long roundStartTime = this.clock.millis();
         
         replyPayload.put("roundId", currentRoundId); // Bounce long ID back
 
@@ -87,7 +181,7 @@ public class VirtualAnchor extends Anchor {
         }
 
         if (scheduledTasks.isEmpty()) {
-            try { Thread.sleep(1000); } catch (InterruptedException e) {}
+            try { Thread.sleep(1000); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
             replyPayload.put("tags", new JSONArray());
             return;
         }
@@ -100,8 +194,7 @@ public class VirtualAnchor extends Anchor {
             String tagId = task.getString("deviceID");
             long scheduledServerTime = task.getLong("whenToExecute");
 
-            boolean tagExists = this.listOfTags.stream().anyMatch(t -> t.getDeviceName().equals(tagId));
-            if (!tagExists) continue;
+            if (!this.tagNames.contains(tagId)) continue;
 
             long timeToWaitMs = scheduledServerTime - serverBaselineMs;
             long localTargetMillis = localBaselineMillis + timeToWaitMs;
@@ -110,22 +203,35 @@ public class VirtualAnchor extends Anchor {
 
             if (timeToWaitMs < -ACCEPTANCE_INTERVAL_MS) {
                 logger.warning(getDeviceName() + ": Skipping " + tagId + " (Window missed by " + Math.abs(timeToWaitMs) + "ms)");
+                if (this.stats != null) this.stats.missedSlot();
                 continue;
             }
 
-            long sleepTime = localTargetMillis - System.currentTimeMillis();
+            long sleepTime = this.clock.hostTimeAt(localTargetMillis) - this.clock.hostMillis();
             if (sleepTime > 0) {
                 try { Thread.sleep(sleepTime); } 
                 catch (InterruptedException e) { Thread.currentThread().interrupt(); }
             }
 
-            long actualExecutionTimeLocal = System.currentTimeMillis();
-            float distance = random.nextFloat() * 40;
-            
+            // The host clock is the true time, which the server schedules in.
+            long actualExecutionTimeHost = this.clock.hostMillis();
+            long actualExecutionTimeLocal = this.clock.localTimeAt(actualExecutionTimeHost);
+            if (this.stats != null) this.stats.slot(actualExecutionTimeHost - scheduledServerTime);
             long timeSinceLocalBaseline = actualExecutionTimeLocal - localBaselineMillis;
             long serverDomainExecutedAt = serverBaselineMs + timeSinceLocalBaseline;
 
-            logger.info(getDeviceName() + " measured " + tagId
+            double distance;
+            if (this.scenario != null) {
+                distance = measureRange(currentRoundId, tagId, serverDomainExecutedAt, actualExecutionTimeHost);
+                if (Double.isNaN(distance)) {
+                    if (this.stats != null) this.stats.lostReading();
+                    continue;
+                }
+            } else {
+                distance = random.nextFloat() * 40;
+            }
+
+            logger.info(() -> getDeviceName() + " measured " + tagId
                 + " | expectedWait=" + timeToWaitMs + "ms"
                 + " | actualWait=" + timeSinceLocalBaseline + "ms"
                 + " | jitter=" + (timeSinceLocalBaseline - timeToWaitMs) + "ms");
@@ -137,8 +243,33 @@ public class VirtualAnchor extends Anchor {
             tagsArray.put(tagObj);
         }
 
-        long roundEndTime = System.currentTimeMillis();
+        long roundEndTime = this.clock.millis();
         replyPayload.put("tags", tagsArray);
         replyPayload.put("actualDurationMs", (roundEndTime - roundStartTime));
     }
-}
\ No newline at end of file
+
+    /**
+     * Measures the range to a tag in the scenario and records its ground truth.
+     *
+     * @return The reported range, or {@code NaN} if the reading is lost.
+     */
+    private double measureRange(long roundId, String tagId, long executedAt, long trueTime) {
+        if (!this.scenario.tagPositionAt(tagId, trueTime, this.tagPosition)) return Double.NaN;
+        double dx = this.tagPosition[0] - this.position[0];
+        double dy = this.tagPosition[1] - this.position[1];
+        double dz = this.tagPosition[2] - this.position[2];
+        double trueRange = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+        RangingModel ranging = this.scenario.getRanging();
+        double bias = 0;
+        double reported = Double.NaN;
+        if (!ranging.isLost(trueRange, this.random)) {
+            bias = ranging.nlosBias(this.random);
+            reported = Math.max(0, trueRange + bias + ranging.noise(this.random));
+        }
+        if (this.groundTruth != null) {
+            this.groundTruth.write(roundId, getDeviceName(), tagId, executedAt, trueTime, this.tagPosition, trueRange, reported, bias);
+        }
+        return reported;
+    }
+}
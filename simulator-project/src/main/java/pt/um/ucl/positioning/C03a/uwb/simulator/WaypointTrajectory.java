@@ -0,0 +1,78 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+/**
+ * Moves a tag along a polyline of waypoints at constant speed.
+ * <p>
+ * The tag starts at the first waypoint. A looping trajectory returns to
+ * the first waypoint after the last one and starts again; otherwise the
+ * tag stops at the last waypoint. A single waypoint is a stationary tag.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class WaypointTrajectory implements Trajectory {
+
+	private final double[][] waypoints;
+	private final double speed;
+	private final boolean loop;
+	/** Distance along the path at each waypoint; the last entry closes the loop. */
+	private final double[] cumulative;
+	private final double length;
+
+	/**
+	 * Constructs a new trajectory.
+	 *
+	 * @param waypoints The waypoints, each {@code {x, y, z}}.
+	 * @param speed The speed, in distance units per second.
+	 * @param loop {@code true} to return to the first waypoint and start again.
+	 */
+	public WaypointTrajectory(double[][] waypoints, double speed, boolean loop) {
+		if (waypoints.length == 0) throw new IllegalArgumentException("A trajectory needs at least one waypoint.");
+		if (speed < 0) throw new IllegalArgumentException("The speed cannot be negative.");
+		this.waypoints = waypoints;
+		this.speed = speed;
+		this.loop = loop && waypoints.length > 1;
+		int segments = this.loop ? waypoints.length : waypoints.length - 1;
+		this.cumulative = new double[segments + 1];
+		for (int i = 0; i < segments; i++) {
+			double[] from = waypoints[i];
+			double[] to = waypoints[(i + 1) % waypoints.length];
+			this.cumulative[i + 1] = this.cumulative[i] + Math.sqrt(square(to[0] - from[0]) + square(to[1] - from[1]) + square(to[2] - from[2]));
+		}
+		this.length = this.cumulative[segments];
+	}
+
+	private static double square(double v) {
+		return v * v;
+	}
+
+	@Override
+	public void positionAt(double time, double[] out) {
+		double distance = Math.max(0, time) * this.speed;
+		if (this.length == 0) {
+			setPoint(this.waypoints[0], out);
+			return;
+		}
+		if (this.loop) {
+			distance %= this.length;
+		} else if (distance >= this.length) {
+			setPoint(this.waypoints[this.waypoints.length - 1], out);
+			return;
+		}
+		int segment = 0;
+		while (segment < this.cumulative.length - 2 && this.cumulative[segment + 1] <= distance) segment++;
+		double[] from = this.waypoints[segment];
+		double[] to = this.waypoints[(segment + 1) % this.waypoints.length];
+		double span = this.cumulative[segment + 1] - this.cumulative[segment];
+		double f = span == 0 ? 0 : (distance - this.cumulative[segment]) / span;
+		out[0] = from[0] + f * (to[0] - from[0]);
+		out[1] = from[1] + f * (to[1] - from[1]);
+		out[2] = from[2] + f * (to[2] - from[2]);
+	}
+
+	private static void setPoint(double[] point, double[] out) {
+		out[0] = point[0];
+		out[1] = point[1];
+		out[2] = point[2];
+	}
+}
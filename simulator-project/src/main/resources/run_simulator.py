@@ -12,6 +12,11 @@ import matplotlib.patches as mpatches
 ANCHOR_NAMES   = ["Anchor 1", "Anchor 2", "Anchor 3", "Anchor 4"]
 INITIAL_TAGS   = 2
 SERVER_URL     = "http://localhost:8080/C03a/"
+# > 0 runs that many anchors in a single JVM (FleetSimulator, virtual threads)
+# instead of one JVM per name in ANCHOR_NAMES. Fleet anchors see FLEET_TAGS
+# tags and write no *_logs.txt, so there is no timing visualization.
+FLEET_ANCHORS  = 0
+FLEET_TAGS     = 10
 
 SCRIPT_DIR   = os.path.dirname(os.path.abspath(__file__))
 PROJECT_ROOT = os.path.abspath(os.path.join(SCRIPT_DIR, "../../.."))
@@ -19,6 +24,7 @@ LOG_DIR      = PROJECT_ROOT
 
 JAVA_EXE     = r"C:\Users\gus23\.p2\pool\plugins\org.eclipse.justj.openjdk.hotspot.jre.full.win32.x86_64_21.0.6.v20250130-0529\jre\bin\java.exe"
 BASE_CMD     = [JAVA_EXE, "-cp", "bin;lib/*", "pt.um.ucl.positioning.C03a.uwb.simulator.Simulator"]
+FLEET_CMD    = [JAVA_EXE, "-cp", "bin;lib/*", "pt.um.ucl.positioning.C03a.uwb.simulator.FleetSimulator"]
 
 # =============================================================================
 # VISUALIZATION
@@ -187,6 +193,16 @@ def generate_visualization(log_folder_path):
 # =============================================================================
 # SIMULATOR RUNNER
 # =============================================================================
+def start_fleet():
+    print(f"Launching {FLEET_ANCHORS} virtual anchor(s) with {FLEET_TAGS} tag(s) in one JVM...\n")
+    proc = subprocess.Popen(FLEET_CMD + [SERVER_URL, str(FLEET_ANCHORS), str(FLEET_TAGS)], cwd=PROJECT_ROOT)
+    try:
+        proc.wait()
+    except KeyboardInterrupt:
+        print("\nStopping the fleet...")
+        proc.terminate()
+        proc.wait()
+
 def start_anchors():
     processes = []
 
@@ -223,4 +239,7 @@ def start_anchors():
     generate_visualization(LOG_DIR)
 
 if __name__ == "__main__":
-    start_anchors()
\ No newline at end of file
+    if FLEET_ANCHORS > 0:
+        start_fleet()
+    else:
+        start_anchors()
\ No newline at end of file
@@ -0,0 +1,78 @@
+package pt.um.ucl.positioning.C03a.uwb.capture;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads the records of a capture file written by {@link TrafficRecorder},
+ * in the order they were written.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class TrafficReader implements AutoCloseable {
+
+	private final DataInputStream in;
+
+	/**
+	 * Opens a capture file.
+	 *
+	 * @param file The capture file.
+	 * @throws IOException if it cannot be read or is not a capture file.
+	 */
+	public TrafficReader(Path file) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+		try {
+			if (this.in.readInt() != TrafficRecorder.MAGIC) throw new IOException(file + " is not a traffic capture.");
+			int version = this.in.readInt();
+			if (version != TrafficRecorder.VERSION) throw new IOException("Unsupported traffic capture version " + version + ".");
+		} catch (IOException e) {
+			this.in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the next record.
+	 *
+	 * @return The record, or {@code null} at the end of the file or of its last complete record.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public TrafficRecord next() throws IOException {
+		try {
+			int code = this.in.read();
+			if (code < 0) return null;
+			if (code >= TrafficRecorder.PATHS.length) throw new IOException("Corrupt traffic capture.");
+			String path = code == 0 ? readString() : TrafficRecorder.PATHS[code];
+			long time = this.in.readLong();
+			String request = readString();
+			String response = readString();
+			return new TrafficRecord(time, path, request, response);
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	private String readString() throws IOException {
+		int length = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = this.in.readUnsignedByte();
+			length |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) break;
+			if (shift > 28) throw new IOException("Corrupt traffic capture.");
+		}
+		byte[] bytes = new byte[length];
+		this.in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+	}
+}
@@ -0,0 +1,15 @@
+package pt.um.ucl.positioning.C03a.uwb.capture;
+
+/**
+ * One anchor request as captured by {@link TrafficRecorder}.
+ *
+ * @param time When the request arrived (epoch ms).
+ * @param path The request path, such as {@code /measurementReport}.
+ * @param request The request body.
+ * @param response The response body.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public record TrafficRecord(long time, String path, String request, String response) {
+}
@@ -0,0 +1,240 @@
+package pt.um.ucl.positioning.C03a.uwb.capture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Appends the anchor traffic of the servlet to a capture file, so it can be
+ * replayed by {@link TrafficReplay}.
+ * <p>
+ * Request threads only queue the record; a single writer thread drains the
+ * queue in batches, encodes each batch in memory and writes it to the file at
+ * once. When the queue is full the record is dropped and counted rather than
+ * slowing the anchors down. A batch that fails part-way is cut off the file
+ * again, so later batches follow a complete record; if the file cannot be
+ * cut, recording stops.
+ * <p>
+ * The file starts with the magic {@code UWBT} and a version. Each record is
+ * a path code byte, the arrival time as a long, and the request and response
+ * bodies as varint-prefixed UTF-8. A new capture appends to the file; a
+ * record cut short by a crash ends the file for {@link TrafficReader}, so
+ * start a new file after a crash.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class TrafficRecorder implements AutoCloseable {
+
+	private static final Logger logger = Logger.getLogger(TrafficRecorder.class.getName());
+
+	static final int MAGIC = 0x55574254; // "UWBT"
+	static final int VERSION = 1;
+	/** The paths by code; a path not listed is written as code 0 followed by its text. */
+	static final String[] PATHS = { null, "/anchorRegistration", "/measurementReport", "/scanReport" };
+	private static final int BATCH_SIZE = 256;
+
+	private final FileChannel channel;
+	/** The batch being encoded. Only touched by the writer thread once it started. */
+	private final BatchBuffer buffer = new BatchBuffer();
+	private final DataOutputStream out = new DataOutputStream(this.buffer);
+	/** The end of the last complete record in the file. */
+	private long end;
+	private final BlockingQueue<TrafficRecord> queue;
+	private final Thread writer;
+	private volatile boolean running = true;
+	private final LongAdder recorded = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	/**
+	 * Opens the capture file, appending to it if it exists, and starts the writer.
+	 *
+	 * @param file The capture file. Missing parent directories are created.
+	 * @param queueCapacity Records that may wait for the writer before new ones are dropped.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public TrafficRecorder(Path file, int queueCapacity) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) Files.createDirectories(parent);
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			this.end = this.channel.size();
+			if (this.end == 0) {
+				this.out.writeInt(MAGIC);
+				this.out.writeInt(VERSION);
+				writeBatch();
+			}
+		} catch (IOException e) {
+			this.channel.close();
+			throw e;
+		}
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.writer = new Thread(this::drain, "traffic-capture");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Queues a request for the capture file, without blocking.
+	 *
+	 * @param time When the request arrived (epoch ms).
+	 * @param path The request path.
+	 * @param request The request body.
+	 * @param response The response body.
+	 */
+	public void record(long time, String path, String request, String response) {
+		if (!this.running || !this.queue.offer(new TrafficRecord(time, path, request, response))) {
+			this.dropped.increment();
+		}
+	}
+
+	private void drain() {
+		List<TrafficRecord> batch = new ArrayList<>(BATCH_SIZE);
+		while (this.running || !this.queue.isEmpty()) {
+			try {
+				TrafficRecord first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) continue;
+				batch.add(first);
+				this.queue.drainTo(batch, BATCH_SIZE - 1);
+				for (int i = 0; i < batch.size(); i++) write(this.out, batch.get(i));
+				writeBatch();
+				this.recorded.add(batch.size());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (IOException e) {
+				this.failed.add(batch.size());
+				logger.log(Level.WARNING, "Could not write to the traffic capture", e);
+				if (!cutBack()) break;
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Writes the encoded batch after the last complete record and empties the buffer.
+	 */
+	private void writeBatch() throws IOException {
+		ByteBuffer bytes = this.buffer.view();
+		this.buffer.reset();
+		long position = this.end;
+		while (bytes.hasRemaining()) position += this.channel.write(bytes, position);
+		this.end = position;
+	}
+
+	/**
+	 * Cuts a partly written batch off the file. If that fails too, recording
+	 * stops and the queued records are counted as failed.
+	 *
+	 * @return {@code true} if recording can go on.
+	 */
+	private boolean cutBack() {
+		try {
+			this.channel.truncate(this.end);
+			return true;
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Could not cut the traffic capture back to its last complete record, recording stopped", e);
+			this.running = false;
+			this.failed.add(this.queue.size());
+			this.queue.clear();
+			return false;
+		}
+	}
+
+	static void write(DataOutputStream out, TrafficRecord record) throws IOException {
+		int code = 0;
+		for (int i = 1; i < PATHS.length; i++) {
+			if (PATHS[i].equals(record.path())) code = i;
+		}
+		out.writeByte(code);
+		if (code == 0) writeString(out, record.path());
+		out.writeLong(record.time());
+		writeString(out, record.request());
+		writeString(out, record.response());
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		int length = bytes.length;
+		while ((length & ~0x7F) != 0) {
+			out.writeByte((length & 0x7F) | 0x80);
+			length >>>= 7;
+		}
+		out.writeByte(length);
+		out.write(bytes);
+	}
+
+	/**
+	 * A byte buffer that can be written without copying it.
+	 */
+	private static final class BatchBuffer extends ByteArrayOutputStream {
+		private BatchBuffer() {
+			super(64 * 1024);
+		}
+
+		/** Wraps the buffered bytes; valid until the next write. */
+		private ByteBuffer view() {
+			return ByteBuffer.wrap(this.buf, 0, this.count);
+		}
+	}
+
+	/**
+	 * Gets the number of records written to the file.
+	 *
+	 * @return The number of records written.
+	 */
+	public long getRecordedCount() {
+		return this.recorded.sum();
+	}
+
+	/**
+	 * Gets the number of records dropped because the queue was full.
+	 *
+	 * @return The number of records dropped.
+	 */
+	public long getDroppedCount() {
+		return this.dropped.sum();
+	}
+
+	/**
+	 * Gets the number of records lost to write errors.
+	 *
+	 * @return The number of records that could not be written.
+	 */
+	public long getFailedCount() {
+		return this.failed.sum();
+	}
+
+	/**
+	 * Writes what is queued and closes the file.
+	 */
+	@Override
+	public void close() {
+		this.running = false;
+		try {
+			this.writer.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Could not close the traffic capture", e);
+		}
+	}
+}
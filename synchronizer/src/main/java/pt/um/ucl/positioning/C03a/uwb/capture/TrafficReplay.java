@@ -0,0 +1,213 @@
+package pt.um.ucl.positioning.C03a.uwb.capture;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import pt.um.ucl.positioning.C03a.uwb.communications.C03a;
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+import pt.um.ucl.positioning.C03a.uwb.simulator.VirtualClock;
+import pt.um.ucl.positioning.C03a.uwb.simulator.VirtualTimeSimulation;
+
+/**
+ * Re-drives a fresh servlet with the anchor traffic of a capture file and
+ * compares its responses with the recorded ones.
+ * <p>
+ * The servlet keeps time with a {@link VirtualClock} set to the arrival time
+ * of each recorded request, and the deadline sweep runs every
+ * {@code output.sweepInterval} milliseconds of recorded time in between, so
+ * the responses do not depend on the replay speed. The speed only paces the
+ * requests: {@code 1} sends them as they arrived, {@code N} N times faster
+ * and {@code max} as fast as the servlet handles them.
+ * <p>
+ * Round identifiers are numbered by each servlet, so the replay maps every
+ * recorded round to the one the fresh servlet planned instead, in the
+ * measurement reports it sends and when it compares responses. A capture
+ * started after the anchors registered replays against a servlet that does
+ * not know them, and its first responses differ.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class TrafficReplay implements AutoCloseable {
+
+	/** Mismatches kept in the report. */
+	private static final int MAX_MISMATCHES = 10;
+
+	private final Config config;
+	/** The servlet, built when the first request arrives. */
+	private C03a server;
+	private VirtualClock clock;
+	/** Wall nanoseconds per recorded millisecond, or 0 for no pacing. */
+	private final double nanosPerMilli;
+	/** Interval of the deadline sweep, or 0 if there is none. */
+	private final long sweepInterval;
+	/** Recorded round identifiers by the fresh servlet's. */
+	private final Map<Long, Long> roundIds = new HashMap<>();
+
+	private long firstTime;
+	private long lastTime;
+	private long nextSweep;
+	private long wallStart;
+	private long replayed;
+	private long matched;
+	private final Map<String, Long> mismatchesByPath = new HashMap<>();
+	private final JSONArray mismatches = new JSONArray();
+
+	/**
+	 * Constructs a replay against a fresh servlet.
+	 *
+	 * @param config The servlet configuration, which must not export to the database.
+	 * @param speed How many times faster than recorded to send the requests, or
+	 *        {@link Double#POSITIVE_INFINITY} for as fast as possible.
+	 */
+	public TrafficReplay(Config config, double speed) {
+		this.config = config;
+		this.nanosPerMilli = Double.isInfinite(speed) ? 0 : 1e6 / speed;
+		this.sweepInterval = config.getOutputDeadlineDelay() >= 0 ? Math.max(1, config.getOutputSweepInterval()) : 0;
+	}
+
+	/**
+	 * Replays one recorded request.
+	 *
+	 * @param record The record.
+	 */
+	public void replay(TrafficRecord record) {
+		if (this.server == null) {
+			// The servlet starts its timers with the first request, as if it had just started.
+			this.clock = new VirtualClock(record.time());
+			this.server = new C03a(this.config, this.clock);
+			this.firstTime = record.time();
+			this.nextSweep = record.time() + this.sweepInterval;
+			this.wallStart = System.nanoTime();
+		}
+		// Requests handled concurrently may be captured slightly out of order.
+		long time = Math.max(record.time(), this.clock.millis());
+		if (this.nanosPerMilli > 0) {
+			long due = this.wallStart + (long) ((time - this.firstTime) * this.nanosPerMilli);
+			for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) LockSupport.parkNanos(wait);
+		}
+		while (this.sweepInterval > 0 && this.nextSweep <= time) {
+			this.clock.advanceTo(this.nextSweep);
+			this.server.sweepOutput();
+			this.nextSweep += this.sweepInterval;
+		}
+		this.clock.advanceTo(time);
+		this.lastTime = time;
+
+		String response;
+		try {
+			response = this.server.handleAnchorRequest(record.path(), mapRoundId(record.request()));
+		} catch (JSONException e) {
+			response = new JSONObject().put("error", e.getMessage()).toString();
+		}
+		this.replayed++;
+		compare(record, response);
+	}
+
+	/** Replaces the recorded round of a measurement report with the replayed one. */
+	private String mapRoundId(String request) {
+		if (!request.contains("\"roundId\"")) return request;
+		try {
+			JSONObject json = new JSONObject(request);
+			Long roundId = this.roundIds.get(json.optLong("roundId", -1));
+			return roundId != null ? json.put("roundId", roundId.longValue()).toString() : request;
+		} catch (JSONException e) {
+			return request;
+		}
+	}
+
+	private void compare(TrafficRecord record, String response) {
+		boolean same;
+		try {
+			JSONObject expected = new JSONObject(record.response());
+			JSONObject actual = response != null ? new JSONObject(response) : new JSONObject();
+			if (expected.has("roundId") && actual.has("roundId")) {
+				this.roundIds.put(expected.getLong("roundId"), actual.getLong("roundId"));
+				expected.remove("roundId");
+				actual.remove("roundId");
+			}
+			same = expected.similar(actual);
+		} catch (JSONException e) {
+			same = record.response().equals(response);
+		}
+		if (same) {
+			this.matched++;
+			return;
+		}
+		this.mismatchesByPath.merge(record.path(), 1L, Long::sum);
+		if (this.mismatches.length() < MAX_MISMATCHES) {
+			this.mismatches.put(new JSONObject()
+				.put("index", this.replayed - 1)
+				.put("time", record.time())
+				.put("path", record.path())
+				.put("request", record.request())
+				.put("expected", record.response())
+				.put("actual", response));
+		}
+	}
+
+	/**
+	 * Gets the report of the replay so far.
+	 *
+	 * @return The counts, throughput, the servlet's handling times and the first mismatches.
+	 */
+	public JSONObject report() {
+		long wallNanos = this.replayed > 0 ? System.nanoTime() - this.wallStart : 0;
+		long recordedMs = this.replayed > 0 ? this.lastTime - this.firstTime : 0;
+		JSONObject report = new JSONObject()
+			.put("requests", this.replayed)
+			.put("matched", this.matched)
+			.put("mismatched", new JSONObject(this.mismatchesByPath))
+			.put("recordedMs", recordedMs)
+			.put("wallMs", wallNanos / 1_000_000)
+			.put("speedup", wallNanos > 0 ? recordedMs * 1e6 / wallNanos : 0)
+			.put("requestsPerSecond", wallNanos > 0 ? this.replayed * 1e9 / wallNanos : 0);
+		if (this.server != null) {
+			JSONObject metrics = this.server.getMetrics();
+			report.put("handling", metrics.getJSONObject("requests")).put("rounds", metrics.getJSONObject("rounds"));
+		}
+		return report.put("firstMismatches", this.mismatches);
+	}
+
+	@Override
+	public void close() {
+		if (this.server != null) this.server.destroy();
+	}
+
+	/**
+	 * Main entry point for the replay. Prints the report as one line of JSON.
+	 *
+	 * @param args Command-line arguments.
+	 * <ul>
+	 * <li>{@code args[0]}: The capture file.</li>
+	 * <li>{@code args[1]} (Optional): The speed, {@code 1}, any factor or {@code max}. Defaults to {@code max}.</li>
+	 * <li>{@code args[2]} (Optional): The {@code config.properties} the traffic was captured with.
+	 * Exports, logs and capture are turned off.</li>
+	 * </ul>
+	 * @throws IOException if a file cannot be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: TrafficReplay <capture file> [speed|max] [config.properties]");
+			return;
+		}
+		double speed = args.length > 1 && !"max".equalsIgnoreCase(args[1]) ? Double.parseDouble(args[1]) : Double.POSITIVE_INFINITY;
+		// Capturing the replay would append to the file being replayed.
+		Config config = VirtualTimeSimulation.loadConfig(args.length > 2 ? args[2] : null, "capture.enabled", "false");
+
+		try (TrafficReader reader = new TrafficReader(Paths.get(args[0]));
+				TrafficReplay replay = new TrafficReplay(config, speed)) {
+			for (TrafficRecord record = reader.next(); record != null; record = reader.next()) {
+				replay.replay(record);
+			}
+			System.out.println(replay.report());
+		}
+	}
+}
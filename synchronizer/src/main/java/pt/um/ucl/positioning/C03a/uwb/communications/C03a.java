@@ -6,15 +6,21 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.logging.Level;
@@ -32,14 +38,34 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import pt.um.ucl.positioning.C03a.uwb.capture.TrafficRecorder;
 import pt.um.ucl.positioning.C03a.uwb.config.Config;
 import pt.um.ucl.positioning.C03a.uwb.database.MeasurementsDatabaseLogger;
+import pt.um.ucl.positioning.C03a.uwb.database.MeasurementsHistoryReader;
+import pt.um.ucl.positioning.C03a.uwb.database.PartitionManager;
 import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
 import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
 import pt.um.ucl.positioning.C03a.uwb.managers.ActionManager;
+import pt.um.ucl.positioning.C03a.uwb.managers.EmissionPolicy;
+import pt.um.ucl.positioning.C03a.uwb.managers.RegistrySnapshot;
 import pt.um.ucl.positioning.C03a.uwb.managers.Synchronizer;
+import pt.um.ucl.positioning.C03a.uwb.metrics.JvmMetrics;
+import pt.um.ucl.positioning.C03a.uwb.metrics.LatencyHistogram;
+import pt.um.ucl.positioning.C03a.uwb.positioning.Position;
+import pt.um.ucl.positioning.C03a.uwb.positioning.PositionEngine;
+import pt.um.ucl.positioning.C03a.uwb.positioning.TagTracker;
+import pt.um.ucl.positioning.C03a.uwb.positioning.TrackState;
+import pt.um.ucl.positioning.C03a.uwb.sinks.SinkPipeline;
+import pt.um.ucl.positioning.C03a.uwb.storage.ReadingsArchiveExporter;
+import pt.um.ucl.positioning.C03a.uwb.storage.ReadingsArchiveWriter;
+import pt.um.ucl.positioning.C03a.uwb.measurements.HampelFilter;
 import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;	
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementJsonWriter;
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementPool;
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementRing;
+import pt.um.ucl.positioning.C03a.uwb.measurements.RecentMeasurementsStore;
 import pt.um.ucl.positioning.C03a.uwb.measurements.Reading;
+import pt.um.ucl.positioning.C03a.uwb.measurements.ReadingFilterStage;
 import pt.um.ucl.positioning.C03a.uwb.managers.ActionManager.Action;
 
 public class C03a extends HttpServlet {
@@ -49,37 +75,112 @@ public class C03a extends HttpServlet {
 	private static final String PATH_BOOT = "/anchorRegistration";
 	private static final String PATH_MEASURE = "/measurementReport";
 	private static final String PATH_SCAN = "/scanReport";
+	private static final String PATH_MEASUREMENTS = "/measurements";
+	private static final String PATH_READINGS = "/readings";
+	private static final String PATH_RECENT = "/recent";
+	private static final String PATH_POSITIONS = "/positions";
+	private static final String PATH_TRACKS = "/tracks";
+	private static final String PATH_METRICS = "/metrics";
+	private static final int DEFAULT_PAGE_SIZE = 100;
+	/**
+	 * Servlet context attribute holding a {@link Config} to use instead of
+	 * {@code /WEB-INF/config.properties}, for containers that configure the
+	 * servlet programmatically.
+	 */
+	public static final String CONFIG_ATTRIBUTE = "pt.um.ucl.positioning.C03a.config";
 
 	private ActionManager actionManager;
 	private Synchronizer synchronizer = new Synchronizer();
 	private MeasurementsDatabaseLogger dbLogger;
+	private PartitionManager partitionManager;
 	private OutputThread outputManager;
 	private Config config;
 	private String version = "0.7-Reactive";
 	private LocalDateTime startupTime;
 	private HikariDataSource datasource;
-	private boolean isOperational = true;
+	private HikariDataSource readDatasource;
+	private MeasurementsHistoryReader historyReader;
+	private RecentMeasurementsStore recentStore;
+	private ReadingFilterStage readingFilter;
+	private EmissionPolicy emissionPolicy;
+	/** Recycles measurements once every output released them, or {@code null}. */
+	private MeasurementPool measurementPool;
+	/** Emits measurements whose deadline passed while no anchor reported. */
+	private ScheduledExecutorService deadlineSweeper;
+	private ReadingsArchiveExporter archiveExporter;
+	/** Handling time of each kind of anchor request, served by {@code /metrics}. */
+	private final LatencyHistogram bootLatency = new LatencyHistogram();
+	private final LatencyHistogram measureLatency = new LatencyHistogram();
+	private final LatencyHistogram scanLatency = new LatencyHistogram();
+	/** Surveyed anchor coordinates from anchors.json, by anchor code. */
+	private final Map<String, double[]> anchorPositions = new HashMap<>();
+	/** The time source of scheduling and device bookkeeping. */
+	private Clock clock = Clock.systemDefaultZone();
+	/** Appends the anchor traffic to the capture file, or {@code null}. */
+	private TrafficRecorder trafficRecorder;
 
 	public C03a() {
 		super();
 	}
 
+	/**
+	 * Builds a servlet from a configuration, without a database, whitelist or
+	 * anchor coordinates, for benchmarks that call the request handlers
+	 * directly. Only the managers and the output are started, so the
+	 * configuration must not export to the database.
+	 *
+	 * @param config The configuration.
+	 */
+	C03a(Config config) {
+		this(config, Clock.systemDefaultZone());
+	}
+
+	/**
+	 * Builds a servlet like {@link #C03a(Config)} that keeps time with the
+	 * given clock, so the scheduler can be driven in virtual time through
+	 * {@link #handleAnchorRequest(String, String)} and {@link #sweepOutput()}.
+	 * Devices are registered without database identifiers. The traffic is
+	 * captured if the configuration enables it.
+	 *
+	 * @param config The configuration, which must not export to the database.
+	 * @param clock The time source.
+	 */
+	public C03a(Config config, Clock clock) {
+		super();
+		this.config = config;
+		this.clock = clock;
+		this.startupTime = LocalDateTime.now(clock);
+		initManagers();
+		try {
+			openTrafficCapture();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not open the traffic capture " + config.getCaptureFile(), e);
+		}
+		this.outputManager = new OutputThread(this, null, config);
+		this.synchronizer.setTagTracker(this.outputManager.getTagTracker());
+		if (this.outputManager.getPositionEngine() != null) this.synchronizer.addTagEvictionListener(this.outputManager.getPositionEngine()::remove);
+	}
+
 	@Override
 	public void init(ServletConfig servletConfig) throws ServletException {
 	    super.init(servletConfig);
-	    this.startupTime = LocalDateTime.now();
+	    this.startupTime = LocalDateTime.now(this.clock);
 
-	    Properties props = new Properties();
-	    try (InputStream input = servletConfig.getServletContext().getResourceAsStream("/WEB-INF/config.properties")) {
-	        if (input == null) {
-	            logger.severe("CRITICAL: config.properties file not found in /WEB-INF/.");
-	            throw new ServletException("config.properties file not found.");
+	    if (servletConfig.getServletContext().getAttribute(CONFIG_ATTRIBUTE) instanceof Config supplied) {
+	        this.config = supplied;
+	    } else {
+	        Properties props = new Properties();
+	        try (InputStream input = servletConfig.getServletContext().getResourceAsStream("/WEB-INF/config.properties")) {
+	            if (input == null) {
+	                logger.severe("CRITICAL: config.properties file not found in /WEB-INF/.");
+	                throw new ServletException("config.properties file not found.");
+	            }
+	            props.load(input);
+	            this.config = new Config(props);
+	        } catch (IOException ex) {
+	            logger.log(Level.SEVERE, "Error reading config.properties", ex);
+	            throw new ServletException("Error loading config.properties", ex);
 	        }
-	        props.load(input);
-	        this.config = new Config(props);
-	    } catch (IOException ex) {
-	        logger.log(Level.SEVERE, "Error reading config.properties", ex);
-	        throw new ServletException("Error loading config.properties", ex);
 	    }
 
 	    if (this.config.isEnableExecutionComparison()) {
@@ -103,29 +204,73 @@ public class C03a extends HttpServlet {
 
 	    if (config.isEnableGeneralLogs()) logger.info("Configuration loaded. Initializing Managers...");
 
-	    this.actionManager = new ActionManager(
-	        this.config.getAmSlowScanPeriod(), 
-	        this.config.getAmFastScanPeriod(),
-	        this.config.getAmScanInterval(), 
-	        this.config.getAmScanTime(), 
-	        this.config.getAmMinRoundTime(),
-	        this.config.getAmSafetyBuffer() 
-	    );
+	    initManagers();
+
+	    try {
+	        openTrafficCapture();
+	    } catch (IOException e) {
+	        throw new ServletException("Could not open the traffic capture " + this.config.getCaptureFile(), e);
+	    }
 
 	    HikariConfig hikariConfig = new HikariConfig();
 	    hikariConfig.setJdbcUrl(this.config.getDbUrl() + "/" + this.config.getDbName());
 	    hikariConfig.setUsername(this.config.getDbUsername());
 	    hikariConfig.setPassword(this.config.getDbPassword());
-	    hikariConfig.setDriverClassName("org.mariadb.jdbc.Driver");
+	    hikariConfig.setDriverClassName(this.config.getDbDriver());
 	    hikariConfig.setMaximumPoolSize(10); 
 	    hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
 	    hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
+	    // Send executeBatch() as a single bulk command instead of one INSERT per reading.
+	    hikariConfig.addDataSourceProperty("useBulkStmts", "true");
+	    if (this.config.isDbBulkLoad()) {
+	        hikariConfig.addDataSourceProperty("allowLocalInfile", "true");
+	    }
 	    
 	    this.datasource = new HikariDataSource(hikariConfig);
 
+	    // History queries get their own small read-only pool so they never starve the writers.
+	    HikariConfig readConfig = new HikariConfig();
+	    readConfig.setJdbcUrl(this.config.getDbUrl() + "/" + this.config.getDbName());
+	    readConfig.setUsername(this.config.getDbUsername());
+	    readConfig.setPassword(this.config.getDbPassword());
+	    readConfig.setDriverClassName(this.config.getDbDriver());
+	    readConfig.setPoolName("C03a-read");
+	    readConfig.setMaximumPoolSize(this.config.getDbReadPoolSize());
+	    readConfig.setReadOnly(true);
+	    readConfig.addDataSourceProperty("cachePrepStmts", "true");
+	    this.readDatasource = new HikariDataSource(readConfig);
+	    this.historyReader = new MeasurementsHistoryReader(this.readDatasource, this.config.getDbMaxPageSize(), this.config.getDbQueryTimeout());
+
 	    try {
 	        this.dbLogger = new MeasurementsDatabaseLogger(this.datasource, this.config); 
 	        this.outputManager = new OutputThread(this, this.dbLogger, this.config);
+	        this.synchronizer.setTagTracker(this.outputManager.getTagTracker());
+	        if (this.outputManager.getPositionEngine() != null) this.synchronizer.addTagEvictionListener(this.outputManager.getPositionEngine()::remove);
+	        if (this.config.isDbPartitioningEnabled()) {
+	            this.partitionManager = new PartitionManager(this.datasource, this.config);
+	            this.partitionManager.start();
+	        }
+	        if (this.config.isArchiveEnabled()) {
+	            this.archiveExporter = new ReadingsArchiveExporter(Paths.get(this.config.getArchiveDirectory()),
+	                ReadingsArchiveWriter.DistanceEncoding.valueOf(this.config.getArchiveDistanceEncoding().toUpperCase()),
+	                this.config.getArchiveQuantum(), this.config.isEnableGeneralLogs());
+	            this.archiveExporter.startDaily(this.readDatasource, this.outputManager.getSegmentStore());
+	        }
+	        if (this.config.getOutputDeadlineDelay() >= 0) {
+	            this.deadlineSweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+	                Thread t = new Thread(r, "output-deadline-sweep");
+	                t.setDaemon(true);
+	                return t;
+	            });
+	            long interval = Math.max(1, this.config.getOutputSweepInterval());
+	            this.deadlineSweeper.scheduleWithFixedDelay(() -> {
+	                try {
+	                    sweepOutput();
+	                } catch (RuntimeException e) {
+	                    logger.log(Level.WARNING, "Deadline sweep failed", e);
+	                }
+	            }, interval, interval, TimeUnit.MILLISECONDS);
+	        }
 	    } catch (Exception e) {
 	        if (config.isEnableGeneralLogs()) logger.log(Level.SEVERE, "Failed to initialize components", e);
 	        throw new ServletException(e);
@@ -163,17 +308,92 @@ public class C03a extends HttpServlet {
 	        }
 	    }
 	    
+	    try (InputStream is = servletConfig.getServletContext().getResourceAsStream("/WEB-INF/anchors.json")) {
+	        if (is != null) {
+	            JSONObject rootNode = new JSONObject(new String(is.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8));
+	            JSONArray anchorsNode = rootNode.optJSONArray("Anchors");
+	            for (int i = 0; anchorsNode != null && i < anchorsNode.length(); i++) {
+	                JSONObject anchorObj = anchorsNode.getJSONObject(i);
+	                this.anchorPositions.put(anchorObj.getString("deviceId"),
+	                    new double[] { anchorObj.getDouble("x"), anchorObj.getDouble("y"), anchorObj.optDouble("z", 0) });
+	            }
+	            if (config.isEnableGeneralLogs()) logger.info("Loaded coordinates of " + this.anchorPositions.size() + " anchors.");
+	        }
+	    } catch (Exception e) {
+	        if (config.isEnableGeneralLogs()) logger.severe("Error reading anchors.json: " + e.getMessage());
+	        this.anchorPositions.clear();
+	    }
+	    
 	    if (config.isEnableGeneralLogs()) logger.info("C30a Servlet " + version + " is ready.");
 	}
 
+	/**
+	 * Starts capturing the anchor traffic if {@code capture.enabled} is set.
+	 */
+	private void openTrafficCapture() throws IOException {
+	    if (this.config.isCaptureEnabled()) {
+	        this.trafficRecorder = new TrafficRecorder(Paths.get(this.config.getCaptureFile()), this.config.getCaptureQueueCapacity());
+	    }
+	}
+
+	/**
+	 * Creates the managers that need nothing but the configuration.
+	 */
+	private void initManagers() {
+	    this.recentStore = new RecentMeasurementsStore(this.config.getRecentCapacity(), this.config.getRecentMaxReadings());
+	    this.synchronizer.addTagEvictionListener(this.recentStore::remove);
+	    if (this.config.isFilterEnabled()) {
+	        this.readingFilter = new ReadingFilterStage(
+	            new HampelFilter(this.config.getFilterWindow(), this.config.getFilterThreshold(),
+	                this.config.getFilterMinSamples(), this.config.getFilterMinDeviation()),
+	            ReadingFilterStage.Mode.valueOf(this.config.getFilterMode().toUpperCase()));
+	        this.synchronizer.addTagEvictionListener(this.readingFilter::remove);
+	    }
+
+	    this.emissionPolicy = new EmissionPolicy(this.config);
+	    if (this.config.getMeasurementPoolSize() > 0) {
+	        this.measurementPool = new MeasurementPool(this.config.getMeasurementPoolSize());
+	        this.synchronizer.setMeasurementPool(this.measurementPool);
+	    }
+
+	    this.actionManager = new ActionManager(
+	        this.config.getAmSlowScanPeriod(), 
+	        this.config.getAmFastScanPeriod(),
+	        this.config.getAmScanInterval(), 
+	        this.config.getAmScanTime(), 
+	        this.config.getAmMinRoundTime(),
+	        this.config.getAmSafetyBuffer(),
+	        this.clock
+	    );
+	    this.synchronizer.setClock(this.clock);
+	}
+
 	@Override
 	public void destroy() {
+		if (this.trafficRecorder != null) {
+			this.trafficRecorder.close();
+		}
+		if (this.deadlineSweeper != null) {
+			this.deadlineSweeper.shutdownNow();
+		}
+		if (this.partitionManager != null) {
+			this.partitionManager.shutdown();
+		}
+		if (this.archiveExporter != null) {
+			this.archiveExporter.shutdown();
+		}
 		if (this.outputManager != null) {
 			this.outputManager.shutdown();
 		}
+		if (this.dbLogger != null) {
+			this.dbLogger.close();
+		}
 		if (this.datasource != null) {
             this.datasource.close(); 
         }
+		if (this.readDatasource != null) {
+			this.readDatasource.close();
+		}
 		super.destroy();
 	}
 
@@ -211,20 +431,308 @@ public class C03a extends HttpServlet {
 		        var pool = this.datasource.getHikariPoolMXBean();
 		        writer.println("--- Database Pool Status ---");
 		        writer.println("Active Connections: " + pool.getActiveConnections());
+		        writer.println();
+		    }
+
+		    if (this.outputManager != null) {
+		        writer.println("--- Output Sinks ---");
+		        for (SinkPipeline.SinkStats sink : this.outputManager.getSinks().getStats()) {
+		            writer.printf("%-18s | Queued: %d | Written: %d | Failed: %d | Dropped: %d | Batches: %d\n",
+		                sink.name(), sink.queued(), sink.written(), sink.failed(), sink.dropped(), sink.batches());
+		        }
+		        for (CircuitBreaker breaker : new CircuitBreaker[] { this.outputManager.getDbBreaker(), this.outputManager.getPeBreaker() }) {
+		            writer.printf("%-18s | State: %-9s | OK: %d | Failed: %d | Rejected: %d | Opened: %d\n",
+		                breaker.getName(), breaker.getState(), breaker.getSuccessCount(), breaker.getFailureCount(),
+		                breaker.getRejectedCount(), breaker.getOpenedCount());
+		        }
+		        RetryScheduler retries = this.outputManager.getRetryScheduler();
+		        writer.println("Retries Pending: " + retries.getPendingCount() + " | Retried: " + retries.getRetriedCount()
+		            + " | Recovered: " + retries.getRecoveredCount() + " | Dropped: " + retries.getDroppedCount());
+		    }
+		    if (this.readingFilter != null) {
+		        long checked = this.readingFilter.getCheckedCount();
+		        long flagged = this.readingFilter.getFlaggedCount();
+		        writer.println();
+		        writer.println("--- Range Filter (" + this.readingFilter.getMode().name().toLowerCase() + ") ---");
+		        writer.printf("%-18s | Checked: %d | Outliers: %d (%.2f%%)\n", "All anchors", checked, flagged,
+		            checked == 0 ? 0.0 : 100.0 * flagged / checked);
+		        for (Map.Entry<String, long[]> entry : this.readingFilter.getAnchorCounts().entrySet()) {
+		            long[] counts = entry.getValue();
+		            writer.printf("%-18s | Checked: %d | Outliers: %d (%.2f%%)\n", entry.getKey(), counts[0], counts[1],
+		                counts[0] == 0 ? 0.0 : 100.0 * counts[1] / counts[0]);
+		        }
+		    }
+		    if (this.emissionPolicy != null) {
+		        EmissionPolicy policy = this.emissionPolicy;
+		        writer.println();
+		        writer.println("--- Emission (quorum " + (policy.getQuorum() > 0 ? String.valueOf(policy.getQuorum()) : "all")
+		            + ", late readings " + (policy.isMergeLateReadings() ? "merged" : "dropped") + ") ---");
+		        writer.println("Complete: " + policy.getEmittedCount(EmissionPolicy.Reason.COMPLETE)
+		            + " | Quorum: " + policy.getEmittedCount(EmissionPolicy.Reason.QUORUM)
+		            + " | Deadline: " + policy.getEmittedCount(EmissionPolicy.Reason.DEADLINE)
+		            + " | Stale: " + policy.getEmittedCount(EmissionPolicy.Reason.STALE));
+		        writer.println("Follow-ups: " + policy.getFollowUpCount() + " | Late Merged: " + policy.getLateMergedCount()
+		            + " | Late Dropped: " + policy.getLateDroppedCount() + " | Evicted Rounds: " + this.synchronizer.getEvictedRoundCount());
+		        if (this.measurementPool != null) {
+		            writer.println("Measurement Pool | Free: " + this.measurementPool.getFreeCount() + " | Created: "
+		                + this.measurementPool.getCreatedCount() + " | Reused: " + this.measurementPool.getReusedCount()
+		                + " | Discarded: " + this.measurementPool.getDiscardedCount());
+		        }
+		    }
+		    PositionEngine positions = this.outputManager != null ? this.outputManager.getPositionEngine() : null;
+		    if (positions != null) {
+		        writer.println();
+		        writer.println("--- Positioning (" + positions.getDimensions() + "D) ---");
+		        writer.println("Solved: " + positions.getSolvedCount() + " | Rejected: " + positions.getRejectedCount()
+		            + " | Failed: " + positions.getFailedCount());
+		        TagTracker tracker = this.outputManager.getTagTracker();
+		        if (tracker != null) {
+		            writer.println("Tracking (" + tracker.getInput().name().toLowerCase() + ") | Updates: " + tracker.getUpdateCount()
+		                + " | Gated: " + tracker.getGatedCount() + " | Restarts: " + tracker.getRestartCount());
+		        }
 		    }
 		    writer.close();
+		} else if (PATH_METRICS.equals(pathInfo)) {
+			handleMetricsRequest(request, response);
+		} else if (PATH_RECENT.equals(pathInfo)) {
+			handleRecentRequest(request, response);
+		} else if (PATH_POSITIONS.equals(pathInfo)) {
+			handlePositionsRequest(request, response);
+		} else if (PATH_TRACKS.equals(pathInfo)) {
+			handleTracksRequest(request, response);
+		} else if (PATH_MEASUREMENTS.equals(pathInfo) || PATH_READINGS.equals(pathInfo)) {
+			handleHistoryRequest(request, response, PATH_MEASUREMENTS.equals(pathInfo));
 		} else {
 			response.sendError(400, "Unknown request.");
 		}
 	}
 
+	/**
+	 * Streams a page of stored measurements or readings. Query parameters:
+	 * {@code tag}, {@code anchor} (device codes), {@code from}, {@code to}
+	 * (epoch milliseconds), {@code limit} and {@code after} (the {@code next}
+	 * cursor of the previous page).
+	 */
+	private void handleHistoryRequest(HttpServletRequest request, HttpServletResponse response, boolean measurements) throws IOException {
+		MeasurementsHistoryReader.Query query;
+		try {
+			String limit = request.getParameter("limit");
+			query = new MeasurementsHistoryReader.Query(
+				request.getParameter("tag"),
+				request.getParameter("anchor"),
+				parseOptionalLong(request.getParameter("from")),
+				parseOptionalLong(request.getParameter("to")),
+				request.getParameter("after"),
+				limit != null ? Integer.parseInt(limit) : DEFAULT_PAGE_SIZE);
+		} catch (NumberFormatException e) {
+			sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid numeric parameter: " + e.getMessage());
+			return;
+		}
+
+		response.setCharacterEncoding("UTF-8");
+		try {
+			if (measurements) {
+				this.historyReader.streamMeasurements(query, response.getOutputStream());
+			} else {
+				this.historyReader.streamReadings(query, response.getOutputStream());
+			}
+		} catch (IllegalArgumentException e) {
+			// The output stream is already taken, so errors go through sendError instead of sendErrorResponse.
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+		} catch (SQLException e) {
+			if (config.isEnableGeneralLogs()) logger.log(Level.WARNING, "History query failed", e);
+			if (!response.isCommitted()) {
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "History query failed: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Serves the in-memory recent measurements as
+	 * {@code {"tags":[{"targetCode":..,"measurements":[...]}]}}. Query
+	 * parameters: {@code tag} (all tags if omitted), {@code since} (epoch
+	 * milliseconds) and {@code limit} (measurements per tag).
+	 */
+	private void handleRecentRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		long since;
+		int limit;
+		try {
+			Long sinceParam = parseOptionalLong(request.getParameter("since"));
+			String limitParam = request.getParameter("limit");
+			since = sinceParam != null ? sinceParam : Long.MIN_VALUE;
+			limit = limitParam != null ? Integer.parseInt(limitParam) : Integer.MAX_VALUE;
+		} catch (NumberFormatException e) {
+			sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid numeric parameter: " + e.getMessage());
+			return;
+		}
+
+		String tagParam = request.getParameter("tag");
+		List<String> tagCodes = tagParam != null ? List.of(tagParam) : this.recentStore.getTagCodes();
+		MeasurementJsonWriter json = MeasurementJsonWriter.forCurrentThread();
+		RecentMeasurementsStore.Window window = new RecentMeasurementsStore.Window(this.config.getRecentMaxReadings());
+		json.writeByte('{').writeKey("tags").writeByte('[');
+		for (int i = 0; i < tagCodes.size(); i++) {
+			if (i > 0) json.writeByte(',');
+			this.recentStore.read(tagCodes.get(i), since, limit, window);
+			json.writeByte('{').writeKey("targetCode").writeString(tagCodes.get(i))
+				.writeByte(',').writeKey("measurements");
+			RecentMeasurementsStore.writeJson(window, json);
+			json.writeByte('}');
+		}
+		json.writeByte(']').writeByte('}');
+
+		response.setCharacterEncoding("UTF-8");
+		response.setContentLength(json.size());
+		response.getOutputStream().write(json.buffer(), 0, json.size());
+	}
+
+	/**
+	 * Serves the latest in-process position fix of every tag as
+	 * {@code {"positions":[{"targetCode":..,"x":..,"y":..,"z":..,...}]}}.
+	 * Query parameter: {@code tag} (all tags if omitted).
+	 */
+	private void handlePositionsRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		PositionEngine engine = this.outputManager.getPositionEngine();
+		if (engine == null) {
+			sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "In-process positioning is disabled.");
+			return;
+		}
+		String tagParam = request.getParameter("tag");
+		List<String> tagCodes = tagParam != null ? List.of(tagParam) : engine.getTagCodes();
+		MeasurementJsonWriter json = MeasurementJsonWriter.forCurrentThread();
+		Position position = new Position();
+		json.writeByte('{').writeKey("positions").writeByte('[');
+		boolean first = true;
+		for (String tagCode : tagCodes) {
+			if (!engine.latest(tagCode, position)) continue;
+			if (!first) json.writeByte(',');
+			PositionEngine.writeJson(tagCode, position, json);
+			first = false;
+		}
+		json.writeByte(']').writeByte('}');
+
+		response.setCharacterEncoding("UTF-8");
+		response.setContentLength(json.size());
+		response.getOutputStream().write(json.buffer(), 0, json.size());
+	}
+
+	/**
+	 * Serves the Kalman track (smoothed position and velocity) of every tag as
+	 * {@code {"tracks":[{"targetCode":..,"x":..,"vx":..,"speed":..,...}]}}.
+	 * Query parameter: {@code tag} (all tags if omitted).
+	 */
+	private void handleTracksRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		TagTracker tracker = this.outputManager.getTagTracker();
+		if (tracker == null) {
+			sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Tag tracking is disabled.");
+			return;
+		}
+		String tagParam = request.getParameter("tag");
+		List<String> tagCodes = tagParam != null ? List.of(tagParam) : tracker.getTagCodes();
+		MeasurementJsonWriter json = MeasurementJsonWriter.forCurrentThread();
+		TrackState track = new TrackState();
+		json.writeByte('{').writeKey("tracks").writeByte('[');
+		boolean first = true;
+		for (String tagCode : tagCodes) {
+			if (!tracker.read(tagCode, track)) continue;
+			if (!first) json.writeByte(',');
+			TagTracker.writeJson(tagCode, track, json);
+			first = false;
+		}
+		json.writeByte(']').writeByte('}');
+
+		response.setCharacterEncoding("UTF-8");
+		response.setContentLength(json.size());
+		response.getOutputStream().write(json.buffer(), 0, json.size());
+	}
+
+	/**
+	 * Writes the load counters as JSON: request handling latencies, round
+	 * and emission counts, the latency of every sink (from the first
+	 * reading's {@code executedAt} until written) and JVM heap and GC
+	 * counters. Counters are totals since startup; {@code ?reset=true}
+	 * clears the latency histograms first, so a benchmark can leave out its
+	 * warm-up.
+	 */
+	private void handleMetricsRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (Boolean.parseBoolean(request.getParameter("reset"))) {
+			this.bootLatency.reset();
+			this.measureLatency.reset();
+			this.scanLatency.reset();
+			if (this.outputManager != null) this.outputManager.getSinks().resetLatencies();
+		}
+		JSONObject metrics = getMetrics();
+		response.setCharacterEncoding("UTF-8");
+		try (PrintWriter writer = response.getWriter()) {
+			writer.write(metrics.toString());
+		}
+	}
+
+	/**
+	 * Gets the load counters served by {@code /metrics}.
+	 *
+	 * @return The counters as JSON.
+	 */
+	public JSONObject getMetrics() {
+		RegistrySnapshot registry = this.synchronizer.getRegistry();
+		JSONObject rounds = new JSONObject()
+			.put("opened", this.synchronizer.getOpenedRoundCount())
+			.put("evicted", this.synchronizer.getEvictedRoundCount());
+		if (this.emissionPolicy != null) {
+			for (EmissionPolicy.Reason reason : EmissionPolicy.Reason.values()) {
+				if (reason != EmissionPolicy.Reason.NONE) rounds.put(reason.name().toLowerCase(), this.emissionPolicy.getEmittedCount(reason));
+			}
+			rounds.put("followUps", this.emissionPolicy.getFollowUpCount())
+				.put("lateMerged", this.emissionPolicy.getLateMergedCount())
+				.put("lateDropped", this.emissionPolicy.getLateDroppedCount());
+		}
+		JSONArray sinks = new JSONArray();
+		if (this.outputManager != null) {
+			for (SinkPipeline.SinkStats sink : this.outputManager.getSinks().getStats()) {
+				sinks.put(new JSONObject().put("name", sink.name()).put("queued", sink.queued()).put("written", sink.written())
+					.put("failed", sink.failed()).put("dropped", sink.dropped()).put("latency", sink.latency().toJson()));
+			}
+		}
+		JSONObject metrics = new JSONObject()
+			.put("version", this.version)
+			.put("time", this.clock.millis())
+			.put("anchors", registry.anchors().size())
+			.put("tags", registry.tags().size())
+			.put("requests", new JSONObject()
+				.put("anchorRegistration", this.bootLatency.toJson())
+				.put("measurementReport", this.measureLatency.toJson())
+				.put("scanReport", this.scanLatency.toJson()))
+			.put("rounds", rounds)
+			.put("sinks", sinks)
+			.put("jvm", JvmMetrics.read());
+		if (this.trafficRecorder != null) {
+			metrics.put("capture", new JSONObject()
+				.put("recorded", this.trafficRecorder.getRecordedCount())
+				.put("dropped", this.trafficRecorder.getDroppedCount())
+				.put("failed", this.trafficRecorder.getFailedCount()));
+		}
+		return metrics;
+	}
+
+	Synchronizer getSynchronizer() {
+		return this.synchronizer;
+	}
+
+	/**
+	 * Gets the in-memory store of recent measurements, for in-process consumers.
+	 *
+	 * @return The {@link RecentMeasurementsStore}.
+	 */
+	public RecentMeasurementsStore getRecentMeasurementsStore() {
+		return this.recentStore;
+	}
+
+	private static Long parseOptionalLong(String value) {
+		return value == null || value.isEmpty() ? null : Long.valueOf(value);
+	}
+
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		if (!isOperational) {
-	        sendErrorResponse(response, 503, "Service Unavailable: Critical Database Failure.");
-	        return;
-	    }
-		
 		response.setContentType("application/json");
 		response.setCharacterEncoding("UTF-8");
 		String pathInfo = request.getPathInfo();
@@ -247,20 +755,13 @@ public class C03a extends HttpServlet {
 			return;
 		}
 
-		String responseString = null;
-		try {
-			JSONObject jsonObj = new JSONObject(trimmedJson);
-			if (PATH_BOOT.equals(pathInfo)) {
-				responseString = handleBootRequest(jsonObj);
-			} else if (PATH_MEASURE.equals(pathInfo)) {
-				responseString = handleMeasureRequest(jsonObj);
-			} else if (PATH_SCAN.equals(pathInfo)) {
-				responseString = handleScanRequest(jsonObj);
-			} else {
-				sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Unknown path: " + pathInfo);
-				return;
-			}
+		if (!PATH_BOOT.equals(pathInfo) && !PATH_MEASURE.equals(pathInfo) && !PATH_SCAN.equals(pathInfo)) {
+			sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Unknown path: " + pathInfo);
+			return;
+		}
 
+		try {
+			String responseString = handleAnchorRequest(pathInfo, trimmedJson);
 			if (responseString != null) {
 				response.setStatus(HttpServletResponse.SC_OK);
 				try (PrintWriter writer = response.getWriter()) {
@@ -278,6 +779,37 @@ public class C03a extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Handles an anchor request as {@link #doPost} does, without the HTTP
+	 * exchange, and records its handling time.
+	 *
+	 * @param pathInfo {@code /anchorRegistration}, {@code /measurementReport} or {@code /scanReport}.
+	 * @param body The JSON body of the request.
+	 * @return The response body, or {@code null} if the path is unknown.
+	 * @throws JSONException if the body is not valid JSON.
+	 */
+	public String handleAnchorRequest(String pathInfo, String body) throws JSONException {
+		long started = System.nanoTime();
+		long arrivedAt = this.clock.millis();
+		JSONObject jsonObj = new JSONObject(body);
+		String responseString;
+		if (PATH_BOOT.equals(pathInfo)) {
+			responseString = handleBootRequest(jsonObj);
+			this.bootLatency.recordSince(started);
+		} else if (PATH_MEASURE.equals(pathInfo)) {
+			responseString = handleMeasureRequest(jsonObj);
+			this.measureLatency.recordSince(started);
+		} else if (PATH_SCAN.equals(pathInfo)) {
+			responseString = handleScanRequest(jsonObj);
+			this.scanLatency.recordSince(started);
+		} else {
+			return null;
+		}
+		TrafficRecorder recorder = this.trafficRecorder;
+		if (recorder != null && responseString != null) recorder.record(arrivedAt, pathInfo, body, responseString);
+		return responseString;
+	}
+
 	private String handleBootRequest(JSONObject jsonObj) throws JSONException {
 		if (!jsonObj.has("anchorID") || !(jsonObj.get("anchorID") instanceof String)) {
 			return "{\"error\":\"Missing or invalid 'anchorID' in boot request.\"}";
@@ -289,14 +821,28 @@ public class C03a extends HttpServlet {
             return "{\"error\":\"Unauthorized anchor ID.\"}";
         }
 
-		Anchor anchor = new Anchor(id, System.currentTimeMillis(), System.currentTimeMillis());
-		int existingId = this.dbLogger.getAnchorIdByCode(id);
+		long now = this.clock.millis();
+		Anchor anchor = new Anchor(id, now, now);
 
-		if (existingId != -1) {
-			anchor.setDeviceID(existingId);
-		} else {
-			int newId = this.dbLogger.saveAnchor(anchor);
-			anchor.setDeviceID(newId);
+		double[] position = this.anchorPositions.get(id);
+		if (position != null) {
+			anchor.setPosition(position[0], position[1], position[2]);
+		}
+
+		// Without a database (virtual time) the anchor keeps no identifier.
+		if (this.dbLogger != null) {
+			int existingId = this.dbLogger.getAnchorIdByCode(id);
+			if (existingId != -1) {
+				anchor.setDeviceID(existingId);
+				if (position != null) {
+					this.dbLogger.saveAnchor(anchor);
+				} else {
+					this.dbLogger.loadAnchorPosition(anchor);
+				}
+			} else {
+				int newId = this.dbLogger.saveAnchor(anchor);
+				anchor.setDeviceID(newId);
+			}
 		}
 
 		this.synchronizer.addNewAnchor(anchor);
@@ -333,11 +879,27 @@ public class C03a extends HttpServlet {
             } catch (IOException e) {}
         }
 	    
-	    Anchor anchor = this.synchronizer.listOfAnchors.get(anchorID);
+	    RegistrySnapshot registry = this.synchronizer.getRegistry();
+	    Anchor anchor = registry.getAnchor(anchorID);
 	    if (anchor == null) return this.synchronizer.getRegisterResponse();
-	    anchor.setLastSeen(System.currentTimeMillis());
+	    anchor.setLastSeen(this.clock.millis());
+
+	    matchReadings(registry, anchor, roundId, jsonObj.getJSONArray("tags"));
+	    startOutputProcess(this.synchronizer.getTagList());
+	    return this.getResponse(anchor);
+	}
 
-	    JSONArray tagArray = jsonObj.getJSONArray("tags");
+	/**
+	 * Adds the readings of a measurement report to the open measurements of
+	 * their round.
+	 *
+	 * @param registry The registered devices.
+	 * @param anchor The reporting anchor.
+	 * @param roundId The round of the report.
+	 * @param tagArray The {@code tags} of the report.
+	 */
+	void matchReadings(RegistrySnapshot registry, Anchor anchor, long roundId, JSONArray tagArray) throws JSONException {
+	    String anchorID = anchor.getDeviceName();
 	    for (int i = 0; i < tagArray.length(); i++) {
 	        JSONObject obj = tagArray.getJSONObject(i);
 	        String tagID = obj.getString("tagID");
@@ -349,25 +911,21 @@ public class C03a extends HttpServlet {
 	        long executedAt = obj.getLong("executedAt");
 	        logAnchorExecution(roundId, anchorID, tagID, executedAt);
 	        
-	        Tag tag = this.synchronizer.listOfTags.get(tagID);
+	        Tag tag = registry.getTag(tagID);
 
 	        if (tag != null) {
-	            tag.setLastSeen(System.currentTimeMillis());
+	            tag.setLastSeen(this.clock.millis());
 	            
-	            Measurement targetRound = tag.getMeasurements().stream()
-	                .filter(m -> !m.getSentForOutput())
-	                .filter(m -> !m.getAnchors().contains(anchor)) 
-	                .filter(m -> m.checkIfValid(executedAt) && m.getCustomMeasurementRoundId() == roundId) // Match by numeric ID
-	                .findFirst()
-	                .orElse(null);
-
-	            if (targetRound != null) {
-	                targetRound.getReadings().add(new Reading(anchor, obj.getDouble("distance"), executedAt, 5));
+	            Measurement targetRound = tag.getMeasurements().get(roundId); // Match by numeric ID
+
+	            // The round may have been emitted (or recycled) since it was found, so it re-checks under its lock.
+	            if (targetRound != null && targetRound.checkIfValid(executedAt) && targetRound.offerReading(tag, roundId, anchor, obj.getDouble("distance"), executedAt, 5)) {
+	                if (targetRound.isFollowUp()) this.emissionPolicy.lateReading(true);
+	            } else {
+	                this.emissionPolicy.lateReading(false);
 	            }
 	        }
 	    }
-	    startOutputProcess(new ArrayList<>(this.synchronizer.listOfTags.values()));
-	    return this.getResponse(anchor);
 	}
 
 	private String handleScanRequest(JSONObject jsonObj) throws JSONException {
@@ -380,9 +938,9 @@ public class C03a extends HttpServlet {
              return "{\"error\":\"Unauthorized anchor ID.\"}";
         }
 		
-		Anchor anchor = this.synchronizer.listOfAnchors.get(anchorID);
+		Anchor anchor = this.synchronizer.getRegistry().getAnchor(anchorID);
 		if (anchor != null) {
-		    anchor.setLastSeen(System.currentTimeMillis());
+		    anchor.setLastSeen(this.clock.millis());
 		} else {
 			return this.synchronizer.getRegisterResponse();
 		}
@@ -401,24 +959,26 @@ public class C03a extends HttpServlet {
                     continue; 
                 }
 
-				Tag tag = new Tag(tagID, System.currentTimeMillis(), System.currentTimeMillis());
+				Tag tag = new Tag(tagID, this.clock.millis(), this.clock.millis());
 
 				if (!this.synchronizer.tagExists(tag)) {
-					int existingId = this.dbLogger.getTargetIdByCode(tagID);
+					if (this.dbLogger != null) {
+						int existingId = this.dbLogger.getTargetIdByCode(tagID);
 
-					if (existingId != -1) {
-						tag.setDeviceID(existingId);
-					} else {
-						tag.setDeviceID(this.dbLogger.saveTarget(tag));
+						if (existingId != -1) {
+							tag.setDeviceID(existingId);
+						} else {
+							tag.setDeviceID(this.dbLogger.saveTarget(tag));
+						}
 					}
 
-					tag.setLastSeen(System.currentTimeMillis());
+					tag.setLastSeen(this.clock.millis());
 					this.synchronizer.addNewTag(tag);
 					
 				} else {
-					Tag tagToUpdate = this.synchronizer.listOfTags.get(tagID);
+					Tag tagToUpdate = this.synchronizer.getRegistry().getTag(tagID);
 					if(tagToUpdate != null) {
-						tagToUpdate.setLastSeen(System.currentTimeMillis());
+						tagToUpdate.setLastSeen(this.clock.millis());
 					}
 				}
 			}
@@ -426,64 +986,99 @@ public class C03a extends HttpServlet {
 		return this.getResponse(anchor);
 	}
 
-	private void startOutputProcess(List<Tag> tagList) {
+	/**
+	 * Emits the measurements of every tag that are due, as the deadline sweep
+	 * does every {@code output.sweepInterval} milliseconds.
+	 */
+	public void sweepOutput() {
+	    startOutputProcess(this.synchronizer.getTagList());
+	}
+
+	/**
+	 * Emits the due measurements of the given tags. Report threads and the
+	 * deadline sweep call it concurrently: every measurement is looked at
+	 * under a reference of the caller's own, so it cannot be recycled
+	 * meanwhile, and only the caller that claims it emits it.
+	 */
+	void startOutputProcess(List<Tag> tagList) {
 	    if (tagList == null || tagList.isEmpty()) return;
-	    List<Tag> tagsToSubmit = new ArrayList<>();
-	    int anchorCount = this.synchronizer.listOfAnchors.size();
-	    long now = System.currentTimeMillis();
+	    int anchorCount = this.synchronizer.getAnchorList().size();
+	    long now = this.clock.millis();
 
 	    for (Tag tag : tagList) {
-	        if (tag != null && !tag.getMeasurements().isEmpty()) {
-	            Iterator<Measurement> iterator = tag.getMeasurements().iterator();
-	            
-	            while (iterator.hasNext()) {
-	                Measurement m = iterator.next();
-	                boolean isComplete = m.getReadings().size() >= anchorCount;
-	                boolean isStale = now > m.getMeasurmentEndTime() + 10000; 
-
-					if (!m.getSentForOutput() && !m.getReadings().isEmpty() && (isComplete || isStale)) {
-	                    m.setSentForOutput(true);
-	                    Tag tagClone = new Tag(tag.getDeviceName(), tag.getinitializedAt(), tag.getLastSeen());
-	                    tagClone.setDeviceID(tag.getDeviceID());
-	                    tagClone.getMeasurements().add(m); 
-	                    tagsToSubmit.add(tagClone);
-	                }
-
-	                if (m.getSentForOutput() || isStale) {
-	                    iterator.remove();
-	                }
+	        if (tag == null) continue;
+	        MeasurementRing ring = tag.getMeasurements();
+	        for (int slot = 0; slot < ring.capacity(); slot++) {
+	            Measurement m = ring.getSlot(slot);
+	            if (m == null || !m.tryRetain()) continue;
+	            try {
+	                // A recycled measurement may already belong to another tag.
+	                if (m.getTag() == tag) emitIfDue(tag, ring, m, anchorCount, now);
+	            } finally {
+	                m.release();
 	            }
 	        }
 	    }
+	}
 
-	    if (!tagsToSubmit.isEmpty()) {
-	        this.outputManager.submitTagBatch(tagsToSubmit);
+	private void emitIfDue(Tag tag, MeasurementRing ring, Measurement m, int anchorCount, long now) {
+	    EmissionPolicy.Reason reason = this.emissionPolicy.decide(m, anchorCount, now);
+
+	    if (reason != EmissionPolicy.Reason.NONE && m.claimForOutput()) {
+	        Measurement followUp = this.emissionPolicy.emitted(m, reason, now);
+	        if (this.readingFilter != null) {
+	            this.readingFilter.apply(tag, m);
+	        }
+	        if (m.hasReadings()) {
+	            this.recentStore.record(tag.getDeviceName(), m);
+	            // The output task holds its own reference and releases it when done.
+	            m.retain();
+	            this.outputManager.submit(tag, m);
+	        }
+	        if (followUp != null) {
+	            // Late readings of the round now go to the follow-up.
+	            if (ring.replace(m, followUp)) m.release();
+	            else followUp.release();
+	            return;
+	        }
+	    }
+
+	    // Only whoever takes it out of the ring releases the ring's reference.
+	    if (this.emissionPolicy.isDone(m, now) && ring.remove(m)) {
+	        m.release();
 	    }
 	}
 
+	private static boolean hasStaleMeasurement(List<Tag> tagList, long now) {
+	    for (Tag tag : tagList) {
+	        MeasurementRing ring = tag.getMeasurements();
+	        for (int slot = 0; slot < ring.capacity(); slot++) {
+	            Measurement m = ring.getSlot(slot);
+	            if (m != null && now > m.getMeasurmentEndTime() + EmissionPolicy.STALE_AFTER) return true;
+	        }
+	    }
+	    return false;
+	}
+
 	private String getResponse(Anchor anchor) {
 	    Action action = this.actionManager.nextAction();
 	    String response = null;
 	    
-	    long evictionThreshold = System.currentTimeMillis() - (6 * config.getAmFastScanPeriod());
-	    this.synchronizer.listOfTags.values().removeIf(t -> t.getLastSeen() < evictionThreshold);
-	    this.synchronizer.listOfAnchors.values().removeIf(t -> t.getLastSeen() < evictionThreshold);
+	    long evictionThreshold = this.clock.millis() - (6 * config.getAmFastScanPeriod());
+	    this.synchronizer.evictDevices(evictionThreshold);
 	    
-	    List<Tag> tagList = new ArrayList<>(this.synchronizer.listOfTags.values());
+	    RegistrySnapshot registry = this.synchronizer.getRegistry();
+	    List<Tag> tagList = registry.tags();
 	
-	    if (this.synchronizer.listOfTags.isEmpty() || this.synchronizer.listOfAnchors.isEmpty()) {
+	    if (registry.tags().isEmpty() || registry.anchors().isEmpty()) {
 	        response = this.synchronizer.getSlowScanResponse(this.actionManager.getSlowScanTime());
 	    } else if (action == Action.FAST_SCAN) {
 	        response = this.synchronizer.getFastScanResponse(this.actionManager.getFastScanTime());
 	    } else {
 	        response = this.synchronizer.getMeasurmentResponse(anchor, this.actionManager.getScanTime(), this.config.getAmSafetyBuffer(), this.config);
 	
-	        long now = System.currentTimeMillis();
-	        boolean isStale = tagList.stream().anyMatch(tag -> tag.getMeasurements().stream()
-	            .anyMatch(m -> now > m.getMeasurmentEndTime() + 10000)); 
-	
-	        if (tagList.stream().anyMatch(t -> t.getMeasurements().isEmpty()) || isStale) {
-	            if (isStale) startOutputProcess(tagList);
+	        if (hasStaleMeasurement(tagList, this.clock.millis())) {
+	            startOutputProcess(tagList);
 	        }
 	    }
 	
@@ -497,12 +1092,4 @@ public class C03a extends HttpServlet {
 			writer.flush();
 		}
 	}
-	
-	public synchronized void signalFatalError(String reason) {
-	    if (!isOperational) return;
-	    this.isOperational = false;
-	    logger.severe("FATAL DATABASE ERROR: " + reason + ". Terminating service.");
-	    if (this.outputManager != null) this.outputManager.shutdown();
-	    if (this.datasource != null) this.datasource.close();
-	}
 }
\ No newline at end of file
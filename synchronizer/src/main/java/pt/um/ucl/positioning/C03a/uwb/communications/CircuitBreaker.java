@@ -0,0 +1,132 @@
+package pt.um.ucl.positioning.C03a.uwb.communications;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A per-sink circuit breaker for the output path.
+ * <p>
+ * While {@link State#CLOSED} every call reaches the sink. After
+ * {@code failureThreshold} consecutive failures the breaker opens and calls are
+ * rejected immediately, without touching the sink, for {@code openTime}
+ * milliseconds. After that a single probe call is let through
+ * ({@link State#HALF_OPEN}): its success closes the breaker again and its
+ * failure re-opens it for another {@code openTime}.
+ * <p>
+ * All counters are exposed for the {@code /status} page.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class CircuitBreaker {
+
+	/**
+	 * Enumeration of the breaker states.
+	 */
+	public enum State {
+		/** The sink is healthy and all calls go through. */
+		CLOSED,
+		/** The sink is considered down and calls fail fast. */
+		OPEN,
+		/** A single probe call is checking whether the sink recovered. */
+		HALF_OPEN
+	}
+
+	/** The name of the protected sink, used for logs and metrics. */
+	private final String name;
+	/** Consecutive failures needed to open the breaker. */
+	private final int failureThreshold;
+	/** How long the breaker stays open before probing (milliseconds). */
+	private final long openTime;
+	/** Flag to enable/disable Logs. */
+	private final boolean enableLogs;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures = 0;
+	private long openedAt = 0;
+	private boolean probeInFlight = false;
+
+	private final AtomicLong successCount = new AtomicLong();
+	private final AtomicLong failureCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong openedCount = new AtomicLong();
+
+	/**
+	 * Constructs a new, closed circuit breaker.
+	 *
+	 * @param name The name of the protected sink.
+	 * @param failureThreshold Consecutive failures needed to open the breaker.
+	 * @param openTime How long the breaker stays open before probing, in milliseconds.
+	 * @param enableLogs {@code true} to log when the breaker opens.
+	 */
+	public CircuitBreaker(String name, int failureThreshold, long openTime, boolean enableLogs) {
+		this.name = name;
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openTime = openTime;
+		this.enableLogs = enableLogs;
+	}
+
+	/**
+	 * Checks whether a call may reach the sink now. Rejected calls are counted.
+	 *
+	 * @return {@code true} if the call may proceed.
+	 */
+	public synchronized boolean allowRequest() {
+		if (this.state == State.OPEN && System.currentTimeMillis() - this.openedAt >= this.openTime) {
+			this.state = State.HALF_OPEN;
+			this.probeInFlight = false;
+		}
+		if (this.state == State.CLOSED) {
+			return true;
+		}
+		if (this.state == State.HALF_OPEN && !this.probeInFlight) {
+			this.probeInFlight = true;
+			return true;
+		}
+		this.rejectedCount.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Records a successful call, closing the breaker.
+	 */
+	public synchronized void recordSuccess() {
+		this.successCount.incrementAndGet();
+		this.consecutiveFailures = 0;
+		this.probeInFlight = false;
+		this.state = State.CLOSED;
+	}
+
+	/**
+	 * Records a failed call, opening the breaker if the threshold is reached
+	 * or if the failed call was the recovery probe.
+	 */
+	public synchronized void recordFailure() {
+		this.failureCount.incrementAndGet();
+		this.consecutiveFailures++;
+		if (this.state == State.HALF_OPEN || (this.state == State.CLOSED && this.consecutiveFailures >= this.failureThreshold)) {
+			this.state = State.OPEN;
+			this.openedAt = System.currentTimeMillis();
+			this.probeInFlight = false;
+			this.openedCount.incrementAndGet();
+			if (this.enableLogs)
+				System.err.println("Circuit breaker for " + this.name + " opened after " + this.consecutiveFailures + " consecutive failures.");
+		}
+	}
+
+	/**
+	 * Gets how long the breaker stays open before letting a probe through.
+	 *
+	 * @return The remaining open time in milliseconds, or 0 if the breaker is not open.
+	 */
+	public synchronized long getRemainingOpenTime() {
+		if (this.state != State.OPEN) return 0;
+		return Math.max(0, this.openTime - (System.currentTimeMillis() - this.openedAt));
+	}
+
+	public String getName() { return name; }
+	public synchronized State getState() { return state; }
+	public long getSuccessCount() { return successCount.get(); }
+	public long getFailureCount() { return failureCount.get(); }
+	public long getRejectedCount() { return rejectedCount.get(); }
+	public long getOpenedCount() { return openedCount.get(); }
+}
@@ -0,0 +1,75 @@
+package pt.um.ucl.positioning.C03a.uwb.communications;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+import pt.um.ucl.positioning.C03a.uwb.database.MeasurementsDatabaseLogger;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+import pt.um.ucl.positioning.C03a.uwb.sinks.OutputSink;
+import pt.um.ucl.positioning.C03a.uwb.sinks.SinkRecord;
+
+/**
+ * Sink that persists measurements through the {@link MeasurementsDatabaseLogger}.
+ * <p>
+ * The first attempt of every measurement runs on the sink's worker thread.
+ * Failed writes are re-attempted by the {@link RetryScheduler} behind the
+ * database {@link CircuitBreaker}, so a failure never fails the batch.
+ * Each measurement is retained until its write succeeded or was dropped.
+ * With {@code db.bulkLoad}, the readings are written later by the
+ * {@link pt.um.ucl.positioning.C03a.uwb.database.ToAReadingsBulkLoader},
+ * which re-attempts failed batches with the same scheduler, breaker and policy.
+ * <p>
+ * The generated {@code measurementID} is not written back to the shared
+ * measurement, which the other sinks read concurrently. A row is found from
+ * a payload by its {@code targetID} and {@code timestamp}.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class DatabaseSink implements OutputSink {
+
+	private final MeasurementsDatabaseLogger dbLogger;
+	private final RetryScheduler retryScheduler;
+	private final CircuitBreaker breaker;
+	private final RetryScheduler.Policy policy;
+
+	/**
+	 * Constructs a new database sink.
+	 *
+	 * @param dbLogger The shared {@link MeasurementsDatabaseLogger}.
+	 * @param retryScheduler The shared {@link RetryScheduler}.
+	 * @param breaker The database {@link CircuitBreaker}.
+	 * @param config The system configuration.
+	 */
+	public DatabaseSink(MeasurementsDatabaseLogger dbLogger, RetryScheduler retryScheduler, CircuitBreaker breaker, Config config) {
+		this.dbLogger = dbLogger;
+		this.retryScheduler = retryScheduler;
+		this.breaker = breaker;
+		this.policy = new RetryScheduler.Policy(config.getDbMaxRetries(), config.getDbRetryDelay(), config.getDbRetryMaxDelay());
+		// Bulk-loaded readings are written after the write below returns; retry them the same way.
+		dbLogger.setRetry(retryScheduler, breaker, this.policy);
+	}
+
+	@Override
+	public String getName() {
+		return "database";
+	}
+
+	@Override
+	public void write(List<SinkRecord> batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			Tag tag = batch.get(i).tag();
+			Measurement measurement = batch.get(i).measurement();
+			measurement.retain();
+			this.retryScheduler.submit("DB write for tag " + tag.getDeviceName(), this.breaker, this.policy, () -> {
+				if (this.dbLogger.saveDataToA(tag, measurement) <= 0) {
+					throw new SQLException("Invalid ID returned from DatabaseLogger");
+				}
+				return CompletableFuture.completedFuture(null);
+			}, measurement::release);
+		}
+	}
+}
@@ -3,158 +3,104 @@ package pt.um.ucl.positioning.C03a.uwb.communications;
 import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
 import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
 import pt.um.ucl.positioning.C03a.uwb.config.Config;
-import pt.um.ucl.positioning.C03a.uwb.database.MeasurementsDatabaseLogger;
-import org.json.JSONObject;
-
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import pt.um.ucl.positioning.C03a.uwb.positioning.Position;
+import pt.um.ucl.positioning.C03a.uwb.positioning.PositionEngine;
+import pt.um.ucl.positioning.C03a.uwb.positioning.TagTracker;
+import pt.um.ucl.positioning.C03a.uwb.positioning.TrackState;
+import pt.um.ucl.positioning.C03a.uwb.sinks.SinkPipeline;
+import pt.um.ucl.positioning.C03a.uwb.sinks.SinkRecord;
 
 /**
- * A {@link Runnable} task that processes a single {@link Tag}'s measurement
- * data.
+ * A {@link Runnable} task that processes one completed {@link Measurement}
+ * of a {@link Tag}.
  * <p>
  * This task is designed to be run by the {@link OutputThread}'s executor
- * service. It performs two main actions based on the application configuration:
+ * service. It performs the following actions based on the application configuration:
  * <ol>
- * <li>Persists the tag's measurement data to the database via the
- * {@link MeasurementsDatabaseLogger}.</li>
- * <li>Sends the measurement data as a JSON payload to the remote Position
- * Estimator endpoint via HTTP POST.</li>
+ * <li>Solves the tag position in-process with the {@link PositionEngine},
+ * and updates its track in the {@link TagTracker}, if enabled.</li>
+ * <li>Publishes the measurement, with its fix and track, to the
+ * {@link SinkPipeline}, which hands it to every output sink (database,
+ * Position Estimator, segment store, ...) in parallel.</li>
  * </ol>
  * These actions are performed asynchronously and in parallel for different
  * tags.
  * 
  * @author Gustavo Oliveira
- * @version 0.6
+ * @version 0.7
  */
 public class OutputTask implements Runnable {
-	/** The tag containing the measurement data to process. */
+	/** Reused fix of each output thread. */
+	private static final ThreadLocal<Position> SCRATCH = ThreadLocal.withInitial(Position::new);
+	/** The measured tag. */
 	private final Tag tag;
-	/** The database logger instance. */
-	private final MeasurementsDatabaseLogger dbLogger;
+	/** The completed measurement, whose reference this task releases. */
+	private final Measurement measurement;
 	/** Flag to enable/disable Logs. */
 	private final boolean enableLogs;
-	/** System configuration. */
-	private final Config config;
 	/** Servelet context. */
 	private final C03a context;
+	/** The shared in-process position solver, or {@code null}. */
+	private final PositionEngine positionEngine;
+	/** The shared per-tag tracker, or {@code null}. */
+	private final TagTracker tagTracker;
+	/** The output sinks. */
+	private final SinkPipeline sinks;
 
 	/**
 	 * Constructs a new output task.
 	 *
-	 * @param tag         The tag with its completed measurement data.
-	 * @param endpointUrl The URL of the Position Estimator service.
-	 * @param dbLogger    The shared {@link MeasurementsDatabaseLogger} instance.
-	 * @param exportToDbQ {@code true} to enable database logging.
-	 * @param exportToPeQ {@code true} to enable posting to the Position Estimator.
-	 * @param token       The authentication token for the Position Estimator.
+	 * @param tag         The measured tag.
+	 * @param measurement The completed measurement. The task releases one reference to it.
+	 * @param positionEngine The shared {@link PositionEngine}, or {@code null}.
+	 * @param tagTracker  The shared {@link TagTracker}, or {@code null}.
+	 * @param sinks       The shared {@link SinkPipeline}.
+	 * @param config      The system configuration.
 	 */
-	public OutputTask(C03a context, Tag tag, MeasurementsDatabaseLogger dbLogger, Config config) {
+	public OutputTask(C03a context, Tag tag, Measurement measurement, PositionEngine positionEngine, TagTracker tagTracker, SinkPipeline sinks, Config config) {
 		this.context = context;
 		this.tag = tag;
-		this.dbLogger = dbLogger;
+		this.measurement = measurement;
+		this.positionEngine = positionEngine;
+		this.tagTracker = tagTracker;
+		this.sinks = sinks;
 		this.enableLogs = config.isEnableOutputLogs();
-		this.config = config;
 	}
 
 	/**
 	 * The main execution logic for the task.
 	 * <p>
-	 * It handles persisting the tag's last measurement to the database and/or
-	 * sending it to the Position Estimator service.
+	 * The fix and track are computed here, since they are cheap and the
+	 * sinks may want them; everything else is left to the sinks.
 	 */
 	@Override
 	public void run() {
-		if (tag.getMeasurements().isEmpty()) {
-			if (this.enableLogs)
-				System.err.println("Error: Tag " + tag.getDeviceName() + " has no measurements to output.");
-			return;
+		try {
+			output(measurement);
+		} finally {
+			// The sinks retained what they still need.
+			measurement.release();
 		}
+	}
 
-		Measurement measurement = tag.getMeasurements().get(tag.getMeasurements().size() - 1);
-		int measurementId = -1;
-
-		if (this.config.isExportToDbQ()) {
-			try {
-				int retries = 0;
-				boolean success = false;
-
-				while (retries < config.getDbMaxRetries() && !success) {
-					try {
-						measurementId = dbLogger.saveDataToA(tag, measurement);
-
-						if (measurementId > 0) {
-							success = true;
-							measurement.setMeasurmentId(measurementId);
-						} else {
-							throw new Exception("Invalid ID returned from DatabaseLogger");
-						}
-					} catch (Exception e) {
-						retries++;
-						if (enableLogs)
-							System.err.println("DB Failure (Attempt " + retries + "). Retrying...");
-
-						if (retries >= config.getDbMaxRetries()) {
-							this.context.signalFatalError("Failed to connect to DB after " + retries + " attempts.");
-							return;
-						}
+	private void output(Measurement measurement) {
+		Position position = null;
+		TrackState track = null;
 
-						try {
-							Thread.sleep(config.getDbRetryDelay());
-						} catch (InterruptedException ignored) {
-						}
-					}
-				}
-			} catch (Exception dbException) {
-				if (this.enableLogs)
-					System.err.println("DB Error for tag " + tag.getDeviceName() + ": " + dbException.getMessage());
-				return;
+		if (this.positionEngine != null) {
+			Position fix = SCRATCH.get();
+			boolean accepted = this.positionEngine.solve(tag.getDeviceName(), measurement, fix);
+			if (accepted) {
+				position = new Position();
+				position.set(fix);
 			}
-		}
-
-		if (this.config.isExportToPeQ()) {
-			HttpURLConnection connection = null;
-			try {
-				JSONObject payloadJson = measurement.toJson();
-				payloadJson.put("estimateAccessToken", this.config.getPeToken());
-				String jsonString = payloadJson.toString();
-
-				byte[] postData = jsonString.getBytes(StandardCharsets.UTF_8);
-
-				URL url = new URI(config.getPeUrl()).toURL();
-				connection = (HttpURLConnection) url.openConnection();
-				connection.setRequestMethod("POST");
-				connection.setRequestProperty("Content-Type", "application/json");
-				connection.setRequestProperty("Content-Length", String.valueOf(postData.length));
-				connection.setDoOutput(true);
-
-				try (OutputStream os = connection.getOutputStream()) {
-					os.write(postData);
-				}
-
-				int code = connection.getResponseCode();
-				
-				try (InputStream is = code >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
-                    if (is != null) is.readAllBytes(); 
-                }
-
-				if (this.enableLogs) {
-					System.out.println("Tag: " + tag.getDeviceName() + " | Sending JSON:\n" + payloadJson.toString(4));
-					System.out.println("Tag: " + tag.getDeviceName() + " | Estimator Response: " + code);
-				}
-
-			} catch (Exception httpException) {
-				if (this.enableLogs)
-					System.err.println("HTTP Error for tag " + tag.getDeviceName() + ": " + httpException.getMessage());
-			} finally {
-				if (connection != null) {
-					connection.disconnect();
-				}
+			if (this.tagTracker != null) {
+				this.tagTracker.update(tag.getDeviceName(), measurement, accepted ? fix : null);
+				track = new TrackState();
+				if (!this.tagTracker.read(tag.getDeviceName(), track)) track = null;
 			}
 		}
+
+		this.sinks.publish(new SinkRecord(tag, measurement, position, track));
 	}
-}
\ No newline at end of file
+}
@@ -3,8 +3,16 @@ package pt.um.ucl.positioning.C03a.uwb.communications;
 import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
 import pt.um.ucl.positioning.C03a.uwb.config.Config;
 import pt.um.ucl.positioning.C03a.uwb.database.MeasurementsDatabaseLogger;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+import pt.um.ucl.positioning.C03a.uwb.positioning.PositionEngine;
+import pt.um.ucl.positioning.C03a.uwb.positioning.TagTracker;
+import pt.um.ucl.positioning.C03a.uwb.sinks.FileSink;
+import pt.um.ucl.positioning.C03a.uwb.sinks.MemorySink;
+import pt.um.ucl.positioning.C03a.uwb.sinks.SinkPipeline;
+import pt.um.ucl.positioning.C03a.uwb.storage.ReadingsSegmentStore;
 
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -14,7 +22,13 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * This class decouples the main servlet thread ({@link C03a}) from the (potentially slow)
  * work of database logging and HTTP posting. It accepts batches of {@link Tag} objects
- * and submits a new {@link OutputTask} for each tag to the thread pool.
+ * and submits a new {@link OutputTask} for each tag to the thread pool, which hands
+ * the measurement to the {@link SinkPipeline}.
+ * <p>
+ * The pipeline is built here: the database, Position Estimator and segment store
+ * sinks are enabled by the {@code exportTo*} flags, and the sinks listed in
+ * {@code sinks} are added after them. Each runs on its own queue, so the
+ * estimator never waits for the database.
  * 
  * @author Gustavo Oliveira
  * @version 0.6
@@ -32,6 +46,22 @@ public class OutputThread {
     private final Config config;
     /** Servelet context. */
     private final C03a context;
+    /** The Position Estimator client shared by all output tasks. */
+    private final PositionEstimatorClient peClient;
+    /** Schedules re-attempts of failed database writes and estimator posts. */
+    private final RetryScheduler retryScheduler;
+    /** Circuit breaker protecting the database. */
+    private final CircuitBreaker dbBreaker;
+    /** Circuit breaker protecting the Position Estimator. */
+    private final CircuitBreaker peBreaker;
+    /** The local segment store for raw readings, or {@code null} when disabled. */
+    private final ReadingsSegmentStore segmentStore;
+    /** The in-process position solver, or {@code null} when disabled. */
+    private final PositionEngine positionEngine;
+    /** The per-tag Kalman tracker, or {@code null} when disabled. */
+    private final TagTracker tagTracker;
+    /** Fans completed measurements out to the output sinks. */
+    private final SinkPipeline sinks;
 
     /**
      * Constructs a new OutputThread manager.
@@ -46,21 +76,75 @@ public class OutputThread {
     	this.context = context;
         this.dbLogger = dbLogger;
         this.config = config;
+        this.retryScheduler = new RetryScheduler(this.executorService, config.getRetryMaxPending(), config.isEnableOutputLogs());
+        this.dbBreaker = new CircuitBreaker("Database", config.getDbBreakerFailureThreshold(), config.getDbBreakerOpenTime(), config.isEnableOutputLogs());
+        this.peBreaker = new CircuitBreaker("Position Estimator", config.getPeBreakerFailureThreshold(), config.getPeBreakerOpenTime(), config.isEnableOutputLogs());
+        this.peClient = config.isExportToPeQ() ? new PositionEstimatorClient(config, this.peBreaker, this.retryScheduler) : null;
+        this.segmentStore = config.isExportToStoreQ() ? openSegmentStore(config) : null;
+        this.positionEngine = config.isPositioningEnabled() ? new PositionEngine(config) : null;
+        if (config.isTrackingEnabled() && this.positionEngine == null && config.isEnableGeneralLogs()) {
+            System.err.println("Tag tracking requires positioning.enabled, tracks will not be kept.");
+        }
+        this.tagTracker = config.isTrackingEnabled() && this.positionEngine != null ? new TagTracker(config) : null;
+        this.sinks = createSinks(config);
+        this.sinks.start();
+    }
+
+    private SinkPipeline createSinks(Config config) {
+        SinkPipeline pipeline = new SinkPipeline(config.isEnableOutputLogs());
+        if (config.isExportToDbQ()) {
+            pipeline.add(new DatabaseSink(this.dbLogger, this.retryScheduler, this.dbBreaker, config), config.getSinkSettings("database"));
+        }
+        if (this.peClient != null) {
+            pipeline.add(new PositionEstimatorSink(this.peClient), config.getSinkSettings("estimator"));
+        }
+        if (this.segmentStore != null) {
+            pipeline.add(new SegmentStoreSink(this.segmentStore), config.getSinkSettings("store"));
+        }
+        for (String sink : config.getSinks()) {
+            switch (sink) {
+                case "file":
+                    try {
+                        pipeline.add(new FileSink(Paths.get(config.getSinkFilePath())), config.getSinkSettings("file"));
+                    } catch (IOException e) {
+                        if (config.isEnableGeneralLogs()) System.err.println("Could not open the file sink, it is disabled: " + e.getMessage());
+                    }
+                    break;
+                case "memory":
+                    pipeline.add(new MemorySink(config.getSinkMemoryCapacity()), config.getSinkSettings("memory"));
+                    break;
+                default:
+                    if (config.isEnableGeneralLogs()) System.err.println("Unknown output sink '" + sink + "' ignored.");
+            }
+        }
+        return pipeline;
+    }
+
+    private static ReadingsSegmentStore openSegmentStore(Config config) {
+        try {
+            ReadingsSegmentStore store = new ReadingsSegmentStore(Paths.get(config.getStoreDirectory()),
+                    config.getStoreSegmentRecords(), config.getStoreSegmentDuration(),
+                    config.getStoreRetentionHours() * 3600000L, config.getStoreIndexInterval(), config.isEnableOutputLogs());
+            store.startMaintenance(config.getStoreMaintenanceInterval());
+            return store;
+        } catch (IOException e) {
+            if (config.isEnableGeneralLogs()) System.err.println("Could not open the segment store, raw readings will not be stored locally: " + e.getMessage());
+            return null;
+        }
     }
     
     /**
-     * Submits a batch of tags for processing.
+     * Submits a completed measurement for processing.
      * <p>
-     * For each tag in the list, a new {@link OutputTask} is created and
-     * submitted to the thread pool for asynchronous execution.
+     * A new {@link OutputTask} is created and submitted to the thread pool
+     * for asynchronous execution. The task takes over one reference to the
+     * measurement, which the caller must have retained.
      *
-     * @param tags A list of {@link Tag} objects, each containing a
-     * completed measurement to be processed.
+     * @param tag The measured tag.
+     * @param measurement The completed measurement.
      */
-    public void submitTagBatch(List<Tag> tags) {
-        for (Tag tag : tags) {
-            executorService.submit(new OutputTask(context, tag, dbLogger, this.config));
-        }
+    public void submit(Tag tag, Measurement measurement) {
+        executorService.submit(new OutputTask(context, tag, measurement, this.positionEngine, this.tagTracker, this.sinks, this.config));
     }
 
 
@@ -68,10 +152,14 @@ public class OutputThread {
      * Initiates a graceful shutdown of the thread pool.
      * <p>
      * It waits for a fixed period for tasks to complete. If tasks do not
-     * complete within the timeout, it forces a shutdown.
+     * complete within the timeout, it forces a shutdown. Measurements still
+     * waiting for a retry are dropped. The sinks are then given time to write
+     * what they have queued, which also flushes any pending Position Estimator
+     * batch, and are closed.
      */
     public void shutdown() {
         System.out.println("Shutting down output thread pool...");
+        retryScheduler.shutdown();
         executorService.shutdown();
         try {
             if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
@@ -82,5 +170,17 @@ public class OutputThread {
             executorService.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        this.sinks.shutdown(10000);
+        if (this.segmentStore != null) {
+            this.segmentStore.close();
+        }
     }
+
+    public RetryScheduler getRetryScheduler() { return retryScheduler; }
+    public CircuitBreaker getDbBreaker() { return dbBreaker; }
+    public CircuitBreaker getPeBreaker() { return peBreaker; }
+    public ReadingsSegmentStore getSegmentStore() { return segmentStore; }
+    public PositionEngine getPositionEngine() { return positionEngine; }
+    public TagTracker getTagTracker() { return tagTracker; }
+    public SinkPipeline getSinks() { return sinks; }
 }
\ No newline at end of file
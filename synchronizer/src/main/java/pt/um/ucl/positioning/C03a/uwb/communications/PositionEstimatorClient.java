@@ -0,0 +1,266 @@
+package pt.um.ucl.positioning.C03a.uwb.communications;
+
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementJsonWriter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared HTTP client for the remote Position Estimator service.
+ * <p>
+ * A single {@link HttpClient} is kept for the whole servlet lifetime so that
+ * connections to {@code pe.url} are reused (HTTP/2 when the estimator supports
+ * it, HTTP/1.1 keep-alive otherwise) instead of opening a new connection per
+ * measurement. Requests are sent asynchronously with a per-request timeout and
+ * at most {@code pe.maxInFlight} requests are pipelined at any time. Failed
+ * requests are re-attempted by the {@link RetryScheduler} behind the
+ * estimator's {@link CircuitBreaker}.
+ * <p>
+ * When {@code pe.batchEnabled} is set, payloads from many tags are packed into
+ * a single request of the form
+ * {@code {"estimateAccessToken": ..., "measurements": [...]}}, which is flushed
+ * as soon as {@code pe.batchSize} payloads are queued or {@code pe.batchMaxDelay}
+ * milliseconds have passed since the first queued payload.
+ * <p>
+ * Payloads are encoded with {@link MeasurementJsonWriter}, straight into a
+ * reused per-thread buffer (or the batch buffer), so no JSON tree or
+ * intermediate {@link String} is built per measurement. With output logs
+ * enabled, each single payload is also checked against
+ * {@link Measurement#toJson()} and a mismatch is logged.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class PositionEstimatorClient {
+
+	/** The shared, connection-pooling HTTP client. */
+	private final HttpClient httpClient;
+	/** The Position Estimator endpoint. */
+	private final URI endpoint;
+	/** The Position Estimator endpoint for batched payloads. */
+	private final URI batchEndpoint;
+	/** System configuration. */
+	private final Config config;
+	/** Flag to enable/disable Logs. */
+	private final boolean enableLogs;
+	/** Limits the number of requests awaiting a response. */
+	private final Semaphore inFlight;
+	/** The estimator's circuit breaker. */
+	private final CircuitBreaker breaker;
+	/** Scheduler for re-attempts of failed posts. */
+	private final RetryScheduler retryScheduler;
+	/** Retry settings for estimator posts. */
+	private final RetryScheduler.Policy retryPolicy;
+	/** Timer used to flush partially filled batches. */
+	private final ScheduledExecutorService flushTimer;
+
+	/** Encoded payloads waiting to be sent in the next batch. Guarded by {@code this}. */
+	private final MeasurementJsonWriter pendingBatch = new MeasurementJsonWriter(16 * 1024);
+	/** Number of payloads in {@code pendingBatch}. Guarded by {@code this}. */
+	private int pendingCount;
+	/** The scheduled deadline flush for the current batch. Guarded by {@code this}. */
+	private ScheduledFuture<?> pendingFlush;
+
+	/**
+	 * Constructs a new Position Estimator client.
+	 *
+	 * @param config The {@link Config} object containing the estimator settings.
+	 * @param breaker The estimator's {@link CircuitBreaker}.
+	 * @param retryScheduler The shared {@link RetryScheduler}.
+	 */
+	public PositionEstimatorClient(Config config, CircuitBreaker breaker, RetryScheduler retryScheduler) {
+		this.config = config;
+		this.breaker = breaker;
+		this.retryScheduler = retryScheduler;
+		this.retryPolicy = new RetryScheduler.Policy(config.getPeMaxRetries(), config.getPeRetryDelay(), config.getPeRetryMaxDelay());
+		this.enableLogs = config.isEnableOutputLogs();
+		this.endpoint = URI.create(config.getPeUrl());
+		this.batchEndpoint = URI.create(config.getPeBatchUrl());
+		this.inFlight = new Semaphore(config.getPeMaxInFlight());
+		this.httpClient = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.connectTimeout(Duration.ofMillis(config.getPeConnectTimeout()))
+				.build();
+
+		if (config.isPeBatchEnabled()) {
+			this.flushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "pe-batch-flush");
+				t.setDaemon(true);
+				return t;
+			});
+		} else {
+			this.flushTimer = null;
+		}
+	}
+
+	/**
+	 * Sends a measurement to the Position Estimator.
+	 * <p>
+	 * In batching mode the measurement is encoded into the pending batch and
+	 * sent with it, otherwise it is sent immediately on its own.
+	 *
+	 * @param measurement The completed measurement.
+	 * @param tagName     The tag name, used only for logging.
+	 */
+	public void send(Measurement measurement, String tagName) {
+		if (this.flushTimer == null) {
+			MeasurementJsonWriter writer = MeasurementJsonWriter.forCurrentThread();
+			writer.writeMeasurement(measurement, this.config.getPeToken());
+			if (this.enableLogs && !MeasurementJsonWriter.matchesToJson(measurement, this.config.getPeToken()))
+				System.err.println("Tag: " + tagName + " | Encoded JSON differs from Measurement.toJson()");
+			post(this.endpoint, writer.toByteArray(), "Tag: " + tagName);
+			return;
+		}
+
+		byte[] ready = null;
+		int readyCount = 0;
+		synchronized (this) {
+			if (this.pendingCount == 0) {
+				this.pendingBatch.writeByte('{');
+				String token = this.config.getPeToken();
+				if (token != null) {
+					this.pendingBatch.writeKey("estimateAccessToken").writeString(token).writeByte(',');
+				}
+				this.pendingBatch.writeKey("measurements").writeByte('[');
+			} else {
+				this.pendingBatch.writeByte(',');
+			}
+			this.pendingBatch.writeMeasurement(measurement);
+			this.pendingCount++;
+
+			if (this.pendingCount >= this.config.getPeBatchSize()) {
+				readyCount = this.pendingCount;
+				ready = drainBatch();
+			} else if (this.pendingFlush == null) {
+				this.pendingFlush = this.flushTimer.schedule(this::flush, this.config.getPeBatchMaxDelay(), TimeUnit.MILLISECONDS);
+			}
+		}
+		if (ready != null) {
+			post(this.batchEndpoint, ready, "Batch of " + readyCount);
+		}
+	}
+
+	/**
+	 * Sends whatever is currently queued for batching, if anything.
+	 */
+	public void flush() {
+		byte[] ready;
+		int readyCount;
+		synchronized (this) {
+			readyCount = this.pendingCount;
+			ready = drainBatch();
+		}
+		if (ready != null) {
+			post(this.batchEndpoint, ready, "Batch of " + readyCount);
+		}
+	}
+
+	/**
+	 * Closes the current batch body and cancels its deadline flush. Must be
+	 * called while holding the lock on {@code this}.
+	 *
+	 * @return The encoded batch request body, or {@code null} if nothing was queued.
+	 */
+	private byte[] drainBatch() {
+		if (this.pendingFlush != null) {
+			this.pendingFlush.cancel(false);
+			this.pendingFlush = null;
+		}
+		if (this.pendingCount == 0) {
+			return null;
+		}
+		this.pendingBatch.writeByte(']').writeByte('}');
+		byte[] ready = this.pendingBatch.toByteArray();
+		this.pendingBatch.reset();
+		this.pendingCount = 0;
+		return ready;
+	}
+
+	/**
+	 * Re-parses an encoded body for the output logs, indented as the logs
+	 * printed it before payloads were streamed. Only called with logs enabled.
+	 *
+	 * @param body The encoded JSON body.
+	 * @return The body, indented by 4 spaces.
+	 */
+	private static String indent(byte[] body) {
+		Object value = new JSONTokener(new String(body, StandardCharsets.UTF_8)).nextValue();
+		if (value instanceof JSONObject object) return object.toString(4);
+		if (value instanceof JSONArray array) return array.toString(4);
+		return String.valueOf(value);
+	}
+
+	/**
+	 * Posts a JSON body asynchronously through the estimator's circuit breaker.
+	 * Failed posts (I/O errors, timeouts and 5xx responses) are re-attempted by
+	 * the {@link RetryScheduler}. The calling thread only blocks when
+	 * {@code pe.maxInFlight} requests are already awaiting a response.
+	 *
+	 * @param uri       The target endpoint.
+	 * @param body      The encoded JSON body to send. Must not be modified afterwards.
+	 * @param logPrefix A short description of the payload, used only for logging.
+	 */
+	private void post(URI uri, byte[] body, String logPrefix) {
+		HttpRequest request = HttpRequest.newBuilder(uri)
+				.timeout(Duration.ofMillis(this.config.getPeRequestTimeout()))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(body))
+				.build();
+
+		this.retryScheduler.submit("estimator post for " + logPrefix, this.breaker, this.retryPolicy, () -> {
+			this.inFlight.acquire();
+			CompletableFuture<HttpResponse<Void>> future;
+			try {
+				future = this.httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+			} catch (RuntimeException e) {
+				this.inFlight.release();
+				throw e;
+			}
+			return future.whenComplete((response, error) -> {
+				this.inFlight.release();
+				if (error != null) {
+					if (this.enableLogs)
+						System.err.println("HTTP Error for " + logPrefix + ": " + error.getMessage());
+				} else if (this.enableLogs) {
+					System.out.println(logPrefix + " | Sent JSON:\n" + indent(body));
+					System.out.println(logPrefix + " | Estimator Response: " + response.statusCode());
+				}
+			}).thenApply(response -> {
+				if (response.statusCode() >= 500) {
+					throw new CompletionException(new IOException("Estimator responded with HTTP " + response.statusCode()));
+				}
+				return response;
+			});
+		});
+	}
+
+	/**
+	 * Flushes any pending batch and releases the underlying HTTP client,
+	 * waiting for in-flight requests to complete.
+	 */
+	public void shutdown() {
+		if (this.flushTimer != null) {
+			flush();
+			this.flushTimer.shutdownNow();
+		}
+		this.httpClient.close();
+	}
+}
@@ -0,0 +1,49 @@
+package pt.um.ucl.positioning.C03a.uwb.communications;
+
+import java.util.List;
+
+import pt.um.ucl.positioning.C03a.uwb.sinks.OutputSink;
+import pt.um.ucl.positioning.C03a.uwb.sinks.SinkRecord;
+
+/**
+ * Sink that hands measurements to the shared {@link PositionEstimatorClient},
+ * which sends, batches and retries them asynchronously.
+ * <p>
+ * It does not wait for the {@link DatabaseSink}: the estimator correlates a
+ * payload with its {@code Measurements} row by {@code targetID} and
+ * {@code timestamp}, and with its round by {@code roundId}.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class PositionEstimatorSink implements OutputSink {
+
+	private final PositionEstimatorClient peClient;
+
+	/**
+	 * Constructs a new estimator sink.
+	 *
+	 * @param peClient The shared {@link PositionEstimatorClient}.
+	 */
+	public PositionEstimatorSink(PositionEstimatorClient peClient) {
+		this.peClient = peClient;
+	}
+
+	@Override
+	public String getName() {
+		return "estimator";
+	}
+
+	@Override
+	public void write(List<SinkRecord> batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			SinkRecord record = batch.get(i);
+			this.peClient.send(record.measurement(), record.tag().getDeviceName());
+		}
+	}
+
+	@Override
+	public void close() {
+		this.peClient.shutdown();
+	}
+}
@@ -0,0 +1,260 @@
+package pt.um.ucl.positioning.C03a.uwb.communications;
+
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules re-attempts of failed output operations without parking threads.
+ * <p>
+ * A failed attempt is not retried in a sleep loop. Instead, a single timer
+ * thread waits for an exponentially growing, jittered delay and then hands
+ * the next attempt back to the worker {@link Executor}. Every attempt goes
+ * through the sink's {@link CircuitBreaker}, so while a sink is down attempts
+ * fail fast and only the breaker's probe reaches it.
+ * <p>
+ * An operation is dropped once it used up {@code maxAttempts}, or immediately
+ * if {@code maxPending} operations are already waiting for a retry, so a long
+ * outage cannot exhaust memory. Calls rejected by an open breaker never reached
+ * the sink and do not count as attempts; they wait for the breaker instead.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class RetryScheduler {
+
+	/**
+	 * A single attempt of an output operation.
+	 */
+	@FunctionalInterface
+	public interface Attempt {
+		/**
+		 * Performs the operation once.
+		 *
+		 * @return A stage that completes normally on success, or exceptionally on failure.
+		 * @throws Exception if the operation failed synchronously.
+		 */
+		CompletionStage<?> run() throws Exception;
+	}
+
+	/**
+	 * Retry settings for one sink.
+	 *
+	 * @param maxAttempts Maximum number of attempts, including the first one.
+	 * @param baseDelay Delay before the first retry, in milliseconds.
+	 * @param maxDelay Upper bound for the backoff delay, in milliseconds.
+	 */
+	public record Policy(int maxAttempts, long baseDelay, long maxDelay) {}
+
+	/** Timer thread that only waits for backoff delays. */
+	private final ScheduledExecutorService timer;
+	/** Executor that runs the re-attempts. */
+	private final Executor workers;
+	/** Maximum number of operations waiting for a retry. */
+	private final int maxPending;
+	/** Flag to enable/disable Logs. */
+	private final boolean enableLogs;
+
+	/** Operations whose next attempt is scheduled on the timer. */
+	private final Set<Task> waiting = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicLong retriedCount = new AtomicLong();
+	private final AtomicLong recoveredCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	/**
+	 * Constructs a new retry scheduler.
+	 *
+	 * @param workers The executor that runs re-attempts.
+	 * @param maxPending Maximum number of operations waiting for a retry.
+	 * @param enableLogs {@code true} to log dropped operations.
+	 */
+	public RetryScheduler(Executor workers, int maxPending, boolean enableLogs) {
+		this.workers = workers;
+		this.maxPending = maxPending;
+		this.enableLogs = enableLogs;
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "output-retry-timer");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Runs the first attempt of an operation on the calling thread and, if it
+	 * fails, schedules the following ones.
+	 *
+	 * @param description A short description of the operation, used only for logging.
+	 * @param breaker The circuit breaker of the target sink.
+	 * @param policy The retry settings of the target sink.
+	 * @param attempt The operation to perform.
+	 */
+	public void submit(String description, CircuitBreaker breaker, Policy policy, Attempt attempt) {
+		submit(description, breaker, policy, attempt, null);
+	}
+
+	/**
+	 * Like {@link #submit(String, CircuitBreaker, Policy, Attempt)}, and runs
+	 * {@code onDone} once the operation succeeded or was dropped, including
+	 * when {@link #shutdown()} drops it.
+	 *
+	 * @param description A short description of the operation, used only for logging.
+	 * @param breaker The circuit breaker of the target sink.
+	 * @param policy The retry settings of the target sink.
+	 * @param attempt The operation to perform.
+	 * @param onDone Runs once the operation is finished, or {@code null}.
+	 */
+	public void submit(String description, CircuitBreaker breaker, Policy policy, Attempt attempt, Runnable onDone) {
+		runAttempt(new Task(description, breaker, policy, attempt, onDone));
+	}
+
+	private void runAttempt(Task task) {
+		if (!task.breaker.allowRequest()) {
+			onFailure(task, false);
+			return;
+		}
+		CompletionStage<?> stage;
+		try {
+			stage = task.attempt.run();
+		} catch (Exception e) {
+			task.breaker.recordFailure();
+			onFailure(task, true);
+			return;
+		}
+		stage.whenComplete((result, error) -> {
+			if (error == null) {
+				task.breaker.recordSuccess();
+				if (task.pending) {
+					this.pending.decrementAndGet();
+					// A task only rejected by the breaker never failed at the sink.
+					if (task.attempts > 0) this.recoveredCount.incrementAndGet();
+				}
+				task.done();
+			} else {
+				task.breaker.recordFailure();
+				onFailure(task, true);
+			}
+		});
+	}
+
+	/**
+	 * Schedules the next attempt of a task, or drops it.
+	 *
+	 * @param task The failed task.
+	 * @param reachedSink {@code false} if the attempt was rejected by the breaker.
+	 */
+	private void onFailure(Task task, boolean reachedSink) {
+		boolean wasPending = task.pending;
+		long delay;
+		if (reachedSink) {
+			task.attempts++;
+			if (task.attempts >= task.policy.maxAttempts()) {
+				drop(task, wasPending, "after " + task.attempts + " attempts");
+				return;
+			}
+			delay = backoff(task.policy, task.attempts);
+		} else {
+			// The sink was not tried, so this is not an attempt: wait for the breaker's probe instead.
+			delay = Math.max(task.breaker.getRemainingOpenTime(), backoff(task.policy, 1));
+		}
+		if (!wasPending) {
+			task.pending = true;
+			if (this.pending.incrementAndGet() > this.maxPending) {
+				drop(task, true, "because the retry queue is full");
+				return;
+			}
+		}
+
+		this.waiting.add(task);
+		try {
+			this.timer.schedule(() -> {
+				// Already dropped by shutdown().
+				if (!this.waiting.remove(task)) return;
+				this.retriedCount.incrementAndGet();
+				try {
+					this.workers.execute(() -> runAttempt(task));
+				} catch (RejectedExecutionException e) {
+					drop(task, true, "because the output pool is shutting down");
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			if (this.waiting.remove(task)) drop(task, true, "because the retry scheduler is shut down");
+		}
+	}
+
+	private void drop(Task task, boolean wasPending, String reason) {
+		if (wasPending) this.pending.decrementAndGet();
+		this.droppedCount.incrementAndGet();
+		if (this.enableLogs)
+			System.err.println("Dropping " + task.description + " " + reason + " (" + task.breaker.getName() + " is " + task.breaker.getState() + ").");
+		task.done();
+	}
+
+	/**
+	 * Computes an exponential backoff with "equal jitter": half of the delay
+	 * is fixed and the other half is random, so retries of many measurements
+	 * that failed together do not hit the sink at the same instant.
+	 *
+	 * @param policy The retry settings.
+	 * @param attempts The number of attempts made so far (at least 1).
+	 * @return The delay before the next attempt, in milliseconds.
+	 */
+	static long backoff(Policy policy, int attempts) {
+		int shift = Math.min(attempts - 1, 30);
+		long delay = Math.min(policy.maxDelay(), policy.baseDelay() << shift);
+		if (delay <= 1) return Math.max(0, delay);
+		long half = delay / 2;
+		return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+	}
+
+	/**
+	 * Stops the timer. Operations still waiting for a retry are dropped, which
+	 * runs their {@code onDone}.
+	 */
+	public void shutdown() {
+		this.timer.shutdownNow();
+		for (Task task : this.waiting) {
+			if (this.waiting.remove(task)) drop(task, true, "because the retry scheduler is shut down");
+		}
+	}
+
+	public int getPendingCount() { return pending.get(); }
+	public long getRetriedCount() { return retriedCount.get(); }
+	public long getRecoveredCount() { return recoveredCount.get(); }
+	public long getDroppedCount() { return droppedCount.get(); }
+
+	/**
+	 * An operation and its retry state.
+	 */
+	private static final class Task {
+		private final String description;
+		private final CircuitBreaker breaker;
+		private final Policy policy;
+		private final Attempt attempt;
+		private final Runnable onDone;
+		/** Number of failed attempts so far. Only touched by the thread running the current attempt. */
+		private volatile int attempts = 0;
+		/** Whether the task is counted as waiting for a retry. Touched like {@link #attempts}. */
+		private volatile boolean pending = false;
+
+		private Task(String description, CircuitBreaker breaker, Policy policy, Attempt attempt, Runnable onDone) {
+			this.description = description;
+			this.breaker = breaker;
+			this.policy = policy;
+			this.attempt = attempt;
+			this.onDone = onDone;
+		}
+
+		private void done() {
+			if (this.onDone != null) this.onDone.run();
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package pt.um.ucl.positioning.C03a.uwb.communications;
+
+import java.io.IOException;
+import java.util.List;
+
+import pt.um.ucl.positioning.C03a.uwb.sinks.OutputSink;
+import pt.um.ucl.positioning.C03a.uwb.sinks.SinkRecord;
+import pt.um.ucl.positioning.C03a.uwb.storage.ReadingsSegmentStore;
+
+/**
+ * Sink that appends the raw readings of measurements to the local
+ * {@link ReadingsSegmentStore}.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class SegmentStoreSink implements OutputSink {
+
+	private final ReadingsSegmentStore segmentStore;
+
+	/**
+	 * Constructs a new segment store sink. The store is not closed by the
+	 * sink, since the archive exporter keeps reading from it.
+	 *
+	 * @param segmentStore The shared {@link ReadingsSegmentStore}.
+	 */
+	public SegmentStoreSink(ReadingsSegmentStore segmentStore) {
+		this.segmentStore = segmentStore;
+	}
+
+	@Override
+	public String getName() {
+		return "store";
+	}
+
+	@Override
+	public void write(List<SinkRecord> batch) throws IOException {
+		for (int i = 0; i < batch.size(); i++) {
+			SinkRecord record = batch.get(i);
+			this.segmentStore.append(record.tag(), record.measurement());
+		}
+	}
+}
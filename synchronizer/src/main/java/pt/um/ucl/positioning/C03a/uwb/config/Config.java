@@ -1,7 +1,12 @@
 package pt.um.ucl.positioning.C03a.uwb.config;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+import pt.um.ucl.positioning.C03a.uwb.sinks.SinkSettings;
+
 /**
  * A configuration class that holds all application settings.
  * 
@@ -15,6 +20,18 @@ public class Config {
     private final String dbUsername;
     private final String dbPassword;
     private final String dbName;
+    private final String dbDriver;
+    private final boolean dbBulkLoad;
+    private final int dbBulkSize;
+    private final long dbBulkFlushInterval;
+    private final String dbPartitioning;
+    private final int dbPartitionsAhead;
+    private final int dbRetentionDays;
+    private final long dbRollupInterval;
+    private final long dbMaintenanceInterval;
+    private final int dbReadPoolSize;
+    private final int dbMaxPageSize;
+    private final int dbQueryTimeout;
 
     // --- Action Manager Properties ---
     private final long amSlowScanPeriod;
@@ -27,6 +44,7 @@ public class Config {
     // --- Export Flags ---
     private final boolean exportToDbQ;
     private final boolean exportToPeQ;
+    private final boolean exportToStoreQ;
     
     // --- Log Flags ---
     private final boolean enableInputLogs;
@@ -40,9 +58,87 @@ public class Config {
     // --- Position Estimator Properties ---
     private final String peUrl;
     private final String peToken;
+    private final String peBatchUrl;
+    private final long peConnectTimeout;
+    private final long peRequestTimeout;
+    private final int peMaxInFlight;
+    private final boolean peBatchEnabled;
+    private final int peBatchSize;
+    private final long peBatchMaxDelay;
     
     private final int dbMaxRetries;
     private final int dbRetryDelay;
+    private final long dbRetryMaxDelay;
+    private final int dbBreakerFailureThreshold;
+    private final long dbBreakerOpenTime;
+    private final int peMaxRetries;
+    private final long peRetryDelay;
+    private final long peRetryMaxDelay;
+    private final int peBreakerFailureThreshold;
+    private final long peBreakerOpenTime;
+    private final int retryMaxPending;
+
+    // --- Recent Measurements Store ---
+    private final int recentCapacity;
+    private final int recentMaxReadings;
+
+    // --- Local Segment Store ---
+    private final String storeDirectory;
+    private final int storeSegmentRecords;
+    private final long storeSegmentDuration;
+    private final int storeRetentionHours;
+    private final int storeIndexInterval;
+    private final long storeMaintenanceInterval;
+
+    // --- Readings Archive ---
+    private final boolean archiveEnabled;
+    private final String archiveDirectory;
+    private final String archiveDistanceEncoding;
+    private final double archiveQuantum;
+
+    // --- In-process Positioning ---
+    private final boolean positioningEnabled;
+    private final int positioningDimensions;
+    private final double positioningTagHeight;
+    private final int positioningMaxIterations;
+    private final double positioningTolerance;
+    private final double positioningMaxResidual;
+
+    // --- Tag Tracking ---
+    private final boolean trackingEnabled;
+    private final String trackingInput;
+    private final int trackingMaxTags;
+    private final double trackingAccelerationNoise;
+    private final double trackingMeasurementNoise;
+    private final double trackingGate;
+    private final long trackingMaxGap;
+
+    // --- Range Outlier Filter ---
+    private final String filterMode;
+    private final int filterWindow;
+    private final double filterThreshold;
+    private final int filterMinSamples;
+    private final double filterMinDeviation;
+
+    // --- Output Emission ---
+    private final int outputQuorum;
+    private final long outputDeadlineDelay;
+    private final String outputLateReadings;
+    private final long outputSweepInterval;
+    private final int measurementPoolSize;
+
+    // --- Output Sinks ---
+    /** Names of the sinks whose queues can be configured with sink.<name>.*. */
+    private static final List<String> SINK_NAMES = List.of("database", "estimator", "store", "file", "memory");
+    private final List<String> sinks;
+    private final Map<String, SinkSettings> sinkSettings = new HashMap<>();
+    private final String sinkFilePath;
+    private final int sinkMemoryCapacity;
+
+    // --- Traffic Capture ---
+    private final boolean captureEnabled;
+    private final String captureFile;
+    private final int captureQueueCapacity;
     
     private final boolean secWhitelist;
 
@@ -52,6 +148,18 @@ public class Config {
         this.dbUsername = props.getProperty("db.username");
         this.dbPassword = props.getProperty("db.password");
         this.dbName = props.getProperty("db.name");
+        this.dbDriver = props.getProperty("db.driver", "org.mariadb.jdbc.Driver");
+        this.dbBulkLoad = Boolean.parseBoolean(props.getProperty("db.bulkLoad", "false"));
+        this.dbBulkSize = Integer.parseInt(props.getProperty("db.bulkSize", "5000"));
+        this.dbBulkFlushInterval = Long.parseLong(props.getProperty("db.bulkFlushInterval", "1000"));
+        this.dbPartitioning = props.getProperty("db.partitioning", "none");
+        this.dbPartitionsAhead = Integer.parseInt(props.getProperty("db.partitionsAhead", "3"));
+        this.dbRetentionDays = Integer.parseInt(props.getProperty("db.retentionDays", "90"));
+        this.dbRollupInterval = Long.parseLong(props.getProperty("db.rollupInterval", "3600000"));
+        this.dbMaintenanceInterval = Long.parseLong(props.getProperty("db.maintenanceInterval", "600000"));
+        this.dbReadPoolSize = Integer.parseInt(props.getProperty("db.readPoolSize", "4"));
+        this.dbMaxPageSize = Integer.parseInt(props.getProperty("db.maxPageSize", "1000"));
+        this.dbQueryTimeout = Integer.parseInt(props.getProperty("db.queryTimeout", "30"));
 
         // Action Manager
         this.amSlowScanPeriod = Long.parseLong(props.getProperty("am.slowScanPeriod"));
@@ -64,6 +172,7 @@ public class Config {
         // Export Flags
         this.exportToDbQ = Boolean.parseBoolean(props.getProperty("exportToDbQ"));
         this.exportToPeQ = Boolean.parseBoolean(props.getProperty("exportToPeQ"));
+        this.exportToStoreQ = Boolean.parseBoolean(props.getProperty("exportToStoreQ", "false"));
         
         // Logs
         this.enableInputLogs = Boolean.parseBoolean(props.getProperty("enableInputLogs", "true"));
@@ -77,30 +186,171 @@ public class Config {
         // Position Estimator
         this.peUrl = props.getProperty("pe.url");
         this.peToken = props.getProperty("pe.token");
+        this.peBatchUrl = props.getProperty("pe.batchUrl", this.peUrl);
+        this.peConnectTimeout = Long.parseLong(props.getProperty("pe.connectTimeout", "2000"));
+        this.peRequestTimeout = Long.parseLong(props.getProperty("pe.requestTimeout", "5000"));
+        this.peMaxInFlight = Integer.parseInt(props.getProperty("pe.maxInFlight", "64"));
+        this.peBatchEnabled = Boolean.parseBoolean(props.getProperty("pe.batchEnabled", "false"));
+        this.peBatchSize = Integer.parseInt(props.getProperty("pe.batchSize", "50"));
+        this.peBatchMaxDelay = Long.parseLong(props.getProperty("pe.batchMaxDelay", "20"));
         
         this.dbMaxRetries = Integer.parseInt(props.getProperty("db.maxRetries", "5"));
         this.dbRetryDelay = Integer.parseInt(props.getProperty("db.retryDelay", "10000"));
+        this.dbRetryMaxDelay = Long.parseLong(props.getProperty("db.retryMaxDelay", "60000"));
+        this.dbBreakerFailureThreshold = Integer.parseInt(props.getProperty("db.breakerFailureThreshold", "5"));
+        this.dbBreakerOpenTime = Long.parseLong(props.getProperty("db.breakerOpenTime", "30000"));
+        this.peMaxRetries = Integer.parseInt(props.getProperty("pe.maxRetries", "3"));
+        this.peRetryDelay = Long.parseLong(props.getProperty("pe.retryDelay", "500"));
+        this.peRetryMaxDelay = Long.parseLong(props.getProperty("pe.retryMaxDelay", "10000"));
+        this.peBreakerFailureThreshold = Integer.parseInt(props.getProperty("pe.breakerFailureThreshold", "5"));
+        this.peBreakerOpenTime = Long.parseLong(props.getProperty("pe.breakerOpenTime", "10000"));
+        this.retryMaxPending = Integer.parseInt(props.getProperty("retry.maxPending", "10000"));
+        this.recentCapacity = Integer.parseInt(props.getProperty("recent.capacity", "64"));
+        this.recentMaxReadings = Integer.parseInt(props.getProperty("recent.maxReadings", "32"));
+        this.storeDirectory = props.getProperty("store.directory", "C:/UWB_Store");
+        this.storeSegmentRecords = Integer.parseInt(props.getProperty("store.segmentRecords", "1048576"));
+        this.storeSegmentDuration = Long.parseLong(props.getProperty("store.segmentDuration", "3600000"));
+        this.storeRetentionHours = Integer.parseInt(props.getProperty("store.retentionHours", "72"));
+        this.storeIndexInterval = Integer.parseInt(props.getProperty("store.indexInterval", "256"));
+        this.storeMaintenanceInterval = Long.parseLong(props.getProperty("store.maintenanceInterval", "300000"));
+        this.archiveEnabled = Boolean.parseBoolean(props.getProperty("archive.enabled", "false"));
+        this.archiveDirectory = props.getProperty("archive.directory", "C:/UWB_Archive");
+        this.archiveDistanceEncoding = props.getProperty("archive.distanceEncoding", "quantized");
+        this.archiveQuantum = Double.parseDouble(props.getProperty("archive.quantum", "0.001"));
+        this.positioningEnabled = Boolean.parseBoolean(props.getProperty("positioning.enabled", "false"));
+        this.positioningDimensions = Integer.parseInt(props.getProperty("positioning.dimensions", "2"));
+        this.positioningTagHeight = Double.parseDouble(props.getProperty("positioning.tagHeight", "0"));
+        this.positioningMaxIterations = Integer.parseInt(props.getProperty("positioning.maxIterations", "20"));
+        this.positioningTolerance = Double.parseDouble(props.getProperty("positioning.tolerance", "0.0001"));
+        this.positioningMaxResidual = Double.parseDouble(props.getProperty("positioning.maxResidual", "1.0"));
+        this.trackingEnabled = Boolean.parseBoolean(props.getProperty("tracking.enabled", "false"));
+        this.trackingInput = props.getProperty("tracking.input", "positions");
+        this.trackingMaxTags = Integer.parseInt(props.getProperty("tracking.maxTags", "256"));
+        this.trackingAccelerationNoise = Double.parseDouble(props.getProperty("tracking.accelerationNoise", "1.0"));
+        this.trackingMeasurementNoise = Double.parseDouble(props.getProperty("tracking.measurementNoise", "0.1"));
+        this.trackingGate = Double.parseDouble(props.getProperty("tracking.gate", "5.0"));
+        this.trackingMaxGap = Long.parseLong(props.getProperty("tracking.maxGap", "5000"));
+        this.filterMode = props.getProperty("filter.mode", "off");
+        this.filterWindow = Integer.parseInt(props.getProperty("filter.window", "9"));
+        this.filterThreshold = Double.parseDouble(props.getProperty("filter.threshold", "3.0"));
+        this.filterMinSamples = Integer.parseInt(props.getProperty("filter.minSamples", "5"));
+        this.filterMinDeviation = Double.parseDouble(props.getProperty("filter.minDeviation", "0.05"));
+        this.outputQuorum = Integer.parseInt(props.getProperty("output.quorum", "0"));
+        this.outputDeadlineDelay = Long.parseLong(props.getProperty("output.deadlineDelay", "-1"));
+        this.outputLateReadings = props.getProperty("output.lateReadings", "drop");
+        this.outputSweepInterval = Long.parseLong(props.getProperty("output.sweepInterval", "20"));
+        this.measurementPoolSize = Integer.parseInt(props.getProperty("measurement.poolSize", "0"));
+        this.sinks = List.of(props.getProperty("sinks", "").trim().split("\\s*,\\s*")).stream().filter(s -> !s.isEmpty()).toList();
+        for (String sink : SINK_NAMES) {
+            this.sinkSettings.put(sink, new SinkSettings(
+                Integer.parseInt(sinkProperty(props, sink, "queueCapacity", "10000")),
+                Integer.parseInt(sinkProperty(props, sink, "batchSize", "100")),
+                Long.parseLong(sinkProperty(props, sink, "maxDelay", "20")),
+                Integer.parseInt(sinkProperty(props, sink, "threads", "1"))));
+        }
+        this.sinkFilePath = props.getProperty("sink.file.path", "C:/UWB_Sinks/measurements.jsonl");
+        this.sinkMemoryCapacity = Integer.parseInt(props.getProperty("sink.memory.capacity", "1000"));
+        this.captureEnabled = Boolean.parseBoolean(props.getProperty("capture.enabled", "false"));
+        this.captureFile = props.getProperty("capture.file", "C:/UWB_Capture/anchors.uwbt");
+        this.captureQueueCapacity = Integer.parseInt(props.getProperty("capture.queueCapacity", "10000"));
         
         this.secWhitelist = Boolean.parseBoolean(props.getProperty("sec.whitelist", "false"));
     }
 
+    private static String sinkProperty(Properties props, String sink, String key, String defaultValue) {
+        return props.getProperty("sink." + sink + "." + key, props.getProperty("sink." + key, defaultValue));
+    }
+
     public String getDbUrl() { return dbUrl; }
     public String getDbUsername() { return dbUsername; }
     public String getDbPassword() { return dbPassword; }
     public String getDbName() { return dbName; }
+    public String getDbDriver() { return dbDriver; }
+    public boolean isDbBulkLoad() { return dbBulkLoad; }
+    public int getDbBulkSize() { return dbBulkSize; }
+    public long getDbBulkFlushInterval() { return dbBulkFlushInterval; }
+    public String getDbPartitioning() { return dbPartitioning; }
+    public boolean isDbPartitioningEnabled() { return !"none".equalsIgnoreCase(dbPartitioning); }
+    public int getDbPartitionsAhead() { return dbPartitionsAhead; }
+    public int getDbRetentionDays() { return dbRetentionDays; }
+    public long getDbRollupInterval() { return dbRollupInterval; }
+    public long getDbMaintenanceInterval() { return dbMaintenanceInterval; }
+    public int getDbReadPoolSize() { return dbReadPoolSize; }
+    public int getDbMaxPageSize() { return dbMaxPageSize; }
+    public int getDbQueryTimeout() { return dbQueryTimeout; }
     public long getAmSlowScanPeriod() { return amSlowScanPeriod; }
     public long getAmFastScanPeriod() { return amFastScanPeriod; }
     public long getAmScanInterval() { return amScanInterval; }
     public long getAmScanTime() { return amScanTime; }
     public boolean isExportToDbQ() { return exportToDbQ; }
     public boolean isExportToPeQ() { return exportToPeQ; }
+    public boolean isExportToStoreQ() { return exportToStoreQ; }
     public String getPeUrl() { return peUrl; }
     public String getPeToken() { return peToken; }
+    public String getPeBatchUrl() { return peBatchUrl; }
+    public long getPeConnectTimeout() { return peConnectTimeout; }
+    public long getPeRequestTimeout() { return peRequestTimeout; }
+    public int getPeMaxInFlight() { return peMaxInFlight; }
+    public boolean isPeBatchEnabled() { return peBatchEnabled; }
+    public int getPeBatchSize() { return peBatchSize; }
+    public long getPeBatchMaxDelay() { return peBatchMaxDelay; }
     public boolean isEnableInputLogs() { return enableInputLogs; }
     public boolean isEnableOutputLogs() { return enableOutputLogs; }
 	public boolean isEnableGeneralLogs() { return enableGeneralLogs; }
 	public int getDbMaxRetries() { return dbMaxRetries; }
 	public int getDbRetryDelay() { return dbRetryDelay; }
+	public long getDbRetryMaxDelay() { return dbRetryMaxDelay; }
+	public int getDbBreakerFailureThreshold() { return dbBreakerFailureThreshold; }
+	public long getDbBreakerOpenTime() { return dbBreakerOpenTime; }
+	public int getPeMaxRetries() { return peMaxRetries; }
+	public long getPeRetryDelay() { return peRetryDelay; }
+	public long getPeRetryMaxDelay() { return peRetryMaxDelay; }
+	public int getPeBreakerFailureThreshold() { return peBreakerFailureThreshold; }
+	public long getPeBreakerOpenTime() { return peBreakerOpenTime; }
+	public int getRetryMaxPending() { return retryMaxPending; }
+	public int getRecentCapacity() { return recentCapacity; }
+	public int getRecentMaxReadings() { return recentMaxReadings; }
+	public String getStoreDirectory() { return storeDirectory; }
+	public int getStoreSegmentRecords() { return storeSegmentRecords; }
+	public long getStoreSegmentDuration() { return storeSegmentDuration; }
+	public int getStoreRetentionHours() { return storeRetentionHours; }
+	public int getStoreIndexInterval() { return storeIndexInterval; }
+	public long getStoreMaintenanceInterval() { return storeMaintenanceInterval; }
+	public boolean isArchiveEnabled() { return archiveEnabled; }
+	public String getArchiveDirectory() { return archiveDirectory; }
+	public String getArchiveDistanceEncoding() { return archiveDistanceEncoding; }
+	public double getArchiveQuantum() { return archiveQuantum; }
+	public boolean isPositioningEnabled() { return positioningEnabled; }
+	public int getPositioningDimensions() { return positioningDimensions; }
+	public double getPositioningTagHeight() { return positioningTagHeight; }
+	public int getPositioningMaxIterations() { return positioningMaxIterations; }
+	public double getPositioningTolerance() { return positioningTolerance; }
+	public double getPositioningMaxResidual() { return positioningMaxResidual; }
+	public boolean isTrackingEnabled() { return trackingEnabled; }
+	public String getTrackingInput() { return trackingInput; }
+	public int getTrackingMaxTags() { return trackingMaxTags; }
+	public double getTrackingAccelerationNoise() { return trackingAccelerationNoise; }
+	public double getTrackingMeasurementNoise() { return trackingMeasurementNoise; }
+	public double getTrackingGate() { return trackingGate; }
+	public long getTrackingMaxGap() { return trackingMaxGap; }
+	public String getFilterMode() { return filterMode; }
+	public boolean isFilterEnabled() { return !"off".equalsIgnoreCase(filterMode); }
+	public int getFilterWindow() { return filterWindow; }
+	public double getFilterThreshold() { return filterThreshold; }
+	public int getFilterMinSamples() { return filterMinSamples; }
+	public double getFilterMinDeviation() { return filterMinDeviation; }
+	public int getOutputQuorum() { return outputQuorum; }
+	public long getOutputDeadlineDelay() { return outputDeadlineDelay; }
+	public String getOutputLateReadings() { return outputLateReadings; }
+	public long getOutputSweepInterval() { return outputSweepInterval; }
+	public int getMeasurementPoolSize() { return measurementPoolSize; }
+	public List<String> getSinks() { return sinks; }
+	public SinkSettings getSinkSettings(String sink) { return sinkSettings.get(sink); }
+	public String getSinkFilePath() { return sinkFilePath; }
+	public int getSinkMemoryCapacity() { return sinkMemoryCapacity; }
+	public boolean isCaptureEnabled() { return captureEnabled; }
+	public String getCaptureFile() { return captureFile; }
+	public int getCaptureQueueCapacity() { return captureQueueCapacity; }
 	public long getAmMinRoundTime() { return amMinRoundTime; }
 	public long getAmSafetyBuffer() { return amSafetyBuffer; }
 	public boolean isWhitelistEnabled() { return secWhitelist; }
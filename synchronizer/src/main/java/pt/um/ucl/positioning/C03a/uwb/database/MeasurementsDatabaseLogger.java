@@ -1,5 +1,7 @@
 package pt.um.ucl.positioning.C03a.uwb.database;
 
+import pt.um.ucl.positioning.C03a.uwb.communications.CircuitBreaker;
+import pt.um.ucl.positioning.C03a.uwb.communications.RetryScheduler;
 import pt.um.ucl.positioning.C03a.uwb.config.Config;
 import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
 import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
@@ -13,7 +15,6 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
-import java.util.List;
 
 import javax.sql.DataSource;
 
@@ -44,6 +45,9 @@ public class MeasurementsDatabaseLogger {
     /** The connection pool manager. */
     private final DataSource dataSource;
 
+    /** Bulk-load fast path for ToA readings, or {@code null} when disabled. */
+    private final ToAReadingsBulkLoader bulkLoader;
+
     /**
      * Constructs a new database logger.
      *
@@ -58,6 +62,9 @@ public class MeasurementsDatabaseLogger {
         this.password = config.getDbPassword();
         this.enableLogs = config.isEnableOutputLogs();
         this.dbUrlWithDb = this.dbUrlBase + "/" + config.getDbName();
+        this.bulkLoader = config.isDbBulkLoad()
+                ? new ToAReadingsBulkLoader(dataSource, config.getDbBulkSize(), config.getDbBulkFlushInterval(), this.enableLogs)
+                : null;
     }
     
     /**
@@ -79,18 +86,24 @@ public class MeasurementsDatabaseLogger {
     
     /**
      * Saves a complete measurement (Target, Measurement, and Readings) to the database.
+     * <p>
+     * When {@code db.bulkLoad} is enabled the readings are queued for the
+     * {@link ToAReadingsBulkLoader} instead of being inserted immediately.
      *
      * @param target The {@link Tag} to which the measurement pertains.
      * @param measurement The {@link Measurement} object containing all readings.
      * @return The auto-generated ID of the new measurement record, or -1 if an error occurred.
      */
     public int saveDataToA(Tag target, Measurement measurement){
-        long timestamp = System.currentTimeMillis(); 
         int targetID = saveTarget(target);
         int measurementID = saveMeasurements(targetID, "ToA", measurement.getMeasurmentEndTime());
 
         if (targetID > 0 && measurementID > 0) {
-            saveToAreadings(measurementID, timestamp, measurement.getReadings());
+            if (bulkLoader != null) {
+                bulkLoader.add(measurementID, measurement);
+            } else {
+                saveToAreadings(measurementID, measurement);
+            }
         }
         
         return measurementID;
@@ -195,9 +208,15 @@ public class MeasurementsDatabaseLogger {
             stmt.setString(1, anchor.getDeviceName());
             stmt.setString(2, anchor.getDeviceName()); 
             
-            setDoubleOrNull(stmt, 3, 0); 
-            setDoubleOrNull(stmt, 4, 0);
-            setDoubleOrNull(stmt, 5, 0);
+            if (anchor.hasPosition()) {
+                stmt.setDouble(3, anchor.getX());
+                stmt.setDouble(4, anchor.getY());
+                stmt.setDouble(5, anchor.getZ());
+            } else {
+                setDoubleOrNull(stmt, 3, 0);
+                setDoubleOrNull(stmt, 4, 0);
+                setDoubleOrNull(stmt, 5, 0);
+            }
             setDoubleOrNull(stmt, 6, 0);
             setDoubleOrNull(stmt, 7, 0);
             setDoubleOrNull(stmt, 8, 0);
@@ -220,35 +239,63 @@ public class MeasurementsDatabaseLogger {
     }
 
     /**
-     * Saves a list of Time-of-Arrival (ToA) readings in a batch operation.
+     * Loads the stored coordinates of an {@link Anchor} into it. Anchors
+     * without at least {@code anchorX} and {@code anchorY} are left unpositioned;
+     * a missing {@code anchorZ} is read as 0.
+     *
+     * @param anchor The {@link Anchor} to load the coordinates of.
+     * @return {@code true} if coordinates were found.
+     */
+    public boolean loadAnchorPosition(Anchor anchor) {
+        final String sql = "SELECT anchorX, anchorY, anchorZ FROM Anchors WHERE anchorCode = ?";
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, anchor.getDeviceName());
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    double x = rs.getDouble(1);
+                    boolean hasX = !rs.wasNull();
+                    double y = rs.getDouble(2);
+                    boolean hasY = !rs.wasNull();
+                    double z = rs.getDouble(3);
+                    if (hasX && hasY) {
+                        anchor.setPosition(x, y, z);
+                        return true;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            if(enableLogs) System.err.println("DB Error loading position of anchor " + anchor.getDeviceName() + ": " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Saves the readings of a measurement in a batch operation, straight from
+     * its reading arrays.
      *
      * @param measurementId The foreign key ID of the parent measurement.
-     * @param timestamp A general timestamp for the batch (note: individual readings also have timestamps).
-     * @param readings The list of {@link Reading} objects to save.
+     * @param measurement The {@link Measurement} whose readings to save.
      */
-    public void saveToAreadings(int measurementId, long timestamp, List<Reading> readings) {    	
+    public void saveToAreadings(int measurementId, Measurement measurement) {
         final String sql = """
             INSERT INTO ToAreadings (measurementID, timestamp, anchorID, `Range`) 
             VALUES (?, ?, ?, ?) 
             """;
-        
+
         try (Connection conn = dataSource.getConnection(); 
              PreparedStatement stmt = conn.prepareStatement(sql)) {
-        	
-        	for (Reading reading: readings) {
-        		Anchor anchor = reading.getAnchor();
+            int readingCount = measurement.getReadingCount();
+            for (int i = 0; i < readingCount; i++) {
                 stmt.setInt(1, measurementId);
-                stmt.setLong(2, reading.getTimestamp()); 
-                stmt.setInt(3, anchor.getDeviceID());
-                
-                stmt.setDouble(4, reading.getDistance()); 
-                
+                stmt.setLong(2, measurement.getTimestamp(i));
+                stmt.setInt(3, measurement.getAnchor(i).getDeviceID());
+                stmt.setDouble(4, measurement.getDistance(i));
                 stmt.addBatch();
-        	}
-
+            }
             stmt.executeBatch();
         } catch (SQLException e) {
-        	 if(enableLogs) System.err.println("Error saving ToA readings: " + e.getMessage());
+            if(enableLogs) System.err.println("Error saving ToA readings: " + e.getMessage());
             e.printStackTrace();
         }
     }
@@ -313,4 +360,28 @@ public class MeasurementsDatabaseLogger {
             stmt.executeUpdate();
         }
     }
+
+    /**
+     * Makes the bulk loader re-attempt readings it could not write with the
+     * database sink's retry settings. Does nothing when bulk loading is disabled.
+     *
+     * @param scheduler The shared {@link RetryScheduler}.
+     * @param breaker The database {@link CircuitBreaker}.
+     * @param policy The database retry policy.
+     */
+    public void setRetry(RetryScheduler scheduler, CircuitBreaker breaker, RetryScheduler.Policy policy) {
+        if (bulkLoader != null) {
+            bulkLoader.setRetry(scheduler, breaker, policy);
+        }
+    }
+
+    /**
+     * Loads any ToA readings still queued for bulk loading and stops the
+     * bulk loader. Does nothing when bulk loading is disabled.
+     */
+    public void close() {
+        if (bulkLoader != null) {
+            bulkLoader.close();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,316 @@
+package pt.um.ucl.positioning.C03a.uwb.database;
+
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementJsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+/**
+ * Serves historical measurements and readings from the database.
+ * <p>
+ * Results are paged with keyset pagination: every page is ordered by
+ * {@code (timestamp, measurementID)} and ends with an opaque {@code next}
+ * cursor holding the key of its last row, which the following request passes
+ * back as {@code after}. Each page is a single forward-only, streaming
+ * {@link ResultSet} whose rows are encoded to JSON and written to the response
+ * as they arrive, so neither the server nor the driver hold a page in memory.
+ * <p>
+ * This reader is meant to use its own, read-only connection pool, so history
+ * queries can never take connections away from {@link MeasurementsDatabaseLogger}.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class MeasurementsHistoryReader {
+
+	/**
+	 * Filters and page settings of a history request.
+	 *
+	 * @param tagCode Only rows of this tag, or {@code null}.
+	 * @param anchorCode Only rows involving this anchor, or {@code null}.
+	 * @param from Inclusive lower timestamp bound in milliseconds, or {@code null}.
+	 * @param to Exclusive upper timestamp bound in milliseconds, or {@code null}.
+	 * @param after The {@code next} cursor of the previous page, or {@code null} for the first page.
+	 * @param limit Maximum number of measurements (or readings) in the page.
+	 */
+	public record Query(String tagCode, String anchorCode, Long from, Long to, String after, int limit) {}
+
+	/** Rows written between two flushes of the response. */
+	private static final int FLUSH_BYTES = 8 * 1024;
+
+	/** The read-only connection pool. */
+	private final DataSource dataSource;
+	/** Rows fetched from the server per round trip. */
+	private final int fetchSize;
+	/** Upper bound for {@link Query#limit()}. */
+	private final int maxPageSize;
+	/** Query timeout in seconds. */
+	private final int queryTimeout;
+
+	/**
+	 * Constructs a new history reader.
+	 *
+	 * @param dataSource The read-only {@link DataSource} to query.
+	 * @param maxPageSize Upper bound for the page size of a request.
+	 * @param queryTimeout Query timeout in seconds (0 for none).
+	 */
+	public MeasurementsHistoryReader(DataSource dataSource, int maxPageSize, int queryTimeout) {
+		this.dataSource = dataSource;
+		this.maxPageSize = Math.max(1, maxPageSize);
+		this.fetchSize = Math.min(this.maxPageSize, 500);
+		this.queryTimeout = queryTimeout;
+	}
+
+	/**
+	 * Streams a page of measurements, each with its readings, as
+	 * {@code {"measurements":[...],"next":cursor}}.
+	 * With an anchor filter, only measurements with a reading from that anchor
+	 * are returned (with all of their readings).
+	 *
+	 * @param query The filters and page settings.
+	 * @param out The response stream.
+	 * @throws SQLException if the query fails.
+	 * @throws IOException if writing the response fails.
+	 * @throws IllegalArgumentException if the cursor is malformed.
+	 */
+	public void streamMeasurements(Query query, OutputStream out) throws SQLException, IOException {
+		long[] cursor = parseCursor(query.after(), 2);
+		int limit = Math.min(Math.max(1, query.limit()), this.maxPageSize);
+
+		StringBuilder page = new StringBuilder("""
+			SELECT m.measurementID, m.timestamp, m.dataType, m.targetID, t.targetCode
+			FROM Measurements m JOIN Targets t ON t.targetID = m.targetID
+			WHERE 1 = 1
+			""");
+		List<Object> params = new ArrayList<>();
+		if (query.tagCode() != null) {
+			page.append(" AND t.targetCode = ?");
+			params.add(query.tagCode());
+		}
+		if (query.anchorCode() != null) {
+			page.append("""
+				 AND EXISTS (SELECT 1 FROM ToAreadings fr JOIN Anchors fa ON fa.anchorID = fr.anchorID
+				             WHERE fr.measurementID = m.measurementID AND fa.anchorCode = ?)
+				""");
+			params.add(query.anchorCode());
+		}
+		appendTimeRange(page, params, "m.timestamp", query);
+		if (cursor != null) {
+			page.append(" AND (m.timestamp > ? OR (m.timestamp = ? AND m.measurementID > ?))");
+			params.add(cursor[0]);
+			params.add(cursor[0]);
+			params.add(cursor[1]);
+		}
+		page.append(" ORDER BY m.timestamp, m.measurementID LIMIT ?");
+		params.add(limit);
+
+		String sql = "SELECT p.measurementID, p.timestamp, p.dataType, p.targetID, p.targetCode,"
+				+ " r.anchorID, a.anchorCode, r.`Range`, r.timestamp"
+				+ " FROM (" + page + ") p"
+				+ " LEFT JOIN ToAreadings r ON r.measurementID = p.measurementID"
+				+ " LEFT JOIN Anchors a ON a.anchorID = r.anchorID"
+				+ " ORDER BY p.timestamp, p.measurementID, r.timestamp";
+
+		MeasurementJsonWriter json = new MeasurementJsonWriter(2 * FLUSH_BYTES);
+		try (Connection conn = dataSource.getConnection();
+			 PreparedStatement stmt = prepare(conn, sql, params);
+			 ResultSet rs = stmt.executeQuery()) {
+			json.writeByte('{').writeKey("measurements").writeByte('[');
+			long currentId = Long.MIN_VALUE;
+			long lastTimestamp = 0;
+			int count = 0;
+			boolean firstReading = true;
+			while (rs.next()) {
+				long measurementId = rs.getLong(1);
+				if (measurementId != currentId) {
+					if (count > 0) json.writeByte(']').writeByte('}');
+					if (count++ > 0) json.writeByte(',');
+					currentId = measurementId;
+					lastTimestamp = rs.getLong(2);
+					json.writeByte('{').writeKey("measurementID").writeLong(measurementId)
+						.writeByte(',').writeKey("timestamp").writeLong(lastTimestamp)
+						.writeByte(',').writeKey("dataType").writeString(rs.getString(3))
+						.writeByte(',').writeKey("targetID").writeLong(rs.getLong(4))
+						.writeByte(',').writeKey("targetCode").writeString(rs.getString(5))
+						.writeByte(',').writeKey("readings").writeByte('[');
+					firstReading = true;
+				}
+				long anchorId = rs.getLong(6);
+				if (!rs.wasNull()) {
+					if (!firstReading) json.writeByte(',');
+					firstReading = false;
+					json.writeByte('{').writeKey("distance").writeDouble(rs.getDouble(8))
+						.writeByte(',').writeKey("anchorID").writeLong(anchorId)
+						.writeByte(',').writeKey("anchorCode").writeString(rs.getString(7))
+						.writeByte(',').writeKey("timestamp").writeLong(rs.getLong(9))
+						.writeByte('}');
+				}
+				flushIfFull(json, out);
+			}
+			if (count > 0) json.writeByte(']').writeByte('}');
+			json.writeByte(']');
+			writeNext(json, count == limit ? lastTimestamp + ":" + currentId : null);
+			json.writeByte('}');
+			out.write(json.buffer(), 0, json.size());
+			out.flush();
+		}
+	}
+
+	/**
+	 * Streams a page of individual ToA readings as
+	 * {@code {"readings":[...],"next":cursor}}. Readings are keyed by
+	 * {@code (timestamp, measurementID, anchorID)}, since a measurement holds
+	 * one reading per anchor.
+	 *
+	 * @param query The filters and page settings.
+	 * @param out The response stream.
+	 * @throws SQLException if the query fails.
+	 * @throws IOException if writing the response fails.
+	 * @throws IllegalArgumentException if the cursor is malformed.
+	 */
+	public void streamReadings(Query query, OutputStream out) throws SQLException, IOException {
+		long[] cursor = parseCursor(query.after(), 3);
+		int limit = Math.min(Math.max(1, query.limit()), this.maxPageSize);
+
+		StringBuilder sql = new StringBuilder("""
+			SELECT r.measurementID, r.timestamp, r.anchorID, a.anchorCode, m.targetID, t.targetCode, r.`Range`
+			FROM ToAreadings r
+			JOIN Anchors a ON a.anchorID = r.anchorID
+			JOIN Measurements m ON m.measurementID = r.measurementID
+			JOIN Targets t ON t.targetID = m.targetID
+			WHERE 1 = 1
+			""");
+		List<Object> params = new ArrayList<>();
+		if (query.tagCode() != null) {
+			sql.append(" AND t.targetCode = ?");
+			params.add(query.tagCode());
+		}
+		if (query.anchorCode() != null) {
+			sql.append(" AND a.anchorCode = ?");
+			params.add(query.anchorCode());
+		}
+		appendTimeRange(sql, params, "r.timestamp", query);
+		if (cursor != null) {
+			sql.append("""
+				 AND (r.timestamp > ? OR (r.timestamp = ? AND (r.measurementID > ?
+				      OR (r.measurementID = ? AND r.anchorID > ?))))
+				""");
+			params.add(cursor[0]);
+			params.add(cursor[0]);
+			params.add(cursor[1]);
+			params.add(cursor[1]);
+			params.add(cursor[2]);
+		}
+		sql.append(" ORDER BY r.timestamp, r.measurementID, r.anchorID LIMIT ?");
+		params.add(limit);
+
+		MeasurementJsonWriter json = new MeasurementJsonWriter(2 * FLUSH_BYTES);
+		try (Connection conn = dataSource.getConnection();
+			 PreparedStatement stmt = prepare(conn, sql.toString(), params);
+			 ResultSet rs = stmt.executeQuery()) {
+			json.writeByte('{').writeKey("readings").writeByte('[');
+			int count = 0;
+			String next = null;
+			while (rs.next()) {
+				long measurementId = rs.getLong(1);
+				long timestamp = rs.getLong(2);
+				long anchorId = rs.getLong(3);
+				if (count++ > 0) json.writeByte(',');
+				json.writeByte('{').writeKey("distance").writeDouble(rs.getDouble(7))
+					.writeByte(',').writeKey("anchorID").writeLong(anchorId)
+					.writeByte(',').writeKey("anchorCode").writeString(rs.getString(4))
+					.writeByte(',').writeKey("targetID").writeLong(rs.getLong(5))
+					.writeByte(',').writeKey("targetCode").writeString(rs.getString(6))
+					.writeByte(',').writeKey("measurementID").writeLong(measurementId)
+					.writeByte(',').writeKey("timestamp").writeLong(timestamp)
+					.writeByte('}');
+				if (count == limit) next = timestamp + ":" + measurementId + ":" + anchorId;
+				flushIfFull(json, out);
+			}
+			json.writeByte(']');
+			writeNext(json, next);
+			json.writeByte('}');
+			out.write(json.buffer(), 0, json.size());
+			out.flush();
+		}
+	}
+
+	private PreparedStatement prepare(Connection conn, String sql, List<Object> params) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try {
+			// A positive fetch size makes the MariaDB driver stream rows instead of buffering the result.
+			stmt.setFetchSize(this.fetchSize);
+			stmt.setQueryTimeout(this.queryTimeout);
+			for (int i = 0; i < params.size(); i++) {
+				stmt.setObject(i + 1, params.get(i));
+			}
+			return stmt;
+		} catch (SQLException e) {
+			stmt.close();
+			throw e;
+		}
+	}
+
+	private static void appendTimeRange(StringBuilder sql, List<Object> params, String column, Query query) {
+		if (query.from() != null) {
+			sql.append(" AND ").append(column).append(" >= ?");
+			params.add(query.from());
+		}
+		if (query.to() != null) {
+			sql.append(" AND ").append(column).append(" < ?");
+			params.add(query.to());
+		}
+	}
+
+	private static void writeNext(MeasurementJsonWriter json, String next) {
+		json.writeByte(',').writeKey("next");
+		if (next == null) {
+			json.writeByte('n').writeByte('u').writeByte('l').writeByte('l');
+		} else {
+			json.writeString(next);
+		}
+	}
+
+	/**
+	 * Sends the encoded rows once enough are buffered. Flushing the response
+	 * before it is complete makes the container use chunked transfer encoding.
+	 */
+	private static void flushIfFull(MeasurementJsonWriter json, OutputStream out) throws IOException {
+		if (json.size() >= FLUSH_BYTES) {
+			out.write(json.buffer(), 0, json.size());
+			out.flush();
+			json.reset();
+		}
+	}
+
+	/**
+	 * Parses a {@code next} cursor made of colon-separated numbers.
+	 *
+	 * @return The key parts, or {@code null} for the first page.
+	 * @throws IllegalArgumentException if the cursor is malformed.
+	 */
+	private static long[] parseCursor(String after, int parts) {
+		if (after == null || after.isEmpty()) return null;
+		String[] tokens = after.split(":");
+		if (tokens.length != parts) {
+			throw new IllegalArgumentException("Invalid cursor: " + after);
+		}
+		long[] key = new long[parts];
+		try {
+			for (int i = 0; i < parts; i++) {
+				key[i] = Long.parseLong(tokens[i]);
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + after);
+		}
+		return key;
+	}
+}
@@ -0,0 +1,323 @@
+package pt.um.ucl.positioning.C03a.uwb.database;
+
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+/**
+ * Maintains the time-partitioned {@code Measurements} and {@code ToAreadings}
+ * tables and their rollups.
+ * <p>
+ * Both tables are expected to be {@code PARTITION BY RANGE (timestamp)} with a
+ * catch-all {@code pmax} partition (see {@code src/main/resources/sql/partitioned_schema.sql}).
+ * A background job runs every {@code db.maintenanceInterval} milliseconds and:
+ * <ol>
+ * <li>Computes per-tag and per-anchor rollups (reading count, mean and
+ * variance of {@code Range}) for every completed {@code db.rollupInterval}
+ * bucket into {@code TagRollups} and {@code AnchorRollups}. The last bucket
+ * done is kept in {@code RollupProgress}, so buckets without readings are
+ * not rolled up again.</li>
+ * <li>Creates daily or hourly partitions {@code db.partitionsAhead} periods
+ * ahead by splitting the empty {@code pmax} partition.</li>
+ * <li>Drops partitions older than {@code db.retentionDays}. Rollups are kept.</li>
+ * </ol>
+ * Dropping a partition is a metadata operation, so retention never runs large
+ * {@code DELETE}s, and inserts and range queries only touch small, recent
+ * partitions however long the system has been running.
+ * <p>
+ * Tables that are not partitioned are skipped with a warning; rollups are
+ * still computed for them.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class PartitionManager {
+
+	/**
+	 * Enumeration of supported partition granularities.
+	 */
+	public enum Granularity {
+		/** One partition per UTC day. */
+		DAILY(24L * 60 * 60 * 1000, "yyyyMMdd"),
+		/** One partition per UTC hour. */
+		HOURLY(60L * 60 * 1000, "yyyyMMddHH");
+
+		private final long periodMillis;
+		private final DateTimeFormatter nameFormat;
+
+		Granularity(long periodMillis, String namePattern) {
+			this.periodMillis = periodMillis;
+			this.nameFormat = DateTimeFormatter.ofPattern(namePattern).withZone(ZoneOffset.UTC);
+		}
+	}
+
+	/** The partitioned tables, all keyed by their {@code timestamp} column. */
+	private static final String[] PARTITIONED_TABLES = { "Measurements", "ToAreadings" };
+	/** Key of the rollups' progress in {@code RollupProgress}. */
+	private static final String ROLLUP_NAME = "rollups";
+	/**
+	 * How far a measurement's {@code timestamp} (the end of its round) may be
+	 * from the timestamps of its readings. Bounds the {@code Measurements}
+	 * side of the rollup and archive joins, so it is pruned to the partitions
+	 * of the window.
+	 */
+	public static final long MEASUREMENT_SLACK = 10L * 60 * 1000;
+
+	/** The connection pool manager. */
+	private final DataSource dataSource;
+	/** The partition granularity. */
+	private final Granularity granularity;
+	/** Number of future periods that must always have a partition. */
+	private final int partitionsAhead;
+	/** Age after which partitions are dropped (milliseconds). */
+	private final long retentionMillis;
+	/** Size of a rollup bucket (milliseconds). */
+	private final long rollupInterval;
+	/** Interval between maintenance runs (milliseconds). */
+	private final long maintenanceInterval;
+	/** Flag to enable/disable Logs. */
+	private final boolean enableLogs;
+	/** Runs the maintenance job. */
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Constructs a new partition manager.
+	 *
+	 * @param dataSource The {@link DataSource} to maintain.
+	 * @param config The {@link Config} object containing the retention settings.
+	 */
+	public PartitionManager(DataSource dataSource, Config config) {
+		this.dataSource = dataSource;
+		this.granularity = Granularity.valueOf(config.getDbPartitioning().toUpperCase());
+		this.partitionsAhead = Math.max(1, config.getDbPartitionsAhead());
+		this.retentionMillis = config.getDbRetentionDays() * 24L * 60 * 60 * 1000;
+		this.rollupInterval = config.getDbRollupInterval();
+		this.maintenanceInterval = config.getDbMaintenanceInterval();
+		this.enableLogs = config.isEnableGeneralLogs();
+	}
+
+	/**
+	 * Starts the maintenance job. The first run happens immediately, so the
+	 * partitions for the coming periods exist before measurements arrive.
+	 */
+	public void start() {
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "db-partition-maintenance");
+			t.setDaemon(true);
+			return t;
+		});
+		this.scheduler.scheduleWithFixedDelay(this::runMaintenance, 0, this.maintenanceInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the maintenance job.
+	 */
+	public void shutdown() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs one maintenance pass: rollups first, so that data is summarised
+	 * before its partition can be dropped, then partition creation and retention.
+	 */
+	public void runMaintenance() {
+		long now = System.currentTimeMillis();
+		try (Connection conn = dataSource.getConnection()) {
+			createRollupTables(conn);
+			computeRollups(conn, now);
+			for (String table : PARTITIONED_TABLES) {
+				maintainPartitions(conn, table, now);
+			}
+		} catch (SQLException e) {
+			if (enableLogs) System.err.println("Partition maintenance failed: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	private void createRollupTables(Connection conn) throws SQLException {
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute("""
+				CREATE TABLE IF NOT EXISTS TagRollups (
+				    targetID INT NOT NULL,
+				    bucketStart BIGINT NOT NULL,
+				    bucketSize BIGINT NOT NULL,
+				    readingCount BIGINT NOT NULL,
+				    rangeMean DOUBLE,
+				    rangeVariance DOUBLE,
+				    PRIMARY KEY (targetID, bucketStart)
+				)
+				""");
+			stmt.execute("""
+				CREATE TABLE IF NOT EXISTS AnchorRollups (
+				    anchorID INT NOT NULL,
+				    bucketStart BIGINT NOT NULL,
+				    bucketSize BIGINT NOT NULL,
+				    readingCount BIGINT NOT NULL,
+				    rangeMean DOUBLE,
+				    rangeVariance DOUBLE,
+				    PRIMARY KEY (anchorID, bucketStart)
+				)
+				""");
+			stmt.execute("""
+				CREATE TABLE IF NOT EXISTS RollupProgress (
+				    rollup VARCHAR(32) NOT NULL PRIMARY KEY,
+				    lastBucket BIGINT NOT NULL
+				)
+				""");
+		}
+	}
+
+	/**
+	 * Rolls up every completed bucket since the last rolled-up one, at most
+	 * back to the retention horizon, and records each bucket as done, with
+	 * or without readings.
+	 */
+	private void computeRollups(Connection conn, long now) throws SQLException {
+		long lastDone = readRollupProgress(conn);
+
+		// Leave one extra bucket of slack for readings reported late by anchors.
+		long lastComplete = floor(now, this.rollupInterval) - 2 * this.rollupInterval;
+		long bucket = Math.max(lastDone >= 0 ? lastDone + this.rollupInterval : Long.MIN_VALUE,
+				floor(now - this.retentionMillis, this.rollupInterval));
+
+		final String tagSql = """
+			INSERT INTO TagRollups (targetID, bucketStart, bucketSize, readingCount, rangeMean, rangeVariance)
+			SELECT m.targetID, ?, ?, COUNT(*), AVG(r.`Range`), VAR_POP(r.`Range`)
+			FROM ToAreadings r JOIN Measurements m ON m.measurementID = r.measurementID
+			    AND m.timestamp >= ? AND m.timestamp < ?
+			WHERE r.timestamp >= ? AND r.timestamp < ?
+			GROUP BY m.targetID
+			ON DUPLICATE KEY UPDATE readingCount = VALUES(readingCount), rangeMean = VALUES(rangeMean), rangeVariance = VALUES(rangeVariance)
+			""";
+		final String anchorSql = """
+			INSERT INTO AnchorRollups (anchorID, bucketStart, bucketSize, readingCount, rangeMean, rangeVariance)
+			SELECT r.anchorID, ?, ?, COUNT(*), AVG(r.`Range`), VAR_POP(r.`Range`)
+			FROM ToAreadings r
+			WHERE r.timestamp >= ? AND r.timestamp < ?
+			GROUP BY r.anchorID
+			ON DUPLICATE KEY UPDATE readingCount = VALUES(readingCount), rangeMean = VALUES(rangeMean), rangeVariance = VALUES(rangeVariance)
+			""";
+
+		final String progressSql = """
+			INSERT INTO RollupProgress (rollup, lastBucket) VALUES (?, ?)
+			ON DUPLICATE KEY UPDATE lastBucket = VALUES(lastBucket)
+			""";
+
+		try (PreparedStatement tagStmt = conn.prepareStatement(tagSql);
+			 PreparedStatement anchorStmt = conn.prepareStatement(anchorSql);
+			 PreparedStatement progressStmt = conn.prepareStatement(progressSql)) {
+			for (; bucket <= lastComplete; bucket += this.rollupInterval) {
+				long end = bucket + this.rollupInterval;
+				tagStmt.setLong(1, bucket);
+				tagStmt.setLong(2, this.rollupInterval);
+				tagStmt.setLong(3, bucket - MEASUREMENT_SLACK);
+				tagStmt.setLong(4, end + MEASUREMENT_SLACK);
+				tagStmt.setLong(5, bucket);
+				tagStmt.setLong(6, end);
+				tagStmt.executeUpdate();
+
+				anchorStmt.setLong(1, bucket);
+				anchorStmt.setLong(2, this.rollupInterval);
+				anchorStmt.setLong(3, bucket);
+				anchorStmt.setLong(4, end);
+				anchorStmt.executeUpdate();
+
+				progressStmt.setString(1, ROLLUP_NAME);
+				progressStmt.setLong(2, bucket);
+				progressStmt.executeUpdate();
+			}
+		}
+	}
+
+	/**
+	 * Reads the start of the last rolled-up bucket. Databases rolled up before
+	 * {@code RollupProgress} existed resume from their latest tag rollup.
+	 *
+	 * @return The start of the last bucket done, or -1 if none was.
+	 */
+	private long readRollupProgress(Connection conn) throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT lastBucket FROM RollupProgress WHERE rollup = ?")) {
+			stmt.setString(1, ROLLUP_NAME);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) return rs.getLong(1);
+			}
+		}
+		try (Statement stmt = conn.createStatement();
+			 ResultSet rs = stmt.executeQuery("SELECT MAX(bucketStart) FROM TagRollups")) {
+			if (rs.next()) {
+				long value = rs.getLong(1);
+				if (!rs.wasNull()) return value;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Creates missing future partitions and drops expired ones for a table.
+	 */
+	private void maintainPartitions(Connection conn, String table, long now) throws SQLException {
+		// Partition name -> exclusive upper bound; pmax (MAXVALUE) is kept apart.
+		TreeMap<Long, String> partitions = new TreeMap<>();
+		boolean hasMax = false;
+		final String sql = """
+			SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM INFORMATION_SCHEMA.PARTITIONS
+			WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL
+			""";
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setString(1, table);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					String description = rs.getString(2);
+					if ("MAXVALUE".equalsIgnoreCase(description)) {
+						hasMax = true;
+					} else {
+						partitions.put(Long.parseLong(description), rs.getString(1));
+					}
+				}
+			}
+		}
+
+		if (!hasMax) {
+			if (enableLogs) System.err.println("Table " + table + " is not RANGE partitioned with a pmax partition; skipping partition maintenance.");
+			return;
+		}
+
+		long period = this.granularity.periodMillis;
+		long target = floor(now, period) + (this.partitionsAhead + 1) * period;
+		long next = partitions.isEmpty() ? floor(now, period) + period : partitions.lastKey() + period;
+		try (Statement stmt = conn.createStatement()) {
+			for (; next <= target; next += period) {
+				String name = "p" + this.granularity.nameFormat.format(Instant.ofEpochMilli(next - period));
+				stmt.execute("ALTER TABLE " + table + " REORGANIZE PARTITION pmax INTO ("
+						+ "PARTITION " + name + " VALUES LESS THAN (" + next + "), "
+						+ "PARTITION pmax VALUES LESS THAN MAXVALUE)");
+				if (enableLogs) System.out.println("Created partition " + table + "." + name);
+			}
+
+			long horizon = now - this.retentionMillis;
+			for (var entry : partitions.headMap(horizon, true).entrySet()) {
+				stmt.execute("ALTER TABLE " + table + " DROP PARTITION " + entry.getValue());
+				if (enableLogs) System.out.println("Dropped expired partition " + table + "." + entry.getValue());
+			}
+		}
+	}
+
+	private static long floor(long time, long period) {
+		return Math.floorDiv(time, period) * period;
+	}
+}
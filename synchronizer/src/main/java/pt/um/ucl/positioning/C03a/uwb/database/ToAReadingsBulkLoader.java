@@ -0,0 +1,325 @@
+package pt.um.ucl.positioning.C03a.uwb.database;
+
+import pt.um.ucl.positioning.C03a.uwb.communications.CircuitBreaker;
+import pt.um.ucl.positioning.C03a.uwb.communications.RetryScheduler;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+
+import java.io.ByteArrayInputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+/**
+ * Bulk-load fast path for the {@code ToAreadings} table.
+ * <p>
+ * Instead of one {@code INSERT} per reading, readings from many measurements
+ * are accumulated in primitive arrays and periodically streamed to MariaDB as
+ * CSV with {@code LOAD DATA LOCAL INFILE}. The CSV is encoded into an
+ * in-memory buffer and handed to the driver through its local-infile stream
+ * API, so no temporary file is written.
+ * <p>
+ * Rows are flushed once {@code db.bulkSize} readings are queued or every
+ * {@code db.bulkFlushInterval} milliseconds. If a bulk load fails, the rows
+ * fall back to the batched-insert path, submitted to the database sink's
+ * {@link RetryScheduler} behind its {@link CircuitBreaker}: a batch that
+ * cannot be inserted either is re-attempted, and counted as dropped if it
+ * never is. Requires {@code local_infile} to be enabled on the server.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class ToAReadingsBulkLoader {
+
+	private static final String LOAD_SQL = """
+			LOAD DATA LOCAL INFILE 'ToAreadings.csv' INTO TABLE ToAreadings
+			FIELDS TERMINATED BY ',' LINES TERMINATED BY '\\n'
+			(measurementID, timestamp, anchorID, `Range`)
+			""";
+
+	/** The connection pool manager. */
+	private final DataSource dataSource;
+	/** Number of queued readings that triggers a flush. */
+	private final int flushSize;
+	/** Flag to enable/disable Logs. */
+	private final boolean enableLogs;
+	/** Timer that flushes partially filled buffers. */
+	private final ScheduledExecutorService flushTimer;
+	/** Serialises loads so the spare buffer is never refilled while it is being sent. */
+	private final Object loadLock = new Object();
+
+	/** Rows being accumulated. Guarded by {@code this}. */
+	private Rows active;
+	/** Rows being loaded. Guarded by {@code loadLock}. */
+	private Rows spare;
+	/** Reused CSV encoding buffer. Guarded by {@code loadLock}. */
+	private byte[] csv = new byte[64 * 1024];
+	/** How failed batches are re-attempted, or {@code null} until the database sink starts. */
+	private volatile Retry retry;
+
+	/**
+	 * The retry settings of the database sink.
+	 *
+	 * @param scheduler The shared {@link RetryScheduler}.
+	 * @param breaker The database {@link CircuitBreaker}.
+	 * @param policy The database retry policy.
+	 */
+	private record Retry(RetryScheduler scheduler, CircuitBreaker breaker, RetryScheduler.Policy policy) {}
+
+	/**
+	 * Constructs a new bulk loader and starts its flush timer.
+	 *
+	 * @param dataSource The {@link DataSource} to load into.
+	 * @param flushSize Number of queued readings that triggers a flush.
+	 * @param flushInterval Maximum time a reading stays queued, in milliseconds.
+	 * @param enableLogs {@code true} to log load errors.
+	 */
+	public ToAReadingsBulkLoader(DataSource dataSource, int flushSize, long flushInterval, boolean enableLogs) {
+		this.dataSource = dataSource;
+		this.flushSize = Math.max(1, flushSize);
+		this.enableLogs = enableLogs;
+		this.active = new Rows(this.flushSize);
+		this.spare = new Rows(this.flushSize);
+		this.flushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "toa-bulk-flush");
+			t.setDaemon(true);
+			return t;
+		});
+		this.flushTimer.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Re-attempts batches that could not be loaded or inserted like the
+	 * database sink re-attempts its writes. Without it, such a batch is lost.
+	 *
+	 * @param scheduler The shared {@link RetryScheduler}.
+	 * @param breaker The database {@link CircuitBreaker}.
+	 * @param policy The database retry policy.
+	 */
+	public void setRetry(RetryScheduler scheduler, CircuitBreaker breaker, RetryScheduler.Policy policy) {
+		this.retry = new Retry(scheduler, breaker, policy);
+	}
+
+	/**
+	 * Queues the readings of a saved measurement, straight from its reading
+	 * arrays. The calling thread performs the load itself when the queue
+	 * reaches {@code db.bulkSize}.
+	 *
+	 * @param measurementId The foreign key ID of the parent measurement.
+	 * @param measurement The measurement whose readings to save.
+	 */
+	public void add(int measurementId, Measurement measurement) {
+		boolean full;
+		synchronized (this) {
+			int readingCount = measurement.getReadingCount();
+			for (int i = 0; i < readingCount; i++) {
+				this.active.add(measurementId, measurement.getTimestamp(i), measurement.getAnchor(i).getDeviceID(), measurement.getDistance(i));
+			}
+			full = this.active.count >= this.flushSize;
+		}
+		if (full) {
+			flush();
+		}
+	}
+
+	/**
+	 * Loads every queued reading.
+	 */
+	public void flush() {
+		synchronized (this.loadLock) {
+			Rows rows;
+			synchronized (this) {
+				if (this.active.count == 0) return;
+				rows = this.active;
+				this.active = this.spare;
+				this.spare = rows;
+			}
+			try {
+				load(rows);
+			} catch (SQLException e) {
+				if (this.enableLogs) System.err.println("Bulk load of " + rows.count + " ToA readings failed, falling back to batched inserts: " + e.getMessage());
+				insertOrRetry(rows);
+			} finally {
+				rows.count = 0;
+			}
+		}
+	}
+
+	/**
+	 * Inserts rows whose bulk load failed through the retry scheduler, whose
+	 * first attempt runs on the calling thread.
+	 *
+	 * @param rows The rows, reused once this returns.
+	 */
+	private void insertOrRetry(Rows rows) {
+		Retry retry = this.retry;
+		if (retry == null) {
+			try {
+				insertBatched(rows);
+			} catch (SQLException e) {
+				if (this.enableLogs) System.err.println("Error saving " + rows.count + " ToA readings, they are lost: " + e.getMessage());
+			}
+			return;
+		}
+		Rows batch = rows.copy();
+		retry.scheduler().submit("insert of " + batch.count + " ToA readings", retry.breaker(), retry.policy(), () -> {
+			insertBatched(batch);
+			return CompletableFuture.completedFuture(null);
+		});
+	}
+
+	/**
+	 * Streams rows as CSV through {@code LOAD DATA LOCAL INFILE}.
+	 *
+	 * @param rows The rows to load.
+	 * @throws SQLException if the load fails.
+	 */
+	void load(Rows rows) throws SQLException {
+		int length = encodeCsv(rows);
+		try (Connection conn = dataSource.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(LOAD_SQL)) {
+			stmt.unwrap(org.mariadb.jdbc.Statement.class).setLocalInfileInputStream(new ByteArrayInputStream(this.csv, 0, length));
+			stmt.execute();
+		}
+	}
+
+	/**
+	 * Writes rows with the regular batched-insert statement, in one
+	 * transaction, so a failed attempt can be repeated without duplicates.
+	 *
+	 * @param rows The rows to insert.
+	 * @throws SQLException if the insert fails.
+	 */
+	void insertBatched(Rows rows) throws SQLException {
+		final String sql = """
+			INSERT INTO ToAreadings (measurementID, timestamp, anchorID, `Range`)
+			VALUES (?, ?, ?, ?)
+			""";
+		try (Connection conn = dataSource.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(sql)) {
+			conn.setAutoCommit(false);
+			try {
+				for (int i = 0; i < rows.count; i++) {
+					stmt.setInt(1, rows.measurementIds[i]);
+					stmt.setLong(2, rows.timestamps[i]);
+					stmt.setInt(3, rows.anchorIds[i]);
+					stmt.setDouble(4, rows.ranges[i]);
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+				conn.commit();
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+		}
+	}
+
+	/**
+	 * Encodes rows as {@code measurementID,timestamp,anchorID,Range} lines into
+	 * the reused CSV buffer.
+	 *
+	 * @param rows The rows to encode.
+	 * @return The number of bytes written.
+	 */
+	private int encodeCsv(Rows rows) {
+		int pos = 0;
+		for (int i = 0; i < rows.count; i++) {
+			// Longest possible line: 11 + 20 + 11 + 24 digits/signs plus separators.
+			if (pos + 72 > this.csv.length) {
+				this.csv = Arrays.copyOf(this.csv, this.csv.length * 2);
+			}
+			pos = appendLong(rows.measurementIds[i], pos);
+			this.csv[pos++] = ',';
+			pos = appendLong(rows.timestamps[i], pos);
+			this.csv[pos++] = ',';
+			pos = appendLong(rows.anchorIds[i], pos);
+			this.csv[pos++] = ',';
+			String range = Double.toString(rows.ranges[i]);
+			for (int c = 0; c < range.length(); c++) {
+				this.csv[pos++] = (byte) range.charAt(c);
+			}
+			this.csv[pos++] = '\n';
+		}
+		return pos;
+	}
+
+	private int appendLong(long value, int pos) {
+		if (value < 0) {
+			if (value == Long.MIN_VALUE) {
+				for (char c : "-9223372036854775808".toCharArray()) this.csv[pos++] = (byte) c;
+				return pos;
+			}
+			this.csv[pos++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (long v = value / 10; v != 0; v /= 10) digits++;
+		int end = pos + digits;
+		do {
+			this.csv[--end] = (byte) ('0' + (value % 10));
+			value /= 10;
+		} while (value != 0);
+		return pos + digits;
+	}
+
+	/**
+	 * Stops the flush timer and loads everything still queued.
+	 */
+	public void close() {
+		this.flushTimer.shutdownNow();
+		flush();
+	}
+
+	/**
+	 * Column buffers for queued {@code ToAreadings} rows.
+	 */
+	static final class Rows {
+		int[] measurementIds;
+		long[] timestamps;
+		int[] anchorIds;
+		double[] ranges;
+		int count;
+
+		Rows(int capacity) {
+			this.measurementIds = new int[capacity];
+			this.timestamps = new long[capacity];
+			this.anchorIds = new int[capacity];
+			this.ranges = new double[capacity];
+		}
+
+		/** Copies the queued rows, for a batch that outlives its buffer. */
+		Rows copy() {
+			Rows copy = new Rows(Math.max(1, this.count));
+			System.arraycopy(this.measurementIds, 0, copy.measurementIds, 0, this.count);
+			System.arraycopy(this.timestamps, 0, copy.timestamps, 0, this.count);
+			System.arraycopy(this.anchorIds, 0, copy.anchorIds, 0, this.count);
+			System.arraycopy(this.ranges, 0, copy.ranges, 0, this.count);
+			copy.count = this.count;
+			return copy;
+		}
+
+		void add(int measurementId, long timestamp, int anchorId, double range) {
+			if (this.count == this.ranges.length) {
+				int capacity = this.count * 2;
+				this.measurementIds = Arrays.copyOf(this.measurementIds, capacity);
+				this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+				this.anchorIds = Arrays.copyOf(this.anchorIds, capacity);
+				this.ranges = Arrays.copyOf(this.ranges, capacity);
+			}
+			this.measurementIds[this.count] = measurementId;
+			this.timestamps[this.count] = timestamp;
+			this.anchorIds[this.count] = anchorId;
+			this.ranges[this.count] = range;
+			this.count++;
+		}
+	}
+}
@@ -19,6 +19,10 @@ public class Anchor extends Device {
 	public List<Tag> listOfTags;
 	/** The maximum effective range of the anchor (e.g., in meters). */
 	public int range = 20;
+	/** The anchor coordinates, in the same unit as the measured distances. */
+	private double x, y, z;
+	/** Whether the anchor coordinates are known. */
+	private boolean positioned;
 	
 	/**
 	 * Constructs a new Anchor device.
@@ -49,4 +53,31 @@ public class Anchor extends Device {
 	public int getRange() {
 		return this.range;
 	}
+
+	/**
+	 * Sets the surveyed coordinates of this anchor.
+	 *
+	 * @param x The X coordinate.
+	 * @param y The Y coordinate.
+	 * @param z The Z coordinate (height).
+	 */
+	public void setPosition(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.positioned = true;
+	}
+
+	/**
+	 * Checks whether the coordinates of this anchor are known.
+	 *
+	 * @return {@code true} if {@link #setPosition} was called.
+	 */
+	public boolean hasPosition() {
+		return this.positioned;
+	}
+
+	public double getX() { return x; }
+	public double getY() { return y; }
+	public double getZ() { return z; }
 }
\ No newline at end of file
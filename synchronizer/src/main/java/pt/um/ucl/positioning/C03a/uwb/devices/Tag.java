@@ -1,29 +1,30 @@
 package pt.um.ucl.positioning.C03a.uwb.devices;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementRing;
 
 /**
  * Represents a UWB Tag device.
  * <p>
  * Tags are typically mobile devices whose positions are tracked by
  * stationary {@link Anchor} devices. This class extends the base
- * {@link Device} class and holds a list of its associated
+ * {@link Device} class and holds the ring of its in-flight
  * {@link Measurement}s.
  * 
  * @author Gustavo Oliveira
  * @version 0.4
  */
 public class Tag extends Device {
+
+	/** Number of rounds a tag keeps in flight before the oldest is evicted. */
+	public static final int IN_FLIGHT_ROUNDS = 16;
 	
 	/** The anchor currently closest to this tag. */
 	private Anchor nearestAnchor;
 	/** The measured distance to the nearest anchor. */
 	private Integer distanceToNearestAnchor;
-	/** A list of all measurement rounds this tag has been a part of. */
-	private List<Measurement> measurements;
+	/** The open measurement rounds of this tag, indexed by round ID. */
+	private final MeasurementRing measurements;
 
 	/**
 	 * Constructs a new Tag device.
@@ -35,7 +36,7 @@ public class Tag extends Device {
 	public Tag(String deviceName, long initializedAt, long lastSeen) {
 		super(deviceName, initializedAt, lastSeen);
 		this.distanceToNearestAnchor = 0;
-		this.measurements = new ArrayList<Measurement>();
+		this.measurements = new MeasurementRing(IN_FLIGHT_ROUNDS);
 	}
 	
 	/**
@@ -66,21 +67,13 @@ public class Tag extends Device {
 	}
 
 	/**
-	 * Gets the list of measurements associated with this tag.
+	 * Gets the in-flight measurements of this tag. The ring is lock-free, so
+	 * it is shared as is rather than copied.
 	 *
-	 * @return A list of {@link Measurement} objects.
+	 * @return The {@link MeasurementRing} of this tag.
 	 */
-	public synchronized List<Measurement> getMeasurements() {
+	public MeasurementRing getMeasurements() {
 		return this.measurements;
 	}
 
-	/**
-	 * Sets or replaces the list of measurements for this tag.
-	 *
-	 * @param measurements The new list of {@link Measurement} objects.
-	 */
-	public synchronized void setMeasurements(List<Measurement> measurements) {
-		this.measurements = measurements;
-	}
-
 }
\ No newline at end of file
@@ -1,7 +1,7 @@
 package pt.um.ucl.positioning.C03a.uwb.managers;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 
 /**
  * Manages the sequencing of actions (slow scan, fast scan, measurement)
@@ -33,12 +33,14 @@ public class ActionManager {
 	private long scanInterval;
 	/** The duration of a single scan operation (milliseconds). */
 	private long scanTime;
-	/** The timestamp of the last scan. */
-	public LocalDateTime lastScan = LocalDateTime.now();
+	/** The timestamp of the last scan, in the zone of {@link #clock}. */
+	public LocalDateTime lastScan;
 	/** Timestamp until which the communication channel is considered busy (milliseconds). */
-	private long channelBusyUntil = LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	private long channelBusyUntil;
 	/** Timestamp when the current action round started (milliseconds). */
-	private long actionStartingTime = LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	private long actionStartingTime;
+	/** The time source of every decision. */
+	private final Clock clock;
 	
 	private long minRoundTime;
 	
@@ -46,12 +48,32 @@ public class ActionManager {
 	private long safetyBuffer; 
 
 	public ActionManager(long slowScanPeriod, long scanPeriod, long scanInterval, long scanTime, long minRoundTime, long safetyBuffer) {
+	    this(slowScanPeriod, scanPeriod, scanInterval, scanTime, minRoundTime, safetyBuffer, Clock.systemDefaultZone());
+	}
+
+	/**
+	 * Constructor that keeps time with the given clock, so the sequencing can
+	 * run in virtual time.
+	 *
+	 * @param slowScanPeriod The period for a slow scan in milliseconds.
+	 * @param scanPeriod The period for a fast scan in milliseconds.
+	 * @param scanInterval The time between consecutive scans in milliseconds.
+	 * @param scanTime The duration of a single scan operation in milliseconds.
+	 * @param minRoundTime The time anchors are given to receive a command, in milliseconds.
+	 * @param safetyBuffer The guard time on each side of a slot, in milliseconds.
+	 * @param clock The time source.
+	 */
+	public ActionManager(long slowScanPeriod, long scanPeriod, long scanInterval, long scanTime, long minRoundTime, long safetyBuffer, Clock clock) {
 	    this.slowScanPeriod = slowScanPeriod;
 	    this.scanPeriod = scanPeriod;
 	    this.scanInterval = scanInterval;
 	    this.scanTime = scanTime;
 	    this.minRoundTime = minRoundTime;
 	    this.safetyBuffer = safetyBuffer; 
+	    this.clock = clock;
+	    this.lastScan = LocalDateTime.now(clock);
+	    this.channelBusyUntil = clock.millis();
+	    this.actionStartingTime = this.channelBusyUntil;
 	}
 	
 	/**
@@ -63,11 +85,7 @@ public class ActionManager {
 	 * @param scanTime The duration of a single scan operation in milliseconds.
 	 */
 	public ActionManager(long slowScanPeriod, long scanPeriod, long scanInterval, long scanTime, long minRoundTime) {
-		this.slowScanPeriod = slowScanPeriod;
-		this.scanPeriod = scanPeriod;
-		this.scanInterval = scanInterval;
-		this.scanTime = scanTime;
-		this.minRoundTime = minRoundTime;
+		this(slowScanPeriod, scanPeriod, scanInterval, scanTime, minRoundTime, 0, Clock.systemDefaultZone());
 	}
 	
 	/**
@@ -76,7 +94,7 @@ public class ActionManager {
 	 * @return The next action, which can be SLOW_SCAN, FAST_SCAN, or MEASUREMENT.
 	 */
 		public Action nextAction() {
-			long now = System.currentTimeMillis();
+			long now = this.clock.millis();
 
 			// 1. Lock the channel for ALL action types, not just measurements.
 			// If an action is currently running, do not interrupt it!
@@ -86,11 +104,11 @@ public class ActionManager {
 			    if ("slow scan".equals(this.currentAction)) return Action.SLOW_SCAN;
 			}
 
-			long lastScanMillis = this.lastScan.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+			long lastScanMillis = this.lastScan.atZone(this.clock.getZone()).toInstant().toEpochMilli();
 			
 			// 2. Trigger a scan EXACTLY ONCE when the period expires
 			if((now - lastScanMillis) > this.scanPeriod) {	
-				this.lastScan = LocalDateTime.now();
+				this.lastScan = LocalDateTime.now(this.clock);
 				this.setCurrentAction("fast scan");
 				return Action.FAST_SCAN;
 			} 
@@ -101,7 +119,7 @@ public class ActionManager {
 		}
 		
 		public long getFastScanTime() {
-		    long now = System.currentTimeMillis();
+		    long now = this.clock.millis();
 
 		    // Synchronize fast scans just like measurements!
 		    if (now >= this.channelBusyUntil) {
@@ -115,7 +133,7 @@ public class ActionManager {
 		}
 
 		public long getSlowScanTime(){
-		    long now = System.currentTimeMillis();
+		    long now = this.clock.millis();
 
 		    if (now >= this.channelBusyUntil) {
 		        this.setActionStartingTime(now + this.getMinRoundTime());
@@ -135,7 +153,7 @@ public class ActionManager {
 	 * @return The timestamp in milliseconds when the next measurement action should start.
 	 */
 	public long getMeasurmentTime(int numberOfAnchor, int numberOfTags) {
-	    long now = System.currentTimeMillis();
+	    long now = this.clock.millis();
 	
 	    if (now >= this.channelBusyUntil) {
 	        this.setActionStartingTime(now + this.getMinRoundTime()); 
@@ -156,7 +174,7 @@ public class ActionManager {
 	 * Forces a time sync
 	 */
 	public void forceTimeSync() {
-	    long now = System.currentTimeMillis();
+	    long now = this.clock.millis();
 	    if (this.channelBusyUntil < now) {
 	        this.channelBusyUntil = now;
 	        this.actionStartingTime = now;
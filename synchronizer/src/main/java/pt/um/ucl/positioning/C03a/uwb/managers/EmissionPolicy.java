@@ -0,0 +1,146 @@
+package pt.um.ucl.positioning.C03a.uwb.managers;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+
+/**
+ * Decides when an open {@link Measurement} is emitted for output, and what
+ * happens to readings that arrive after it was.
+ * <p>
+ * A measurement is emitted as soon as one of these holds:
+ * <ol>
+ * <li>every anchor scheduled in its round has reported ({@link Reason#COMPLETE}),</li>
+ * <li>{@code output.quorum} of them have reported ({@link Reason#QUORUM}),</li>
+ * <li>its deadline, {@code output.deadlineDelay} milliseconds after the
+ * end of its round, has passed ({@link Reason#DEADLINE}), or</li>
+ * <li>it has been stale for 10 seconds ({@link Reason#STALE}), the fallback
+ * for measurements without a deadline (the default).</li>
+ * </ol>
+ * With {@code output.lateReadings=merge}, an emitted measurement that is
+ * still missing anchors is replaced by a follow-up, which collects the late
+ * readings of the same round and is emitted once the round is complete or
+ * its validity window closes. With {@code drop}, late readings are discarded.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class EmissionPolicy {
+
+	/**
+	 * Why a measurement was emitted.
+	 */
+	public enum Reason {
+		/** Not ready to be emitted. */
+		NONE,
+		/** All scheduled anchors reported. */
+		COMPLETE,
+		/** Enough anchors reported. */
+		QUORUM,
+		/** The deadline passed. */
+		DEADLINE,
+		/** The measurement went stale without a deadline. */
+		STALE
+	}
+
+	/** Time after the end of a measurement's validity window after which it is stale. */
+	public static final long STALE_AFTER = 10000;
+
+	/** Readings needed for early emission, or 0 to wait for all scheduled anchors. */
+	private final int quorum;
+	/** {@code true} to collect late readings into follow-up measurements. */
+	private final boolean mergeLateReadings;
+
+	private final LongAdder[] emitted = new LongAdder[Reason.values().length];
+	private final LongAdder followUps = new LongAdder();
+	private final LongAdder lateMerged = new LongAdder();
+	private final LongAdder lateDropped = new LongAdder();
+
+	/**
+	 * Constructs a new policy from the {@code output.*} settings.
+	 *
+	 * @param config The system configuration.
+	 */
+	public EmissionPolicy(Config config) {
+		this.quorum = config.getOutputQuorum();
+		String late = config.getOutputLateReadings();
+		if (!"merge".equalsIgnoreCase(late) && !"drop".equalsIgnoreCase(late)) {
+			throw new IllegalArgumentException("output.lateReadings must be merge or drop, got " + late);
+		}
+		this.mergeLateReadings = "merge".equalsIgnoreCase(late);
+		for (int i = 0; i < this.emitted.length; i++) this.emitted[i] = new LongAdder();
+	}
+
+	/**
+	 * Decides whether a measurement is ready to be emitted. Measurements that
+	 * were already emitted, or have no readings, never are.
+	 *
+	 * @param measurement The open measurement.
+	 * @param registeredAnchors The number of registered anchors, used when the
+	 * measurement does not know its scheduled anchors.
+	 * @param now The current time (epoch ms).
+	 * @return Why it is ready, or {@link Reason#NONE}.
+	 */
+	public Reason decide(Measurement measurement, int registeredAnchors, long now) {
+		if (measurement.getSentForOutput() || !measurement.hasReadings()) return Reason.NONE;
+		int expected = measurement.getExpectedAnchors() > 0 ? measurement.getExpectedAnchors() : registeredAnchors;
+		if (measurement.getRoundReadingCount() >= expected) return Reason.COMPLETE;
+		if (!measurement.isFollowUp() && this.quorum > 0 && measurement.getReadingCount() >= this.quorum) return Reason.QUORUM;
+		if (measurement.getDeadline() > 0 && now >= measurement.getDeadline()) return Reason.DEADLINE;
+		if (isStale(measurement, now)) return Reason.STALE;
+		return Reason.NONE;
+	}
+
+	/**
+	 * Checks whether a measurement can be forgotten: it was emitted, it went
+	 * stale, or it is a follow-up whose deadline passed.
+	 *
+	 * @param measurement The measurement.
+	 * @param now The current time (epoch ms).
+	 * @return {@code true} if it can be removed from its tag.
+	 */
+	public boolean isDone(Measurement measurement, long now) {
+		return measurement.getSentForOutput() || isStale(measurement, now)
+				|| (measurement.isFollowUp() && now >= measurement.getDeadline());
+	}
+
+	private static boolean isStale(Measurement measurement, long now) {
+		return now > measurement.getMeasurmentEndTime() + STALE_AFTER;
+	}
+
+	/**
+	 * Records an emission and creates the follow-up of the measurement, if
+	 * late readings are merged and the round may still receive some.
+	 *
+	 * @param measurement The emitted measurement.
+	 * @param reason Why it was emitted.
+	 * @param now The current time (epoch ms).
+	 * @return The follow-up measurement to open, or {@code null}.
+	 */
+	public Measurement emitted(Measurement measurement, Reason reason, long now) {
+		this.emitted[reason.ordinal()].increment();
+		if (!this.mergeLateReadings || reason == Reason.COMPLETE || reason == Reason.STALE
+				|| now >= measurement.getMeasurmentEndTime()) {
+			return null;
+		}
+		this.followUps.increment();
+		return Measurement.followUp(measurement, measurement.getMeasurmentEndTime());
+	}
+
+	/**
+	 * Records a reading that arrived after its measurement was emitted.
+	 *
+	 * @param merged {@code true} if it went into a follow-up measurement.
+	 */
+	public void lateReading(boolean merged) {
+		(merged ? this.lateMerged : this.lateDropped).increment();
+	}
+
+	public int getQuorum() { return quorum; }
+	public boolean isMergeLateReadings() { return mergeLateReadings; }
+	public long getEmittedCount(Reason reason) { return emitted[reason.ordinal()].sum(); }
+	public long getFollowUpCount() { return followUps.sum(); }
+	public long getLateMergedCount() { return lateMerged.sum(); }
+	public long getLateDroppedCount() { return lateDropped.sum(); }
+}
@@ -0,0 +1,74 @@
+package pt.um.ucl.positioning.C03a.uwb.managers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+
+/**
+ * Immutable view of the registered tags and anchors at one point in time.
+ * <p>
+ * The {@link Synchronizer} builds a new snapshot only when a device is
+ * registered or evicted, and publishes it with a single volatile write, so
+ * round planning, output and {@code /status} read a consistent membership
+ * with one volatile read and no copying. The devices themselves are shared,
+ * so their mutable state (e.g. last seen) is always current.
+ *
+ * @param version Increases by one with every membership change.
+ * @param tags The registered tags.
+ * @param anchors The registered anchors.
+ * @param tagsByName The registered tags, by device name.
+ * @param anchorsByName The registered anchors, by device name.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public record RegistrySnapshot(long version, List<Tag> tags, List<Anchor> anchors,
+		Map<String, Tag> tagsByName, Map<String, Anchor> anchorsByName) {
+
+	/** The snapshot of an empty registry. */
+	static final RegistrySnapshot EMPTY = new RegistrySnapshot(0, List.of(), List.of(), Map.of(), Map.of());
+
+	/**
+	 * Builds a snapshot of the given devices.
+	 *
+	 * @param version The version of the snapshot.
+	 * @param tags The registered tags.
+	 * @param anchors The registered anchors.
+	 * @return The snapshot.
+	 */
+	static RegistrySnapshot of(long version, Collection<Tag> tags, Collection<Anchor> anchors) {
+		Map<String, Tag> tagsByName = new HashMap<>(tags.size() * 2);
+		for (Tag tag : tags) tagsByName.put(tag.getDeviceName(), tag);
+		Map<String, Anchor> anchorsByName = new HashMap<>(anchors.size() * 2);
+		for (Anchor anchor : anchors) anchorsByName.put(anchor.getDeviceName(), anchor);
+		return new RegistrySnapshot(version,
+				Collections.unmodifiableList(new ArrayList<>(tags)), Collections.unmodifiableList(new ArrayList<>(anchors)),
+				Collections.unmodifiableMap(tagsByName), Collections.unmodifiableMap(anchorsByName));
+	}
+
+	/**
+	 * Looks up a registered tag.
+	 *
+	 * @param name The device name.
+	 * @return The tag, or {@code null}.
+	 */
+	public Tag getTag(String name) {
+		return this.tagsByName.get(name);
+	}
+
+	/**
+	 * Looks up a registered anchor.
+	 *
+	 * @param name The device name.
+	 * @return The anchor, or {@code null}.
+	 */
+	public Anchor getAnchor(String name) {
+		return this.anchorsByName.get(name);
+	}
+}
@@ -5,15 +5,19 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Paths; 
+import java.time.Clock;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -23,9 +27,12 @@ import pt.um.ucl.positioning.C03a.uwb.config.Config;
 import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
 import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
 import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementPool;
+import pt.um.ucl.positioning.C03a.uwb.positioning.TagTracker;
 
 public class Synchronizer {
 	
+	/** Registered devices. Change them only through {@link #addNewTag(Tag)}, {@link #addNewAnchor(Anchor)} and {@link #evictDevices(long)}, which republish the {@link RegistrySnapshot}. */
 	public Map<String, Tag> listOfTags;
 	public Map<String, Anchor> listOfAnchors;
 	public Set<String> whitelistOfTags;
@@ -40,6 +47,8 @@ public class Synchronizer {
         public final List<Anchor> anchors;
         public final List<Tag> tags;
         public final Set<String> dispatchedAnchors = ConcurrentHashMap.newKeySet();
+        /** Names of the planned anchors, to find an anchor's round without scanning. */
+        public final Set<String> anchorNames;
 
         public RoundPlan(long executionTime, long completionTime, List<Anchor> anchors, List<Tag> tags) {
             this.roundId = nextRoundIdCounter.getAndIncrement();
@@ -47,15 +56,32 @@ public class Synchronizer {
             this.completionTime = completionTime;
             this.anchors = anchors;
             this.tags = tags;
+            this.anchorNames = new HashSet<>(anchors.size() * 2);
+            for (Anchor anchor : anchors) this.anchorNames.add(anchor.getDeviceName());
         }
     }
 
     private final Queue<RoundPlan> upcomingRounds = new ConcurrentLinkedQueue<>();
+    /** Kalman tracks of the tags, or {@code null} when tracking is disabled. */
+    private volatile TagTracker tagTracker;
+    /** Recycles measurements, or {@code null} to allocate every one. */
+    private volatile MeasurementPool measurementPool;
+    /** Measurements evicted from a tag's ring while still open. */
+    private final LongAdder evictedRounds = new LongAdder();
+    /** Measurements opened, one per tag and round. */
+    private final LongAdder openedRounds = new LongAdder();
+    /** The current membership, republished on every registration or eviction. */
+    private volatile RegistrySnapshot registry = RegistrySnapshot.EMPTY;
+    /** The time source rounds are planned with. */
+    private volatile Clock clock = Clock.systemUTC();
+    /** Told the code of every evicted tag, to release the state kept for it. */
+    private final List<Consumer<String>> tagEvictionListeners = new CopyOnWriteArrayList<>();
 
 	public Synchronizer(Map<String, Tag> listOfTags, Map<String, Anchor> listOfAnchors) {
 		super();
 		this.listOfTags = listOfTags;
 		this.listOfAnchors = listOfAnchors;
+		publishRegistry();
 	}
 	
 	public Synchronizer() {
@@ -66,39 +92,138 @@ public class Synchronizer {
 	}
 	
 	public synchronized void addNewAnchor(Anchor anchor) {
-		this.listOfAnchors.put(anchor.getDeviceName(), anchor);
+		if (this.listOfAnchors.put(anchor.getDeviceName(), anchor) != anchor) publishRegistry();
 	}
 	
 	public boolean anchorExists(Anchor anchor) {
-		return this.listOfAnchors.containsKey(anchor.getDeviceName());
+		return this.registry.getAnchor(anchor.getDeviceName()) != null;
 	}
 	
 	public synchronized void addNewTag(Tag tag) {
-		this.listOfTags.put(tag.getDeviceName(), tag);
+		if (this.listOfTags.put(tag.getDeviceName(), tag) != tag) publishRegistry();
 	}
 	
 	public boolean tagExists(Tag tag) {
-		return this.listOfTags.containsKey(tag.getDeviceName());
+		return this.registry.getTag(tag.getDeviceName()) != null;
+	}
+
+	/**
+	 * Removes the tags and anchors not seen since the given time. The
+	 * {@link #addTagEvictionListener(Consumer) eviction listeners} are told
+	 * every tag removed.
+	 *
+	 * @param lastSeenBefore Devices last seen before this time (epoch ms) are removed.
+	 * @return The number of devices removed.
+	 */
+	public synchronized int evictDevices(long lastSeenBefore) {
+		RegistrySnapshot current = this.registry;
+		List<String> evictedTags = null;
+		int evicted = 0;
+		for (Tag tag : current.tags()) {
+			if (tag.getLastSeen() < lastSeenBefore && this.listOfTags.remove(tag.getDeviceName(), tag)) {
+				if (evictedTags == null) evictedTags = new ArrayList<>();
+				evictedTags.add(tag.getDeviceName());
+				evicted++;
+			}
+		}
+		for (Anchor anchor : current.anchors()) {
+			if (anchor.getLastSeen() < lastSeenBefore && this.listOfAnchors.remove(anchor.getDeviceName(), anchor)) evicted++;
+		}
+		if (evicted > 0) publishRegistry();
+		if (evictedTags != null) {
+			for (String tagCode : evictedTags) {
+				for (Consumer<String> listener : this.tagEvictionListeners) listener.accept(tagCode);
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * Registers a listener told the code of every tag {@link #evictDevices(long)}
+	 * removes, so per-tag state kept outside the registry is released with it.
+	 *
+	 * @param listener Receives the code of each evicted tag.
+	 */
+	public void addTagEvictionListener(Consumer<String> listener) {
+		this.tagEvictionListeners.add(listener);
+	}
+
+	/** Builds and publishes a new snapshot of the maps. Called with the lock held. */
+	private void publishRegistry() {
+		this.registry = RegistrySnapshot.of(this.registry.version() + 1, this.listOfTags.values(), this.listOfAnchors.values());
+	}
+
+	/**
+	 * Gets the current membership. The snapshot is immutable and only
+	 * replaced when a device is registered or evicted, so this is a single
+	 * volatile read.
+	 *
+	 * @return The current {@link RegistrySnapshot}.
+	 */
+	public RegistrySnapshot getRegistry() {
+		return this.registry;
 	}
 	
-	public synchronized List<Tag> getTagList() {
-	    return new ArrayList<>(this.listOfTags.values());
+	/**
+	 * Gets the registered tags.
+	 *
+	 * @return An unmodifiable list of the tags of the current snapshot.
+	 */
+	public List<Tag> getTagList() {
+	    return this.registry.tags();
+	}
+
+	/**
+	 * Gets the registered anchors.
+	 *
+	 * @return An unmodifiable list of the anchors of the current snapshot.
+	 */
+	public List<Anchor> getAnchorList() {
+	    return this.registry.anchors();
 	}
 
-	public synchronized List<Anchor> getAnchorList() {
-	    return new ArrayList<>(this.listOfAnchors.values());
+	/**
+	 * Puts a new measurement in its tag's ring. A round still open
+	 * {@link Tag#IN_FLIGHT_ROUNDS} rounds later is evicted and left to the
+	 * garbage collector, since the output may still hold it.
+	 */
+	private void openMeasurement(Tag tag, Measurement measurement) {
+	    this.openedRounds.increment();
+	    if (tag.getMeasurements().put(measurement) != null) {
+	        this.evictedRounds.increment();
+	    }
+	}
+
+	private Measurement newMeasurement(Tag tag, long startTime, long endTime, long roundId) {
+	    MeasurementPool pool = this.measurementPool;
+	    return pool != null ? pool.acquire(tag, startTime, endTime, roundId) : new Measurement(tag, startTime, endTime, roundId);
 	}
 
-	public synchronized void addMeasurementRound(long startTime, long endTime, long roundId) {
-	    long bufferMillis = 5000; 
-	    for (Tag tag : listOfTags.values()) {
+	/**
+	 * Opens the measurements of a planned round. Besides the validity window,
+	 * every measurement knows how many anchors are scheduled to report it and,
+	 * if {@code deadlineDelay} is not negative, a deadline that many
+	 * milliseconds after the end of the round, after which it is emitted with
+	 * whatever readings it has. Anchors report once their whole round is
+	 * scanned, so no reading can be expected before the round ends.
+	 *
+	 * @param plan The round plan.
+	 * @param slotTime The duration of one anchor slot.
+	 * @param deadlineDelay Milliseconds after the end of the round, or negative for no deadline.
+	 */
+	public synchronized void addMeasurementRound(RoundPlan plan, long slotTime, long deadlineDelay) {
+	    long bufferMillis = 5000;
+	    int anchorCount = plan.anchors.size();
+	    // Tags are measured one after the other, each by every anchor in turn.
+	    long roundEnd = plan.executionTime + (long) plan.tags.size() * anchorCount * slotTime;
+	    for (int i = 0; i < plan.tags.size(); i++) {
+	        Tag tag = plan.tags.get(i);
 	        if (tag == null) continue;
-	        
-	        List<Measurement> measurements = tag.getMeasurements();
-	        while (measurements.size() > 10) {
-	            measurements.remove(0); 
-	        }
-	        measurements.add(new Measurement(tag, startTime - bufferMillis, endTime + bufferMillis, roundId));
+
+	        Measurement measurement = newMeasurement(tag, plan.executionTime - bufferMillis, plan.completionTime + bufferMillis, plan.roundId);
+	        measurement.setExpectedAnchors(anchorCount);
+	        if (deadlineDelay >= 0) measurement.setDeadline(roundEnd + deadlineDelay);
+	        openMeasurement(tag, measurement);
 	    }
 	}
 	
@@ -107,7 +232,7 @@ public class Synchronizer {
 		try {
 			jsonObject.put("actionToExecute", "slowScan");
 			jsonObject.put("whenToExecute", executionTime);
-			jsonObject.put("serverTimeNow", System.currentTimeMillis());
+			jsonObject.put("serverTimeNow", this.clock.millis());
 		} catch (JSONException e) {
 			e.printStackTrace();
 			return "{\"error\":\"Failed to create slowScan response JSON.\"}";
@@ -120,7 +245,7 @@ public class Synchronizer {
 		try {
 			jsonObject.put("actionToExecute", "fastScan");
 			jsonObject.put("whenToExecute", executionTime);
-			jsonObject.put("serverTimeNow", System.currentTimeMillis());
+			jsonObject.put("serverTimeNow", this.clock.millis());
 		} catch (JSONException e) {
 			e.printStackTrace();
 			return "{\"error\":\"Failed to create fastScan response JSON.\"}";
@@ -147,15 +272,15 @@ public class Synchronizer {
     }
 	
     public String getMeasurmentResponse(Anchor requestingAnchor, long scanTime, long safetyBuffer, Config config) {
-        long now = System.currentTimeMillis();
+        long now = this.clock.millis();
+        RegistrySnapshot registry = this.registry;
 
         // FIX 1: Relaxed purge threshold. Only delete rounds that are practically in the past.
         upcomingRounds.removeIf(round -> round.executionTime < now + 50);
 
         RoundPlan targetRound = null;
         for (RoundPlan round : upcomingRounds) {
-            boolean isInRound = round.anchors.stream().anyMatch(a -> a.getDeviceName().equals(requestingAnchor.getDeviceName()));
-            if (isInRound && !round.dispatchedAnchors.contains(requestingAnchor.getDeviceName())) {
+            if (round.anchorNames.contains(requestingAnchor.getDeviceName()) && !round.dispatchedAnchors.contains(requestingAnchor.getDeviceName())) {
                 targetRound = round;
                 break;
             }
@@ -165,12 +290,16 @@ public class Synchronizer {
             // FIX 2: Increased active threshold to 30 seconds! 
             // Lagging anchors won't lose their TDMA slot due to temporary Wi-Fi spikes.
             long activeThreshold = now - 30000; 
-            List<Anchor> activeAnchors = this.listOfAnchors.values().stream()
-                .filter(a -> a.getLastSeen() > activeThreshold)
-                .collect(Collectors.toList());
-            List<Tag> activeTags = new ArrayList<>(this.listOfTags.values());
+            List<Anchor> activeAnchors = new ArrayList<>(registry.anchors().size() + 1);
+            boolean alreadyActive = false;
+            for (Anchor a : registry.anchors()) {
+                if (a.getLastSeen() > activeThreshold) {
+                    activeAnchors.add(a);
+                    alreadyActive |= a.getDeviceName().equals(requestingAnchor.getDeviceName());
+                }
+            }
+            List<Tag> activeTags = registry.tags();
 
-            boolean alreadyActive = activeAnchors.stream().anyMatch(a -> a.getDeviceName().equals(requestingAnchor.getDeviceName()));
             if (!alreadyActive) {
                 activeAnchors.add(requestingAnchor);
             }
@@ -194,7 +323,7 @@ public class Synchronizer {
             targetRound = new RoundPlan(nextStartTime, nextStartTime + cycleDuration, activeAnchors, activeTags);
             upcomingRounds.add(targetRound);
             
-            this.addMeasurementRound(nextStartTime, nextStartTime + cycleDuration, targetRound.roundId);
+            this.addMeasurementRound(targetRound, slotTime, config.getOutputDeadlineDelay());
         }
 
         targetRound.dispatchedAnchors.add(requestingAnchor.getDeviceName());
@@ -202,7 +331,7 @@ public class Synchronizer {
         JSONObject jsonObject = new JSONObject();
         try {
             jsonObject.put("actionToExecute", "measure");
-            jsonObject.put("serverTimeNow", System.currentTimeMillis());
+            jsonObject.put("serverTimeNow", this.clock.millis());
             jsonObject.put("roundId", targetRound.roundId); 
             JSONArray tagsArray = new JSONArray();
 
@@ -243,6 +372,71 @@ public class Synchronizer {
         return jsonObject.toString();
     }
 
+	public void setTagTracker(TagTracker tagTracker) {
+		this.tagTracker = tagTracker;
+	}
+
+	/**
+	 * Sets the clock rounds are planned and responses are stamped with,
+	 * which is the system clock unless the synchronizer runs in virtual time.
+	 *
+	 * @param clock The time source.
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Sets the pool new measurements are taken from. Measurements evicted
+	 * from a tag's ring are left to the garbage collector, since the output
+	 * may still hold them.
+	 *
+	 * @param measurementPool The pool, or {@code null} to allocate every measurement.
+	 */
+	public void setMeasurementPool(MeasurementPool measurementPool) {
+		this.measurementPool = measurementPool;
+	}
+
+	/**
+	 * Gets the tracked speed of a tag, so rounds can be planned around how
+	 * fast tags move.
+	 *
+	 * @param tag The tag.
+	 * @return The speed in distance units per second, or {@code NaN} if the tag is not tracked.
+	 */
+	public double getTagSpeed(Tag tag) {
+		TagTracker tracker = this.tagTracker;
+		return tracker != null ? tracker.getSpeed(tag.getDeviceName()) : Double.NaN;
+	}
+
+	/**
+	 * Gets the number of measurements evicted from their tag's ring before
+	 * they were retired.
+	 *
+	 * @return The number of evicted measurements.
+	 */
+	public long getEvictedRoundCount() {
+		return this.evictedRounds.sum();
+	}
+
+	/**
+	 * Forgets every planned round, so the next measurement request plans a
+	 * new one. Benchmarks use it to plan round after round without waiting
+	 * for the planned ones to pass.
+	 */
+	void clearRounds() {
+		this.upcomingRounds.clear();
+	}
+
+	/**
+	 * Gets the number of measurements opened, one per tag and round.
+	 *
+	 * @return The number of opened measurements.
+	 */
+	public long getOpenedRoundCount() {
+		return this.openedRounds.sum();
+	}
+
 	public String getRegisterResponse() {
 	    JSONObject jsonObject = new JSONObject();
 	    jsonObject.put("actionToExecute", "register"); 
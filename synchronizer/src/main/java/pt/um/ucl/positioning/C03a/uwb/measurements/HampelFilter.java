@@ -0,0 +1,115 @@
+package pt.um.ucl.positioning.C03a.uwb.measurements;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+
+/**
+ * Hampel outlier filter over a sliding window of the recent ranges of every
+ * (anchor, tag) pair.
+ * <p>
+ * A range is an outlier when it lies more than {@code threshold} scaled
+ * median absolute deviations ({@code 1.4826 * MAD}, the standard deviation of
+ * Gaussian noise) from the median of the window, with the deviation floored
+ * at {@code minDeviation} so that steady, quantised ranges do not flag every
+ * small change. Every range enters the window, outlier or not, so a lasting
+ * change (the tag moved, or a link became NLOS for good) is accepted once it
+ * fills half of the window. Until a pair has {@code minSamples} ranges all of
+ * them are accepted.
+ * <p>
+ * Each pair keeps its window in a primitive ring and sorts into a reused
+ * scratch array, so testing a reading allocates nothing once the pair exists.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class HampelFilter implements ReadingFilter {
+
+	/** Scales the MAD to the standard deviation of normally distributed ranges. */
+	private static final double MAD_SCALE = 1.4826;
+
+	private final int windowSize;
+	private final double threshold;
+	private final int minSamples;
+	private final double minDeviation;
+	/** Windows by tag code, then by anchor code. */
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, Window>> windows = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new filter.
+	 *
+	 * @param windowSize Number of recent ranges kept per (anchor, tag) pair.
+	 * @param threshold Outlier threshold, in scaled MADs.
+	 * @param minSamples Ranges a pair needs before anything is flagged.
+	 * @param minDeviation Lower bound of the scaled MAD, in distance units.
+	 */
+	public HampelFilter(int windowSize, double threshold, int minSamples, double minDeviation) {
+		this.windowSize = Math.max(3, windowSize);
+		this.threshold = threshold;
+		this.minSamples = Math.max(3, Math.min(minSamples, this.windowSize));
+		this.minDeviation = minDeviation;
+	}
+
+	@Override
+	public boolean isOutlier(Tag tag, Anchor anchor, double distance) {
+		ConcurrentHashMap<String, Window> tagWindows = this.windows.get(tag.getDeviceName());
+		if (tagWindows == null) {
+			tagWindows = this.windows.computeIfAbsent(tag.getDeviceName(), k -> new ConcurrentHashMap<>());
+		}
+		String anchorCode = anchor.getDeviceName();
+		Window window = tagWindows.get(anchorCode);
+		if (window == null) {
+			window = tagWindows.computeIfAbsent(anchorCode, k -> new Window(this.windowSize));
+		}
+		return window.test(distance, this.threshold, this.minSamples, this.minDeviation);
+	}
+
+	@Override
+	public void remove(String tagCode) {
+		this.windows.remove(tagCode);
+	}
+
+	/**
+	 * Ring of the recent ranges of one (anchor, tag) pair.
+	 */
+	private static final class Window {
+		private final double[] values;
+		private final double[] sorted;
+		private int next;
+		private int count;
+
+		Window(int size) {
+			this.values = new double[size];
+			this.sorted = new double[size];
+		}
+
+		synchronized boolean test(double distance, double threshold, int minSamples, double minDeviation) {
+			boolean outlier = false;
+			if (this.count >= minSamples) {
+				double median = median(this.values, this.count);
+				for (int i = 0; i < this.count; i++) this.sorted[i] = Math.abs(this.values[i] - median);
+				Arrays.sort(this.sorted, 0, this.count);
+				double mad = middle(this.sorted, this.count);
+				double deviation = Math.max(MAD_SCALE * mad, minDeviation);
+				outlier = Math.abs(distance - median) > threshold * deviation;
+			}
+			this.values[this.next] = distance;
+			this.next = (this.next + 1) % this.values.length;
+			if (this.count < this.values.length) this.count++;
+			return outlier;
+		}
+
+		private double median(double[] source, int length) {
+			System.arraycopy(source, 0, this.sorted, 0, length);
+			Arrays.sort(this.sorted, 0, length);
+			return middle(this.sorted, length);
+		}
+
+		private static double middle(double[] sorted, int length) {
+			int half = length / 2;
+			return (length & 1) == 1 ? sorted[half] : (sorted[half - 1] + sorted[half]) / 2;
+		}
+	}
+}
@@ -1,7 +1,8 @@
 package pt.um.ucl.positioning.C03a.uwb.measurements;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.ArrayList;
 
 import org.json.JSONArray;
@@ -12,24 +13,138 @@ import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
 
 /**
  * Represents a single measurement cycle for a specific {@link Tag}.
+ * <p>
+ * Readings are stored column by column in parallel primitive arrays (anchor,
+ * distance, timestamp, channel and outlier flag), which grow by doubling, so
+ * adding a reading allocates nothing once the measurement has seen a full
+ * round. Readings are appended under the measurement's lock and published
+ * through the volatile reading count, so a reader that reads
+ * {@link #getReadingCount()} first may read that many readings without
+ * locking. Once a measurement is sent for output its readings no longer
+ * change, apart from the output filter flagging or removing outliers before
+ * it is handed to the sinks.
+ * <p>
+ * Measurements obtained from a {@link MeasurementPool} are reference
+ * counted: every holder that outlives the call it received the measurement
+ * in calls {@link #retain()} and later {@link #release()}, and the last
+ * release returns the measurement to its pool.
  */
 public class Measurement {
+	private static final int INITIAL_CAPACITY = 8;
+
 	private Tag tag;
 	private long measurmentId = -1;
 	private long customMeasurementRoundId; // Numeric validation ID
-	private List<Reading> readings;
+	private Anchor[] anchors = new Anchor[INITIAL_CAPACITY];
+	private double[] distances = new double[INITIAL_CAPACITY];
+	private long[] timestamps = new long[INITIAL_CAPACITY];
+	private int[] channels = new int[INITIAL_CAPACITY];
+	private boolean[] outliers = new boolean[INITIAL_CAPACITY];
+	/** Number of valid readings. Written under the lock, after the reading itself. */
+	private volatile int readingCount;
 	private long measurmentStartTime;
 	private long measurmentEndTime;
-	private boolean sentForOutput = false; 
+	private volatile boolean sentForOutput = false; 
+	/** Number of anchors scheduled to measure the tag in this round, or 0 if unknown. */
+	private int expectedAnchors;
+	/** Time (epoch ms) at which the measurement is emitted with whatever it has, or 0 for none. */
+	private long deadline;
+	/** The already emitted measurement of the same round whose late readings this one collects, or {@code null}. */
+	private Measurement previous;
+	/** The pool this measurement returns to, or {@code null}. */
+	private final MeasurementPool pool;
+	private final AtomicInteger references = new AtomicInteger(1);
 	
 	public Measurement (Tag tag, long measurmentStartTime, long measurmentEndTime, long roundId) {
+	    this(null, tag, measurmentStartTime, measurmentEndTime, roundId);
+	}
+
+	Measurement (MeasurementPool pool, Tag tag, long measurmentStartTime, long measurmentEndTime, long roundId) {
+	    this.pool = pool;
 	    this.tag = tag;
 	    this.setMeasurmentStartTime(measurmentStartTime);
 	    this.setMeasurmentEndTime(measurmentEndTime);
-	    this.readings = new CopyOnWriteArrayList<Reading>(); 
 	    this.customMeasurementRoundId = roundId; // Assigned directly from Synchronizer
 	}
+
+	/**
+	 * Prepares a recycled measurement for a new round. Only called by the
+	 * pool, while no one else holds the measurement.
+	 */
+	synchronized void reset(Tag tag, long measurmentStartTime, long measurmentEndTime, long roundId) {
+	    this.tag = tag;
+	    this.measurmentStartTime = measurmentStartTime;
+	    this.measurmentEndTime = measurmentEndTime;
+	    this.customMeasurementRoundId = roundId;
+	    this.measurmentId = -1;
+	    this.expectedAnchors = 0;
+	    this.deadline = 0;
+	    this.sentForOutput = false;
+	    this.references.set(1);
+	}
+
+	/**
+	 * Registers one more holder of this measurement.
+	 */
+	public void retain() {
+	    this.references.incrementAndGet();
+	}
+
+	/**
+	 * Registers one more holder of this measurement, unless its last holder
+	 * already released it.
+	 *
+	 * @return {@code true} if the caller now holds a reference and must release it.
+	 */
+	public boolean tryRetain() {
+	    for (int n = this.references.get(); n > 0; n = this.references.get()) {
+	        if (this.references.compareAndSet(n, n + 1)) return true;
+	    }
+	    return false;
+	}
+
+	/**
+	 * Unregisters a holder of this measurement. The last release returns it
+	 * to its pool, if it has one, and releases the measurement it follows up.
+	 *
+	 * @throws IllegalStateException if the measurement was released more often than retained.
+	 */
+	public void release() {
+	    int left = this.references.decrementAndGet();
+	    if (left > 0) return;
+	    if (left < 0) throw new IllegalStateException("Measurement of round " + this.customMeasurementRoundId + " released more often than retained.");
+	    Measurement followed;
+	    synchronized (this) {
+	        followed = this.previous;
+	        this.previous = null;
+	        this.tag = null;
+	        Arrays.fill(this.anchors, 0, this.readingCount, null);
+	        this.readingCount = 0;
+	    }
+	    if (this.pool != null) this.pool.recycle(this);
+	    if (followed != null) followed.release();
+	}
 	
+	/**
+	 * Creates a follow-up measurement that collects the late readings of an
+	 * emitted one. It belongs to the same round and expects the anchors
+	 * that have not reported yet.
+	 *
+	 * @param emitted The measurement that was already emitted.
+	 * @param deadline Time (epoch ms) at which the follow-up is emitted with whatever it has.
+	 * @return The follow-up measurement.
+	 */
+	public static Measurement followUp(Measurement emitted, long deadline) {
+		Measurement followUp = emitted.pool != null
+				? emitted.pool.acquire(emitted.tag, emitted.measurmentStartTime, emitted.measurmentEndTime, emitted.customMeasurementRoundId)
+				: new Measurement(emitted.tag, emitted.measurmentStartTime, emitted.measurmentEndTime, emitted.customMeasurementRoundId);
+		followUp.expectedAnchors = emitted.expectedAnchors;
+		followUp.deadline = deadline;
+		emitted.retain();
+		followUp.previous = emitted;
+		return followUp;
+	}
+
 	private static final long DELAY_TOLERANCE = 5000;
 
 	public boolean checkIfValid(long timestamp) {
@@ -46,8 +161,138 @@ public class Measurement {
 	public Tag getTag() { return tag; }
 	public void setTag(Tag tag) { this.tag = tag; }
 
-	public List<Reading> getReadings() { return readings; }
-	public void setReadings(List<Reading> readings) { this.readings = readings; }
+	/**
+	 * Appends a reading.
+	 *
+	 * @param anchor The anchor that took the reading.
+	 * @param distance The measured distance.
+	 * @param timestamp The timestamp of the reading.
+	 * @param channel The UWB channel used.
+	 */
+	public synchronized void addReading(Anchor anchor, double distance, long timestamp, int channel) {
+		int n = this.readingCount;
+		if (n == this.anchors.length) grow(n * 2);
+		this.anchors[n] = anchor;
+		this.distances[n] = distance;
+		this.timestamps[n] = timestamp;
+		this.channels[n] = channel;
+		this.outliers[n] = false;
+		this.readingCount = n + 1;
+	}
+
+	/**
+	 * Appends a reading reported for this measurement's round, unless the
+	 * measurement was sent for output, recycled for another round, or
+	 * already has a reading of the anchor in the meantime.
+	 *
+	 * @param tag The tag the reading was reported for.
+	 * @param roundId The round the reading was reported for.
+	 * @param anchor The anchor that took the reading.
+	 * @param distance The measured distance.
+	 * @param timestamp The timestamp of the reading.
+	 * @param channel The UWB channel used.
+	 * @return {@code true} if the reading was added.
+	 */
+	public synchronized boolean offerReading(Tag tag, long roundId, Anchor anchor, double distance, long timestamp, int channel) {
+		if (this.sentForOutput || this.tag != tag || this.customMeasurementRoundId != roundId || hasReadingFrom(anchor)) {
+			return false;
+		}
+		addReading(anchor, distance, timestamp, channel);
+		return true;
+	}
+
+	private void grow(int capacity) {
+		this.distances = Arrays.copyOf(this.distances, capacity);
+		this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+		this.channels = Arrays.copyOf(this.channels, capacity);
+		this.outliers = Arrays.copyOf(this.outliers, capacity);
+		this.anchors = Arrays.copyOf(this.anchors, capacity);
+	}
+
+	/**
+	 * Removes the readings flagged as outliers, keeping the others in order.
+	 *
+	 * @return The number of readings removed.
+	 */
+	public synchronized int removeOutliers() {
+		int n = this.readingCount;
+		int kept = 0;
+		for (int i = 0; i < n; i++) {
+			if (this.outliers[i]) continue;
+			if (kept != i) {
+				this.anchors[kept] = this.anchors[i];
+				this.distances[kept] = this.distances[i];
+				this.timestamps[kept] = this.timestamps[i];
+				this.channels[kept] = this.channels[i];
+				this.outliers[kept] = false;
+			}
+			kept++;
+		}
+		Arrays.fill(this.anchors, kept, n, null);
+		this.readingCount = kept;
+		return n - kept;
+	}
+
+	/**
+	 * Finds when the first reading of the measurement was taken.
+	 *
+	 * @return The earliest reading timestamp, or {@code -1} if there are no readings.
+	 */
+	public synchronized long getFirstReadingTime() {
+		if (this.readingCount == 0) return -1;
+		long first = Long.MAX_VALUE;
+		for (int i = 0; i < this.readingCount; i++) first = Math.min(first, this.timestamps[i]);
+		return first;
+	}
+
+	public int getReadingCount() { return readingCount; }
+	public boolean hasReadings() { return readingCount > 0; }
+	public Anchor getAnchor(int index) { return anchors[index]; }
+	public double getDistance(int index) { return distances[index]; }
+	public long getTimestamp(int index) { return timestamps[index]; }
+	public int getChannel(int index) { return channels[index]; }
+	public boolean isOutlier(int index) { return outliers[index]; }
+	public void setOutlier(int index, boolean outlier) { this.outliers[index] = outlier; }
+
+	/**
+	 * Copies a reading into a new {@link Reading} object.
+	 *
+	 * @param index The index of the reading.
+	 * @return The reading.
+	 */
+	public Reading getReading(int index) {
+		Reading reading = new Reading(this.anchors[index], this.distances[index], this.timestamps[index], this.channels[index]);
+		reading.setOutlier(this.outliers[index]);
+		return reading;
+	}
+
+	/**
+	 * Copies the readings into new {@link Reading} objects. Changes to the
+	 * returned list do not affect the measurement; prefer the indexed
+	 * accessors on hot paths.
+	 *
+	 * @return The readings, in the order they were added.
+	 */
+	public List<Reading> getReadings() {
+		int n = this.readingCount;
+		List<Reading> readings = new ArrayList<Reading>(n);
+		for (int i = 0; i < n; i++) readings.add(getReading(i));
+		return readings;
+	}
+
+	/**
+	 * Replaces the readings of this measurement.
+	 *
+	 * @param readings The new readings.
+	 */
+	public synchronized void setReadings(List<Reading> readings) {
+		Arrays.fill(this.anchors, 0, this.readingCount, null);
+		this.readingCount = 0;
+		for (Reading reading : readings) {
+			addReading(reading.getAnchor(), reading.getDistance(), reading.getTimestamp(), reading.getChannel());
+			this.outliers[this.readingCount - 1] = reading.isOutlier();
+		}
+	}
 
 	public long getMeasurmentStartTime() { return measurmentStartTime; }
 	public void setMeasurmentStartTime(long measurmentStartTime) { this.measurmentStartTime = measurmentStartTime; }
@@ -56,7 +301,58 @@ public class Measurement {
 	public void setMeasurmentEndTime(long measurmentEndTime) { this.measurmentEndTime = measurmentEndTime; }
 	
 	public boolean getSentForOutput() { return sentForOutput; }
-	public void setSentForOutput(boolean sentForOutput) { this.sentForOutput = sentForOutput; }
+	public synchronized void setSentForOutput(boolean sentForOutput) { this.sentForOutput = sentForOutput; }
+
+	/**
+	 * Marks the measurement as sent for output, unless it already was. It
+	 * takes the lock {@link #offerReading} holds, so no reading is added
+	 * after a successful claim.
+	 *
+	 * @return {@code true} if this call claimed it, and the caller emits it.
+	 */
+	public synchronized boolean claimForOutput() {
+	    if (this.sentForOutput) return false;
+	    this.sentForOutput = true;
+	    return true;
+	}
+
+	public int getExpectedAnchors() { return expectedAnchors; }
+	public void setExpectedAnchors(int expectedAnchors) { this.expectedAnchors = expectedAnchors; }
+
+	public long getDeadline() { return deadline; }
+	public void setDeadline(long deadline) { this.deadline = deadline; }
+
+	/** @return {@code true} if this measurement collects the late readings of an emitted one. */
+	public boolean isFollowUp() { return previous != null; }
+	public Measurement getPrevious() { return previous; }
+
+	/**
+	 * Counts the readings of the round, including those already emitted by
+	 * the measurement this one follows up.
+	 *
+	 * @return The number of readings.
+	 */
+	public int getRoundReadingCount() {
+		Measurement followed = this.previous;
+		return this.readingCount + (followed != null ? followed.getRoundReadingCount() : 0);
+	}
+
+	/**
+	 * Checks whether an anchor already reported in this round, here or in the
+	 * measurement this one follows up.
+	 *
+	 * @param anchor The anchor.
+	 * @return {@code true} if a reading of the anchor exists.
+	 */
+	public boolean hasReadingFrom(Anchor anchor) {
+		int n = this.readingCount;
+		Anchor[] readingAnchors = this.anchors;
+		for (int i = 0; i < n; i++) {
+			if (readingAnchors[i] == anchor) return true;
+		}
+		Measurement followed = this.previous;
+		return followed != null && followed.hasReadingFrom(anchor);
+	}
 	
 	public JSONObject toJson() {
 		JSONObject json = new JSONObject();
@@ -69,16 +365,17 @@ public class Measurement {
 		json.put("dataType", "ToA"); 
 		
 		JSONArray readingsArray = new JSONArray();
-		for(Reading reading: this.getReadings()) {
-			readingsArray.put(reading.toJson());
+		for (int i = 0; i < this.readingCount; i++) {
+			readingsArray.put(getReading(i).toJson());
 		}
 		json.put("readings", readingsArray);
 		return json;
 	}
 
 	public List<Anchor> getAnchors() {
-		List<Anchor> anchors = new ArrayList<Anchor>();
-		this.readings.forEach(reading -> anchors.add(reading.getAnchor()));
-		return anchors;
+		int n = this.readingCount;
+		List<Anchor> readingAnchors = new ArrayList<Anchor>(n);
+		for (int i = 0; i < n; i++) readingAnchors.add(this.anchors[i]);
+		return readingAnchors;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,403 @@
+package pt.um.ucl.positioning.C03a.uwb.measurements;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.json.JSONObject;
+
+/**
+ * Streaming JSON encoder for {@link Measurement} output payloads.
+ * <p>
+ * Writes a measurement straight into a growable UTF-8 byte buffer without
+ * building a {@code JSONObject}/{@code JSONArray} tree or intermediate
+ * {@link String}s. The output is byte-identical to
+ * {@code measurement.toJson().toString()}, including the key order that
+ * {@code org.json} produces and its number and string formatting, so the
+ * Position Estimator sees exactly the same payloads as before.
+ * {@link #matchesToJson(Measurement, String)} checks this for a measurement.
+ * <p>
+ * Instances are not thread-safe. Use {@link #forCurrentThread()} to get a
+ * writer whose buffer is reused by every measurement the thread encodes.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class MeasurementJsonWriter {
+
+	/** One reusable writer per output thread. */
+	private static final ThreadLocal<MeasurementJsonWriter> PER_THREAD = ThreadLocal.withInitial(MeasurementJsonWriter::new);
+
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	/** The encoded bytes. Only the first {@code size} bytes are valid. */
+	private byte[] buffer;
+	/** Number of valid bytes in the buffer. */
+	private int size;
+
+	/**
+	 * Constructs a writer with a default initial capacity.
+	 */
+	public MeasurementJsonWriter() {
+		this(1024);
+	}
+
+	/**
+	 * Constructs a writer with the given initial capacity.
+	 *
+	 * @param initialCapacity The initial buffer size in bytes.
+	 */
+	public MeasurementJsonWriter(int initialCapacity) {
+		this.buffer = new byte[Math.max(16, initialCapacity)];
+	}
+
+	/**
+	 * Gets the writer owned by the calling thread, reset and ready for use.
+	 *
+	 * @return The calling thread's {@link MeasurementJsonWriter}.
+	 */
+	public static MeasurementJsonWriter forCurrentThread() {
+		MeasurementJsonWriter writer = PER_THREAD.get();
+		writer.reset();
+		return writer;
+	}
+
+	/**
+	 * Discards the buffered content, keeping the allocated buffer.
+	 */
+	public void reset() {
+		this.size = 0;
+	}
+
+	/**
+	 * Gets the number of bytes written so far.
+	 *
+	 * @return The buffered byte count.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets the internal buffer. Only the first {@link #size()} bytes are valid,
+	 * and the array is overwritten by the next use of this writer.
+	 *
+	 * @return The internal byte array.
+	 */
+	public byte[] buffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Copies the buffered content into a new array of the exact size.
+	 *
+	 * @return The encoded bytes.
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(this.buffer, this.size);
+	}
+
+	/**
+	 * Decodes the buffered content. Intended for logging only.
+	 *
+	 * @return The encoded JSON as a string.
+	 */
+	@Override
+	public String toString() {
+		return new String(this.buffer, 0, this.size, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Encodes a measurement exactly as {@link Measurement#toJson()} would.
+	 *
+	 * @param measurement The measurement to encode.
+	 * @return This writer.
+	 */
+	public MeasurementJsonWriter writeMeasurement(Measurement measurement) {
+		return writeMeasurement(measurement, null);
+	}
+
+	/**
+	 * Encodes a measurement exactly as {@link Measurement#toJson()} would after
+	 * {@code put("estimateAccessToken", accessToken)}.
+	 *
+	 * @param measurement The measurement to encode.
+	 * @param accessToken The Position Estimator token, or {@code null} to omit it.
+	 * @return This writer.
+	 */
+	public MeasurementJsonWriter writeMeasurement(Measurement measurement, String accessToken) {
+		// Keys follow the HashMap iteration order org.json uses for this key set.
+		writeByte('{');
+		if (accessToken != null) {
+			writeKey("estimateAccessToken");
+			writeString(accessToken);
+			writeByte(',');
+		}
+		writeKey("readings");
+		writeByte('[');
+		int readingCount = measurement.getReadingCount();
+		for (int i = 0; i < readingCount; i++) {
+			if (i > 0) writeByte(',');
+			writeReading(measurement, i);
+		}
+		writeByte(']');
+		writeByte(',');
+		writeKey("targetID");
+		writeLong(measurement.getTag().getDeviceID());
+		String targetCode = measurement.getTag().getDeviceName();
+		if (targetCode != null) {
+			writeByte(',');
+			writeKey("targetCode");
+			writeString(targetCode);
+		}
+		writeByte(',');
+		writeKey("dataType");
+		writeString("ToA");
+		writeByte(',');
+		writeKey("measurementID");
+		writeLong(measurement.getMeasurmentId());
+		writeByte(',');
+		writeKey("roundId");
+		writeLong(measurement.getCustomMeasurementRoundId());
+		writeByte(',');
+		writeKey("timestamp");
+		writeLong(measurement.getMeasurmentEndTime());
+		writeByte('}');
+		return this;
+	}
+
+	/**
+	 * Encodes a reading exactly as {@link Reading#toJson()} would.
+	 *
+	 * @param reading The reading to encode.
+	 * @return This writer.
+	 */
+	public MeasurementJsonWriter writeReading(Reading reading) {
+		return writeReading(reading.getDistance(), reading.getChannel(), reading.getAnchor().getDeviceID(), reading.getTimestamp());
+	}
+
+	/**
+	 * Encodes a reading of a measurement exactly as {@link Reading#toJson()} would.
+	 *
+	 * @param measurement The measurement.
+	 * @param index The index of the reading.
+	 * @return This writer.
+	 */
+	public MeasurementJsonWriter writeReading(Measurement measurement, int index) {
+		return writeReading(measurement.getDistance(index), measurement.getChannel(index),
+				measurement.getAnchor(index).getDeviceID(), measurement.getTimestamp(index));
+	}
+
+	private MeasurementJsonWriter writeReading(double distance, int channel, int anchorId, long timestamp) {
+		writeByte('{');
+		writeKey("distance");
+		writeDouble(distance);
+		writeByte(',');
+		writeKey("channel");
+		writeLong(channel);
+		writeByte(',');
+		writeKey("anchorID");
+		writeLong(anchorId);
+		writeByte(',');
+		writeKey("timestamp");
+		writeLong(timestamp);
+		writeByte('}');
+		return this;
+	}
+
+	/**
+	 * Checks that this writer encodes a measurement to the same bytes as
+	 * {@code measurement.toJson().toString()}, after
+	 * {@code put("estimateAccessToken", accessToken)} when a token is given.
+	 * Uses a writer of its own, so it can be called while another is in use.
+	 *
+	 * @param measurement The measurement to encode.
+	 * @param accessToken The Position Estimator token, or {@code null} to omit it.
+	 * @return {@code true} if both encodings are byte-identical.
+	 */
+	public static boolean matchesToJson(Measurement measurement, String accessToken) {
+		JSONObject tree = measurement.toJson();
+		if (accessToken != null) tree.put("estimateAccessToken", accessToken);
+		byte[] expected = tree.toString().getBytes(StandardCharsets.UTF_8);
+		MeasurementJsonWriter writer = new MeasurementJsonWriter(expected.length);
+		writer.writeMeasurement(measurement, accessToken);
+		return Arrays.equals(writer.buffer, 0, writer.size, expected, 0, expected.length);
+	}
+
+	/**
+	 * Appends a single ASCII character, e.g. a separator or bracket.
+	 *
+	 * @param c The character to append.
+	 * @return This writer.
+	 */
+	public MeasurementJsonWriter writeByte(char c) {
+		ensureCapacity(1);
+		this.buffer[this.size++] = (byte) c;
+		return this;
+	}
+
+	/**
+	 * Appends a quoted key followed by a colon.
+	 *
+	 * @param key The key to append.
+	 * @return This writer.
+	 */
+	public MeasurementJsonWriter writeKey(String key) {
+		writeString(key);
+		return writeByte(':');
+	}
+
+	/**
+	 * Appends an integral number.
+	 *
+	 * @param value The value to append.
+	 * @return This writer.
+	 */
+	public MeasurementJsonWriter writeLong(long value) {
+		if (value == Long.MIN_VALUE) {
+			writeAscii("-9223372036854775808");
+			return this;
+		}
+		ensureCapacity(20);
+		if (value < 0) {
+			this.buffer[this.size++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (long v = value / 10; v != 0; v /= 10) digits++;
+		int pos = this.size + digits;
+		this.size = pos;
+		do {
+			this.buffer[--pos] = (byte) ('0' + (value % 10));
+			value /= 10;
+		} while (value != 0);
+		return this;
+	}
+
+	/**
+	 * Appends a floating point number formatted as {@code org.json} does:
+	 * {@link Double#toString(double)} with trailing zeros and a trailing decimal
+	 * point removed when there is no exponent.
+	 *
+	 * @param value The value to append. Must be finite.
+	 * @return This writer.
+	 */
+	public MeasurementJsonWriter writeDouble(double value) {
+		if (value == (long) value && Math.abs(value) < 1.0e7 && !(value == 0.0 && 1.0 / value < 0)) {
+			// Fast path: Double.toString prints these as "n.0", which org.json shortens to "n".
+			return writeLong((long) value);
+		}
+		String s = Double.toString(value);
+		int end = s.length();
+		if (s.indexOf('.') > 0 && s.indexOf('E') < 0) {
+			while (s.charAt(end - 1) == '0') end--;
+			if (s.charAt(end - 1) == '.') end--;
+		}
+		ensureCapacity(end);
+		for (int i = 0; i < end; i++) {
+			this.buffer[this.size++] = (byte) s.charAt(i);
+		}
+		return this;
+	}
+
+	/**
+	 * Appends a quoted string escaped exactly as {@code JSONObject.quote} does,
+	 * encoded as UTF-8.
+	 *
+	 * @param value The string to append.
+	 * @return This writer.
+	 */
+	public MeasurementJsonWriter writeString(String value) {
+		int len = value.length();
+		ensureCapacity(len + 2);
+		this.buffer[this.size++] = '"';
+		char previous;
+		char c = 0;
+		for (int i = 0; i < len; i++) {
+			previous = c;
+			c = value.charAt(i);
+			switch (c) {
+			case '\\':
+			case '"':
+				writeByte('\\');
+				writeByte(c);
+				break;
+			case '/':
+				if (previous == '<') writeByte('\\');
+				writeByte(c);
+				break;
+			case '\b':
+				writeAscii("\\b");
+				break;
+			case '\t':
+				writeAscii("\\t");
+				break;
+			case '\n':
+				writeAscii("\\n");
+				break;
+			case '\f':
+				writeAscii("\\f");
+				break;
+			case '\r':
+				writeAscii("\\r");
+				break;
+			default:
+				if (c < ' ' || (c >= 0x80 && c < 0xA0) || (c >= 0x2000 && c < 0x2100)) {
+					ensureCapacity(6);
+					this.buffer[this.size++] = '\\';
+					this.buffer[this.size++] = 'u';
+					this.buffer[this.size++] = HEX[(c >> 12) & 0xF];
+					this.buffer[this.size++] = HEX[(c >> 8) & 0xF];
+					this.buffer[this.size++] = HEX[(c >> 4) & 0xF];
+					this.buffer[this.size++] = HEX[c & 0xF];
+				} else if (c < 0x80) {
+					writeByte(c);
+				} else {
+					i = writeUtf8(value, i, c);
+				}
+			}
+		}
+		return writeByte('"');
+	}
+
+	/**
+	 * Encodes a non-ASCII character (or surrogate pair) as UTF-8, replacing
+	 * unpaired surrogates with {@code '?'} like {@link String#getBytes} does.
+	 *
+	 * @return The index of the last consumed char.
+	 */
+	private int writeUtf8(String value, int i, char c) {
+		ensureCapacity(4);
+		if (c < 0x800) {
+			this.buffer[this.size++] = (byte) (0xC0 | (c >> 6));
+			this.buffer[this.size++] = (byte) (0x80 | (c & 0x3F));
+		} else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+			int cp = Character.toCodePoint(c, value.charAt(i + 1));
+			this.buffer[this.size++] = (byte) (0xF0 | (cp >> 18));
+			this.buffer[this.size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+			this.buffer[this.size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+			this.buffer[this.size++] = (byte) (0x80 | (cp & 0x3F));
+			return i + 1;
+		} else if (Character.isSurrogate(c)) {
+			this.buffer[this.size++] = '?';
+		} else {
+			this.buffer[this.size++] = (byte) (0xE0 | (c >> 12));
+			this.buffer[this.size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			this.buffer[this.size++] = (byte) (0x80 | (c & 0x3F));
+		}
+		return i;
+	}
+
+	private void writeAscii(String s) {
+		int len = s.length();
+		ensureCapacity(len);
+		for (int i = 0; i < len; i++) {
+			this.buffer[this.size++] = (byte) s.charAt(i);
+		}
+	}
+
+	private void ensureCapacity(int extra) {
+		if (this.size + extra > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.size + extra));
+		}
+	}
+}
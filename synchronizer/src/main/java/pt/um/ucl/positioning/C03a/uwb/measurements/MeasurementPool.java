@@ -0,0 +1,72 @@
+package pt.um.ucl.positioning.C03a.uwb.measurements;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+
+/**
+ * Bounded pool of recycled {@link Measurement}s.
+ * <p>
+ * A measurement returns to the pool when its last holder calls
+ * {@link Measurement#release()}, keeping its reading arrays, so in steady
+ * state opening a measurement and filling it with a round of readings
+ * allocates nothing. A measurement that is never released is simply
+ * garbage collected, so a missed release costs an allocation, never
+ * correctness. When the pool is full, returned measurements are discarded.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class MeasurementPool {
+
+	/** Free measurements. A bounded array queue, so returning one allocates nothing. */
+	private final ArrayBlockingQueue<Measurement> free;
+	private final LongAdder created = new LongAdder();
+	private final LongAdder reused = new LongAdder();
+	private final LongAdder discarded = new LongAdder();
+
+	/**
+	 * Constructs a new, empty pool.
+	 *
+	 * @param capacity Maximum number of free measurements kept.
+	 */
+	public MeasurementPool(int capacity) {
+		this.free = new ArrayBlockingQueue<>(Math.max(1, capacity));
+	}
+
+	/**
+	 * Takes a free measurement, or creates one if the pool is empty. The
+	 * caller holds the only reference.
+	 *
+	 * @param tag The measured tag.
+	 * @param startTime Start of the validity window (epoch ms).
+	 * @param endTime End of the validity window (epoch ms).
+	 * @param roundId The round ID.
+	 * @return An empty measurement.
+	 */
+	public Measurement acquire(Tag tag, long startTime, long endTime, long roundId) {
+		Measurement measurement = this.free.poll();
+		if (measurement == null) {
+			this.created.increment();
+			return new Measurement(this, tag, startTime, endTime, roundId);
+		}
+		this.reused.increment();
+		measurement.reset(tag, startTime, endTime, roundId);
+		return measurement;
+	}
+
+	/**
+	 * Returns a measurement whose last reference was released.
+	 *
+	 * @param measurement The measurement.
+	 */
+	void recycle(Measurement measurement) {
+		if (!this.free.offer(measurement)) this.discarded.increment();
+	}
+
+	public int getFreeCount() { return free.size(); }
+	public long getCreatedCount() { return created.sum(); }
+	public long getReusedCount() { return reused.sum(); }
+	public long getDiscardedCount() { return discarded.sum(); }
+}
@@ -0,0 +1,116 @@
+package pt.um.ucl.positioning.C03a.uwb.measurements;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity, lock-free ring of a tag's in-flight {@link Measurement}s,
+ * indexed by round ID.
+ * <p>
+ * Round IDs increase monotonically, so the measurement of round {@code r}
+ * lives in slot {@code r & (capacity - 1)} and a new round simply takes the
+ * slot of the round {@code capacity} rounds older, if that one is still
+ * open. The scheduler adds rounds, the ingest path looks them up and the
+ * output path retires them concurrently, each with a single atomic read or
+ * compare-and-set on one slot: nothing is shifted, copied or locked, and
+ * iterating over the slots never fails.
+ * <p>
+ * The ring holds one reference to every measurement in it. Whoever takes a
+ * measurement out with {@link #remove(Measurement)} or
+ * {@link #replace(Measurement, Measurement)} owns that reference and must
+ * release it. Measurements evicted by {@link #put(Measurement)} may still be
+ * in use by the output, so they are returned but not released.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class MeasurementRing {
+
+	private final AtomicReferenceArray<Measurement> slots;
+	private final int mask;
+
+	/**
+	 * Constructs a new, empty ring.
+	 *
+	 * @param capacity Minimum number of rounds kept in flight, rounded up to a power of two.
+	 */
+	public MeasurementRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+	}
+
+	private int index(long roundId) {
+		return (int) (roundId & this.mask);
+	}
+
+	/**
+	 * Adds the measurement of a new round.
+	 *
+	 * @param measurement The measurement.
+	 * @return The measurement evicted from its slot, or {@code null}.
+	 */
+	public Measurement put(Measurement measurement) {
+		return this.slots.getAndSet(index(measurement.getCustomMeasurementRoundId()), measurement);
+	}
+
+	/**
+	 * Looks up the in-flight measurement of a round.
+	 *
+	 * @param roundId The round ID.
+	 * @return The measurement, or {@code null} if the round is not in flight.
+	 */
+	public Measurement get(long roundId) {
+		Measurement measurement = this.slots.get(index(roundId));
+		return measurement != null && measurement.getCustomMeasurementRoundId() == roundId ? measurement : null;
+	}
+
+	/**
+	 * Retires a measurement, if it is still in the ring.
+	 *
+	 * @param measurement The measurement.
+	 * @return {@code true} if the caller now owns the ring's reference.
+	 */
+	public boolean remove(Measurement measurement) {
+		return this.slots.compareAndSet(index(measurement.getCustomMeasurementRoundId()), measurement, null);
+	}
+
+	/**
+	 * Atomically replaces a measurement by another of the same round, e.g. an
+	 * emitted measurement by its follow-up.
+	 *
+	 * @param measurement The measurement to retire.
+	 * @param next The measurement taking its slot.
+	 * @return {@code true} if it was replaced, and the caller now owns the
+	 * ring's reference to {@code measurement}.
+	 */
+	public boolean replace(Measurement measurement, Measurement next) {
+		if (next.getCustomMeasurementRoundId() != measurement.getCustomMeasurementRoundId()) {
+			throw new IllegalArgumentException("A measurement can only be replaced by one of the same round.");
+		}
+		return this.slots.compareAndSet(index(measurement.getCustomMeasurementRoundId()), measurement, next);
+	}
+
+	/**
+	 * Gets the measurement in a slot, for iterating over the ring.
+	 *
+	 * @param slot The slot, from 0 to {@link #capacity()} - 1.
+	 * @return The measurement, or {@code null} if the slot is free.
+	 */
+	public Measurement getSlot(int slot) {
+		return this.slots.get(slot);
+	}
+
+	/**
+	 * Checks whether any round is in flight.
+	 *
+	 * @return {@code true} if every slot is free.
+	 */
+	public boolean isEmpty() {
+		for (int i = 0; i < this.slots.length(); i++) {
+			if (this.slots.get(i) != null) return false;
+		}
+		return true;
+	}
+
+	public int capacity() { return slots.length(); }
+}
@@ -22,6 +22,8 @@ public class Reading {
 	private long timestamp;
 	/** The UWB channel used for this reading. */
 	private int channel;
+	/** Whether a {@link ReadingFilterStage} flagged this reading as an outlier. */
+	private volatile boolean outlier;
 	
 	/**
 	 * Constructs a new Reading.
@@ -102,6 +104,22 @@ public class Reading {
 		this.channel = channel;
 	}
 	
+	/**
+	 * Checks whether this reading was flagged as an outlier.
+	 * @return {@code true} if flagged.
+	 */
+	public boolean isOutlier() {
+		return outlier;
+	}
+
+	/**
+	 * Flags or unflags this reading as an outlier.
+	 * @param outlier The new flag.
+	 */
+	public void setOutlier(boolean outlier) {
+		this.outlier = outlier;
+	}
+
 	/**
 	 * Converts this Reading object into a JSONObject format.
 	 *
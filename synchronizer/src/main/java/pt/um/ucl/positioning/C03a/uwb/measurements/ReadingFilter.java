@@ -0,0 +1,36 @@
+package pt.um.ucl.positioning.C03a.uwb.measurements;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+
+/**
+ * Decides whether a range reading is an outlier, e.g. a multipath or
+ * non-line-of-sight (NLOS) range, before it is exported.
+ * <p>
+ * Implementations are called by {@link ReadingFilterStage} once for every
+ * reading of every completed measurement, possibly from several threads at
+ * once, and may keep per-(anchor, tag) state.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public interface ReadingFilter {
+
+	/**
+	 * Tests a reading of a tag.
+	 *
+	 * @param tag The measured tag.
+	 * @param anchor The anchor that took the reading.
+	 * @param distance The measured distance.
+	 * @return {@code true} if the reading is an outlier.
+	 */
+	boolean isOutlier(Tag tag, Anchor anchor, double distance);
+
+	/**
+	 * Forgets the state kept for a tag.
+	 *
+	 * @param tagCode The code of the tag.
+	 */
+	default void remove(String tagCode) {
+	}
+}
@@ -0,0 +1,111 @@
+package pt.um.ucl.positioning.C03a.uwb.measurements;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+
+/**
+ * Output stage that runs every reading of a completed measurement through a
+ * {@link ReadingFilter} before the measurement is exported.
+ * <p>
+ * In {@link Mode#DROP} outliers are removed from the measurement, so they
+ * cost no database rows, estimator work or storage. In {@link Mode#FLAG}
+ * they are only marked with {@link Measurement#setOutlier(int, boolean)}: they are
+ * still exported, but the in-process solver and tracker ignore them.
+ * <p>
+ * The number of tested and flagged readings is kept in total and per anchor,
+ * so the filter rate of every link can be watched on {@code /status}.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class ReadingFilterStage {
+
+	/**
+	 * What happens to outliers.
+	 */
+	public enum Mode {
+		/** Mark them and keep them. */
+		FLAG,
+		/** Remove them from the measurement. */
+		DROP
+	}
+
+	private final ReadingFilter filter;
+	private final Mode mode;
+	private final LongAdder checked = new LongAdder();
+	private final LongAdder flagged = new LongAdder();
+	/** Tested and flagged counts of each anchor, by anchor code. */
+	private final ConcurrentHashMap<String, LongAdder[]> anchorCounts = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new stage.
+	 *
+	 * @param filter The filter deciding which readings are outliers.
+	 * @param mode What happens to outliers.
+	 */
+	public ReadingFilterStage(ReadingFilter filter, Mode mode) {
+		this.filter = filter;
+		this.mode = mode;
+	}
+
+	/**
+	 * Filters the readings of a completed measurement in place.
+	 *
+	 * @param tag The measured tag.
+	 * @param measurement The completed measurement.
+	 * @return The number of outliers found.
+	 */
+	public int apply(Tag tag, Measurement measurement) {
+		int readingCount = measurement.getReadingCount();
+		int outliers = 0;
+		for (int i = 0; i < readingCount; i++) {
+			Anchor anchor = measurement.getAnchor(i);
+			boolean outlier = this.filter.isOutlier(tag, anchor, measurement.getDistance(i));
+			LongAdder[] counts = this.anchorCounts.get(anchor.getDeviceName());
+			if (counts == null) {
+				counts = this.anchorCounts.computeIfAbsent(anchor.getDeviceName(), k -> new LongAdder[] { new LongAdder(), new LongAdder() });
+			}
+			counts[0].increment();
+			if (outlier) {
+				counts[1].increment();
+				measurement.setOutlier(i, true);
+				outliers++;
+			}
+		}
+		this.checked.add(readingCount);
+		this.flagged.add(outliers);
+		if (outliers > 0 && this.mode == Mode.DROP) {
+			measurement.removeOutliers();
+		}
+		return outliers;
+	}
+
+	/**
+	 * Forgets the filter state of a tag.
+	 *
+	 * @param tagCode The code of the tag.
+	 */
+	public void remove(String tagCode) {
+		this.filter.remove(tagCode);
+	}
+
+	/**
+	 * Gets the tested and flagged reading counts of every anchor.
+	 *
+	 * @return A map from anchor code to {@code {checked, flagged}}, sorted by anchor code.
+	 */
+	public Map<String, long[]> getAnchorCounts() {
+		Map<String, long[]> counts = new TreeMap<>();
+		this.anchorCounts.forEach((anchor, c) -> counts.put(anchor, new long[] { c[0].sum(), c[1].sum() }));
+		return counts;
+	}
+
+	public Mode getMode() { return mode; }
+	public long getCheckedCount() { return checked.sum(); }
+	public long getFlaggedCount() { return flagged.sum(); }
+}
@@ -0,0 +1,263 @@
+package pt.um.ucl.positioning.C03a.uwb.measurements;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory hot store of the most recent measurements of every tag.
+ * <p>
+ * Each tag owns a bounded ring of its last {@code recent.capacity} completed
+ * measurements. The ring is packed into primitive arrays (end timestamps,
+ * round IDs, and per-reading anchor IDs, distances and timestamps), so
+ * recording a measurement allocates nothing and old entries are simply
+ * overwritten. Readings beyond {@code recent.maxReadings} per measurement are
+ * not kept.
+ * <p>
+ * Dashboards and the estimator can read the last few seconds of ranging
+ * through {@link #read(String, long, int, Window)} or the {@code /recent}
+ * endpoint, without touching the database.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class RecentMeasurementsStore {
+
+	/** Measurements kept per tag. */
+	private final int capacity;
+	/** Readings kept per measurement. */
+	private final int maxReadings;
+	/** Ring of each tag, by tag code. */
+	private final ConcurrentHashMap<String, TagRing> rings = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new store.
+	 *
+	 * @param capacity Measurements kept per tag.
+	 * @param maxReadings Readings kept per measurement.
+	 */
+	public RecentMeasurementsStore(int capacity, int maxReadings) {
+		this.capacity = Math.max(1, capacity);
+		this.maxReadings = Math.max(1, maxReadings);
+	}
+
+	/**
+	 * Records a completed measurement, overwriting the oldest one of its tag
+	 * once the ring is full.
+	 *
+	 * @param tagCode The code of the measured tag.
+	 * @param measurement The completed measurement.
+	 */
+	public void record(String tagCode, Measurement measurement) {
+		this.rings.computeIfAbsent(tagCode, k -> new TagRing(this.capacity, this.maxReadings)).add(measurement);
+	}
+
+	/**
+	 * Copies the recent measurements of a tag, oldest first, into a window.
+	 *
+	 * @param tagCode The code of the tag.
+	 * @param since Only measurements that ended at or after this time (epoch ms).
+	 * @param limit Maximum number of (most recent) measurements to copy.
+	 * @param into The window to fill; it is cleared first and may be reused.
+	 * @return The number of measurements copied.
+	 */
+	public int read(String tagCode, long since, int limit, Window into) {
+		into.clear();
+		TagRing ring = this.rings.get(tagCode);
+		if (ring == null) return 0;
+		ring.copyTo(since, limit, into);
+		return into.size;
+	}
+
+	/**
+	 * Convenience variant of {@link #read(String, long, int, Window)} that
+	 * returns a new window.
+	 *
+	 * @param tagCode The code of the tag.
+	 * @param since Only measurements that ended at or after this time (epoch ms).
+	 * @param limit Maximum number of (most recent) measurements to copy.
+	 * @return The recent measurements of the tag, oldest first.
+	 */
+	public Window recent(String tagCode, long since, int limit) {
+		Window window = new Window(this.maxReadings);
+		read(tagCode, since, limit, window);
+		return window;
+	}
+
+	/**
+	 * Gets the codes of all tags with recorded measurements.
+	 *
+	 * @return A list of tag codes.
+	 */
+	public List<String> getTagCodes() {
+		return new ArrayList<>(this.rings.keySet());
+	}
+
+	/**
+	 * Discards the measurements of a tag.
+	 *
+	 * @param tagCode The code of the tag.
+	 */
+	public void remove(String tagCode) {
+		this.rings.remove(tagCode);
+	}
+
+	/**
+	 * Encodes a window as a JSON array of measurements, using the same keys
+	 * as the estimator payload.
+	 *
+	 * @param window The window to encode.
+	 * @param json The writer to append to.
+	 */
+	public static void writeJson(Window window, MeasurementJsonWriter json) {
+		json.writeByte('[');
+		for (int i = 0; i < window.size; i++) {
+			if (i > 0) json.writeByte(',');
+			json.writeByte('{').writeKey("readings").writeByte('[');
+			for (int j = 0; j < window.readingCount(i); j++) {
+				if (j > 0) json.writeByte(',');
+				json.writeByte('{').writeKey("distance").writeDouble(window.distance(i, j))
+					.writeByte(',').writeKey("anchorID").writeLong(window.anchorId(i, j))
+					.writeByte(',').writeKey("timestamp").writeLong(window.readingTimestamp(i, j))
+					.writeByte('}');
+			}
+			json.writeByte(']')
+				.writeByte(',').writeKey("roundId").writeLong(window.roundId(i))
+				.writeByte(',').writeKey("timestamp").writeLong(window.endTime(i))
+				.writeByte('}');
+		}
+		json.writeByte(']');
+	}
+
+	/**
+	 * Primitive-packed ring of one tag's measurements. Slot {@code s} holds its
+	 * readings at indices {@code s * maxReadings} onwards.
+	 */
+	private static final class TagRing {
+		private final int maxReadings;
+		private final long[] endTimes;
+		private final long[] roundIds;
+		private final int[] readingCounts;
+		private final int[] anchorIds;
+		private final double[] distances;
+		private final long[] readingTimestamps;
+		/** Total number of measurements ever added; the next slot is {@code written % capacity}. */
+		private long written;
+
+		private TagRing(int capacity, int maxReadings) {
+			this.maxReadings = maxReadings;
+			this.endTimes = new long[capacity];
+			this.roundIds = new long[capacity];
+			this.readingCounts = new int[capacity];
+			this.anchorIds = new int[capacity * maxReadings];
+			this.distances = new double[capacity * maxReadings];
+			this.readingTimestamps = new long[capacity * maxReadings];
+		}
+
+		private synchronized void add(Measurement measurement) {
+			int slot = (int) (this.written % this.endTimes.length);
+			this.endTimes[slot] = measurement.getMeasurmentEndTime();
+			this.roundIds[slot] = measurement.getCustomMeasurementRoundId();
+			int count = Math.min(measurement.getReadingCount(), this.maxReadings);
+			int base = slot * this.maxReadings;
+			for (int j = 0; j < count; j++) {
+				this.anchorIds[base + j] = measurement.getAnchor(j).getDeviceID();
+				this.distances[base + j] = measurement.getDistance(j);
+				this.readingTimestamps[base + j] = measurement.getTimestamp(j);
+			}
+			this.readingCounts[slot] = count;
+			this.written++;
+		}
+
+		private synchronized void copyTo(long since, int limit, Window into) {
+			int capacity = this.endTimes.length;
+			int available = (int) Math.min(this.written, capacity);
+			// Walk back from the newest entry to find the oldest one to copy.
+			int n = 0;
+			while (n < available && n < limit && this.endTimes[slot(n + 1)] >= since) {
+				n++;
+			}
+			into.ensureCapacity(n, this.maxReadings);
+			for (int k = n; k >= 1; k--) {
+				int slot = slot(k);
+				int i = into.size++;
+				into.endTimes[i] = this.endTimes[slot];
+				into.roundIds[i] = this.roundIds[slot];
+				int count = this.readingCounts[slot];
+				into.readingCounts[i] = count;
+				System.arraycopy(this.anchorIds, slot * this.maxReadings, into.anchorIds, i * into.maxReadings, count);
+				System.arraycopy(this.distances, slot * this.maxReadings, into.distances, i * into.maxReadings, count);
+				System.arraycopy(this.readingTimestamps, slot * this.maxReadings, into.readingTimestamps, i * into.maxReadings, count);
+			}
+		}
+
+		/** Slot of the {@code k}-th most recent entry ({@code k = 1} is the newest). */
+		private int slot(int k) {
+			return (int) ((this.written - k) % this.endTimes.length);
+		}
+	}
+
+	/**
+	 * A reusable, primitive-packed copy of a tag's recent measurements,
+	 * oldest first.
+	 */
+	public static final class Window {
+		private int maxReadings;
+		private int size;
+		private long[] endTimes = new long[0];
+		private long[] roundIds = new long[0];
+		private int[] readingCounts = new int[0];
+		private int[] anchorIds = new int[0];
+		private double[] distances = new double[0];
+		private long[] readingTimestamps = new long[0];
+
+		/**
+		 * Constructs an empty window.
+		 *
+		 * @param maxReadings Readings per measurement the window is laid out for.
+		 */
+		public Window(int maxReadings) {
+			this.maxReadings = Math.max(1, maxReadings);
+		}
+
+		private void clear() {
+			this.size = 0;
+		}
+
+		private void ensureCapacity(int measurements, int readingsPerMeasurement) {
+			if (readingsPerMeasurement != this.maxReadings) {
+				this.maxReadings = readingsPerMeasurement;
+				this.anchorIds = new int[0];
+				this.distances = new double[0];
+				this.readingTimestamps = new long[0];
+			}
+			if (this.endTimes.length < measurements) {
+				this.endTimes = Arrays.copyOf(this.endTimes, measurements);
+				this.roundIds = Arrays.copyOf(this.roundIds, measurements);
+				this.readingCounts = Arrays.copyOf(this.readingCounts, measurements);
+			}
+			int readings = measurements * this.maxReadings;
+			if (this.distances.length < readings) {
+				this.anchorIds = new int[readings];
+				this.distances = new double[readings];
+				this.readingTimestamps = new long[readings];
+			}
+		}
+
+		/** @return The number of measurements in the window. */
+		public int size() { return size; }
+		/** @return The end time of measurement {@code i}. */
+		public long endTime(int i) { return endTimes[i]; }
+		/** @return The round ID of measurement {@code i}. */
+		public long roundId(int i) { return roundIds[i]; }
+		/** @return The number of readings of measurement {@code i}. */
+		public int readingCount(int i) { return readingCounts[i]; }
+		/** @return The anchor (database) ID of reading {@code j} of measurement {@code i}. */
+		public int anchorId(int i, int j) { return anchorIds[i * maxReadings + j]; }
+		/** @return The distance of reading {@code j} of measurement {@code i}. */
+		public double distance(int i, int j) { return distances[i * maxReadings + j]; }
+		/** @return The timestamp of reading {@code j} of measurement {@code i}. */
+		public long readingTimestamp(int i, int j) { return readingTimestamps[i * maxReadings + j]; }
+	}
+}
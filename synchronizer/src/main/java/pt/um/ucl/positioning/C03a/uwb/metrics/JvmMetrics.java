@@ -0,0 +1,50 @@
+package pt.um.ucl.positioning.C03a.uwb.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Reads the heap, garbage collection and thread counters of the running JVM.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public final class JvmMetrics {
+
+	private JvmMetrics() {}
+
+	/**
+	 * Reads the current counters. GC counts and times are totals since the
+	 * JVM started, so rates come from the difference of two readings.
+	 *
+	 * @return {@code uptimeMs}, {@code heapUsed}, {@code heapCommitted}, {@code heapMax} (bytes),
+	 * {@code threads}, {@code gcCount}, {@code gcTimeMs} and one entry per
+	 * collector in {@code collectors}.
+	 */
+	public static JSONObject read() {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		JSONArray collectors = new JSONArray();
+		long gcCount = 0;
+		long gcTime = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			long count = Math.max(0, gc.getCollectionCount());
+			long time = Math.max(0, gc.getCollectionTime());
+			gcCount += count;
+			gcTime += time;
+			collectors.put(new JSONObject().put("name", gc.getName()).put("count", count).put("timeMs", time));
+		}
+		return new JSONObject()
+				.put("uptimeMs", ManagementFactory.getRuntimeMXBean().getUptime())
+				.put("heapUsed", heap.getUsed())
+				.put("heapCommitted", heap.getCommitted())
+				.put("heapMax", heap.getMax())
+				.put("threads", ManagementFactory.getThreadMXBean().getThreadCount())
+				.put("gcCount", gcCount)
+				.put("gcTimeMs", gcTime)
+				.put("collectors", collectors);
+	}
+}
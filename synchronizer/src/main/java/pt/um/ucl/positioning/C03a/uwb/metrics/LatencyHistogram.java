@@ -0,0 +1,124 @@
+package pt.um.ucl.positioning.C03a.uwb.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/**
+ * Fixed-size, lock-free histogram of latencies in microseconds.
+ * <p>
+ * Values are counted in log-linear buckets: every power of two is split
+ * into {@value #SUB_BUCKETS} equal buckets, so any recorded value is known
+ * to within about 3% while the whole range of a {@code long} fits in fewer
+ * than 2,000 counters. Recording is a couple of atomic increments and never
+ * allocates, so it can sit on request paths; percentiles are computed from
+ * the counters when read. Values recorded while a percentile is being read
+ * may or may not be included.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	/** Buckets per power of two. */
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records one latency.
+	 *
+	 * @param micros The latency, in microseconds. Negative values count as 0.
+	 */
+	public void record(long micros) {
+		long value = Math.max(0, micros);
+		this.counts.incrementAndGet(indexOf(value));
+		this.count.increment();
+		this.sum.add(value);
+		long current;
+		while (value > (current = this.max.get()) && !this.max.compareAndSet(current, value)) {
+			// Retry until the maximum is at least this value.
+		}
+	}
+
+	/**
+	 * Records the time elapsed since {@code startNanos}.
+	 *
+	 * @param startNanos A {@link System#nanoTime()} reading.
+	 */
+	public void recordSince(long startNanos) {
+		record((System.nanoTime() - startNanos) / 1000);
+	}
+
+	/**
+	 * Computes a percentile.
+	 *
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The highest value of the bucket holding the percentile, in
+	 * microseconds, or 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) total += this.counts.get(i);
+		if (total == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank) return Math.min(highestValueOf(i), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clears every count.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) this.counts.set(i, 0);
+		this.count.reset();
+		this.sum.reset();
+		this.max.set(0);
+	}
+
+	/**
+	 * Summarizes the histogram, in milliseconds.
+	 *
+	 * @return {@code count}, {@code mean}, {@code p50}, {@code p90},
+	 * {@code p99}, {@code p999} and {@code max}.
+	 */
+	public JSONObject toJson() {
+		long n = getCount();
+		return new JSONObject()
+				.put("count", n)
+				.put("mean", n == 0 ? 0.0 : this.sum.sum() / 1000.0 / n)
+				.put("p50", getPercentile(50) / 1000.0)
+				.put("p90", getPercentile(90) / 1000.0)
+				.put("p99", getPercentile(99) / 1000.0)
+				.put("p999", getPercentile(99.9) / 1000.0)
+				.put("max", getMax() / 1000.0);
+	}
+
+	public long getCount() { return count.sum(); }
+	public long getMax() { return max.get(); }
+
+	private static int indexOf(long value) {
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		if (msb < SUB_BITS) return (int) value;
+		int shift = msb - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	private static long highestValueOf(int index) {
+		if (index < 2 * SUB_BUCKETS) return index;
+		int shift = index / SUB_BUCKETS - 1;
+		long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,216 @@
+package pt.um.ucl.positioning.C03a.uwb.positioning;
+
+import java.util.Arrays;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+
+/**
+ * Least-squares multilateration of a tag from the ranges of one
+ * {@link Measurement}.
+ * <p>
+ * The position minimising the sum of squared range residuals
+ * {@code |p - a_i| - r_i} is found with Levenberg-Marquardt: Gauss-Newton
+ * steps on the 2x2 (2D) or 3x3 (3D) normal equations, damped whenever a step
+ * does not reduce the cost. In 2D mode the tag is assumed to be at a fixed
+ * height, which is still taken into account in the ranges. Only readings
+ * whose anchor has known coordinates and that were not flagged as outliers
+ * are used. Anchor coordinates must be in the same unit as the measured
+ * distances.
+ * <p>
+ * A solver keeps its anchor coordinates and ranges in reused primitive
+ * arrays and writes the result into a caller-owned {@link Position}, so a
+ * solve allocates nothing (the arrays only grow when a measurement has more
+ * readings than ever before). It is not thread-safe; use one per thread.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public final class MultilaterationSolver {
+
+	/** Lower bound for the anchor-to-tag distance, avoiding division by zero. */
+	private static final double MIN_DISTANCE = 1e-9;
+	private static final double MIN_LAMBDA = 1e-9;
+	private static final double MAX_LAMBDA = 1e9;
+
+	/** 2 to solve X and Y at a fixed height, or 3 to solve X, Y and Z. */
+	private final int dimensions;
+	/** The tag height in 2D mode, and the initial Z guess in 3D mode. */
+	private final double tagHeight;
+	/** Maximum number of Gauss-Newton steps. */
+	private final int maxIterations;
+	/** Steps shorter than this end the iteration. */
+	private final double tolerance;
+
+	private double[] anchorX = new double[16];
+	private double[] anchorY = new double[16];
+	private double[] anchorZ = new double[16];
+	private double[] ranges = new double[16];
+	private int count;
+
+	/**
+	 * Constructs a new solver.
+	 *
+	 * @param dimensions 2 or 3.
+	 * @param tagHeight The tag height in 2D mode, and the initial Z guess in 3D mode.
+	 * @param maxIterations Maximum number of Gauss-Newton steps.
+	 * @param tolerance Steps shorter than this end the iteration.
+	 */
+	public MultilaterationSolver(int dimensions, double tagHeight, int maxIterations, double tolerance) {
+		if (dimensions != 2 && dimensions != 3) {
+			throw new IllegalArgumentException("Dimensions must be 2 or 3, got " + dimensions);
+		}
+		this.dimensions = dimensions;
+		this.tagHeight = tagHeight;
+		this.maxIterations = Math.max(1, maxIterations);
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Solves the position of the tag of a measurement.
+	 *
+	 * @param measurement The completed measurement.
+	 * @param guess A previous fix of the tag to start from, or {@code null} to
+	 * start from the centroid of the anchors. May be the same object as {@code out}.
+	 * @param out Receives the fix, including its residual and anchor count.
+	 * @return {@code true} if a fix was found, {@code false} if there are too
+	 * few positioned anchors or the solution diverged.
+	 */
+	public boolean solve(Measurement measurement, Position guess, Position out) {
+		int readingCount = measurement.getReadingCount();
+		this.count = 0;
+		double cx = 0, cy = 0;
+		for (int i = 0; i < readingCount; i++) {
+			Anchor anchor = measurement.getAnchor(i);
+			double distance = measurement.getDistance(i);
+			if (anchor == null || !anchor.hasPosition() || measurement.isOutlier(i) || !(distance >= 0)) continue;
+			if (this.count == this.ranges.length) grow();
+			this.anchorX[this.count] = anchor.getX();
+			this.anchorY[this.count] = anchor.getY();
+			this.anchorZ[this.count] = anchor.getZ();
+			this.ranges[this.count] = distance;
+			cx += anchor.getX();
+			cy += anchor.getY();
+			this.count++;
+		}
+		out.anchorCount = this.count;
+		out.timestamp = measurement.getMeasurmentEndTime();
+		out.roundId = measurement.getCustomMeasurementRoundId();
+		if (this.count <= this.dimensions) {
+			out.iterations = 0;
+			return false;
+		}
+
+		double px, py, pz;
+		if (guess != null) {
+			px = guess.x;
+			py = guess.y;
+			pz = this.dimensions == 3 ? guess.z : this.tagHeight;
+		} else {
+			px = cx / this.count;
+			py = cy / this.count;
+			pz = this.tagHeight;
+		}
+
+		double cost = cost(px, py, pz);
+		double lambda = 1e-3;
+		int iteration = 0;
+		while (iteration < this.maxIterations) {
+			iteration++;
+			// Normal equations J^T J and J^T r; the Jacobian row of a range is the unit vector from the anchor.
+			double a00 = 0, a01 = 0, a02 = 0, a11 = 0, a12 = 0, a22 = 0;
+			double g0 = 0, g1 = 0, g2 = 0;
+			for (int i = 0; i < this.count; i++) {
+				double dx = px - this.anchorX[i];
+				double dy = py - this.anchorY[i];
+				double dz = pz - this.anchorZ[i];
+				double d = Math.max(Math.sqrt(dx * dx + dy * dy + dz * dz), MIN_DISTANCE);
+				double residual = d - this.ranges[i];
+				double jx = dx / d, jy = dy / d, jz = dz / d;
+				a00 += jx * jx; a01 += jx * jy; a11 += jy * jy;
+				g0 += jx * residual; g1 += jy * residual;
+				if (this.dimensions == 3) {
+					a02 += jx * jz; a12 += jy * jz; a22 += jz * jz;
+					g2 += jz * residual;
+				}
+			}
+
+			boolean improved = false;
+			double sx = 0, sy = 0, sz = 0;
+			while (lambda <= MAX_LAMBDA) {
+				// Marquardt damping, with a floor so a flat direction (e.g. Z above coplanar anchors) stays solvable.
+				double d00 = a00 + lambda * Math.max(a00, 1e-6);
+				double d11 = a11 + lambda * Math.max(a11, 1e-6);
+				if (this.dimensions == 2) {
+					double det = d00 * d11 - a01 * a01;
+					if (det == 0 || !Double.isFinite(det)) {
+						lambda *= 10;
+						continue;
+					}
+					sx = (-g0 * d11 + g1 * a01) / det;
+					sy = (-g1 * d00 + g0 * a01) / det;
+					sz = 0;
+				} else {
+					double d22 = a22 + lambda * Math.max(a22, 1e-6);
+					double c00 = d11 * d22 - a12 * a12;
+					double c01 = a02 * a12 - a01 * d22;
+					double c02 = a01 * a12 - a02 * d11;
+					double det = d00 * c00 + a01 * c01 + a02 * c02;
+					if (det == 0 || !Double.isFinite(det)) {
+						lambda *= 10;
+						continue;
+					}
+					double c11 = d00 * d22 - a02 * a02;
+					double c12 = a01 * a02 - d00 * a12;
+					double c22 = d00 * d11 - a01 * a01;
+					sx = -(c00 * g0 + c01 * g1 + c02 * g2) / det;
+					sy = -(c01 * g0 + c11 * g1 + c12 * g2) / det;
+					sz = -(c02 * g0 + c12 * g1 + c22 * g2) / det;
+				}
+				double candidate = cost(px + sx, py + sy, pz + sz);
+				if (candidate < cost) {
+					px += sx;
+					py += sy;
+					pz += sz;
+					cost = candidate;
+					lambda = Math.max(lambda / 10, MIN_LAMBDA);
+					improved = true;
+					break;
+				}
+				lambda *= 10;
+			}
+			if (!improved || Math.sqrt(sx * sx + sy * sy + sz * sz) < this.tolerance) break;
+		}
+
+		if (!Double.isFinite(px) || !Double.isFinite(py) || !Double.isFinite(pz)) return false;
+		out.x = px;
+		out.y = py;
+		out.z = pz;
+		out.rmsResidual = Math.sqrt(cost / this.count);
+		out.iterations = iteration;
+		return true;
+	}
+
+	/** Sum of squared range residuals at a point. */
+	private double cost(double px, double py, double pz) {
+		double sum = 0;
+		for (int i = 0; i < this.count; i++) {
+			double dx = px - this.anchorX[i];
+			double dy = py - this.anchorY[i];
+			double dz = pz - this.anchorZ[i];
+			double residual = Math.sqrt(dx * dx + dy * dy + dz * dz) - this.ranges[i];
+			sum += residual * residual;
+		}
+		return sum;
+	}
+
+	private void grow() {
+		int capacity = this.ranges.length * 2;
+		this.anchorX = Arrays.copyOf(this.anchorX, capacity);
+		this.anchorY = Arrays.copyOf(this.anchorY, capacity);
+		this.anchorZ = Arrays.copyOf(this.anchorZ, capacity);
+		this.ranges = Arrays.copyOf(this.ranges, capacity);
+	}
+
+	public int getDimensions() { return dimensions; }
+}
@@ -0,0 +1,47 @@
+package pt.um.ucl.positioning.C03a.uwb.positioning;
+
+/**
+ * A mutable position fix of one tag, as produced by
+ * {@link MultilaterationSolver}.
+ * <p>
+ * Instances are meant to be reused: the solver writes into a caller-owned
+ * position instead of returning a new one, so solving allocates nothing.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public final class Position {
+
+	/** The X coordinate. */
+	public double x;
+	/** The Y coordinate. */
+	public double y;
+	/** The Z coordinate (the fixed tag height for 2D fixes). */
+	public double z;
+	/** Root mean square of the range residuals at the solution. */
+	public double rmsResidual;
+	/** Number of readings with a positioned anchor used in the fix. */
+	public int anchorCount;
+	/** Number of solver iterations. */
+	public int iterations;
+	/** End time of the measurement round (epoch ms). */
+	public long timestamp;
+	/** Numeric ID of the measurement round. */
+	public long roundId;
+
+	/**
+	 * Copies another position into this one.
+	 *
+	 * @param other The position to copy.
+	 */
+	public void set(Position other) {
+		this.x = other.x;
+		this.y = other.y;
+		this.z = other.z;
+		this.rmsResidual = other.rmsResidual;
+		this.anchorCount = other.anchorCount;
+		this.iterations = other.iterations;
+		this.timestamp = other.timestamp;
+		this.roundId = other.roundId;
+	}
+}
@@ -0,0 +1,175 @@
+package pt.um.ucl.positioning.C03a.uwb.positioning;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementJsonWriter;
+
+/**
+ * In-process position estimation for completed measurements.
+ * <p>
+ * Every output thread owns a {@link MultilaterationSolver} and a scratch
+ * {@link Position}; the latest accepted fix of each tag is kept in a
+ * per-tag slot and used as the starting point of the tag's next solve.
+ * Fixes whose RMS range residual exceeds {@code positioning.maxResidual} are
+ * rejected. Solving a measurement allocates nothing once a tag has its slot.
+ * <p>
+ * Fixes are served by the {@code /positions} endpoint and through
+ * {@link #latest(String, Position)}, next to (or, with {@code exportToPeQ}
+ * disabled, instead of) the remote Position Estimator.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class PositionEngine {
+
+	/** Solver settings. */
+	private final int dimensions;
+	private final double tagHeight;
+	private final int maxIterations;
+	private final double tolerance;
+	/** Fixes with a larger RMS range residual are rejected. */
+	private final double maxResidual;
+	/** Solver and scratch fix of each output thread. */
+	private final ThreadLocal<Work> work;
+	/** Latest accepted fix of each tag, by tag code. */
+	private final ConcurrentHashMap<String, Slot> latest = new ConcurrentHashMap<>();
+
+	private final LongAdder solvedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+	private final LongAdder failedCount = new LongAdder();
+
+	/**
+	 * Constructs a new engine from the {@code positioning.*} settings.
+	 *
+	 * @param config The system configuration.
+	 */
+	public PositionEngine(Config config) {
+		this.dimensions = config.getPositioningDimensions();
+		this.tagHeight = config.getPositioningTagHeight();
+		this.maxIterations = config.getPositioningMaxIterations();
+		this.tolerance = config.getPositioningTolerance();
+		this.maxResidual = config.getPositioningMaxResidual();
+		// Fail on bad settings here rather than on the first solve.
+		new MultilaterationSolver(this.dimensions, this.tagHeight, this.maxIterations, this.tolerance);
+		this.work = ThreadLocal.withInitial(() -> new Work(
+				new MultilaterationSolver(this.dimensions, this.tagHeight, this.maxIterations, this.tolerance)));
+	}
+
+	/**
+	 * Solves the position of a tag from its completed measurement and, if the
+	 * fix is accepted, publishes it as the tag's latest position.
+	 *
+	 * @param tagCode The code of the measured tag.
+	 * @param measurement The completed measurement.
+	 * @param out Receives the fix (also when it is rejected).
+	 * @return {@code true} if the fix was accepted.
+	 */
+	public boolean solve(String tagCode, Measurement measurement, Position out) {
+		Slot slot = this.latest.get(tagCode);
+		if (slot == null) {
+			slot = this.latest.computeIfAbsent(tagCode, k -> new Slot());
+		}
+		Work work = this.work.get();
+		boolean hasGuess = slot.copyTo(work.guess);
+		if (!work.solver.solve(measurement, hasGuess ? work.guess : null, out)) {
+			this.failedCount.increment();
+			return false;
+		}
+		if (out.rmsResidual > this.maxResidual) {
+			this.rejectedCount.increment();
+			return false;
+		}
+		slot.update(out);
+		this.solvedCount.increment();
+		return true;
+	}
+
+	/**
+	 * Copies the latest accepted fix of a tag.
+	 *
+	 * @param tagCode The code of the tag.
+	 * @param into Receives the fix.
+	 * @return {@code true} if the tag has a fix.
+	 */
+	public boolean latest(String tagCode, Position into) {
+		Slot slot = this.latest.get(tagCode);
+		return slot != null && slot.copyTo(into);
+	}
+
+	/**
+	 * Gets the codes of all tags with a slot.
+	 *
+	 * @return A list of tag codes.
+	 */
+	public List<String> getTagCodes() {
+		return new ArrayList<>(this.latest.keySet());
+	}
+
+	/**
+	 * Discards the fixes of a tag.
+	 *
+	 * @param tagCode The code of the tag.
+	 */
+	public void remove(String tagCode) {
+		this.latest.remove(tagCode);
+	}
+
+	/**
+	 * Encodes a fix as a JSON object.
+	 *
+	 * @param tagCode The code of the tag.
+	 * @param position The fix.
+	 * @param json The writer to append to.
+	 */
+	public static void writeJson(String tagCode, Position position, MeasurementJsonWriter json) {
+		json.writeByte('{').writeKey("targetCode").writeString(tagCode)
+			.writeByte(',').writeKey("x").writeDouble(position.x)
+			.writeByte(',').writeKey("y").writeDouble(position.y)
+			.writeByte(',').writeKey("z").writeDouble(position.z)
+			.writeByte(',').writeKey("rmsResidual").writeDouble(position.rmsResidual)
+			.writeByte(',').writeKey("anchors").writeLong(position.anchorCount)
+			.writeByte(',').writeKey("roundId").writeLong(position.roundId)
+			.writeByte(',').writeKey("timestamp").writeLong(position.timestamp)
+			.writeByte('}');
+	}
+
+	public int getDimensions() { return dimensions; }
+	public long getSolvedCount() { return solvedCount.sum(); }
+	public long getRejectedCount() { return rejectedCount.sum(); }
+	public long getFailedCount() { return failedCount.sum(); }
+
+	/**
+	 * Latest accepted fix of one tag.
+	 */
+	private static final class Slot {
+		private final Position position = new Position();
+		private boolean present;
+
+		synchronized void update(Position fix) {
+			this.position.set(fix);
+			this.present = true;
+		}
+
+		synchronized boolean copyTo(Position into) {
+			if (this.present) into.set(this.position);
+			return this.present;
+		}
+	}
+
+	/**
+	 * Per-thread solver state.
+	 */
+	private static final class Work {
+		private final MultilaterationSolver solver;
+		private final Position guess = new Position();
+
+		Work(MultilaterationSolver solver) {
+			this.solver = solver;
+		}
+	}
+}
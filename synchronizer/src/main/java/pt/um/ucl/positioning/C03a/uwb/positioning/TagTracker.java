@@ -0,0 +1,409 @@
+package pt.um.ucl.positioning.C03a.uwb.positioning;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+import pt.um.ucl.positioning.C03a.uwb.devices.Anchor;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementJsonWriter;
+
+/**
+ * Streaming constant-velocity Kalman tracker of every tag.
+ * <p>
+ * The state of a tag is its position and velocity ({@code [x, y, vx, vy]} in
+ * 2D, {@code [x, y, z, vx, vy, vz]} in 3D) with a full covariance. Each
+ * completed {@link Measurement} first predicts the state forward to the end
+ * of its round, using white-noise acceleration of
+ * {@code tracking.accelerationNoise}, and then corrects it with either:
+ * <ul>
+ * <li>{@link Input#POSITIONS}: the fix of the {@link PositionEngine}, one
+ * axis at a time, or</li>
+ * <li>{@link Input#RANGES}: every range to a positioned anchor, as
+ * linearised (extended Kalman) scalar updates, which keeps rounds with too
+ * few anchors for a fix useful.</li>
+ * </ul>
+ * Corrections whose innovation exceeds {@code tracking.gate} standard
+ * deviations are ignored. A track is (re)started from a fix when the tag is
+ * new or was not updated for {@code tracking.maxGap} milliseconds.
+ * <p>
+ * All tracks live in preallocated primitive arrays indexed by a per-tag
+ * slot, so updates allocate nothing. When all {@code tracking.maxTags} slots
+ * are taken, the least recently updated track is evicted.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class TagTracker {
+
+	/**
+	 * What corrects the predicted state.
+	 */
+	public enum Input {
+		/** Solved position fixes. */
+		POSITIONS,
+		/** Raw ranges to positioned anchors. */
+		RANGES
+	}
+
+	/** Initial standard deviation of the velocity of a new track, in distance units per second. */
+	private static final double INITIAL_VELOCITY_SIGMA = 1.0;
+	/** Rounds in a row whose corrections were all gated before the track is restarted from a fix. */
+	private static final int MAX_GATED_ROUNDS = 3;
+
+	private final Input input;
+	/** 2 or 3. */
+	private final int dimensions;
+	/** State size, {@code 2 * dimensions}. */
+	private final int n;
+	/** The fixed tag height in 2D mode. */
+	private final double tagHeight;
+	/** Variance of the acceleration noise. */
+	private final double accelerationVariance;
+	/** Variance of a position (per axis) or range measurement. */
+	private final double measurementVariance;
+	/** Innovation gate, in standard deviations. */
+	private final double gate;
+	/** Tracks not updated for this long are restarted (ms). */
+	private final long maxGap;
+
+	/** Slot of each tracked tag. Changed under {@code this}. */
+	private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+	/** Tag code of each slot, or {@code null}. Guarded by the slot lock. */
+	private final String[] tagCodes;
+	private final Object[] locks;
+	/** State vectors, {@code n} values per slot. */
+	private final double[] state;
+	/** Row-major covariance matrices, {@code n * n} values per slot. */
+	private final double[] covariance;
+	/** Scratch vectors {@code h} and {@code P h}, {@code 2 * n} values per slot. */
+	private final double[] scratch;
+	private final long[] updatedAt;
+	private final long[] updateCounts;
+	private final int[] gatedRounds;
+
+	private final LongAdder updates = new LongAdder();
+	private final LongAdder gated = new LongAdder();
+	private final LongAdder restarts = new LongAdder();
+
+	/**
+	 * Constructs a new tracker from the {@code tracking.*} and
+	 * {@code positioning.*} settings.
+	 *
+	 * @param config The system configuration.
+	 */
+	public TagTracker(Config config) {
+		this.input = Input.valueOf(config.getTrackingInput().toUpperCase());
+		this.dimensions = config.getPositioningDimensions();
+		this.n = 2 * this.dimensions;
+		this.tagHeight = config.getPositioningTagHeight();
+		this.accelerationVariance = config.getTrackingAccelerationNoise() * config.getTrackingAccelerationNoise();
+		this.measurementVariance = config.getTrackingMeasurementNoise() * config.getTrackingMeasurementNoise();
+		this.gate = config.getTrackingGate();
+		this.maxGap = config.getTrackingMaxGap();
+
+		int maxTags = Math.max(1, config.getTrackingMaxTags());
+		this.tagCodes = new String[maxTags];
+		this.locks = new Object[maxTags];
+		for (int i = 0; i < maxTags; i++) this.locks[i] = new Object();
+		this.state = new double[maxTags * this.n];
+		this.covariance = new double[maxTags * this.n * this.n];
+		this.scratch = new double[maxTags * 2 * this.n];
+		this.updatedAt = new long[maxTags];
+		this.updateCounts = new long[maxTags];
+		this.gatedRounds = new int[maxTags];
+	}
+
+	/**
+	 * Updates the track of a tag with its completed measurement.
+	 *
+	 * @param tagCode The code of the measured tag.
+	 * @param measurement The completed measurement.
+	 * @param fix The accepted position fix of the measurement, or {@code null}.
+	 * Required to start a track, and the only input in {@link Input#POSITIONS} mode.
+	 * @return {@code true} if the track was started or updated.
+	 */
+	public boolean update(String tagCode, Measurement measurement, Position fix) {
+		long time = measurement.getMeasurmentEndTime();
+		while (true) {
+			int slot = slotOf(tagCode, fix != null);
+			if (slot < 0) return false;
+			synchronized (this.locks[slot]) {
+				// The slot may have been evicted and handed to another tag in between.
+				if (!tagCode.equals(this.tagCodes[slot])) continue;
+
+				if (this.updateCounts[slot] == 0 || time - this.updatedAt[slot] > this.maxGap) {
+					if (fix == null) return false;
+					start(slot, fix, time);
+					return true;
+				}
+				if (time < this.updatedAt[slot]) {
+					// A late round; the track has already moved past it.
+					return false;
+				}
+
+				if (this.input == Input.POSITIONS && fix == null) return false;
+				predict(slot, (time - this.updatedAt[slot]) / 1000.0);
+				int attempted = 0;
+				int accepted = 0;
+				if (this.input == Input.POSITIONS) {
+					double variance = this.measurementVariance + fix.rmsResidual * fix.rmsResidual;
+					for (int k = 0; k < this.dimensions; k++) {
+						attempted++;
+						if (correctAxis(slot, k, k == 0 ? fix.x : k == 1 ? fix.y : fix.z, variance)) accepted++;
+					}
+				} else {
+					int readingCount = measurement.getReadingCount();
+					for (int i = 0; i < readingCount; i++) {
+						Anchor anchor = measurement.getAnchor(i);
+						if (anchor != null && anchor.hasPosition() && !measurement.isOutlier(i)) {
+							attempted++;
+							if (correctRange(slot, anchor, measurement.getDistance(i))) accepted++;
+						}
+					}
+				}
+				if (attempted > 0 && accepted == 0 && ++this.gatedRounds[slot] >= MAX_GATED_ROUNDS && fix != null) {
+					// The track has lost the tag (e.g. after a jump); start over from the fix.
+					start(slot, fix, time);
+					return true;
+				} else if (accepted > 0) {
+					this.gatedRounds[slot] = 0;
+				}
+				this.updatedAt[slot] = time;
+				this.updateCounts[slot]++;
+				this.updates.increment();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Finds the slot of a tag, optionally claiming one (evicting the least
+	 * recently updated track if all are taken).
+	 */
+	private int slotOf(String tagCode, boolean create) {
+		Integer slot = this.slots.get(tagCode);
+		if (slot != null || !create) return slot != null ? slot : -1;
+		synchronized (this) {
+			slot = this.slots.get(tagCode);
+			if (slot != null) return slot;
+			int chosen = -1;
+			long oldest = Long.MAX_VALUE;
+			for (int i = 0; i < this.tagCodes.length; i++) {
+				synchronized (this.locks[i]) {
+					if (this.tagCodes[i] == null) {
+						chosen = i;
+						break;
+					}
+					if (this.updatedAt[i] < oldest) {
+						oldest = this.updatedAt[i];
+						chosen = i;
+					}
+				}
+			}
+			synchronized (this.locks[chosen]) {
+				if (this.tagCodes[chosen] != null) this.slots.remove(this.tagCodes[chosen]);
+				this.tagCodes[chosen] = tagCode;
+				this.updateCounts[chosen] = 0;
+				this.updatedAt[chosen] = Long.MIN_VALUE;
+			}
+			this.slots.put(tagCode, chosen);
+			return chosen;
+		}
+	}
+
+	/** Starts a track at a fix, at rest. */
+	private void start(int slot, Position fix, long time) {
+		int s = slot * this.n;
+		int c = slot * this.n * this.n;
+		this.state[s] = fix.x;
+		this.state[s + 1] = fix.y;
+		if (this.dimensions == 3) this.state[s + 2] = fix.z;
+		for (int k = 0; k < this.dimensions; k++) this.state[s + this.dimensions + k] = 0;
+		for (int i = 0; i < this.n * this.n; i++) this.covariance[c + i] = 0;
+		double positionVariance = this.measurementVariance + fix.rmsResidual * fix.rmsResidual;
+		for (int k = 0; k < this.dimensions; k++) {
+			this.covariance[c + k * this.n + k] = positionVariance;
+			int v = this.dimensions + k;
+			this.covariance[c + v * this.n + v] = INITIAL_VELOCITY_SIGMA * INITIAL_VELOCITY_SIGMA;
+		}
+		this.updatedAt[slot] = time;
+		this.updateCounts[slot] = 1;
+		this.gatedRounds[slot] = 0;
+		this.restarts.increment();
+	}
+
+	/** Moves the state {@code dt} seconds ahead: {@code x = F x}, {@code P = F P F' + Q}. */
+	private void predict(int slot, double dt) {
+		if (dt <= 0) return;
+		int s = slot * this.n;
+		int c = slot * this.n * this.n;
+		int d = this.dimensions;
+		for (int k = 0; k < d; k++) this.state[s + k] += dt * this.state[s + d + k];
+
+		// With P = [[PP, PV], [VP, VV]] and F = [[I, dt I], [0, I]]; PP first, as it needs the old PV and VP.
+		for (int i = 0; i < d; i++) {
+			for (int j = 0; j < d; j++) {
+				double pv = this.covariance[c + i * this.n + d + j];
+				double vp = this.covariance[c + (d + i) * this.n + j];
+				double vv = this.covariance[c + (d + i) * this.n + d + j];
+				this.covariance[c + i * this.n + j] += dt * (pv + vp) + dt * dt * vv;
+			}
+		}
+		for (int i = 0; i < d; i++) {
+			for (int j = 0; j < d; j++) {
+				double vv = this.covariance[c + (d + i) * this.n + d + j];
+				this.covariance[c + i * this.n + d + j] += dt * vv;
+				this.covariance[c + (d + i) * this.n + j] += dt * vv;
+			}
+		}
+		double q = this.accelerationVariance;
+		for (int k = 0; k < d; k++) {
+			this.covariance[c + k * this.n + k] += q * dt * dt * dt * dt / 4;
+			this.covariance[c + k * this.n + d + k] += q * dt * dt * dt / 2;
+			this.covariance[c + (d + k) * this.n + k] += q * dt * dt * dt / 2;
+			this.covariance[c + (d + k) * this.n + d + k] += q * dt * dt;
+		}
+	}
+
+	/** Corrects one position axis with a measured coordinate. */
+	private boolean correctAxis(int slot, int axis, double value, double variance) {
+		int h = slot * 2 * this.n;
+		for (int i = 0; i < this.n; i++) this.scratch[h + i] = i == axis ? 1 : 0;
+		return correct(slot, value - this.state[slot * this.n + axis], variance);
+	}
+
+	/** Corrects the position with a range to an anchor, linearised at the predicted position. */
+	private boolean correctRange(int slot, Anchor anchor, double range) {
+		int s = slot * this.n;
+		int h = slot * 2 * this.n;
+		double dx = this.state[s] - anchor.getX();
+		double dy = this.state[s + 1] - anchor.getY();
+		double dz = (this.dimensions == 3 ? this.state[s + 2] : this.tagHeight) - anchor.getZ();
+		double predicted = Math.sqrt(dx * dx + dy * dy + dz * dz);
+		if (predicted < 1e-9) return false;
+		for (int i = 0; i < this.n; i++) this.scratch[h + i] = 0;
+		this.scratch[h] = dx / predicted;
+		this.scratch[h + 1] = dy / predicted;
+		if (this.dimensions == 3) this.scratch[h + 2] = dz / predicted;
+		return correct(slot, range - predicted, this.measurementVariance);
+	}
+
+	/**
+	 * Scalar Kalman correction with the observation vector {@code h} in the
+	 * slot's scratch space: {@code K = P h / S}, {@code x += K y},
+	 * {@code P -= (P h)(P h)' / S}.
+	 *
+	 * @return {@code false} if the innovation was gated.
+	 */
+	private boolean correct(int slot, double innovation, double variance) {
+		int s = slot * this.n;
+		int c = slot * this.n * this.n;
+		int h = slot * 2 * this.n;
+		int ph = h + this.n;
+		double innovationVariance = variance;
+		for (int i = 0; i < this.n; i++) {
+			double sum = 0;
+			for (int j = 0; j < this.n; j++) sum += this.covariance[c + i * this.n + j] * this.scratch[h + j];
+			this.scratch[ph + i] = sum;
+			innovationVariance += this.scratch[h + i] * sum;
+		}
+		if (innovation * innovation > this.gate * this.gate * innovationVariance) {
+			this.gated.increment();
+			return false;
+		}
+		for (int i = 0; i < this.n; i++) {
+			this.state[s + i] += this.scratch[ph + i] * innovation / innovationVariance;
+		}
+		for (int i = 0; i < this.n; i++) {
+			for (int j = 0; j < this.n; j++) {
+				this.covariance[c + i * this.n + j] -= this.scratch[ph + i] * this.scratch[ph + j] / innovationVariance;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copies the track of a tag.
+	 *
+	 * @param tagCode The code of the tag.
+	 * @param into Receives the track.
+	 * @return {@code true} if the tag has a track.
+	 */
+	public boolean read(String tagCode, TrackState into) {
+		Integer slot = this.slots.get(tagCode);
+		if (slot == null) return false;
+		synchronized (this.locks[slot]) {
+			if (!tagCode.equals(this.tagCodes[slot]) || this.updateCounts[slot] == 0) return false;
+			int s = slot * this.n;
+			int c = slot * this.n * this.n;
+			int d = this.dimensions;
+			into.x = this.state[s];
+			into.y = this.state[s + 1];
+			into.z = d == 3 ? this.state[s + 2] : this.tagHeight;
+			into.vx = this.state[s + d];
+			into.vy = this.state[s + d + 1];
+			into.vz = d == 3 ? this.state[s + d + 2] : 0;
+			into.positionSigma = Math.sqrt(this.covariance[c] + this.covariance[c + this.n + 1]);
+			into.timestamp = this.updatedAt[slot];
+			into.updates = this.updateCounts[slot];
+			return true;
+		}
+	}
+
+	/**
+	 * Gets the current speed of a tag, e.g. to adapt how often it is measured.
+	 *
+	 * @param tagCode The code of the tag.
+	 * @return The speed in distance units per second, or {@code NaN} if the tag is not tracked.
+	 */
+	public double getSpeed(String tagCode) {
+		Integer slot = this.slots.get(tagCode);
+		if (slot == null) return Double.NaN;
+		synchronized (this.locks[slot]) {
+			if (!tagCode.equals(this.tagCodes[slot]) || this.updateCounts[slot] == 0) return Double.NaN;
+			int v = slot * this.n + this.dimensions;
+			double sum = 0;
+			for (int k = 0; k < this.dimensions; k++) sum += this.state[v + k] * this.state[v + k];
+			return Math.sqrt(sum);
+		}
+	}
+
+	/**
+	 * Gets the codes of all tracked tags.
+	 *
+	 * @return A list of tag codes.
+	 */
+	public List<String> getTagCodes() {
+		return new ArrayList<>(this.slots.keySet());
+	}
+
+	/**
+	 * Encodes a track as a JSON object.
+	 *
+	 * @param tagCode The code of the tag.
+	 * @param track The track.
+	 * @param json The writer to append to.
+	 */
+	public static void writeJson(String tagCode, TrackState track, MeasurementJsonWriter json) {
+		json.writeByte('{').writeKey("targetCode").writeString(tagCode)
+			.writeByte(',').writeKey("x").writeDouble(track.x)
+			.writeByte(',').writeKey("y").writeDouble(track.y)
+			.writeByte(',').writeKey("z").writeDouble(track.z)
+			.writeByte(',').writeKey("vx").writeDouble(track.vx)
+			.writeByte(',').writeKey("vy").writeDouble(track.vy)
+			.writeByte(',').writeKey("vz").writeDouble(track.vz)
+			.writeByte(',').writeKey("speed").writeDouble(track.speed())
+			.writeByte(',').writeKey("positionSigma").writeDouble(track.positionSigma)
+			.writeByte(',').writeKey("updates").writeLong(track.updates)
+			.writeByte(',').writeKey("timestamp").writeLong(track.timestamp)
+			.writeByte('}');
+	}
+
+	public Input getInput() { return input; }
+	public long getUpdateCount() { return updates.sum(); }
+	public long getGatedCount() { return gated.sum(); }
+	public long getRestartCount() { return restarts.sum(); }
+}
@@ -0,0 +1,31 @@
+package pt.um.ucl.positioning.C03a.uwb.positioning;
+
+/**
+ * A mutable snapshot of one tag's track, as maintained by
+ * {@link TagTracker}. Instances are meant to be reused.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public final class TrackState {
+
+	/** The smoothed position. */
+	public double x, y, z;
+	/** The estimated velocity, in distance units per second. */
+	public double vx, vy, vz;
+	/** Standard deviation of the horizontal position estimate. */
+	public double positionSigma;
+	/** Time of the last update (epoch ms). */
+	public long timestamp;
+	/** Number of updates since the track was (re)started. */
+	public long updates;
+
+	/**
+	 * Gets the speed of the tag.
+	 *
+	 * @return The magnitude of the velocity, in distance units per second.
+	 */
+	public double speed() {
+		return Math.sqrt(this.vx * this.vx + this.vy * this.vy + this.vz * this.vz);
+	}
+}
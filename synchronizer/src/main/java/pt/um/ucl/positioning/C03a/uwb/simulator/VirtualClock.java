@@ -0,0 +1,76 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock that only moves when it is told to, so the synchronizer can be
+ * driven in virtual time by {@link VirtualTimeSimulation}. Clocks obtained
+ * through {@link #withZone(ZoneId)} share the same time.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class VirtualClock extends Clock {
+
+	private final AtomicLong time;
+	private final ZoneId zone;
+
+	/**
+	 * Constructs a clock in UTC.
+	 *
+	 * @param startMillis The initial time (epoch ms).
+	 */
+	public VirtualClock(long startMillis) {
+		this(new AtomicLong(startMillis), ZoneOffset.UTC);
+	}
+
+	private VirtualClock(AtomicLong time, ZoneId zone) {
+		this.time = time;
+		this.zone = zone;
+	}
+
+	@Override
+	public ZoneId getZone() {
+		return this.zone;
+	}
+
+	@Override
+	public Clock withZone(ZoneId zone) {
+		return zone.equals(this.zone) ? this : new VirtualClock(this.time, zone);
+	}
+
+	@Override
+	public long millis() {
+		return this.time.get();
+	}
+
+	@Override
+	public Instant instant() {
+		return Instant.ofEpochMilli(millis());
+	}
+
+	/**
+	 * Moves the clock forward to the given time.
+	 *
+	 * @param millis The new time (epoch ms).
+	 * @throws IllegalArgumentException if it is before the current time.
+	 */
+	public void advanceTo(long millis) {
+		long now = this.time.get();
+		if (millis < now) throw new IllegalArgumentException("Time cannot go back from " + now + " to " + millis);
+		this.time.set(millis);
+	}
+
+	/**
+	 * Moves the clock forward.
+	 *
+	 * @param millis Milliseconds to move it, not negative.
+	 */
+	public void advance(long millis) {
+		advanceTo(this.time.get() + millis);
+	}
+}
@@ -0,0 +1,338 @@
+package pt.um.ucl.positioning.C03a.uwb.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import pt.um.ucl.positioning.C03a.uwb.communications.C03a;
+import pt.um.ucl.positioning.C03a.uwb.config.Config;
+
+/**
+ * Runs the servlet and a fleet of simulated anchors in virtual time, as a
+ * discrete-event simulation. The servlet keeps time with a
+ * {@link VirtualClock}, which jumps from one event to the next, so hours of
+ * TDMA operation take seconds and a run depends only on its parameters and
+ * seed.
+ * <p>
+ * Every anchor follows the firmware loop: it registers, reports scans at
+ * once and, for a measurement command, converts each slot to its own time
+ * from the command's {@code serverTimeNow}, measures every tag it sees in
+ * its slot and reports when the last slot is done. Requests and responses
+ * are delayed by the network, and measurements by a slot jitter. The server
+ * handles a request at the instant it arrives and runs the deadline sweep
+ * every {@code output.sweepInterval} milliseconds.
+ * <p>
+ * The report includes a digest of every slot handed out, relative to the
+ * start, so scheduler changes can be checked against a known run. With
+ * {@code capture.enabled} in the configuration the traffic is also captured
+ * for {@code TrafficReplay}.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class VirtualTimeSimulation implements AutoCloseable {
+
+	private static final String PATH_BOOT = "/anchorRegistration";
+	private static final String PATH_MEASURE = "/measurementReport";
+	private static final String PATH_SCAN = "/scanReport";
+	/** How late a slot may be found before the anchor skips it, as the firmware does. */
+	private static final long ACCEPTANCE_INTERVAL = 20;
+	/** Wait of an anchor after an error or a command with nothing to measure. */
+	private static final long RETRY_DELAY = 1000;
+	/** Anchors boot at random within this time from the start. */
+	private static final long BOOT_SPREAD = 1000;
+	/** The virtual time runs start at, 2026-01-01T00:00:00Z. */
+	public static final long DEFAULT_START = 1_767_225_600_000L;
+
+	private record Event(long time, long sequence, Runnable action) implements Comparable<Event> {
+		@Override
+		public int compareTo(Event other) {
+			int byTime = Long.compare(this.time, other.time);
+			return byTime != 0 ? byTime : Long.compare(this.sequence, other.sequence);
+		}
+	}
+
+	private final VirtualClock clock;
+	private final C03a server;
+	private final long start;
+	private final Random random;
+	private final long networkDelay;
+	private final long networkJitter;
+	private final long slotJitter;
+	private final List<String> tagNames;
+	private final PriorityQueue<Event> events = new PriorityQueue<>();
+	private long nextSequence;
+
+	private long processedEvents;
+	private long bootRequests;
+	private long measureRequests;
+	private long scanRequests;
+	private long slotsScheduled;
+	private long slotsExecuted;
+	private long slotsMissed;
+	private long slotsOnTime;
+	private long slotErrorSum;
+	private long slotErrorMax;
+	private final CRC32 scheduleDigest = new CRC32();
+
+	/**
+	 * Constructs a simulation that starts at {@link #DEFAULT_START}.
+	 *
+	 * @param config The servlet configuration, which must not export to the database.
+	 * @param anchors The number of anchors, named {@code anchor1} to {@code anchor<n>}.
+	 * @param tags The number of tags, {@code tag0} to {@code tag<n - 1>}, all seen by every anchor.
+	 * @param seed The seed of every random choice.
+	 * @param networkDelay The one-way network delay, in milliseconds.
+	 * @param networkJitter The most the delay varies above {@code networkDelay}, in milliseconds.
+	 * @param slotJitter The most a measurement runs late of its slot, in milliseconds.
+	 */
+	public VirtualTimeSimulation(Config config, int anchors, int tags, long seed, long networkDelay, long networkJitter, long slotJitter) {
+		this.start = DEFAULT_START;
+		this.clock = new VirtualClock(this.start);
+		this.server = new C03a(config, this.clock);
+		this.random = new Random(seed);
+		this.networkDelay = networkDelay;
+		this.networkJitter = networkJitter;
+		this.slotJitter = slotJitter;
+		this.tagNames = new ArrayList<>(tags);
+		for (int i = 0; i < tags; i++) this.tagNames.add("tag" + i);
+
+		for (int i = 1; i <= anchors; i++) {
+			SimulatedAnchor anchor = new SimulatedAnchor("anchor" + i);
+			schedule(this.start + this.random.nextLong(BOOT_SPREAD), anchor::boot);
+		}
+		if (config.getOutputDeadlineDelay() >= 0) {
+			long interval = Math.max(1, config.getOutputSweepInterval());
+			schedule(this.start + interval, () -> sweep(interval));
+		}
+	}
+
+	private void schedule(long time, Runnable action) {
+		this.events.add(new Event(time, this.nextSequence++, action));
+	}
+
+	private void sweep(long interval) {
+		this.server.sweepOutput();
+		schedule(this.clock.millis() + interval, () -> sweep(interval));
+	}
+
+	private long networkDelay() {
+		return this.networkDelay + (this.networkJitter > 0 ? this.random.nextLong(this.networkJitter + 1) : 0);
+	}
+
+	/**
+	 * Runs the simulation for a while. It can be run again to continue.
+	 *
+	 * @param duration Virtual milliseconds to run.
+	 * @return The report of the whole run so far.
+	 */
+	public JSONObject run(long duration) {
+		long end = this.clock.millis() + duration;
+		long wallStart = System.nanoTime();
+		while (!this.events.isEmpty() && this.events.peek().time() <= end) {
+			Event event = this.events.poll();
+			this.clock.advanceTo(event.time());
+			event.action().run();
+			this.processedEvents++;
+		}
+		this.clock.advanceTo(end);
+		long wallMs = (System.nanoTime() - wallStart) / 1_000_000;
+		return report(duration, wallMs);
+	}
+
+	private JSONObject report(long duration, long wallMs) {
+		JSONObject metrics = this.server.getMetrics();
+		return new JSONObject()
+			.put("virtualMs", this.clock.millis() - this.start)
+			.put("wallMs", wallMs)
+			.put("speedup", wallMs > 0 ? duration / (double) wallMs : Double.POSITIVE_INFINITY)
+			.put("events", this.processedEvents)
+			.put("anchors", metrics.getInt("anchors"))
+			.put("tags", metrics.getInt("tags"))
+			.put("requests", new JSONObject()
+				.put("anchorRegistration", this.bootRequests)
+				.put("measurementReport", this.measureRequests)
+				.put("scanReport", this.scanRequests))
+			.put("slots", new JSONObject()
+				.put("scheduled", this.slotsScheduled)
+				.put("executed", this.slotsExecuted)
+				.put("missed", this.slotsMissed)
+				.put("onTime", this.slotsOnTime)
+				.put("meanErrorMs", this.slotsExecuted > 0 ? this.slotErrorSum / (double) this.slotsExecuted : 0)
+				.put("maxErrorMs", this.slotErrorMax))
+			.put("rounds", metrics.getJSONObject("rounds"))
+			.put("scheduleDigest", Long.toHexString(this.scheduleDigest.getValue()));
+	}
+
+	@Override
+	public void close() {
+		this.server.destroy();
+	}
+
+	/**
+	 * An anchor of the fleet. Its clock is the virtual clock itself, so
+	 * slots only move by the delay of the command and the slot jitter.
+	 */
+	private final class SimulatedAnchor {
+
+		private final String name;
+
+		SimulatedAnchor(String name) {
+			this.name = name;
+		}
+
+		void boot() {
+			send(PATH_BOOT, new JSONObject().put("anchorID", this.name));
+		}
+
+		/** Sends a request, which the server handles when it arrives, and the response back. */
+		private void send(String path, JSONObject body) {
+			String request = body.toString();
+			schedule(clock.millis() + networkDelay(), () -> {
+				switch (path) {
+				case PATH_BOOT -> bootRequests++;
+				case PATH_MEASURE -> measureRequests++;
+				default -> scanRequests++;
+				}
+				String response = server.handleAnchorRequest(path, request);
+				schedule(clock.millis() + networkDelay(), () -> receive(response));
+			});
+		}
+
+		private void receive(String response) {
+			JSONObject command = new JSONObject(response);
+			switch (command.optString("actionToExecute")) {
+			case "measure" -> measure(command);
+			case "slowScan", "fastScan" -> scan();
+			case "register" -> boot();
+			default -> schedule(clock.millis() + RETRY_DELAY, this::boot);
+			}
+		}
+
+		private void scan() {
+			JSONArray tags = new JSONArray();
+			for (String tag : tagNames) tags.put(new JSONObject().put("tagID", tag));
+			send(PATH_SCAN, new JSONObject().put("anchorID", this.name).put("tags", tags));
+		}
+
+		private void measure(JSONObject command) {
+			long localBaseline = clock.millis();
+			long serverBaseline = command.optLong("serverTimeNow", localBaseline);
+			long roundId = command.optLong("roundId", -1);
+			JSONArray slots = command.getJSONArray("tags");
+
+			JSONArray readings = new JSONArray();
+			long reportAt = localBaseline;
+			for (int i = 0; i < slots.length(); i++) {
+				JSONObject slot = slots.getJSONObject(i);
+				String tag = slot.getString("deviceID");
+				long scheduled = slot.getLong("whenToExecute");
+				slotsScheduled++;
+				scheduleDigest.update((this.name + ',' + tag + ',' + (scheduled - start) + '\n').getBytes(StandardCharsets.US_ASCII));
+
+				long wait = scheduled - serverBaseline;
+				if (wait < -ACCEPTANCE_INTERVAL) {
+					slotsMissed++;
+					continue;
+				}
+				long executed = localBaseline + Math.max(0, wait) + (slotJitter > 0 ? random.nextLong(slotJitter + 1) : 0);
+				long error = executed - scheduled;
+				slotsExecuted++;
+				slotErrorSum += error;
+				slotErrorMax = Math.max(slotErrorMax, Math.abs(error));
+				if (Math.abs(error) <= ACCEPTANCE_INTERVAL) slotsOnTime++;
+				reportAt = Math.max(reportAt, executed);
+
+				readings.put(new JSONObject()
+					.put("tagID", tag)
+					.put("distance", 1 + random.nextDouble() * 39)
+					.put("executedAt", serverBaseline + (executed - localBaseline)));
+			}
+
+			JSONObject report = new JSONObject()
+				.put("anchorID", this.name)
+				.put("roundId", roundId)
+				.put("tags", readings)
+				.put("actualDurationMs", reportAt - localBaseline);
+			if (slots.isEmpty()) reportAt += RETRY_DELAY;
+			schedule(reportAt, () -> send(PATH_MEASURE, report));
+		}
+	}
+
+	/**
+	 * Builds the configuration from a {@code config.properties} file, with
+	 * every export and log turned off.
+	 *
+	 * @param file The file, or {@code null} for defaults.
+	 * @param overrides Properties replacing those of the file, as {@code key, value} pairs.
+	 * @return The configuration.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public static Config loadConfig(String file, String... overrides) throws IOException {
+		Properties props = new Properties();
+		props.setProperty("am.slowScanPeriod", "60000");
+		props.setProperty("am.fastScanPeriod", "30000");
+		props.setProperty("am.scanInterval", "2000");
+		props.setProperty("am.scanTime", "10");
+		props.setProperty("am.minRoundTime", "2000");
+		props.setProperty("am.safetyBuffer", "10");
+		if (file != null) {
+			try (InputStream in = Files.newInputStream(Paths.get(file))) {
+				props.load(in);
+			}
+		}
+		props.setProperty("exportToDbQ", "false");
+		props.setProperty("exportToPeQ", "false");
+		props.setProperty("exportToStoreQ", "false");
+		props.setProperty("enableInputLogs", "false");
+		props.setProperty("enableOutputLogs", "false");
+		props.setProperty("enableGeneralLogs", "false");
+		props.setProperty("log.executionComparison", "false");
+		for (int i = 0; i + 1 < overrides.length; i += 2) props.setProperty(overrides[i], overrides[i + 1]);
+		return new Config(props);
+	}
+
+	/**
+	 * Main entry point for the virtual-time simulation. Prints the report as
+	 * one line of JSON.
+	 *
+	 * @param args Command-line arguments.
+	 * <ul>
+	 * <li>{@code args[0]} (Optional): A {@code config.properties} file, or empty for defaults.</li>
+	 * <li>{@code args[1]} (Optional): The number of anchors. Defaults to 4.</li>
+	 * <li>{@code args[2]} (Optional): The number of tags. Defaults to 10.</li>
+	 * <li>{@code args[3]} (Optional): Virtual seconds to run. Defaults to 3600.</li>
+	 * <li>{@code args[4]} (Optional): The seed. Defaults to 1.</li>
+	 * <li>{@code args[5]} (Optional): The one-way network delay in milliseconds. Defaults to 5.</li>
+	 * <li>{@code args[6]} (Optional): The network jitter in milliseconds. Defaults to 5.</li>
+	 * <li>{@code args[7]} (Optional): The slot jitter in milliseconds. Defaults to 2.</li>
+	 * </ul>
+	 * @throws IOException if the configuration cannot be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		String file = args.length > 0 && !args[0].isEmpty() ? args[0] : null;
+		int anchors = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int tags = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		long seconds = args.length > 3 ? Long.parseLong(args[3]) : 3600;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+		long networkDelay = args.length > 5 ? Long.parseLong(args[5]) : 5;
+		long networkJitter = args.length > 6 ? Long.parseLong(args[6]) : 5;
+		long slotJitter = args.length > 7 ? Long.parseLong(args[7]) : 2;
+
+		try (VirtualTimeSimulation simulation = new VirtualTimeSimulation(loadConfig(file), anchors, tags, seed,
+				networkDelay, networkJitter, slotJitter)) {
+			System.out.println(simulation.run(seconds * 1000));
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package pt.um.ucl.positioning.C03a.uwb.sinks;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import pt.um.ucl.positioning.C03a.uwb.measurements.MeasurementJsonWriter;
+import pt.um.ucl.positioning.C03a.uwb.positioning.PositionEngine;
+import pt.um.ucl.positioning.C03a.uwb.positioning.TagTracker;
+
+/**
+ * Sink that appends every record to a file as one line of JSON:
+ * {@code {"measurement": {...}, "position": {...}, "track": {...}}}, where
+ * the measurement is encoded like the estimator payload and the position and
+ * track keys are only present when the record has them.
+ * <p>
+ * Each batch is encoded into a per-thread buffer and written and flushed
+ * with a single call.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class FileSink implements OutputSink {
+
+	private final OutputStream out;
+
+	/**
+	 * Opens the sink, appending to the file if it exists.
+	 *
+	 * @param file The file to write to. Missing parent directories are created.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public FileSink(Path file) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) Files.createDirectories(parent);
+		this.out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+	}
+
+	@Override
+	public String getName() {
+		return "file";
+	}
+
+	@Override
+	public void write(List<SinkRecord> batch) throws IOException {
+		MeasurementJsonWriter json = MeasurementJsonWriter.forCurrentThread();
+		for (int i = 0; i < batch.size(); i++) {
+			SinkRecord record = batch.get(i);
+			String tagCode = record.tag().getDeviceName();
+			json.writeByte('{').writeKey("measurement").writeMeasurement(record.measurement());
+			if (record.position() != null) {
+				json.writeByte(',').writeKey("position");
+				PositionEngine.writeJson(tagCode, record.position(), json);
+			}
+			if (record.track() != null) {
+				json.writeByte(',').writeKey("track");
+				TagTracker.writeJson(tagCode, record.track(), json);
+			}
+			json.writeByte('}').writeByte('\n');
+		}
+		synchronized (this.out) {
+			this.out.write(json.buffer(), 0, json.size());
+			this.out.flush();
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			synchronized (this.out) {
+				this.out.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Could not close the file sink: " + e.getMessage());
+		}
+	}
+}
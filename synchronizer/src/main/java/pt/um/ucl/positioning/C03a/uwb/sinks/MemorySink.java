@@ -0,0 +1,67 @@
+package pt.um.ucl.positioning.C03a.uwb.sinks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sink that keeps the most recent records in memory, for tests and
+ * debugging. Once {@code capacity} records are held, the oldest are
+ * discarded. Kept measurements are retained, so they are not recycled
+ * while the sink holds them.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class MemorySink implements OutputSink {
+
+	private final int capacity;
+	/** The kept records, oldest first. Guarded by {@code this}. */
+	private final ArrayDeque<SinkRecord> records;
+	/** Number of records received since the sink was created. Guarded by {@code this}. */
+	private long received;
+
+	/**
+	 * Constructs a new sink.
+	 *
+	 * @param capacity Maximum number of records kept.
+	 */
+	public MemorySink(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.records = new ArrayDeque<>(Math.min(this.capacity, 1024));
+	}
+
+	@Override
+	public String getName() {
+		return "memory";
+	}
+
+	@Override
+	public synchronized void write(List<SinkRecord> batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			if (this.records.size() == this.capacity) this.records.pollFirst().measurement().release();
+			batch.get(i).measurement().retain();
+			this.records.addLast(batch.get(i));
+		}
+		this.received += batch.size();
+	}
+
+	/**
+	 * Copies the kept records.
+	 *
+	 * @return The records, oldest first.
+	 */
+	public synchronized List<SinkRecord> snapshot() {
+		return new ArrayList<>(this.records);
+	}
+
+	/**
+	 * Discards the kept records.
+	 */
+	public synchronized void clear() {
+		for (SinkRecord record : this.records) record.measurement().release();
+		this.records.clear();
+	}
+
+	public synchronized long getReceivedCount() { return received; }
+}
@@ -0,0 +1,42 @@
+package pt.um.ucl.positioning.C03a.uwb.sinks;
+
+import java.util.List;
+
+/**
+ * Destination of completed measurements, e.g. the database, the Position
+ * Estimator or a file.
+ * <p>
+ * Every sink is driven by its own queue and worker threads in the
+ * {@link SinkPipeline}, so a slow or failing sink never delays the others.
+ * {@link #write(List)} receives the records in batches and is called
+ * concurrently when the sink is configured with more than one thread.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public interface OutputSink {
+
+	/**
+	 * Gets the name of the sink, used in {@code sink.<name>.*} settings,
+	 * logs and {@code /status}.
+	 *
+	 * @return The name of the sink.
+	 */
+	String getName();
+
+	/**
+	 * Writes a batch of records.
+	 *
+	 * @param batch The records, in the order they were published. The list is
+	 * reused after the call returns and must not be kept.
+	 * @throws Exception if the batch could not be written. The records are
+	 * counted as failed; sinks that retry do so themselves.
+	 */
+	void write(List<SinkRecord> batch) throws Exception;
+
+	/**
+	 * Releases the resources of the sink, after its last batch was written.
+	 */
+	default void close() {
+	}
+}
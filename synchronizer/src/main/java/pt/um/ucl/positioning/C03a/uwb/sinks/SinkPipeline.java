@@ -0,0 +1,238 @@
+package pt.um.ucl.positioning.C03a.uwb.sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import pt.um.ucl.positioning.C03a.uwb.metrics.LatencyHistogram;
+
+/**
+ * Fans every completed measurement out to all registered {@link OutputSink}s.
+ * <p>
+ * Each sink has its own bounded queue and its own worker threads, which
+ * drain the queue in batches of up to {@code batchSize} records, waiting at
+ * most {@code maxDelay} milliseconds for a batch to fill. Publishing only
+ * offers the record to every queue, so the sinks write in parallel and
+ * independently of each other: a slow sink only fills its own queue, a
+ * failing one only loses its own batches, and neither delays the others.
+ * When a queue is full, new records for that sink are dropped and counted.
+ * <p>
+ * Every queued record holds a reference to its measurement (see
+ * {@link pt.um.ucl.positioning.C03a.uwb.measurements.Measurement#retain()}),
+ * released once its sink returned from {@link OutputSink#write(List)}.
+ * Sinks that keep a measurement beyond that call retain it themselves.
+ * <p>
+ * Every sink also records, per written record, the time from the first
+ * reading of the measurement (the anchor's {@code executedAt}) until the
+ * sink returned, which is the end-to-end latency of that output.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class SinkPipeline {
+
+	/** How long an idle worker waits before checking whether the pipeline stopped. */
+	private static final long IDLE_POLL = 100;
+
+	private final List<Channel> channels = new CopyOnWriteArrayList<>();
+	/** Flag to enable/disable Logs. */
+	private final boolean enableLogs;
+	private volatile boolean running;
+
+	/**
+	 * Constructs a new, empty pipeline.
+	 *
+	 * @param enableLogs {@code true} to log failed batches.
+	 */
+	public SinkPipeline(boolean enableLogs) {
+		this.enableLogs = enableLogs;
+	}
+
+	/**
+	 * Registers a sink. Sinks must be added before {@link #start()}.
+	 *
+	 * @param sink The sink.
+	 * @param settings Its queueing settings.
+	 */
+	public void add(OutputSink sink, SinkSettings settings) {
+		if (this.running) throw new IllegalStateException("Sinks must be added before the pipeline starts.");
+		this.channels.add(new Channel(sink, settings));
+	}
+
+	/**
+	 * Starts the worker threads of every sink.
+	 */
+	public void start() {
+		this.running = true;
+		for (Channel channel : this.channels) channel.start();
+	}
+
+	/**
+	 * Hands a record to every sink.
+	 *
+	 * @param record The completed measurement.
+	 */
+	public void publish(SinkRecord record) {
+		for (int i = 0; i < this.channels.size(); i++) {
+			Channel channel = this.channels.get(i);
+			record.measurement().retain();
+			if (!this.running || !channel.queue.offer(record)) {
+				record.measurement().release();
+				channel.dropped.increment();
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting records, lets every sink write what is queued, waiting
+	 * up to {@code timeout} milliseconds in total, and closes the sinks.
+	 *
+	 * @param timeout Maximum time to wait for the queues to drain, in milliseconds.
+	 */
+	public void shutdown(long timeout) {
+		this.running = false;
+		long deadline = System.currentTimeMillis() + timeout;
+		for (Channel channel : this.channels) {
+			for (Thread worker : channel.workers) {
+				try {
+					worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				worker.interrupt();
+			}
+			channel.dropped.add(channel.queue.size());
+			channel.queue.clear();
+			try {
+				channel.sink.close();
+			} catch (RuntimeException e) {
+				if (this.enableLogs) System.err.println("Error closing sink " + channel.sink.getName() + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Finds a registered sink by name.
+	 *
+	 * @param name The name of the sink.
+	 * @return The sink, or {@code null}.
+	 */
+	public OutputSink getSink(String name) {
+		for (Channel channel : this.channels) {
+			if (channel.sink.getName().equals(name)) return channel.sink;
+		}
+		return null;
+	}
+
+	/**
+	 * Clears the latency histograms of every sink.
+	 */
+	public void resetLatencies() {
+		for (Channel channel : this.channels) channel.latency.reset();
+	}
+
+	/**
+	 * Gets the counters of every sink, in registration order.
+	 *
+	 * @return One {@link SinkStats} per sink.
+	 */
+	public List<SinkStats> getStats() {
+		List<SinkStats> stats = new ArrayList<>(this.channels.size());
+		for (Channel channel : this.channels) {
+			stats.add(new SinkStats(channel.sink.getName(), channel.queue.size(), channel.written.sum(),
+					channel.failed.sum(), channel.dropped.sum(), channel.batches.sum(), channel.latency));
+		}
+		return stats;
+	}
+
+	/**
+	 * Counters of one sink.
+	 *
+	 * @param name The name of the sink.
+	 * @param queued Records waiting in its queue.
+	 * @param written Records written.
+	 * @param failed Records of failed batches.
+	 * @param dropped Records dropped because its queue was full.
+	 * @param batches Batches handed to the sink.
+	 * @param latency Time from the first reading of a record until it was written.
+	 */
+	public record SinkStats(String name, int queued, long written, long failed, long dropped, long batches, LatencyHistogram latency) {}
+
+	/**
+	 * The queue and workers of one sink.
+	 */
+	private final class Channel {
+		private final OutputSink sink;
+		private final ArrayBlockingQueue<SinkRecord> queue;
+		private final int batchSize;
+		private final long maxDelayNanos;
+		private final Thread[] workers;
+		private final LongAdder written = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final LongAdder dropped = new LongAdder();
+		private final LongAdder batches = new LongAdder();
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		Channel(OutputSink sink, SinkSettings settings) {
+			this.sink = sink;
+			this.queue = new ArrayBlockingQueue<>(Math.max(1, settings.queueCapacity()));
+			this.batchSize = Math.max(1, settings.batchSize());
+			this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, settings.maxDelay()));
+			this.workers = new Thread[Math.max(1, settings.threads())];
+			for (int i = 0; i < this.workers.length; i++) {
+				this.workers[i] = new Thread(this::drain, "sink-" + sink.getName() + "-" + i);
+				this.workers[i].setDaemon(true);
+			}
+		}
+
+		void start() {
+			for (Thread worker : this.workers) worker.start();
+		}
+
+		private void drain() {
+			List<SinkRecord> batch = new ArrayList<>(this.batchSize);
+			try {
+				while (running || !this.queue.isEmpty()) {
+					SinkRecord first = this.queue.poll(IDLE_POLL, TimeUnit.MILLISECONDS);
+					if (first == null) continue;
+					batch.add(first);
+					long deadline = System.nanoTime() + this.maxDelayNanos;
+					while (batch.size() < this.batchSize) {
+						this.queue.drainTo(batch, this.batchSize - batch.size());
+						long wait = deadline - System.nanoTime();
+						if (batch.size() >= this.batchSize || wait <= 0 || !running) break;
+						SinkRecord next = this.queue.poll(wait, TimeUnit.NANOSECONDS);
+						if (next == null) break;
+						batch.add(next);
+					}
+					write(batch);
+					batch.clear();
+				}
+			} catch (InterruptedException e) {
+				this.dropped.add(batch.size());
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void write(List<SinkRecord> batch) {
+			this.batches.increment();
+			try {
+				this.sink.write(batch);
+				this.written.add(batch.size());
+				long now = System.currentTimeMillis();
+				for (int i = 0; i < batch.size(); i++) {
+					long first = batch.get(i).measurement().getFirstReadingTime();
+					if (first >= 0) this.latency.record((now - first) * 1000);
+				}
+			} catch (Exception e) {
+				this.failed.add(batch.size());
+				if (enableLogs) System.err.println("Sink " + this.sink.getName() + " failed to write " + batch.size() + " records: " + e.getMessage());
+			} finally {
+				for (int i = 0; i < batch.size(); i++) batch.get(i).measurement().release();
+			}
+		}
+	}
+}
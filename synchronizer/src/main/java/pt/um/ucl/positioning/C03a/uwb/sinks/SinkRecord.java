@@ -0,0 +1,23 @@
+package pt.um.ucl.positioning.C03a.uwb.sinks;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+import pt.um.ucl.positioning.C03a.uwb.positioning.Position;
+import pt.um.ucl.positioning.C03a.uwb.positioning.TrackState;
+
+/**
+ * One completed measurement as handed to every {@link OutputSink}.
+ *
+ * @param tag The measured tag.
+ * @param measurement The completed measurement. It is shared by all sinks
+ * and must not be modified, nor kept after
+ * {@link OutputSink#write(java.util.List)} returns unless retained.
+ * @param position The in-process fix of the round, or {@code null} if
+ * positioning is disabled or the fix was rejected.
+ * @param track The track of the tag after the round, or {@code null} if
+ * tracking is disabled or the tag has no track.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public record SinkRecord(Tag tag, Measurement measurement, Position position, TrackState track) {}
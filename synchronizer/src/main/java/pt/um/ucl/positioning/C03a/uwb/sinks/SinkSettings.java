@@ -0,0 +1,15 @@
+package pt.um.ucl.positioning.C03a.uwb.sinks;
+
+/**
+ * Queueing settings of one sink, from {@code sink.<name>.*} with
+ * {@code sink.*} as defaults.
+ *
+ * @param queueCapacity Records the sink may have waiting before new ones are dropped.
+ * @param batchSize Maximum number of records per {@link OutputSink#write(java.util.List)}.
+ * @param maxDelay Maximum time, in milliseconds, a worker waits to fill a batch.
+ * @param threads Number of worker threads writing to the sink.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public record SinkSettings(int queueCapacity, int batchSize, long maxDelay, int threads) {}
@@ -0,0 +1,275 @@
+package pt.um.ucl.positioning.C03a.uwb.storage;
+
+import java.util.Arrays;
+
+/**
+ * Byte- and bit-level encoders used by the columnar readings archive.
+ * <p>
+ * {@link Output} and {@link Input} support unsigned LEB128 varints, zigzag
+ * varints for signed values, and an MSB-first bit stream for the
+ * delta-of-delta timestamp and XOR distance encodings (the schemes of
+ * Facebook's Gorilla time-series store).
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+final class ArchiveCodec {
+
+	private ArchiveCodec() {}
+
+	static long zigzag(long value) { return (value << 1) ^ (value >> 63); }
+	static long unzigzag(long value) { return (value >>> 1) ^ -(value & 1); }
+
+	/**
+	 * Growable output buffer.
+	 */
+	static final class Output {
+		byte[] bytes;
+		int size;
+		private long bitBuffer;
+		private int bitCount;
+
+		Output(int capacity) {
+			this.bytes = new byte[Math.max(16, capacity)];
+		}
+
+		void reset() {
+			this.size = 0;
+			this.bitBuffer = 0;
+			this.bitCount = 0;
+		}
+
+		private void ensure(int extra) {
+			if (this.size + extra > this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.size + extra));
+			}
+		}
+
+		void writeByte(int b) {
+			ensure(1);
+			this.bytes[this.size++] = (byte) b;
+		}
+
+		void writeBytes(byte[] b, int offset, int length) {
+			ensure(length);
+			System.arraycopy(b, offset, this.bytes, this.size, length);
+			this.size += length;
+		}
+
+		void writeVarLong(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				this.bytes[this.size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			this.bytes[this.size++] = (byte) value;
+		}
+
+		void writeSignedVarLong(long value) {
+			writeVarLong(zigzag(value));
+		}
+
+		void writeLong(long value) {
+			ensure(8);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				this.bytes[this.size++] = (byte) (value >>> shift);
+			}
+		}
+
+		/** Appends the low {@code count} bits of {@code value}, most significant first. */
+		void writeBits(long value, int count) {
+			while (count > 0) {
+				int take = Math.min(count, 56 - this.bitCount);
+				long chunk = (value >>> (count - take)) & ((1L << take) - 1);
+				this.bitBuffer = (this.bitBuffer << take) | chunk;
+				this.bitCount += take;
+				count -= take;
+				while (this.bitCount >= 8) {
+					this.bitCount -= 8;
+					writeByte((int) (this.bitBuffer >>> this.bitCount));
+				}
+			}
+		}
+
+		/** Pads the bit stream to a byte boundary. */
+		void flushBits() {
+			if (this.bitCount > 0) {
+				writeByte((int) (this.bitBuffer << (8 - this.bitCount)));
+				this.bitCount = 0;
+			}
+			this.bitBuffer = 0;
+		}
+	}
+
+	/**
+	 * Reader over a byte array.
+	 */
+	static final class Input {
+		private final byte[] bytes;
+		int position;
+		private final int limit;
+		private long bitBuffer;
+		private int bitCount;
+
+		Input(byte[] bytes, int offset, int length) {
+			this.bytes = bytes;
+			this.position = offset;
+			this.limit = offset + length;
+		}
+
+		int readByte() {
+			if (this.position >= this.limit) throw new IllegalStateException("Truncated archive column");
+			return this.bytes[this.position++] & 0xFF;
+		}
+
+		long readVarLong() {
+			long value = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		long readSignedVarLong() {
+			return unzigzag(readVarLong());
+		}
+
+		long readLong() {
+			long value = 0;
+			for (int i = 0; i < 8; i++) value = (value << 8) | readByte();
+			return value;
+		}
+
+		long readBits(int count) {
+			long value = 0;
+			while (count > 0) {
+				if (this.bitCount == 0) {
+					this.bitBuffer = readByte();
+					this.bitCount = 8;
+				}
+				int take = Math.min(count, this.bitCount);
+				this.bitCount -= take;
+				value = (value << take) | ((this.bitBuffer >>> this.bitCount) & ((1L << take) - 1));
+				count -= take;
+			}
+			return value;
+		}
+
+		boolean readBit() {
+			return readBits(1) != 0;
+		}
+	}
+
+	/**
+	 * Encodes timestamps as delta-of-delta values in variable-width bit buckets.
+	 */
+	static void encodeTimestamps(long[] values, int count, Output out) {
+		if (count == 0) return;
+		out.writeLong(values[0]);
+		long previousDelta = 0;
+		for (int i = 1; i < count; i++) {
+			long delta = values[i] - values[i - 1];
+			long dod = delta - previousDelta;
+			previousDelta = delta;
+			if (dod == 0) {
+				out.writeBits(0b0, 1);
+			} else if (dod >= -63 && dod <= 64) {
+				out.writeBits(0b10, 2);
+				out.writeBits(dod + 63, 7);
+			} else if (dod >= -255 && dod <= 256) {
+				out.writeBits(0b110, 3);
+				out.writeBits(dod + 255, 9);
+			} else if (dod >= -2047 && dod <= 2048) {
+				out.writeBits(0b1110, 4);
+				out.writeBits(dod + 2047, 12);
+			} else {
+				out.writeBits(0b1111, 4);
+				out.writeBits(dod, 64);
+			}
+		}
+		out.flushBits();
+	}
+
+	static void decodeTimestamps(Input in, long[] values, int count) {
+		if (count == 0) return;
+		values[0] = in.readLong();
+		long previousDelta = 0;
+		for (int i = 1; i < count; i++) {
+			long dod;
+			if (!in.readBit()) {
+				dod = 0;
+			} else if (!in.readBit()) {
+				dod = in.readBits(7) - 63;
+			} else if (!in.readBit()) {
+				dod = in.readBits(9) - 255;
+			} else if (!in.readBit()) {
+				dod = in.readBits(12) - 2047;
+			} else {
+				dod = in.readBits(64);
+			}
+			previousDelta += dod;
+			values[i] = values[i - 1] + previousDelta;
+		}
+	}
+
+	/**
+	 * Encodes doubles losslessly by XOR-ing each value with the previous one
+	 * and storing only the meaningful bits of the result.
+	 */
+	static void encodeXor(double[] values, int count, Output out) {
+		if (count == 0) return;
+		long previous = Double.doubleToRawLongBits(values[0]);
+		out.writeBits(previous, 64);
+		int previousLeading = -1;
+		int previousTrailing = 0;
+		for (int i = 1; i < count; i++) {
+			long bits = Double.doubleToRawLongBits(values[i]);
+			long xor = bits ^ previous;
+			previous = bits;
+			if (xor == 0) {
+				out.writeBits(0b0, 1);
+				continue;
+			}
+			int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+			int trailing = Long.numberOfTrailingZeros(xor);
+			if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+				// Meaningful bits fit in the previous window.
+				out.writeBits(0b10, 2);
+				out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+			} else {
+				int length = 64 - leading - trailing;
+				out.writeBits(0b11, 2);
+				out.writeBits(leading, 5);
+				out.writeBits(length - 1, 6);
+				out.writeBits(xor >>> trailing, length);
+				previousLeading = leading;
+				previousTrailing = trailing;
+			}
+		}
+		out.flushBits();
+	}
+
+	static void decodeXor(Input in, double[] values, int count) {
+		if (count == 0) return;
+		long previous = in.readBits(64);
+		values[0] = Double.longBitsToDouble(previous);
+		int leading = 0;
+		int trailing = 0;
+		for (int i = 1; i < count; i++) {
+			if (in.readBit()) {
+				if (in.readBit()) {
+					leading = (int) in.readBits(5);
+					int length = (int) in.readBits(6) + 1;
+					trailing = 64 - leading - length;
+				}
+				long xor = in.readBits(64 - leading - trailing) << trailing;
+				previous ^= xor;
+			}
+			values[i] = Double.longBitsToDouble(previous);
+		}
+	}
+}
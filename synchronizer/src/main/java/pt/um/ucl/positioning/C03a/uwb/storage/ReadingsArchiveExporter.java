@@ -0,0 +1,284 @@
+package pt.um.ucl.positioning.C03a.uwb.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import javax.sql.DataSource;
+
+import pt.um.ucl.positioning.C03a.uwb.database.PartitionManager;
+
+/**
+ * Exports ToA readings into one columnar archive file per UTC day
+ * ({@code readings-YYYY-MM-DD.uwba}, see {@link ReadingsArchiveWriter}).
+ * <p>
+ * Readings can be taken from the database or from the in-process
+ * {@link ReadingsSegmentStore}. When started with {@link #startDaily}, the
+ * previous day is exported shortly after every UTC midnight; days that
+ * already have a file are skipped.
+ * <p>
+ * Run {@link #main(String[])} to export a range of days from the database
+ * and report the compression ratio and the scan speed of each file.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class ReadingsArchiveExporter {
+
+	/** Size of a reading as a fixed-width binary record, the baseline for the compression ratio. */
+	private static final int RAW_RECORD_BYTES = Segment.RECORD_SIZE;
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	/**
+	 * Result of exporting one day.
+	 *
+	 * @param file The archive file.
+	 * @param rows The number of readings exported.
+	 * @param bytes The size of the archive file.
+	 * @param elapsedNanos The time the export took.
+	 */
+	public record Stats(Path file, long rows, long bytes, long elapsedNanos) {
+		/** @return The size of the readings as 32-byte records divided by the archive size. */
+		public double compressionRatio() { return bytes == 0 ? 0 : (double) rows * RAW_RECORD_BYTES / bytes; }
+		/** @return The average archive size per reading, in bytes. */
+		public double bytesPerReading() { return rows == 0 ? 0 : (double) bytes / rows; }
+	}
+
+	/** The directory of the archive files. */
+	private final Path directory;
+	/** How distances are stored. */
+	private final ReadingsArchiveWriter.DistanceEncoding distanceEncoding;
+	/** The distance resolution for quantized archives. */
+	private final double quantum;
+	/** Flag to enable/disable Logs. */
+	private final boolean enableLogs;
+	/** Runs the daily export. */
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Constructs a new exporter.
+	 *
+	 * @param directory The directory of the archive files.
+	 * @param distanceEncoding How distances are stored.
+	 * @param quantum The distance resolution for quantized archives.
+	 * @param enableLogs {@code true} to log exports.
+	 */
+	public ReadingsArchiveExporter(Path directory, ReadingsArchiveWriter.DistanceEncoding distanceEncoding, double quantum, boolean enableLogs) {
+		this.directory = directory;
+		this.distanceEncoding = distanceEncoding;
+		this.quantum = quantum;
+		this.enableLogs = enableLogs;
+	}
+
+	/**
+	 * Gets the archive file of a day.
+	 *
+	 * @param day The UTC day.
+	 * @return The path of the archive file.
+	 */
+	public Path fileFor(LocalDate day) {
+		return this.directory.resolve("readings-" + day + ".uwba");
+	}
+
+	/**
+	 * Exports one day of readings from the database, in timestamp order.
+	 *
+	 * @param dataSource The database to read from.
+	 * @param day The UTC day to export.
+	 * @return The export statistics.
+	 * @throws SQLException if the query fails.
+	 * @throws IOException if the archive cannot be written.
+	 */
+	public Stats exportDay(DataSource dataSource, LocalDate day) throws SQLException, IOException {
+		try (Connection conn = dataSource.getConnection()) {
+			return exportDay(conn, day);
+		}
+	}
+
+	private Stats exportDay(Connection conn, LocalDate day) throws SQLException, IOException {
+		final String sql = """
+			SELECT r.timestamp, r.measurementID, m.targetID, t.targetCode, r.anchorID, a.anchorCode, r.`Range`
+			FROM ToAreadings r
+			JOIN Measurements m ON m.measurementID = r.measurementID
+				AND m.timestamp >= ? AND m.timestamp < ?
+			JOIN Targets t ON t.targetID = m.targetID
+			JOIN Anchors a ON a.anchorID = r.anchorID
+			WHERE r.timestamp >= ? AND r.timestamp < ?
+			ORDER BY r.timestamp
+			""";
+		long start = System.nanoTime();
+		long from = day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+		Files.createDirectories(this.directory);
+		ReadingsArchiveWriter writer = new ReadingsArchiveWriter(fileFor(day), this.distanceEncoding, this.quantum);
+		try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			// Stream the day instead of buffering it in the driver.
+			stmt.setFetchSize(10_000);
+			stmt.setLong(1, from - PartitionManager.MEASUREMENT_SLACK);
+			stmt.setLong(2, from + DAY + PartitionManager.MEASUREMENT_SLACK);
+			stmt.setLong(3, from);
+			stmt.setLong(4, from + DAY);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					writer.add(rs.getLong(1), rs.getLong(2), rs.getInt(3), rs.getString(4), rs.getInt(5), rs.getString(6), rs.getDouble(7));
+				}
+			}
+			writer.close();
+		} catch (SQLException | IOException | RuntimeException e) {
+			writer.abort();
+			throw e;
+		}
+		return stats(day, writer.getRowCount(), start);
+	}
+
+	/**
+	 * Exports one day of readings from the segment store. The measurement ID
+	 * column holds the round IDs, and device codes are not available.
+	 *
+	 * @param store The segment store to read from.
+	 * @param day The UTC day to export.
+	 * @return The export statistics.
+	 * @throws IOException if the archive cannot be written.
+	 */
+	public Stats exportDay(ReadingsSegmentStore store, LocalDate day) throws IOException {
+		long start = System.nanoTime();
+		long from = day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+		Files.createDirectories(this.directory);
+		ReadingsArchiveWriter writer = new ReadingsArchiveWriter(fileFor(day), this.distanceEncoding, this.quantum);
+		try {
+			IOException[] failure = new IOException[1];
+			store.scan(-1, from, from + DAY, (timestamp, tagId, anchorId, distance, roundId) -> {
+				if (failure[0] != null) return;
+				try {
+					writer.add(timestamp, roundId, tagId, null, anchorId, null, distance);
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			});
+			if (failure[0] != null) throw failure[0];
+			writer.close();
+		} catch (IOException | RuntimeException e) {
+			writer.abort();
+			throw e;
+		}
+		return stats(day, writer.getRowCount(), start);
+	}
+
+	private Stats stats(LocalDate day, long rows, long start) throws IOException {
+		Stats stats = new Stats(fileFor(day), rows, Files.size(fileFor(day)), System.nanoTime() - start);
+		if (this.enableLogs) {
+			System.out.printf("Archived %,d readings of %s: %,d bytes (%.2f B/reading, %.1fx) in %.1f s%n",
+					stats.rows(), day, stats.bytes(), stats.bytesPerReading(), stats.compressionRatio(), stats.elapsedNanos() / 1e9);
+		}
+		return stats;
+	}
+
+	/**
+	 * Exports the previous UTC day shortly after every midnight, from the
+	 * segment store if one is given and otherwise from the database.
+	 *
+	 * @param dataSource The database to read from, used when {@code store} is {@code null}.
+	 * @param store The segment store to read from, or {@code null}.
+	 */
+	public void startDaily(DataSource dataSource, ReadingsSegmentStore store) {
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "readings-archive-export");
+			t.setDaemon(true);
+			return t;
+		});
+		long now = System.currentTimeMillis();
+		long firstRun = Math.floorDiv(now, DAY) * DAY + DAY + 5 * 60 * 1000 - now;
+		this.scheduler.scheduleAtFixedRate(() -> {
+			LocalDate yesterday = LocalDate.now(ZoneOffset.UTC).minusDays(1);
+			if (Files.exists(fileFor(yesterday))) return;
+			try {
+				if (store != null) {
+					exportDay(store, yesterday);
+				} else {
+					exportDay(dataSource, yesterday);
+				}
+			} catch (Exception e) {
+				if (enableLogs) System.err.println("Archive export of " + yesterday + " failed: " + e.getMessage());
+			}
+		}, firstRun, DAY, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the daily export.
+	 */
+	public void shutdown() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Measures how fast an archive file can be scanned in parallel.
+	 *
+	 * @param file The archive file.
+	 * @return The number of readings scanned per second.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public static double measureScanSpeed(Path file) throws IOException {
+		try (ReadingsArchiveReader reader = new ReadingsArchiveReader(file)) {
+			DoubleAdder checksum = new DoubleAdder();
+			long start = System.nanoTime();
+			long rows = reader.forEachBlock(Long.MIN_VALUE, Long.MAX_VALUE, ReadingsArchiveReader.ALL_COLUMNS, true, block -> {
+				double sum = 0;
+				for (int i = 0; i < block.rows; i++) sum += block.distances[i];
+				checksum.add(sum);
+			});
+			return rows / ((System.nanoTime() - start) / 1e9);
+		}
+	}
+
+	/**
+	 * Exports a range of days from the database and reports the compression
+	 * ratio and scan speed of every file.
+	 *
+	 * @param args Command-line arguments.
+	 * <ul>
+	 * <li>{@code args[0]}: JDBC URL including the database, e.g. "jdbc:mariadb://localhost:3306/measurements".</li>
+	 * <li>{@code args[1]}: Database username.</li>
+	 * <li>{@code args[2]}: Database password.</li>
+	 * <li>{@code args[3]}: Output directory.</li>
+	 * <li>{@code args[4]}: First day to export (YYYY-MM-DD, UTC).</li>
+	 * <li>{@code args[5]} (Optional): Last day to export. Defaults to the first day.</li>
+	 * <li>{@code args[6]} (Optional): "quantized" or "xor". Defaults to "quantized".</li>
+	 * <li>{@code args[7]} (Optional): Quantum for quantized distances. Defaults to 0.001.</li>
+	 * </ul>
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 5) {
+			System.err.println("Usage: ReadingsArchiveExporter <jdbcUrl> <user> <password> <directory> <fromDay> [toDay] [quantized|xor] [quantum]");
+			System.exit(1);
+		}
+		LocalDate first = LocalDate.parse(args[4]);
+		LocalDate last = args.length > 5 ? LocalDate.parse(args[5]) : first;
+		ReadingsArchiveWriter.DistanceEncoding encoding = args.length > 6
+				? ReadingsArchiveWriter.DistanceEncoding.valueOf(args[6].toUpperCase())
+				: ReadingsArchiveWriter.DistanceEncoding.QUANTIZED;
+		double quantum = args.length > 7 ? Double.parseDouble(args[7]) : 0.001;
+
+		ReadingsArchiveExporter exporter = new ReadingsArchiveExporter(Paths.get(args[3]), encoding, quantum, true);
+		try (Connection conn = DriverManager.getConnection(args[0], args[1], args[2])) {
+			for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+				Stats stats = exporter.exportDay(conn, day);
+				if (stats.rows() > 0) {
+					System.out.printf("  scan: %,.0f readings/s%n", measureScanSpeed(stats.file()));
+				}
+			}
+		}
+	}
+}
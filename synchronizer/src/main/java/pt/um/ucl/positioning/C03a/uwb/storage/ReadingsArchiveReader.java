@@ -0,0 +1,268 @@
+package pt.um.ucl.positioning.C03a.uwb.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Reads archive files written by {@link ReadingsArchiveWriter}.
+ * <p>
+ * Blocks are read with positional reads, so any number of threads can
+ * decode different blocks at the same time, and only the requested columns
+ * of a block are decoded. {@link #forEachBlock} uses this to scan a file in
+ * parallel, skipping blocks outside the requested time range.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class ReadingsArchiveReader implements AutoCloseable {
+
+	/** Column bit for {@link Block#timestamps}. */
+	public static final int TIMESTAMPS = 1;
+	/** Column bit for {@link Block#measurementIds}. */
+	public static final int MEASUREMENT_IDS = 1 << 1;
+	/** Column bit for {@link Block#tagIds}. */
+	public static final int TAG_IDS = 1 << 2;
+	/** Column bit for {@link Block#anchorIds}. */
+	public static final int ANCHOR_IDS = 1 << 3;
+	/** Column bit for {@link Block#distances}. */
+	public static final int DISTANCES = 1 << 4;
+	/** All columns. */
+	public static final int ALL_COLUMNS = (1 << ReadingsArchiveWriter.COLUMNS) - 1;
+
+	private final FileChannel channel;
+	private final ReadingsArchiveWriter.DistanceEncoding distanceEncoding;
+	private final double quantum;
+	private final int[] tagIds;
+	private final String[] tagCodes;
+	private final int[] anchorIds;
+	private final String[] anchorCodes;
+	private final long[] blockOffsets;
+	private final int[] blockLengths;
+	private final int[] blockRows;
+	private final long[] blockMin;
+	private final long[] blockMax;
+	private final long rowCount;
+
+	/**
+	 * Opens an archive file and reads its footer.
+	 *
+	 * @param file The archive file.
+	 * @throws IOException if the file cannot be read or is not an archive.
+	 */
+	public ReadingsArchiveReader(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = this.channel.size();
+			long signature = ((long) ReadingsArchiveWriter.MAGIC << 32) | ReadingsArchiveWriter.VERSION;
+			ByteBuffer header = read(0, 17);
+			ByteBuffer trailer = read(size - 16, 16);
+			if (header.getLong() != signature || trailer.getLong(8) != signature) {
+				throw new IOException("Not a readings archive: " + file);
+			}
+			this.distanceEncoding = ReadingsArchiveWriter.DistanceEncoding.values()[header.get()];
+			this.quantum = Double.longBitsToDouble(header.getLong());
+
+			long footerOffset = trailer.getLong(0);
+			ByteBuffer footerBytes = read(footerOffset, (int) (size - 16 - footerOffset));
+			ArchiveCodec.Input footer = new ArchiveCodec.Input(footerBytes.array(), 0, footerBytes.capacity());
+
+			int tagCount = (int) footer.readVarLong();
+			this.tagIds = new int[tagCount];
+			this.tagCodes = new String[tagCount];
+			readDictionary(footer, this.tagIds, this.tagCodes, footerBytes.array());
+			int anchorCount = (int) footer.readVarLong();
+			this.anchorIds = new int[anchorCount];
+			this.anchorCodes = new String[anchorCount];
+			readDictionary(footer, this.anchorIds, this.anchorCodes, footerBytes.array());
+
+			int blocks = (int) footer.readVarLong();
+			this.blockOffsets = new long[blocks];
+			this.blockLengths = new int[blocks];
+			this.blockRows = new int[blocks];
+			this.blockMin = new long[blocks];
+			this.blockMax = new long[blocks];
+			long rows = 0;
+			for (int b = 0; b < blocks; b++) {
+				this.blockOffsets[b] = footer.readVarLong();
+				this.blockLengths[b] = (int) footer.readVarLong();
+				this.blockRows[b] = (int) footer.readVarLong();
+				this.blockMin[b] = footer.readSignedVarLong();
+				this.blockMax[b] = footer.readSignedVarLong();
+				rows += this.blockRows[b];
+			}
+			this.rowCount = rows;
+		} catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	private static void readDictionary(ArchiveCodec.Input in, int[] ids, String[] codes, byte[] bytes) {
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = (int) in.readSignedVarLong();
+			int length = (int) in.readVarLong();
+			codes[i] = length == 0 ? null : new String(bytes, in.position, length, StandardCharsets.UTF_8);
+			in.position += length;
+		}
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (this.channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of archive");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Decodes the requested columns of a block.
+	 *
+	 * @param index The block index.
+	 * @param columns A mask of column bits, e.g. {@code TIMESTAMPS | DISTANCES}.
+	 * @param reuse A block to decode into, or {@code null} to allocate one.
+	 * @return The decoded block.
+	 * @throws IOException if the block cannot be read.
+	 */
+	public Block readBlock(int index, int columns, Block reuse) throws IOException {
+		Block block = reuse != null ? reuse : new Block();
+		int rows = this.blockRows[index];
+		block.ensureCapacity(rows);
+		block.rows = rows;
+
+		byte[] bytes = read(this.blockOffsets[index], this.blockLengths[index]).array();
+		ArchiveCodec.Input in = new ArchiveCodec.Input(bytes, 0, bytes.length);
+		for (int column = 0; column < ReadingsArchiveWriter.COLUMNS; column++) {
+			int length = (int) in.readVarLong();
+			int start = in.position;
+			in.position += length;
+			if ((columns & (1 << column)) == 0) continue;
+
+			ArchiveCodec.Input data = new ArchiveCodec.Input(bytes, start, length);
+			switch (column) {
+				case 0 -> ArchiveCodec.decodeTimestamps(data, block.timestamps, rows);
+				case 1 -> {
+					long previous = 0;
+					for (int i = 0; i < rows; i++) {
+						previous += data.readSignedVarLong();
+						block.measurementIds[i] = previous;
+					}
+				}
+				case 2 -> {
+					for (int i = 0; i < rows; i++) block.tagIds[i] = this.tagIds[(int) data.readVarLong()];
+				}
+				case 3 -> {
+					for (int i = 0; i < rows; i++) block.anchorIds[i] = this.anchorIds[(int) data.readVarLong()];
+				}
+				default -> {
+					if (this.distanceEncoding == ReadingsArchiveWriter.DistanceEncoding.XOR) {
+						ArchiveCodec.decodeXor(data, block.distances, rows);
+					} else {
+						for (int i = 0; i < rows; i++) block.distances[i] = data.readSignedVarLong() * this.quantum;
+					}
+				}
+			}
+		}
+		return block;
+	}
+
+	/**
+	 * Decodes every block overlapping {@code [from, to)} and hands it to a
+	 * consumer. Blocks are decoded on the common fork-join pool when
+	 * {@code parallel} is set, in which case the consumer must be thread-safe
+	 * and blocks are delivered in no particular order. Rows of a delivered
+	 * block may still fall outside the range. Blocks are reused, so the
+	 * consumer must not keep a reference to them.
+	 *
+	 * @param from Inclusive lower timestamp bound (epoch ms).
+	 * @param to Exclusive upper timestamp bound (epoch ms).
+	 * @param columns A mask of the columns to decode.
+	 * @param parallel {@code true} to decode blocks in parallel.
+	 * @param consumer Receives each decoded block.
+	 * @return The number of rows in the delivered blocks.
+	 */
+	public long forEachBlock(long from, long to, int columns, boolean parallel, Consumer<Block> consumer) {
+		AtomicLong rows = new AtomicLong();
+		IntStream blocks = IntStream.range(0, this.blockOffsets.length)
+				.filter(b -> this.blockMax[b] >= from && this.blockMin[b] < to);
+		if (parallel) blocks = blocks.parallel();
+		ThreadLocal<Block> buffers = ThreadLocal.withInitial(Block::new);
+		blocks.forEach(b -> {
+			try {
+				Block block = readBlock(b, columns, buffers.get());
+				rows.addAndGet(block.rows);
+				consumer.accept(block);
+			} catch (IOException e) {
+				throw new IllegalStateException("Failed to read archive block " + b, e);
+			}
+		});
+		return rows.get();
+	}
+
+	/**
+	 * Gets the code of a tag, as exported from the database.
+	 *
+	 * @param tagId The database ID of the tag.
+	 * @return The tag code, or {@code null} if unknown.
+	 */
+	public String getTagCode(int tagId) {
+		for (int i = 0; i < this.tagIds.length; i++) {
+			if (this.tagIds[i] == tagId) return this.tagCodes[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the code of an anchor, as exported from the database.
+	 *
+	 * @param anchorId The database ID of the anchor.
+	 * @return The anchor code, or {@code null} if unknown.
+	 */
+	public String getAnchorCode(int anchorId) {
+		for (int i = 0; i < this.anchorIds.length; i++) {
+			if (this.anchorIds[i] == anchorId) return this.anchorCodes[i];
+		}
+		return null;
+	}
+
+	public long getRowCount() { return rowCount; }
+	public int getBlockCount() { return blockOffsets.length; }
+	public ReadingsArchiveWriter.DistanceEncoding getDistanceEncoding() { return distanceEncoding; }
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	/**
+	 * Decoded columns of one block. Arrays may be longer than {@link #rows};
+	 * columns that were not requested hold stale data.
+	 */
+	public static final class Block {
+		public int rows;
+		public long[] timestamps = new long[0];
+		public long[] measurementIds = new long[0];
+		public int[] tagIds = new int[0];
+		public int[] anchorIds = new int[0];
+		public double[] distances = new double[0];
+
+		private void ensureCapacity(int capacity) {
+			if (this.timestamps.length < capacity) {
+				this.timestamps = new long[capacity];
+				this.measurementIds = new long[capacity];
+				this.tagIds = new int[capacity];
+				this.anchorIds = new int[capacity];
+				this.distances = new double[capacity];
+			}
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package pt.um.ucl.positioning.C03a.uwb.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes ToA readings to a compressed, columnar archive file.
+ * <p>
+ * Rows are buffered into blocks of {@value #BLOCK_ROWS} readings. Each block
+ * stores its columns one after the other, each independently decodable:
+ * <ul>
+ * <li>timestamps: delta-of-delta in variable-width bit buckets,</li>
+ * <li>measurement IDs: zigzag varint deltas,</li>
+ * <li>tag and anchor IDs: varint indices into per-file dictionaries,</li>
+ * <li>distances: either quantized to a fixed resolution and stored as
+ * zigzag varints (lossy), or XOR-compressed (lossless).</li>
+ * </ul>
+ * The footer holds the dictionaries (IDs with their codes) and a block
+ * directory with row counts and time bounds, so {@link ReadingsArchiveReader}
+ * can skip and decode blocks in parallel. The file is written under a
+ * temporary name and moved into place on {@link #close()}.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class ReadingsArchiveWriter implements AutoCloseable {
+
+	/**
+	 * How distances are stored.
+	 */
+	public enum DistanceEncoding {
+		/** Rounded to a multiple of the quantum and stored as integers. */
+		QUANTIZED,
+		/** Stored losslessly as XOR against the previous value. */
+		XOR
+	}
+
+	static final int MAGIC = 0x55574241; // "UWBA"
+	static final int VERSION = 1;
+	static final int BLOCK_ROWS = 65536;
+	static final int COLUMNS = 5;
+
+	private final Path file;
+	private final Path tempFile;
+	private final OutputStream out;
+	private final DistanceEncoding distanceEncoding;
+	private final double quantum;
+
+	private final long[] timestamps = new long[BLOCK_ROWS];
+	private final long[] measurementIds = new long[BLOCK_ROWS];
+	private final int[] tagIndices = new int[BLOCK_ROWS];
+	private final int[] anchorIndices = new int[BLOCK_ROWS];
+	private final double[] distances = new double[BLOCK_ROWS];
+	private int rows;
+
+	private final Dictionary tags = new Dictionary();
+	private final Dictionary anchors = new Dictionary();
+	private final ArchiveCodec.Output column = new ArchiveCodec.Output(BLOCK_ROWS * 4);
+	private final ArchiveCodec.Output blockBuffer = new ArchiveCodec.Output(BLOCK_ROWS * 8);
+	private final ArchiveCodec.Output directory = new ArchiveCodec.Output(1024);
+	private int blockCount;
+	private long written;
+	private long totalRows;
+
+	/**
+	 * Creates a new archive file.
+	 *
+	 * @param file The archive file to write.
+	 * @param distanceEncoding How distances are stored.
+	 * @param quantum The distance resolution for {@link DistanceEncoding#QUANTIZED}.
+	 * @throws IOException if the file cannot be created.
+	 */
+	public ReadingsArchiveWriter(Path file, DistanceEncoding distanceEncoding, double quantum) throws IOException {
+		this.file = file;
+		this.tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		this.distanceEncoding = distanceEncoding;
+		this.quantum = quantum;
+		this.out = new BufferedOutputStream(Files.newOutputStream(this.tempFile), 1 << 16);
+
+		ArchiveCodec.Output header = new ArchiveCodec.Output(32);
+		header.writeLong(((long) MAGIC << 32) | VERSION);
+		header.writeByte(distanceEncoding.ordinal());
+		header.writeLong(Double.doubleToRawLongBits(quantum));
+		write(header);
+	}
+
+	/**
+	 * Adds a reading. Rows should be added in timestamp order for the best
+	 * compression, but any order is valid.
+	 *
+	 * @param timestamp The reading timestamp (epoch ms).
+	 * @param measurementId The measurement (or round) ID.
+	 * @param tagId The database ID of the tag.
+	 * @param tagCode The tag code, or {@code null} if unknown.
+	 * @param anchorId The database ID of the anchor.
+	 * @param anchorCode The anchor code, or {@code null} if unknown.
+	 * @param distance The measured distance.
+	 * @throws IOException if a full block cannot be written.
+	 */
+	public void add(long timestamp, long measurementId, int tagId, String tagCode, int anchorId, String anchorCode, double distance) throws IOException {
+		this.timestamps[this.rows] = timestamp;
+		this.measurementIds[this.rows] = measurementId;
+		this.tagIndices[this.rows] = this.tags.indexOf(tagId, tagCode);
+		this.anchorIndices[this.rows] = this.anchors.indexOf(anchorId, anchorCode);
+		this.distances[this.rows] = distance;
+		if (++this.rows == BLOCK_ROWS) {
+			writeBlock();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		if (this.rows == 0) return;
+		long minTimestamp = Long.MAX_VALUE;
+		long maxTimestamp = Long.MIN_VALUE;
+		for (int i = 0; i < this.rows; i++) {
+			minTimestamp = Math.min(minTimestamp, this.timestamps[i]);
+			maxTimestamp = Math.max(maxTimestamp, this.timestamps[i]);
+		}
+
+		this.blockBuffer.reset();
+		this.column.reset();
+		ArchiveCodec.encodeTimestamps(this.timestamps, this.rows, this.column);
+		appendColumn();
+
+		long previous = 0;
+		for (int i = 0; i < this.rows; i++) {
+			this.column.writeSignedVarLong(this.measurementIds[i] - previous);
+			previous = this.measurementIds[i];
+		}
+		appendColumn();
+
+		for (int i = 0; i < this.rows; i++) this.column.writeVarLong(this.tagIndices[i]);
+		appendColumn();
+
+		for (int i = 0; i < this.rows; i++) this.column.writeVarLong(this.anchorIndices[i]);
+		appendColumn();
+
+		if (this.distanceEncoding == DistanceEncoding.XOR) {
+			ArchiveCodec.encodeXor(this.distances, this.rows, this.column);
+		} else {
+			for (int i = 0; i < this.rows; i++) this.column.writeSignedVarLong(Math.round(this.distances[i] / this.quantum));
+		}
+		appendColumn();
+
+		this.directory.writeVarLong(this.written);
+		this.directory.writeVarLong(this.blockBuffer.size);
+		this.directory.writeVarLong(this.rows);
+		this.directory.writeSignedVarLong(minTimestamp);
+		this.directory.writeSignedVarLong(maxTimestamp);
+		write(this.blockBuffer);
+
+		this.blockCount++;
+		this.totalRows += this.rows;
+		this.rows = 0;
+	}
+
+	/** Moves the encoded column into the block, prefixed with its length. */
+	private void appendColumn() {
+		this.blockBuffer.writeVarLong(this.column.size);
+		this.blockBuffer.writeBytes(this.column.bytes, 0, this.column.size);
+		this.column.reset();
+	}
+
+	private void write(ArchiveCodec.Output buffer) throws IOException {
+		this.out.write(buffer.bytes, 0, buffer.size);
+		this.written += buffer.size;
+	}
+
+	/**
+	 * Writes the last block and the footer, and moves the file into place.
+	 *
+	 * @throws IOException if writing fails.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			writeBlock();
+			long footerOffset = this.written;
+			ArchiveCodec.Output footer = new ArchiveCodec.Output(1024);
+			this.tags.writeTo(footer);
+			this.anchors.writeTo(footer);
+			footer.writeVarLong(this.blockCount);
+			footer.writeBytes(this.directory.bytes, 0, this.directory.size);
+			footer.writeLong(footerOffset);
+			footer.writeLong(((long) MAGIC << 32) | VERSION);
+			write(footer);
+		} finally {
+			this.out.close();
+		}
+		Files.move(this.tempFile, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Deletes the partially written file without publishing it.
+	 */
+	public void abort() {
+		try {
+			this.out.close();
+			Files.deleteIfExists(this.tempFile);
+		} catch (IOException ignored) {
+		}
+	}
+
+	/** @return The number of rows written (including the buffered block). */
+	public long getRowCount() { return totalRows + rows; }
+	/** @return The number of bytes written so far. */
+	public long getBytesWritten() { return written; }
+
+	/**
+	 * Maps device IDs to dense indices, remembering their codes.
+	 */
+	private static final class Dictionary {
+		private final Map<Integer, Integer> indices = new HashMap<>();
+		private final List<Integer> ids = new ArrayList<>();
+		private final List<String> codes = new ArrayList<>();
+		private int lastId = Integer.MIN_VALUE;
+		private int lastIndex = -1;
+
+		int indexOf(int id, String code) {
+			if (id == this.lastId) return this.lastIndex;
+			Integer index = this.indices.get(id);
+			if (index == null) {
+				index = this.ids.size();
+				this.indices.put(id, index);
+				this.ids.add(id);
+				this.codes.add(code);
+			}
+			this.lastId = id;
+			this.lastIndex = index;
+			return index;
+		}
+
+		void writeTo(ArchiveCodec.Output out) {
+			out.writeVarLong(this.ids.size());
+			for (int i = 0; i < this.ids.size(); i++) {
+				out.writeSignedVarLong(this.ids.get(i));
+				byte[] code = this.codes.get(i) == null ? new byte[0] : this.codes.get(i).getBytes(StandardCharsets.UTF_8);
+				out.writeVarLong(code.length);
+				out.writeBytes(code, 0, code.length);
+			}
+		}
+	}
+}
@@ -0,0 +1,378 @@
+package pt.um.ucl.positioning.C03a.uwb.storage;
+
+import pt.um.ucl.positioning.C03a.uwb.devices.Tag;
+import pt.um.ucl.positioning.C03a.uwb.measurements.Measurement;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded, append-only time-series store for raw ToA readings.
+ * <p>
+ * Readings are appended as fixed-width records to memory-mapped segment files
+ * in {@code store.directory} (see {@link Segment}). A new segment is started
+ * when the active one is full or older than {@code store.segmentDuration},
+ * so that old data always sits in whole files that can be deleted at once.
+ * <p>
+ * A maintenance job, run every {@code store.maintenanceInterval}, deletes
+ * segments whose newest reading is older than {@code store.retentionHours}
+ * and compacts runs of small sealed segments (e.g. left behind by restarts)
+ * into one, sorted by timestamp so its time index is as selective as possible.
+ * <p>
+ * Mapped files cannot be unmapped explicitly, so on platforms that refuse to
+ * delete a mapped file (Windows) deletion is retried on later runs and
+ * replaced segments are flagged as obsolete so they are ignored on restart.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+public class ReadingsSegmentStore {
+
+	/**
+	 * Receives the records of a scan, without allocating per record.
+	 */
+	@FunctionalInterface
+	public interface ReadingVisitor {
+		/**
+		 * Called once per matching record.
+		 *
+		 * @param timestamp The reading timestamp (epoch ms).
+		 * @param tagId The database ID of the tag.
+		 * @param anchorId The database ID of the anchor.
+		 * @param distance The measured distance.
+		 * @param roundId The measurement round ID.
+		 */
+		void accept(long timestamp, int tagId, int anchorId, double distance, long roundId);
+	}
+
+	/** The directory holding the segment files. */
+	private final Path directory;
+	/** Records per segment file. */
+	private final int segmentRecords;
+	/** Maximum age of the active segment before a new one is started (milliseconds). */
+	private final long segmentDuration;
+	/** Age after which segments are deleted (milliseconds). */
+	private final long retention;
+	/** Records per time index block. */
+	private final int indexInterval;
+	/** Flag to enable/disable Logs. */
+	private final boolean enableLogs;
+
+	/** Immutable snapshot of all live segments, oldest first. Replaced under {@code this}. */
+	private volatile List<Segment> segments = List.of();
+	/** Files that could not be deleted yet. */
+	private final List<Path> pendingDeletes = new ArrayList<>();
+	/** Next segment ID. */
+	private final AtomicLong nextId = new AtomicLong();
+	/** The segment being appended to, or {@code null}. Guarded by {@code this}. */
+	private Segment active;
+	/** Runs expiry and compaction. */
+	private ScheduledExecutorService maintenance;
+
+	/**
+	 * Opens (or creates) a store. Segments left active by a previous run are
+	 * sealed; obsolete ones are deleted.
+	 *
+	 * @param directory The directory holding the segment files.
+	 * @param segmentRecords Records per segment file.
+	 * @param segmentDuration Maximum age of the active segment in milliseconds.
+	 * @param retention Age after which segments are deleted, in milliseconds.
+	 * @param indexInterval Records per time index block.
+	 * @param enableLogs {@code true} to log maintenance and errors.
+	 * @throws IOException if the directory cannot be read.
+	 */
+	public ReadingsSegmentStore(Path directory, int segmentRecords, long segmentDuration, long retention,
+			int indexInterval, boolean enableLogs) throws IOException {
+		this.directory = directory;
+		this.segmentRecords = Math.max(1, segmentRecords);
+		this.segmentDuration = segmentDuration;
+		this.retention = retention;
+		this.indexInterval = Math.max(1, indexInterval);
+		this.enableLogs = enableLogs;
+
+		Files.createDirectories(directory);
+		List<Segment> opened = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*" + Segment.EXTENSION)) {
+			for (Path file : files) {
+				try {
+					Segment segment = Segment.open(file, this.indexInterval);
+					if (segment.state() == Segment.STATE_OBSOLETE) {
+						delete(file);
+						continue;
+					}
+					if (segment.state() == Segment.STATE_ACTIVE) {
+						segment.setState(Segment.STATE_SEALED);
+					}
+					opened.add(segment);
+				} catch (IOException e) {
+					if (enableLogs) System.err.println("Skipping unreadable segment " + file + ": " + e.getMessage());
+				}
+			}
+		}
+		opened.sort(Comparator.comparingLong(s -> s.id));
+		this.segments = List.copyOf(opened);
+		this.nextId.set(opened.isEmpty() ? 1 : opened.get(opened.size() - 1).id + 1);
+	}
+
+	/**
+	 * Starts the expiry and compaction job.
+	 *
+	 * @param interval Interval between runs, in milliseconds.
+	 */
+	public void startMaintenance(long interval) {
+		this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "segment-store-maintenance");
+			t.setDaemon(true);
+			return t;
+		});
+		this.maintenance.scheduleWithFixedDelay(() -> {
+			try {
+				expire(System.currentTimeMillis());
+				compact();
+			} catch (Exception e) {
+				if (enableLogs) System.err.println("Segment store maintenance failed: " + e.getMessage());
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Appends every reading of a completed measurement.
+	 *
+	 * @param tag The measured tag.
+	 * @param measurement The completed measurement.
+	 * @throws IOException if a new segment cannot be created.
+	 */
+	public synchronized void append(Tag tag, Measurement measurement) throws IOException {
+		int readingCount = measurement.getReadingCount();
+		for (int i = 0; i < readingCount; i++) {
+			append(measurement.getTimestamp(i), measurement.getCustomMeasurementRoundId(), measurement.getDistance(i),
+					tag.getDeviceID(), measurement.getAnchor(i).getDeviceID());
+		}
+	}
+
+	/**
+	 * Appends a single reading.
+	 *
+	 * @param timestamp The reading timestamp (epoch ms).
+	 * @param roundId The measurement round ID.
+	 * @param distance The measured distance.
+	 * @param tagId The database ID of the tag.
+	 * @param anchorId The database ID of the anchor.
+	 * @throws IOException if a new segment cannot be created.
+	 */
+	public synchronized void append(long timestamp, long roundId, double distance, int tagId, int anchorId) throws IOException {
+		if (this.active == null || System.currentTimeMillis() - this.active.createdAt() >= this.segmentDuration
+				|| !this.active.append(timestamp, roundId, distance, tagId, anchorId)) {
+			roll();
+			this.active.append(timestamp, roundId, distance, tagId, anchorId);
+		}
+	}
+
+	private void roll() throws IOException {
+		if (this.active != null) {
+			this.active.setState(Segment.STATE_SEALED);
+		}
+		this.active = Segment.create(this.directory, this.nextId.getAndIncrement(), this.segmentRecords, this.indexInterval);
+		List<Segment> updated = new ArrayList<>(this.segments);
+		updated.add(this.active);
+		this.segments = List.copyOf(updated);
+	}
+
+	/**
+	 * Visits the stored readings of a tag within a time range. Records are
+	 * visited segment by segment, in append order within each segment.
+	 *
+	 * @param tagId The database ID of the tag, or {@code -1} for all tags.
+	 * @param from Inclusive lower timestamp bound (epoch ms).
+	 * @param to Exclusive upper timestamp bound (epoch ms).
+	 * @param visitor Receives every matching record.
+	 * @return The number of records visited.
+	 */
+	public long scan(int tagId, long from, long to, ReadingVisitor visitor) {
+		long visited = 0;
+		for (Segment segment : this.segments) {
+			visited += segment.scan(tagId, from, to, visitor);
+		}
+		return visited;
+	}
+
+	/**
+	 * Deletes sealed segments whose newest reading is older than the retention.
+	 *
+	 * @param now The current time (epoch ms).
+	 */
+	public void expire(long now) {
+		long horizon = now - this.retention;
+		for (Segment segment : this.segments) {
+			if (segment.state() == Segment.STATE_SEALED && segment.maxTimestamp() < horizon) {
+				replace(List.of(segment), null);
+				segment.setState(Segment.STATE_OBSOLETE);
+				delete(segment.path);
+				if (enableLogs) System.out.println("Expired segment " + segment.path.getFileName());
+			}
+		}
+		retryPendingDeletes();
+	}
+
+	/**
+	 * Merges runs of consecutive sealed segments that are less than half full
+	 * into single segments sorted by timestamp.
+	 *
+	 * @throws IOException if a merged segment cannot be written.
+	 */
+	public void compact() throws IOException {
+		List<Segment> run = new ArrayList<>();
+		long runRecords = 0;
+		for (Segment segment : this.segments) {
+			boolean small = segment.state() == Segment.STATE_SEALED && segment.count() < this.segmentRecords / 2;
+			if (small && runRecords + segment.count() <= this.segmentRecords) {
+				run.add(segment);
+				runRecords += segment.count();
+				continue;
+			}
+			merge(run, (int) runRecords);
+			run.clear();
+			runRecords = 0;
+			if (small) {
+				run.add(segment);
+				runRecords = segment.count();
+			}
+		}
+		merge(run, (int) runRecords);
+	}
+
+	private void merge(List<Segment> sources, int records) throws IOException {
+		if (sources.size() < 2) return;
+		if (records == 0) {
+			replace(sources, null);
+			for (Segment source : sources) {
+				source.setState(Segment.STATE_OBSOLETE);
+				delete(source.path);
+			}
+			return;
+		}
+
+		// Gather the timestamps with their source positions and sort by time.
+		long[] timestamps = new long[records];
+		int[] origin = new int[records];
+		int n = 0;
+		for (int s = 0; s < sources.size(); s++) {
+			Segment source = sources.get(s);
+			for (int i = 0; i < source.count(); i++, n++) {
+				timestamps[n] = source.timestamp(i);
+				origin[n] = n;
+			}
+		}
+		sortByTimestamp(origin, timestamps);
+
+		int[] firstRecord = new int[sources.size() + 1];
+		for (int s = 0; s < sources.size(); s++) {
+			firstRecord[s + 1] = firstRecord[s] + sources.get(s).count();
+		}
+
+		Segment merged = Segment.create(this.directory, this.nextId.getAndIncrement(), this.segmentRecords, this.indexInterval);
+		for (int k = 0; k < records; k++) {
+			int position = origin[k];
+			int s = 0;
+			while (firstRecord[s + 1] <= position) s++;
+			Segment source = sources.get(s);
+			int i = position - firstRecord[s];
+			merged.append(source.timestamp(i), source.roundId(i), source.distance(i), source.tagId(i), source.anchorId(i));
+		}
+		merged.setState(Segment.STATE_SEALED);
+		merged.force();
+
+		replace(sources, merged);
+		for (Segment source : sources) {
+			source.setState(Segment.STATE_OBSOLETE);
+			delete(source.path);
+		}
+		if (enableLogs) System.out.println("Compacted " + sources.size() + " segments into " + merged.path.getFileName());
+	}
+
+	/**
+	 * Removes segments from the snapshot, putting {@code replacement} (if any)
+	 * in place of the first one. Scans see either the old or the new snapshot.
+	 */
+	private synchronized void replace(List<Segment> removed, Segment replacement) {
+		List<Segment> updated = new ArrayList<>(this.segments);
+		int at = updated.indexOf(removed.get(0));
+		updated.removeAll(removed);
+		if (replacement != null) updated.add(Math.max(0, at), replacement);
+		this.segments = List.copyOf(updated);
+	}
+
+	/**
+	 * Stable merge sort of record positions by timestamp.
+	 */
+	private static void sortByTimestamp(int[] positions, long[] timestamps) {
+		int[] buffer = new int[positions.length];
+		for (int width = 1; width < positions.length; width *= 2) {
+			for (int lo = 0; lo < positions.length - width; lo += 2 * width) {
+				int mid = lo + width;
+				int hi = Math.min(lo + 2 * width, positions.length);
+				int i = lo, j = mid, k = lo;
+				while (i < mid && j < hi) {
+					buffer[k++] = timestamps[positions[j]] < timestamps[positions[i]] ? positions[j++] : positions[i++];
+				}
+				while (i < mid) buffer[k++] = positions[i++];
+				while (j < hi) buffer[k++] = positions[j++];
+				System.arraycopy(buffer, lo, positions, lo, hi - lo);
+			}
+		}
+	}
+
+	private void delete(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			synchronized (this.pendingDeletes) {
+				this.pendingDeletes.add(path);
+			}
+		}
+	}
+
+	private void retryPendingDeletes() {
+		synchronized (this.pendingDeletes) {
+			this.pendingDeletes.removeIf(path -> {
+				try {
+					Files.deleteIfExists(path);
+					return true;
+				} catch (IOException e) {
+					return false;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stops maintenance and seals the active segment.
+	 */
+	public synchronized void close() {
+		if (this.maintenance != null) {
+			this.maintenance.shutdownNow();
+		}
+		if (this.active != null) {
+			this.active.setState(Segment.STATE_SEALED);
+			this.active.force();
+			this.active = null;
+		}
+	}
+
+	public int getSegmentCount() { return segments.size(); }
+
+	public long getRecordCount() {
+		long total = 0;
+		for (Segment segment : this.segments) total += segment.count();
+		return total;
+	}
+}
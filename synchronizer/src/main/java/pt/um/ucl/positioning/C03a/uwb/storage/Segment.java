@@ -0,0 +1,216 @@
+package pt.um.ucl.positioning.C03a.uwb.storage;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One memory-mapped, append-only file of fixed-width reading records.
+ * <p>
+ * Layout: a {@value #HEADER_SIZE}-byte header followed by {@code capacity}
+ * records of {@value #RECORD_SIZE} bytes:
+ * <pre>
+ * header: magic(4) version(4) count(8) createdAt(8) state(4)
+ * record: timestamp(8) roundId(8) distance(8) tagId(4) anchorId(4)
+ * </pre>
+ * The record count is written to the header after each record, so a crash
+ * can lose at most the record being written. The sparse time index keeps the
+ * minimum and maximum timestamp of every block of {@code indexInterval}
+ * records; it lives in memory and is rebuilt when a segment is opened.
+ * <p>
+ * A single thread appends; any number of threads may scan concurrently and
+ * see every record published before the scan started.
+ *
+ * @author Gustavo Oliveira
+ * @version 0.7
+ */
+final class Segment {
+
+	static final int HEADER_SIZE = 64;
+	static final int RECORD_SIZE = 32;
+	static final String EXTENSION = ".seg";
+
+	static final int STATE_ACTIVE = 0;
+	static final int STATE_SEALED = 1;
+	/** Replaced by compaction or expired; deleted (or ignored) on the next open. */
+	static final int STATE_OBSOLETE = 2;
+
+	private static final int MAGIC = 0x55574253; // "UWBS"
+	private static final int VERSION = 1;
+	private static final int OFFSET_COUNT = 8;
+	private static final int OFFSET_CREATED_AT = 16;
+	private static final int OFFSET_STATE = 24;
+
+	final long id;
+	final Path path;
+	final int capacity;
+	private final int indexInterval;
+	private final MappedByteBuffer buffer;
+	private final long[] blockMin;
+	private final long[] blockMax;
+	private final long createdAt;
+
+	/** Published record count. Written only by the appending thread. */
+	private volatile int count;
+	private volatile long minTimestamp = Long.MAX_VALUE;
+	private volatile long maxTimestamp = Long.MIN_VALUE;
+	private volatile int state;
+
+	private Segment(long id, Path path, MappedByteBuffer buffer, int capacity, int indexInterval, long createdAt) {
+		this.id = id;
+		this.path = path;
+		this.buffer = buffer;
+		this.capacity = capacity;
+		this.indexInterval = indexInterval;
+		this.createdAt = createdAt;
+		int blocks = (capacity + indexInterval - 1) / indexInterval;
+		this.blockMin = new long[blocks];
+		this.blockMax = new long[blocks];
+	}
+
+	/**
+	 * Creates a new, empty active segment file.
+	 */
+	static Segment create(Path directory, long id, int capacity, int indexInterval) throws IOException {
+		Path path = directory.resolve(fileName(id));
+		MappedByteBuffer buffer = map(path, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+		long now = System.currentTimeMillis();
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putLong(OFFSET_COUNT, 0);
+		buffer.putLong(OFFSET_CREATED_AT, now);
+		buffer.putInt(OFFSET_STATE, STATE_ACTIVE);
+		return new Segment(id, path, buffer, capacity, indexInterval, now);
+	}
+
+	/**
+	 * Opens an existing segment file and rebuilds its time index.
+	 *
+	 * @throws IOException if the file cannot be mapped or is not a segment.
+	 */
+	static Segment open(Path path, int indexInterval) throws IOException {
+		long size;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			size = channel.size();
+		}
+		if (size < HEADER_SIZE) throw new IOException("Truncated segment " + path);
+		MappedByteBuffer buffer = map(path, size);
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Not a readings segment: " + path);
+		}
+		int capacity = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+		Segment segment = new Segment(parseId(path), path, buffer, capacity, indexInterval, buffer.getLong(OFFSET_CREATED_AT));
+		segment.state = buffer.getInt(OFFSET_STATE);
+		int stored = (int) Math.min(buffer.getLong(OFFSET_COUNT), capacity);
+		for (int i = 0; i < stored; i++) {
+			segment.index(i, buffer.getLong(HEADER_SIZE + i * RECORD_SIZE));
+		}
+		segment.count = stored;
+		return segment;
+	}
+
+	private static MappedByteBuffer map(Path path, long size) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// The mapping stays valid after the channel is closed.
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+
+	static String fileName(long id) {
+		return String.format("segment-%016d%s", id, EXTENSION);
+	}
+
+	static long parseId(Path path) throws IOException {
+		String name = path.getFileName().toString();
+		try {
+			return Long.parseLong(name.substring("segment-".length(), name.length() - EXTENSION.length()));
+		} catch (RuntimeException e) {
+			throw new IOException("Unexpected segment file name: " + name);
+		}
+	}
+
+	/**
+	 * Appends a record.
+	 *
+	 * @return {@code false} if the segment is full.
+	 */
+	boolean append(long timestamp, long roundId, double distance, int tagId, int anchorId) {
+		int n = this.count;
+		if (n >= this.capacity) return false;
+		int offset = HEADER_SIZE + n * RECORD_SIZE;
+		this.buffer.putLong(offset, timestamp);
+		this.buffer.putLong(offset + 8, roundId);
+		this.buffer.putDouble(offset + 16, distance);
+		this.buffer.putInt(offset + 24, tagId);
+		this.buffer.putInt(offset + 28, anchorId);
+		index(n, timestamp);
+		this.buffer.putLong(OFFSET_COUNT, n + 1);
+		this.count = n + 1;
+		return true;
+	}
+
+	private void index(int n, long timestamp) {
+		int block = n / this.indexInterval;
+		if (n % this.indexInterval == 0) {
+			this.blockMin[block] = timestamp;
+			this.blockMax[block] = timestamp;
+		} else {
+			if (timestamp < this.blockMin[block]) this.blockMin[block] = timestamp;
+			if (timestamp > this.blockMax[block]) this.blockMax[block] = timestamp;
+		}
+		if (timestamp < this.minTimestamp) this.minTimestamp = timestamp;
+		if (timestamp > this.maxTimestamp) this.maxTimestamp = timestamp;
+	}
+
+	/**
+	 * Visits the records of a tag (or of all tags, if {@code tagId < 0}) with
+	 * {@code from <= timestamp < to}, skipping blocks the index rules out.
+	 *
+	 * @return The number of records visited.
+	 */
+	int scan(int tagId, long from, long to, ReadingsSegmentStore.ReadingVisitor visitor) {
+		int n = this.count;
+		if (n == 0 || this.maxTimestamp < from || this.minTimestamp >= to) return 0;
+		int visited = 0;
+		int blocks = (n + this.indexInterval - 1) / this.indexInterval;
+		for (int block = 0; block < blocks; block++) {
+			if (this.blockMax[block] < from || this.blockMin[block] >= to) continue;
+			int end = Math.min(n, (block + 1) * this.indexInterval);
+			for (int i = block * this.indexInterval; i < end; i++) {
+				int offset = HEADER_SIZE + i * RECORD_SIZE;
+				long timestamp = this.buffer.getLong(offset);
+				if (timestamp < from || timestamp >= to) continue;
+				int recordTag = this.buffer.getInt(offset + 24);
+				if (tagId >= 0 && recordTag != tagId) continue;
+				visitor.accept(timestamp, recordTag, this.buffer.getInt(offset + 28),
+						this.buffer.getDouble(offset + 16), this.buffer.getLong(offset + 8));
+				visited++;
+			}
+		}
+		return visited;
+	}
+
+	/** Reads record {@code i}'s timestamp. */
+	long timestamp(int i) { return this.buffer.getLong(HEADER_SIZE + i * RECORD_SIZE); }
+	long roundId(int i) { return this.buffer.getLong(HEADER_SIZE + i * RECORD_SIZE + 8); }
+	double distance(int i) { return this.buffer.getDouble(HEADER_SIZE + i * RECORD_SIZE + 16); }
+	int tagId(int i) { return this.buffer.getInt(HEADER_SIZE + i * RECORD_SIZE + 24); }
+	int anchorId(int i) { return this.buffer.getInt(HEADER_SIZE + i * RECORD_SIZE + 28); }
+
+	void setState(int state) {
+		this.state = state;
+		this.buffer.putInt(OFFSET_STATE, state);
+	}
+
+	/** Forces the mapped pages to disk. */
+	void force() { this.buffer.force(); }
+
+	int state() { return state; }
+	int count() { return count; }
+	long createdAt() { return createdAt; }
+	long minTimestamp() { return minTimestamp; }
+	long maxTimestamp() { return maxTimestamp; }
+	boolean isFull() { return count >= capacity; }
+}
@@ -0,0 +1,93 @@
+-- Time-partitioned schema for the measurements database (MariaDB).
+--
+-- Measurements and ToAreadings are RANGE partitioned on their `timestamp`
+-- column (epoch milliseconds). Only the catch-all pmax partition is created
+-- here; with db.partitioning=daily|hourly the synchronizer's PartitionManager
+-- splits it into dated partitions ahead of time, drops partitions older than
+-- db.retentionDays and fills the TagRollups/AnchorRollups tables.
+--
+-- MariaDB requires the partitioning column in every unique key and does not
+-- support foreign keys on partitioned tables, hence the composite primary keys
+-- and the plain (non-FK) measurementID index on ToAreadings.
+
+CREATE TABLE IF NOT EXISTS Targets (
+    targetID INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    targetCode VARCHAR(64) NOT NULL UNIQUE,
+    targetName VARCHAR(128)
+);
+
+CREATE TABLE IF NOT EXISTS Anchors (
+    anchorID INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    anchorCode VARCHAR(64) NOT NULL UNIQUE,
+    anchorName VARCHAR(128),
+    anchorX DOUBLE,
+    anchorY DOUBLE,
+    anchorZ DOUBLE,
+    anchorAlpha DOUBLE,
+    anchorBeta DOUBLE,
+    anchorGamma DOUBLE
+);
+
+CREATE TABLE IF NOT EXISTS Measurements (
+    measurementID INT NOT NULL AUTO_INCREMENT,
+    targetID INT NOT NULL,
+    timestamp BIGINT NOT NULL,
+    dataType VARCHAR(16) NOT NULL,
+    PRIMARY KEY (measurementID, timestamp),
+    KEY idx_measurements_target_time (targetID, timestamp)
+)
+PARTITION BY RANGE (timestamp) (
+    PARTITION pmax VALUES LESS THAN MAXVALUE
+);
+
+CREATE TABLE IF NOT EXISTS ToAreadings (
+    readingID BIGINT NOT NULL AUTO_INCREMENT,
+    measurementID INT NOT NULL,
+    timestamp BIGINT NOT NULL,
+    anchorID INT NOT NULL,
+    `Range` DOUBLE NOT NULL,
+    PRIMARY KEY (readingID, timestamp),
+    KEY idx_toareadings_measurement (measurementID),
+    KEY idx_toareadings_anchor_time (anchorID, timestamp)
+)
+PARTITION BY RANGE (timestamp) (
+    PARTITION pmax VALUES LESS THAN MAXVALUE
+);
+
+-- Rollup tables (also created by PartitionManager on start-up).
+-- One row per tag/anchor and db.rollupInterval bucket.
+
+CREATE TABLE IF NOT EXISTS TagRollups (
+    targetID INT NOT NULL,
+    bucketStart BIGINT NOT NULL,
+    bucketSize BIGINT NOT NULL,
+    readingCount BIGINT NOT NULL,
+    rangeMean DOUBLE,
+    rangeVariance DOUBLE,
+    PRIMARY KEY (targetID, bucketStart)
+);
+
+CREATE TABLE IF NOT EXISTS AnchorRollups (
+    anchorID INT NOT NULL,
+    bucketStart BIGINT NOT NULL,
+    bucketSize BIGINT NOT NULL,
+    readingCount BIGINT NOT NULL,
+    rangeMean DOUBLE,
+    rangeVariance DOUBLE,
+    PRIMARY KEY (anchorID, bucketStart)
+);
+
+-- Start of the last bucket rolled up, so buckets without readings are not
+-- rolled up again.
+CREATE TABLE IF NOT EXISTS RollupProgress (
+    rollup VARCHAR(32) NOT NULL PRIMARY KEY,
+    lastBucket BIGINT NOT NULL
+);
+
+-- Migrating existing, unpartitioned tables (drop any foreign key between
+-- ToAreadings and Measurements first; the key columns may differ):
+--
+-- ALTER TABLE Measurements DROP PRIMARY KEY, ADD PRIMARY KEY (measurementID, timestamp);
+-- ALTER TABLE Measurements PARTITION BY RANGE (timestamp) (PARTITION pmax VALUES LESS THAN MAXVALUE);
+-- ALTER TABLE ToAreadings DROP PRIMARY KEY, ADD PRIMARY KEY (readingID, timestamp);
+-- ALTER TABLE ToAreadings PARTITION BY RANGE (timestamp) (PARTITION pmax VALUES LESS THAN MAXVALUE);